@@ -0,0 +1,57 @@
+package com.morales.pos.application.dto.request;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class QuoteSaleRequest {
+
+    @DecimalMin(value = "0.0", inclusive = true, message = "El descuento no puede ser negativo")
+    @DecimalMax(value = "100.0", inclusive = true, message = "El descuento no puede exceder 100%")
+    private BigDecimal discountPercent = BigDecimal.ZERO;
+
+    @DecimalMin(value = "0.0", inclusive = true, message = "El cargo por servicio no puede ser negativo")
+    @DecimalMax(value = "100.0", inclusive = true, message = "El cargo por servicio no puede exceder 100%")
+    private BigDecimal serviceChargePercent = BigDecimal.ZERO;
+
+    @DecimalMin(value = "0.0", inclusive = true, message = "El cargo por servicio no puede ser negativo")
+    private BigDecimal serviceChargeAmount = BigDecimal.ZERO;
+
+    @DecimalMin(value = "0.0", inclusive = true, message = "El cargo por domicilio no puede ser negativo")
+    private BigDecimal deliveryChargeAmount = BigDecimal.ZERO;
+
+    @DecimalMin(value = "0.0", inclusive = true, message = "El monto recibido no puede ser negativo")
+    private BigDecimal amountReceived;   // opcional: si viene se calcula el vuelto
+
+    @NotEmpty(message = "Debe incluir al menos un producto")
+    @Size(max = 200, message = "La cotización no puede exceder 200 líneas")
+    @Valid
+    private List<QuoteLineRequest> details;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class QuoteLineRequest {
+
+        @NotNull(message = "El ID del producto es requerido")
+        private Long productId;
+
+        @NotNull(message = "La cantidad es requerida")
+        @DecimalMin(value = "0.01", inclusive = true, message = "La cantidad debe ser mayor a 0")
+        private BigDecimal quantity;
+
+        @DecimalMin(value = "0.0", inclusive = true, message = "El precio no puede ser negativo")
+        private BigDecimal unitPrice;        // opcional: por defecto el precio de venta del producto
+
+        @DecimalMin(value = "0.0", inclusive = true, message = "El descuento no puede ser negativo")
+        private BigDecimal discountAmount = BigDecimal.ZERO;
+    }
+}
@@ -0,0 +1,36 @@
+package com.morales.pos.application.dto.request;
+
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Entrada de stock con lote: suma al inventario y abre un lote con su vencimiento.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReceiveLotRequest {
+
+    @NotNull(message = "La cantidad es requerida")
+    @DecimalMin(value = "0.01", inclusive = true, message = "La cantidad debe ser mayor a 0")
+    private BigDecimal quantity;
+
+    @Size(max = 50, message = "El código de lote no puede tener más de 50 caracteres")
+    private String lotCode;
+
+    // Opcional: sin vencimiento el lote se consume después de los que vencen (FEFO)
+    private LocalDateTime expiresAt;
+
+    // Opcional: actualiza el costo promedio del producto
+    @DecimalMin(value = "0", inclusive = true, message = "El costo unitario no puede ser negativo")
+    private BigDecimal unitCost;
+
+    private String reason;
+}
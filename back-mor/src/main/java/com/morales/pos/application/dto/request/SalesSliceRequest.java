@@ -0,0 +1,28 @@
+package com.morales.pos.application.dto.request;
+
+import com.morales.pos.infrastructure.analytics.SalesDimension;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SalesSliceRequest {
+
+    private LocalDate from;                 // vacío: primer día en memoria
+    private LocalDate to;                   // vacío: hoy
+
+    private List<SalesDimension> groupBy;   // vacío: un solo total
+
+    // Valores permitidos por dimensión: ids (o método de pago), WEEKDAY 1–7, HOUR 0–23
+    private Map<SalesDimension, List<String>> filters;
+
+    private Integer limit;                  // grupos devueltos, de mayor a menor venta
+}
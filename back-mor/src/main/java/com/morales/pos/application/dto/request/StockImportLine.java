@@ -0,0 +1,29 @@
+package com.morales.pos.application.dto.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Una línea de la importación masiva de stock (JSON o una fila del CSV).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockImportLine {
+
+    // Código interno o código de barras del producto
+    private String code;
+
+    private String quantity;
+
+    // ENTRADA (suma), SALIDA (resta) o CONTEO (fija la cantidad contada); por defecto ENTRADA
+    private String type;
+
+    // Opcional, solo en ENTRADA: costo unitario para el costo promedio ponderado
+    private String unitCost;
+
+    public StockImportLine(String code, String quantity, String type) {
+        this(code, quantity, type, null);
+    }
+}
@@ -0,0 +1,45 @@
+package com.morales.pos.application.dto.request;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Lote de ventas registradas por una caja sin conexión, para subirlas de una sola vez.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SyncSalesRequest {
+
+    @NotEmpty(message = "Debe incluir al menos una venta")
+    @Size(max = 500, message = "No se pueden sincronizar más de 500 ventas por lote")
+    @Valid
+    private List<OfflineSale> sales;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class OfflineSale {
+
+        // Identificador generado por la caja; hace que reenviar el lote no duplique ventas
+        @NotBlank(message = "El identificador de la venta es requerido")
+        @Size(max = 100, message = "El identificador de la venta no puede exceder 100 caracteres")
+        private String clientSaleId;
+
+        // Momento en que se hizo la venta en la caja
+        private LocalDateTime clientTimestamp;
+
+        @NotNull(message = "La venta es requerida")
+        @Valid
+        private CreateSaleRequest sale;
+    }
+}
@@ -0,0 +1,40 @@
+package com.morales.pos.application.dto.request;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Receta completa de un producto; reemplaza la anterior. Una lista vacía quita la receta.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UpdateRecipeRequest {
+
+    @NotNull(message = "Los ingredientes son requeridos")
+    @Size(max = 100, message = "Una receta no puede tener más de 100 ingredientes")
+    @Valid
+    private List<RecipeLine> items;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RecipeLine {
+
+        @NotNull(message = "El ID del ingrediente es requerido")
+        private Long ingredientId;
+
+        // Por unidad del producto, en la unidad del inventario del ingrediente
+        @NotNull(message = "La cantidad es requerida")
+        @DecimalMin(value = "0.0001", inclusive = true, message = "La cantidad debe ser mayor a 0")
+        private BigDecimal quantity;
+    }
+}
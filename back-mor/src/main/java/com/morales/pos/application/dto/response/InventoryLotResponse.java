@@ -0,0 +1,26 @@
+package com.morales.pos.application.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InventoryLotResponse {
+
+    private Long id;
+    private Long productId;
+    private String productName;
+    private String lotCode;
+    private LocalDateTime receivedAt;
+    private LocalDateTime expiresAt;
+    private BigDecimal initialQuantity;
+    private BigDecimal remainingQuantity;
+    private Boolean expired;
+}
@@ -22,6 +22,8 @@ public class InventoryResponse {
     private Long categoryId;
     private String categoryName;
     private BigDecimal quantity;
+    private BigDecimal reservedQuantity;    // ítems de mesas abiertas sin pagar
+    private BigDecimal availableQuantity;   // quantity - reservedQuantity
     private BigDecimal minStock;
     private BigDecimal maxStock;
     private String location;
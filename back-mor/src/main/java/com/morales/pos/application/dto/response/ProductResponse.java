@@ -24,6 +24,7 @@ public class ProductResponse {
     private String categoryName;
     private String imageUrl;
     private BigDecimal costPrice;
+    private BigDecimal averageCost;     // costo promedio ponderado de las entradas
     private BigDecimal salePrice;
     private String unit;
     private BigDecimal taxRate;
@@ -50,6 +51,7 @@ public class ProductResponse {
                 .description(product.getDescription())
                 .imageUrl(product.getImageUrl())
                 .costPrice(product.getCostPrice())
+                .averageCost(product.getAverageCost())
                 .salePrice(product.getSalePrice())
                 .unit(product.getUnit())
                 .taxRate(product.getTaxRate())
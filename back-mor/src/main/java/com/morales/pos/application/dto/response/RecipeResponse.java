@@ -0,0 +1,32 @@
+package com.morales.pos.application.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecipeResponse {
+
+    private Long productId;
+    private String productName;
+    private List<RecipeItemResponse> items;       // ingredientes directos
+    private List<RecipeItemResponse> explosion;   // ingredientes finales que se descuentan al vender una unidad
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RecipeItemResponse {
+        private Long ingredientId;
+        private String ingredientCode;
+        private String ingredientName;
+        private BigDecimal quantity;
+    }
+}
@@ -102,5 +102,35 @@ public class ReportResponse {
         private InventoryValue inventoryValue;
         private List<TopProduct> topProducts;
         private List<DailySales> last7DaysSales;
+        // Secciones que no respondieron a tiempo o fallaron; van en null
+        private List<String> unavailableSections;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SalesSlice {
+        private LocalDate from;
+        private LocalDate to;
+        private List<String> groupBy;
+        private List<SliceRow> rows;
+        private Integer totalGroups;        // antes de aplicar el límite
+        private Long scannedRows;
+        private Long elapsedMicros;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SliceRow {
+        private List<Object> keys;          // un valor por dimensión agrupada, en el mismo orden
+        private List<String> labels;
+        private BigDecimal totalSales;
+        private BigDecimal totalCost;
+        private BigDecimal grossProfit;
+        private BigDecimal quantity;
+        private Long lineCount;
     }
 }
@@ -0,0 +1,42 @@
+package com.morales.pos.application.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SaleQuoteResponse {
+
+    private List<QuoteLine> lines;
+    private BigDecimal subtotal;
+    private BigDecimal taxAmount;
+    private BigDecimal discountPercent;
+    private BigDecimal discountAmount;
+    private BigDecimal serviceChargePercent;
+    private BigDecimal serviceChargeAmount;
+    private BigDecimal deliveryChargeAmount;
+    private BigDecimal total;
+    private BigDecimal changeAmount;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class QuoteLine {
+        private Long productId;
+        private String productName;
+        private BigDecimal quantity;
+        private BigDecimal unitPrice;
+        private BigDecimal discountAmount;
+        private BigDecimal taxRate;
+        private BigDecimal subtotal;
+        private BigDecimal taxAmount;
+    }
+}
@@ -0,0 +1,35 @@
+package com.morales.pos.application.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SaleSyncResponse {
+
+    private int received;
+    private int created;
+    private int duplicated;
+    private int rejected;
+    private List<SaleSyncResult> results;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SaleSyncResult {
+        private String clientSaleId;
+        private String status;          // CREADA, DUPLICADA, RECHAZADA
+        private Long invoiceId;
+        private String invoiceNumber;
+        private BigDecimal total;
+        private String message;
+    }
+}
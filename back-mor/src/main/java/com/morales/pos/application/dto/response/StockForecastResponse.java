@@ -0,0 +1,61 @@
+package com.morales.pos.application.dto.response;
+
+import com.morales.pos.domain.entity.Inventory;
+import com.morales.pos.domain.entity.StockForecast;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockForecastResponse {
+
+    private Long productId;
+    private String productCode;
+    private String productName;
+    private BigDecimal dailyVelocity;       // unidades por día
+    private BigDecimal dailyStdDev;
+    private Integer peakWeekday;            // ISO: 1 = lunes … 7 = domingo
+    private BigDecimal peakWeekdayFactor;   // venta del día pico / promedio diario
+    private Integer peakHour;
+    private BigDecimal currentMinStock;
+    private BigDecimal currentMaxStock;
+    private BigDecimal suggestedMinStock;
+    private BigDecimal suggestedMaxStock;
+    private Integer historyDays;
+    private LocalDateTime computedAt;
+    private LocalDateTime appliedAt;
+
+    public static StockForecastResponse fromEntity(StockForecast forecast) {
+        StockForecastResponseBuilder builder = StockForecastResponse.builder()
+                .productId(forecast.getProductId())
+                .dailyVelocity(forecast.getDailyVelocity())
+                .dailyStdDev(forecast.getDailyStdDev())
+                .peakWeekday(forecast.getPeakWeekday())
+                .peakWeekdayFactor(forecast.getPeakWeekdayFactor())
+                .peakHour(forecast.getPeakHour())
+                .suggestedMinStock(forecast.getSuggestedMinStock())
+                .suggestedMaxStock(forecast.getSuggestedMaxStock())
+                .historyDays(forecast.getHistoryDays())
+                .computedAt(forecast.getComputedAt())
+                .appliedAt(forecast.getAppliedAt());
+
+        if (forecast.getProduct() != null) {
+            builder.productCode(forecast.getProduct().getCode())
+                   .productName(forecast.getProduct().getName());
+            Inventory inventory = forecast.getProduct().getInventory();
+            if (inventory != null) {
+                builder.currentMinStock(inventory.getMinStock())
+                       .currentMaxStock(inventory.getMaxStock());
+            }
+        }
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,36 @@
+package com.morales.pos.application.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockImportResponse {
+
+    private int received;
+    private int applied;
+    private int rejected;
+    private List<StockImportResult> results;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class StockImportResult {
+        private int line;
+        private String code;
+        private String type;
+        private String status;          // APLICADA, RECHAZADA
+        private Long productId;
+        private BigDecimal previousQuantity;
+        private BigDecimal newQuantity;
+        private String message;
+    }
+}
@@ -0,0 +1,262 @@
+package com.morales.pos.application.service;
+
+import com.morales.pos.domain.entity.ArchiveBatch;
+import com.morales.pos.domain.repository.ArchiveBatchRepository;
+import com.morales.pos.infrastructure.archive.ArchiveBlock;
+import com.morales.pos.infrastructure.archive.ColumnarArchiveReader;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Responde las consultas de reportes sobre los periodos archivados por {@link ArchiveService}.
+ *
+ * Cada archivo de cada lote que toca el rango se recorre en un hilo del pool propio; los
+ * bloques fuera del rango se descartan por su fecha mínima/máxima sin descomprimirlos.
+ * Las filas devueltas tienen la misma forma que las consultas de ReportService, así se
+ * pueden sumar con las de la base.
+ */
+@Service
+@Slf4j
+public class ArchiveQueryService {
+
+    private static final String COMPLETADA = "COMPLETADA";
+
+    private static final Set<String> INVOICE_SCAN_COLUMNS = Set.of(
+            "status", "payment_method", "customer_id", "customer_name", "total");
+    private static final Set<String> DETAIL_SCAN_COLUMNS = Set.of(
+            "status", "product_id", "product_code", "product_name", "category_id", "category_name",
+            "quantity", "cost_price", "subtotal");
+
+    private final ArchiveBatchRepository archiveBatchRepository;
+    private final ArchiveService archiveService;
+    private final ExecutorService executor;
+
+    public ArchiveQueryService(ArchiveBatchRepository archiveBatchRepository,
+                               ArchiveService archiveService,
+                               @Value("${app.archive.scan-threads:4}") int scanThreads) {
+        this.archiveBatchRepository = archiveBatchRepository;
+        this.archiveService = archiveService;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, scanThreads), r -> {
+            Thread thread = new Thread(r, "archive-scan-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Ventas archivadas (solo COMPLETADA) entre start y end, ambos incluidos.
+     * Si ningún lote toca el rango devuelve {@link ArchivedSales#EMPTY} sin leer archivos.
+     */
+    public ArchivedSales getSales(LocalDateTime start, LocalDateTime end) {
+        List<ArchiveBatch> batches = archiveBatchRepository.findOverlapping(start.toLocalDate(), end.toLocalDate());
+        if (batches.isEmpty()) {
+            return ArchivedSales.EMPTY;
+        }
+
+        long startedAt = System.currentTimeMillis();
+        List<CompletableFuture<SalesAccumulator>> scans = new ArrayList<>();
+        for (ArchiveBatch batch : batches) {
+            Path dir = archiveService.getDirectory().resolve(batch.getDirectory());
+            scans.add(CompletableFuture.supplyAsync(() -> scanInvoices(dir.resolve(ArchiveService.INVOICES_FILE), start, end), executor));
+            scans.add(CompletableFuture.supplyAsync(() -> scanDetails(dir.resolve(ArchiveService.DETAILS_FILE), start, end), executor));
+        }
+
+        SalesAccumulator total = new SalesAccumulator();
+        try {
+            for (CompletableFuture<SalesAccumulator> scan : scans) {
+                total.merge(scan.join());
+            }
+        } catch (CompletionException e) {
+            throw new IllegalStateException("No se pudo leer el archivo histórico: " + e.getCause().getMessage(), e.getCause());
+        }
+
+        log.debug("Archivo histórico {} a {}: {} lotes leídos en {} ms",
+                start, end, batches.size(), System.currentTimeMillis() - startedAt);
+        return total.toResult();
+    }
+
+    private SalesAccumulator scanInvoices(Path file, LocalDateTime start, LocalDateTime end) {
+        SalesAccumulator acc = new SalesAccumulator();
+        if (!Files.exists(file)) {
+            log.warn("Archivo histórico no encontrado: {}", file);
+            return acc;
+        }
+        ColumnarArchiveReader.scan(file, start, end, INVOICE_SCAN_COLUMNS, block -> {
+            long[] times = block.longs("created_at");
+            String[] status = block.strings("status");
+            String[] paymentMethod = block.strings("payment_method");
+            long[] customerId = block.longs("customer_id");
+            String[] customerName = block.strings("customer_name");
+            long[] total = block.longs("total");
+
+            for (int r = 0; r < block.rowCount(); r++) {
+                if (!block.inRange(r) || !COMPLETADA.equals(status[r])) {
+                    continue;
+                }
+                long cents = ArchiveBlock.isNull(total[r]) ? 0 : total[r];
+                acc.salesCents += cents;
+                acc.salesCount++;
+                acc.add(acc.daily, toDate(times[r]), null, null, cents, 1);
+                acc.add(acc.paymentMethods, paymentMethod[r] != null ? paymentMethod[r] : "DESCONOCIDO", null, null, cents, 1);
+                if (!ArchiveBlock.isNull(customerId[r])) {
+                    acc.add(acc.customers, customerId[r], customerName[r], null, cents, 1);
+                }
+            }
+        });
+        return acc;
+    }
+
+    private SalesAccumulator scanDetails(Path file, LocalDateTime start, LocalDateTime end) {
+        SalesAccumulator acc = new SalesAccumulator();
+        if (!Files.exists(file)) {
+            log.warn("Archivo histórico no encontrado: {}", file);
+            return acc;
+        }
+        ColumnarArchiveReader.scan(file, start, end, DETAIL_SCAN_COLUMNS, block -> {
+            String[] status = block.strings("status");
+            long[] productId = block.longs("product_id");
+            String[] productCode = block.strings("product_code");
+            String[] productName = block.strings("product_name");
+            long[] categoryId = block.longs("category_id");
+            String[] categoryName = block.strings("category_name");
+            long[] quantity = block.longs("quantity");
+            long[] costPrice = block.longs("cost_price");
+            long[] subtotal = block.longs("subtotal");
+
+            for (int r = 0; r < block.rowCount(); r++) {
+                if (!block.inRange(r) || !COMPLETADA.equals(status[r])) {
+                    continue;
+                }
+                BigDecimal qty = ArchiveBlock.toDecimal(quantity[r]);
+                long lineCents = ArchiveBlock.isNull(subtotal[r]) ? 0 : subtotal[r];
+                acc.cost = acc.cost.add(qty.multiply(ArchiveBlock.toDecimal(costPrice[r])));
+                if (!ArchiveBlock.isNull(productId[r])) {
+                    Group product = acc.add(acc.products, productId[r], productCode[r], productName[r], lineCents, 0);
+                    product.quantity = product.quantity.add(qty);
+                    if (!ArchiveBlock.isNull(categoryId[r])) {
+                        acc.add(acc.categories, categoryId[r], categoryName[r], null, lineCents, 1);
+                    }
+                }
+            }
+        });
+        return acc;
+    }
+
+    private static LocalDate toDate(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC).toLocalDate();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Totales archivados. Las listas usan la forma de las consultas de SalesRollupService e
+     * InvoiceRepository para sumarse con ellas:
+     * daily [fecha, total, cantidad], paymentMethods [método, total, cantidad],
+     * customers [id, nombre, compras, total], products [id, código, nombre, cantidad, ingreso],
+     * categories [id, nombre, total, ítems].
+     */
+    public record ArchivedSales(BigDecimal totalSales, long salesCount, BigDecimal totalCost,
+                                List<Object[]> daily, List<Object[]> paymentMethods, List<Object[]> customers,
+                                List<Object[]> products, List<Object[]> categories) {
+
+        public static final ArchivedSales EMPTY = new ArchivedSales(BigDecimal.ZERO, 0, BigDecimal.ZERO,
+                List.of(), List.of(), List.of(), List.of(), List.of());
+
+        public boolean isEmpty() {
+            return this == EMPTY;
+        }
+    }
+
+    private static final class Group {
+        String label;
+        String secondLabel;
+        long cents;
+        long count;
+        BigDecimal quantity = BigDecimal.ZERO;
+    }
+
+    private static final class SalesAccumulator {
+        long salesCents;
+        long salesCount;
+        BigDecimal cost = BigDecimal.ZERO;
+        final Map<Object, Group> daily = new HashMap<>();
+        final Map<Object, Group> paymentMethods = new HashMap<>();
+        final Map<Object, Group> customers = new HashMap<>();
+        final Map<Object, Group> products = new HashMap<>();
+        final Map<Object, Group> categories = new HashMap<>();
+
+        Group add(Map<Object, Group> groups, Object key, String label, String secondLabel, long cents, long count) {
+            Group group = groups.computeIfAbsent(key, k -> new Group());
+            if (group.label == null) {
+                group.label = label;
+                group.secondLabel = secondLabel;
+            }
+            group.cents += cents;
+            group.count += count;
+            return group;
+        }
+
+        void merge(SalesAccumulator other) {
+            salesCents += other.salesCents;
+            salesCount += other.salesCount;
+            cost = cost.add(other.cost);
+            mergeGroups(daily, other.daily);
+            mergeGroups(paymentMethods, other.paymentMethods);
+            mergeGroups(customers, other.customers);
+            mergeGroups(products, other.products);
+            mergeGroups(categories, other.categories);
+        }
+
+        private void mergeGroups(Map<Object, Group> target, Map<Object, Group> source) {
+            source.forEach((key, group) -> {
+                Group merged = add(target, key, group.label, group.secondLabel, group.cents, group.count);
+                merged.quantity = merged.quantity.add(group.quantity);
+            });
+        }
+
+        ArchivedSales toResult() {
+            List<Object[]> dailyRows = new ArrayList<>();
+            daily.forEach((date, g) -> dailyRows.add(new Object[]{date, money(g.cents), g.count}));
+            List<Object[]> paymentRows = new ArrayList<>();
+            paymentMethods.forEach((method, g) -> paymentRows.add(new Object[]{method, money(g.cents), g.count}));
+            List<Object[]> customerRows = new ArrayList<>();
+            customers.forEach((id, g) -> customerRows.add(new Object[]{id, g.label, g.count, money(g.cents)}));
+            List<Object[]> productRows = new ArrayList<>();
+            products.forEach((id, g) -> productRows.add(new Object[]{id, g.label, g.secondLabel, g.quantity, money(g.cents)}));
+            List<Object[]> categoryRows = new ArrayList<>();
+            categories.forEach((id, g) -> categoryRows.add(new Object[]{id, g.label, money(g.cents), g.count}));
+
+            return new ArchivedSales(money(salesCents), salesCount, cost.setScale(2, RoundingMode.HALF_UP),
+                    dailyRows, paymentRows, customerRows, productRows, categoryRows);
+        }
+
+        private static BigDecimal money(long cents) {
+            return BigDecimal.valueOf(cents, 2);
+        }
+    }
+}
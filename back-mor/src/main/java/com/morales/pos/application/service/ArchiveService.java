@@ -0,0 +1,343 @@
+package com.morales.pos.application.service;
+
+import com.morales.pos.domain.entity.ArchiveBatch;
+import com.morales.pos.domain.repository.ArchiveBatchRepository;
+import com.morales.pos.infrastructure.archive.ArchiveColumn;
+import com.morales.pos.infrastructure.archive.ColumnarArchiveWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static com.morales.pos.infrastructure.archive.ArchiveColumn.decimal;
+import static com.morales.pos.infrastructure.archive.ArchiveColumn.longValue;
+import static com.morales.pos.infrastructure.archive.ArchiveColumn.string;
+import static com.morales.pos.infrastructure.archive.ArchiveColumn.timestamp;
+
+/**
+ * Mueve los meses cerrados de la base a archivos columnares comprimidos.
+ *
+ * Cada ejecución toma el mes más antiguo anterior a app.archive.hot-months con facturas
+ * COMPLETADA/ANULADA o movimientos de inventario, escribe facturas, detalles y movimientos en
+ * {directorio}/{yyyy-MM}/{lote}/ y, en una sola transacción, borra esas filas y registra el lote
+ * en archive_batches. Los reportes leen los archivos con {@link ArchiveQueryService}.
+ */
+@Service
+@Slf4j
+public class ArchiveService {
+
+    static final String INVOICES_FILE = "invoices.mca";
+    static final String DETAILS_FILE = "details.mca";
+    static final String MOVEMENTS_FILE = "movements.mca";
+
+    // La primera columna de cada archivo es la fecha usada para descartar bloques
+    static final List<ArchiveColumn> INVOICE_COLUMNS = List.of(
+            timestamp("created_at"), longValue("id"), string("invoice_number"), string("status"),
+            string("payment_method"), longValue("customer_id"), string("customer_name"), longValue("user_id"),
+            decimal("subtotal"), decimal("tax_amount"), decimal("discount_amount"),
+            decimal("service_charge_amount"), decimal("delivery_charge_amount"), decimal("total"));
+
+    static final List<ArchiveColumn> DETAIL_COLUMNS = List.of(
+            timestamp("invoice_created_at"), longValue("invoice_id"), string("status"), longValue("id"),
+            longValue("product_id"), string("product_code"), string("product_name"),
+            longValue("category_id"), string("category_name"),
+            decimal("quantity"), decimal("unit_price"), decimal("cost_price"), decimal("subtotal"));
+
+    static final List<ArchiveColumn> MOVEMENT_COLUMNS = List.of(
+            timestamp("created_at"), longValue("id"), longValue("product_id"), string("movement_type"),
+            decimal("quantity"), decimal("previous_quantity"), decimal("new_quantity"),
+            string("reference_type"), longValue("reference_id"), string("reason"), longValue("user_id"));
+
+    private static final int BLOCK_SIZE = 8192;
+    private static final int FETCH_SIZE = 1000;
+    private static final int DELETE_CHUNK_SIZE = 1000;
+    private static final DateTimeFormatter MONTH_DIR = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final String ARCHIVABLE = "i.status IN ('COMPLETADA', 'ANULADA') " +
+            "AND i.created_at >= ? AND i.created_at < ? AND COALESCE(i.updated_at, i.created_at) <= ?";
+
+    private static final String INVOICES_SQL =
+            "SELECT i.id, i.invoice_number, i.created_at, i.status, i.payment_method, i.customer_id, " +
+            "       c.full_name AS customer_name, i.user_id, i.subtotal, i.tax_amount, i.discount_amount, " +
+            "       i.service_charge_amount, i.delivery_charge_amount, i.total " +
+            "FROM invoices i LEFT JOIN customers c ON c.id = i.customer_id " +
+            "WHERE " + ARCHIVABLE + " ORDER BY i.created_at, i.id";
+
+    private static final String DETAILS_SQL =
+            "SELECT d.id, d.invoice_id, i.created_at AS invoice_created_at, i.status, d.product_id, " +
+            "       p.code AS product_code, COALESCE(d.product_name, p.name) AS product_name, " +
+            "       p.category_id, cat.name AS category_name, d.quantity, d.unit_price, d.cost_price, d.subtotal " +
+            "FROM invoice_details d JOIN invoices i ON i.id = d.invoice_id " +
+            "LEFT JOIN products p ON p.id = d.product_id " +
+            "LEFT JOIN categories cat ON cat.id = p.category_id " +
+            "WHERE " + ARCHIVABLE + " ORDER BY i.created_at, i.id, d.id";
+
+    private static final String MOVEMENTS_SQL =
+            "SELECT id, product_id, movement_type, quantity, previous_quantity, new_quantity, " +
+            "       reference_type, reference_id, reason, user_id, created_at " +
+            "FROM inventory_movements WHERE created_at >= ? AND created_at < ? ORDER BY created_at, id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ArchiveBatchRepository archiveBatchRepository;
+    private final SalesRollupService salesRollupService;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate writeTransaction;
+    private final boolean enabled;
+    private final Path directory;
+    private final int hotMonths;
+
+    public ArchiveService(JdbcTemplate jdbcTemplate,
+                          ArchiveBatchRepository archiveBatchRepository,
+                          SalesRollupService salesRollupService,
+                          PlatformTransactionManager transactionManager,
+                          @Value("${app.archive.enabled:false}") boolean enabled,
+                          @Value("${app.archive.directory:./archive}") String directory,
+                          @Value("${app.archive.hot-months:3}") int hotMonths) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.archiveBatchRepository = archiveBatchRepository;
+        this.salesRollupService = salesRollupService;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        this.hotMonths = Math.max(1, hotMonths);
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    @Scheduled(cron = "0 30 3 * * ?") // Every day at 3:30 AM
+    public void archiveScheduled() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            archiveOldestPeriod();
+        } catch (Exception e) {
+            log.error("Error al archivar periodo cerrado: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Archiva el mes cerrado más antiguo que siga en la base. Devuelve vacío si no hay nada que archivar.
+     */
+    public synchronized Optional<ArchiveBatch> archiveOldestPeriod() {
+        LocalDate cutoff = LocalDate.now().withDayOfMonth(1).minusMonths(hotMonths);
+        Timestamp oldest = jdbcTemplate.queryForObject(
+                "SELECT MIN(m) FROM (" +
+                "  SELECT MIN(created_at) AS m FROM invoices WHERE status IN ('COMPLETADA', 'ANULADA') AND created_at < ? " +
+                "  UNION ALL SELECT MIN(created_at) FROM inventory_movements WHERE created_at < ?) x",
+                Timestamp.class, Timestamp.valueOf(cutoff.atStartOfDay()), Timestamp.valueOf(cutoff.atStartOfDay()));
+        if (oldest == null) {
+            return Optional.empty();
+        }
+
+        LocalDate periodStart = oldest.toLocalDateTime().toLocalDate().withDayOfMonth(1);
+        LocalDate periodEnd = periodStart.plusMonths(1);
+        return Optional.of(archivePeriod(periodStart, periodEnd));
+    }
+
+    private ArchiveBatch archivePeriod(LocalDate periodStart, LocalDate periodEnd) {
+        long startedAt = System.currentTimeMillis();
+        // Las facturas modificadas después de este instante quedan para la próxima ejecución
+        LocalDateTime snapshotAt = LocalDateTime.now();
+        String relativeDir = periodStart.format(MONTH_DIR) + "/" + startedAt;
+        Path tempDir = directory.resolve(".tmp-" + startedAt);
+        Path finalDir = directory.resolve(relativeDir);
+
+        List<Long> invoiceIds = new ArrayList<>();
+        List<Long> movementIds = new ArrayList<>();
+        long[] detailCount = {0};
+        try {
+            Files.createDirectories(tempDir);
+            Object[] range = {
+                    Timestamp.valueOf(periodStart.atStartOfDay()), Timestamp.valueOf(periodEnd.atStartOfDay()),
+                    Timestamp.valueOf(snapshotAt)};
+
+            writeFile(tempDir.resolve(INVOICES_FILE), INVOICE_COLUMNS, INVOICES_SQL, range, rs -> {
+                invoiceIds.add(rs.getLong("id"));
+                return new Object[]{
+                        toLocalDateTime(rs.getTimestamp("created_at")), rs.getLong("id"), rs.getString("invoice_number"),
+                        rs.getString("status"), rs.getString("payment_method"), rs.getObject("customer_id"),
+                        rs.getString("customer_name"), rs.getObject("user_id"),
+                        rs.getBigDecimal("subtotal"), rs.getBigDecimal("tax_amount"), rs.getBigDecimal("discount_amount"),
+                        rs.getBigDecimal("service_charge_amount"), rs.getBigDecimal("delivery_charge_amount"),
+                        rs.getBigDecimal("total")};
+            });
+            writeFile(tempDir.resolve(DETAILS_FILE), DETAIL_COLUMNS, DETAILS_SQL, range, rs -> {
+                detailCount[0]++;
+                return new Object[]{
+                        toLocalDateTime(rs.getTimestamp("invoice_created_at")), rs.getLong("invoice_id"),
+                        rs.getString("status"), rs.getLong("id"), rs.getObject("product_id"),
+                        rs.getString("product_code"), rs.getString("product_name"),
+                        rs.getObject("category_id"), rs.getString("category_name"),
+                        rs.getBigDecimal("quantity"), rs.getBigDecimal("unit_price"),
+                        rs.getBigDecimal("cost_price"), rs.getBigDecimal("subtotal")};
+            });
+            writeFile(tempDir.resolve(MOVEMENTS_FILE), MOVEMENT_COLUMNS, MOVEMENTS_SQL,
+                    new Object[]{range[0], range[1]}, rs -> {
+                movementIds.add(rs.getLong("id"));
+                return new Object[]{
+                        toLocalDateTime(rs.getTimestamp("created_at")), rs.getLong("id"), rs.getObject("product_id"),
+                        rs.getString("movement_type"), rs.getBigDecimal("quantity"),
+                        rs.getBigDecimal("previous_quantity"), rs.getBigDecimal("new_quantity"),
+                        rs.getString("reference_type"), rs.getObject("reference_id"),
+                        rs.getString("reason"), rs.getObject("user_id")};
+            });
+
+            Files.createDirectories(finalDir.getParent());
+            Files.move(tempDir, finalDir, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            deleteQuietly(tempDir);
+            throw new UncheckedIOException("No se pudieron escribir los archivos de " + relativeDir, e);
+        }
+
+        ArchiveBatch batch;
+        try {
+            batch = writeTransaction.execute(status -> {
+                purge(invoiceIds, movementIds, periodStart, periodEnd, snapshotAt);
+                return archiveBatchRepository.save(ArchiveBatch.builder()
+                        .periodStart(periodStart)
+                        .periodEnd(periodEnd)
+                        .directory(relativeDir)
+                        .invoiceCount((long) invoiceIds.size())
+                        .detailCount(detailCount[0])
+                        .movementCount((long) movementIds.size())
+                        .build());
+            });
+        } catch (RuntimeException e) {
+            // Sin el registro en archive_batches los archivos no se leen; se borran para no dejar basura
+            deleteQuietly(finalDir);
+            throw e;
+        }
+
+        log.info("Periodo {} archivado en {}: {} facturas, {} detalles, {} movimientos en {} ms",
+                periodStart.format(MONTH_DIR), relativeDir, invoiceIds.size(), detailCount[0],
+                movementIds.size(), System.currentTimeMillis() - startedAt);
+        return batch;
+    }
+
+    /**
+     * Borra de la base lo que ya quedó en archivos. Si alguna fila cambió desde la lectura,
+     * la transacción completa se revierte y el periodo se reintenta en la próxima ejecución.
+     */
+    private void purge(List<Long> invoiceIds, List<Long> movementIds,
+                       LocalDate periodStart, LocalDate periodEnd, LocalDateTime snapshotAt) {
+        Timestamp from = Timestamp.valueOf(periodStart.atStartOfDay());
+        Timestamp to = Timestamp.valueOf(periodEnd.atStartOfDay());
+
+        int deletedInvoices = 0;
+        for (List<Long> chunk : chunks(invoiceIds)) {
+            jdbcTemplate.update("UPDATE table_sessions SET invoice_id = NULL WHERE invoice_id = ANY(?)",
+                    ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", chunk.toArray())));
+            // Desde aquí el periodo lo responde el archivo; se descuenta de los acumulados de ventas
+            salesRollupService.subtractArchived(chunk);
+            // ON DELETE CASCADE se lleva detalles, pagos y pedidos de cocina
+            deletedInvoices += jdbcTemplate.update(
+                    "DELETE FROM invoices WHERE id = ANY(?) AND status IN ('COMPLETADA', 'ANULADA') " +
+                    "AND COALESCE(updated_at, created_at) <= ?",
+                    ps -> {
+                        ps.setArray(1, ps.getConnection().createArrayOf("bigint", chunk.toArray()));
+                        ps.setTimestamp(2, Timestamp.valueOf(snapshotAt));
+                    });
+        }
+        if (deletedInvoices != invoiceIds.size()) {
+            throw new IllegalStateException("Facturas modificadas durante el archivo (" + deletedInvoices +
+                    " de " + invoiceIds.size() + "), se reintentará");
+        }
+
+        int deletedMovements = 0;
+        for (List<Long> chunk : chunks(movementIds)) {
+            deletedMovements += jdbcTemplate.update(
+                    "DELETE FROM inventory_movements WHERE created_at >= ? AND created_at < ? AND id = ANY(?)",
+                    ps -> {
+                        ps.setTimestamp(1, from);
+                        ps.setTimestamp(2, to);
+                        ps.setArray(3, ps.getConnection().createArrayOf("bigint", chunk.toArray()));
+                    });
+        }
+        if (deletedMovements != movementIds.size()) {
+            throw new IllegalStateException("Movimientos modificados durante el archivo (" + deletedMovements +
+                    " de " + movementIds.size() + "), se reintentará");
+        }
+
+        // La partición del mes (V20) quedó vacía: se elimina en lugar de dejarla sin uso
+        String partition = "inventory_movements_" + periodStart.format(PARTITION_SUFFIX);
+        Boolean exists = jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, partition);
+        if (Boolean.TRUE.equals(exists)
+                && Boolean.FALSE.equals(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM " + partition + ")", Boolean.class))) {
+            jdbcTemplate.execute("DROP TABLE " + partition);
+        }
+    }
+
+    private void writeFile(Path file, List<ArchiveColumn> columns, String sql, Object[] args, RowMapper mapper) throws IOException {
+        try (ColumnarArchiveWriter writer = new ColumnarArchiveWriter(file, columns, BLOCK_SIZE)) {
+            readTransaction.executeWithoutResult(status -> {
+                // Un JdbcTemplate propio: el fetch size no debe afectar a otras consultas
+                JdbcTemplate cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+                cursorTemplate.setFetchSize(FETCH_SIZE);
+                cursorTemplate.query(sql, rs -> {
+                    try {
+                        writer.append(mapper.map(rs));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, args);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static List<List<Long>> chunks(List<Long> ids) {
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += DELETE_CHUNK_SIZE) {
+            chunks.add(ids.subList(i, Math.min(i + DELETE_CHUNK_SIZE, ids.size())));
+        }
+        return chunks;
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            log.warn("No se pudo limpiar {}: {}", path, e.getMessage());
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+
+    @FunctionalInterface
+    private interface RowMapper {
+        Object[] map(ResultSet rs) throws SQLException;
+    }
+}
@@ -0,0 +1,119 @@
+package com.morales.pos.application.service;
+
+import com.morales.pos.application.dto.response.ReportResponse.DailySales;
+import com.morales.pos.application.dto.response.ReportResponse.DashboardSummary;
+import com.morales.pos.application.dto.response.ReportResponse.SalesSummary;
+import com.morales.pos.application.dto.response.ReportResponse.TopProduct;
+import com.morales.pos.infrastructure.config.CacheConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Arma el tablero lanzando sus secciones en paralelo: ventas de hoy, del mes, top de
+ * productos y últimos 7 días son consultas independientes, así el tablero tarda lo que su
+ * sección más lenta y no la suma de todas. El valor de inventario sale de memoria y se toma
+ * en el hilo de la petición.
+ *
+ * Cada sección tiene hasta app.dashboard.section-timeout-ms desde el inicio del armado; la
+ * que no llega a tiempo o falla queda en null y su nombre va en unavailableSections, y el
+ * resto del tablero se devuelve igual. Las secciones corren en un pool acotado propio
+ * (app.dashboard.threads) para no competir con los hilos de las peticiones.
+ */
+@Service
+@Slf4j
+public class DashboardService {
+
+    private static final String TODAY_SALES = "todaySales";
+    private static final String MONTH_SALES = "monthSales";
+    private static final String TOP_PRODUCTS = "topProducts";
+    private static final String LAST_7_DAYS_SALES = "last7DaysSales";
+
+    private final ReportService reportService;
+    private final ExecutorService executor;
+    private final long sectionTimeoutMs;
+
+    public DashboardService(ReportService reportService,
+                            @Value("${app.dashboard.threads:8}") int threads,
+                            @Value("${app.dashboard.section-timeout-ms:5000}") long sectionTimeoutMs) {
+        this.reportService = reportService;
+        this.sectionTimeoutMs = sectionTimeoutMs;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "dashboard-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Tablero del día. Se guarda en caché solo si llegaron todas las secciones; lo invalidan
+     * las ventas, anulaciones y cambios de stock (ver ReportCacheService).
+     */
+    @Cacheable(cacheNames = CacheConfig.DASHBOARD, key = "T(java.time.LocalDate).now()",
+               unless = "!#result.unavailableSections.isEmpty()")
+    public DashboardSummary getDashboardSummary() {
+        long startedAt = System.currentTimeMillis();
+        LocalDate today = LocalDate.now();
+        LocalDateTime monthStart = today.withDayOfMonth(1).atStartOfDay();
+        LocalDateTime endOfDay = today.atTime(23, 59, 59);
+
+        // Rangos explícitos (fin = cierre del día) para que cada sección use el caché de reportes
+        CompletableFuture<SalesSummary> todaySales = submit(() -> reportService.getSalesSummary(today.atStartOfDay(), endOfDay));
+        CompletableFuture<SalesSummary> monthSales = submit(() -> reportService.getSalesSummary(monthStart, endOfDay));
+        CompletableFuture<List<TopProduct>> topProducts = submit(() -> reportService.getTopProducts(monthStart, endOfDay, 5));
+        CompletableFuture<List<DailySales>> last7Days = submit(() -> reportService.getDailySales(today.minusDays(6), today));
+
+        DashboardSummary.DashboardSummaryBuilder builder = DashboardSummary.builder()
+                .inventoryValue(reportService.getInventoryValue());
+        List<String> unavailable = new ArrayList<>();
+        long deadline = startedAt + sectionTimeoutMs;
+        builder.todaySales(await(TODAY_SALES, todaySales, deadline, unavailable));
+        builder.monthSales(await(MONTH_SALES, monthSales, deadline, unavailable));
+        builder.topProducts(await(TOP_PRODUCTS, topProducts, deadline, unavailable));
+        builder.last7DaysSales(await(LAST_7_DAYS_SALES, last7Days, deadline, unavailable));
+
+        log.debug("Tablero armado en {} ms ({} secciones sin datos)", System.currentTimeMillis() - startedAt, unavailable.size());
+        return builder.unavailableSections(unavailable).build();
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> section) {
+        return CompletableFuture.supplyAsync(section, executor);
+    }
+
+    private <T> T await(String section, CompletableFuture<T> future, long deadline, List<String> unavailable) {
+        try {
+            return future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // La consulta sigue en su hilo; solo se deja de esperar por ella
+            future.cancel(false);
+            log.warn("Tablero: la sección {} no respondió en {} ms", section, sectionTimeoutMs);
+        } catch (ExecutionException e) {
+            log.warn("Tablero: error en la sección {}: {}", section, e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        unavailable.add(section);
+        return null;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,158 @@
+package com.morales.pos.application.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.morales.pos.domain.entity.IdempotencyRecord;
+import com.morales.pos.domain.repository.IdempotencyRecordRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Ejecuta operaciones de cobro una sola vez por Idempotency-Key.
+ *
+ * La primera ejecución guarda la respuesta en idempotency_keys dentro de la misma
+ * transacción que la venta, así que o quedan ambas o ninguna. Los reintentos se
+ * responden desde una caché LRU en memoria y, si no está ahí, desde la tabla.
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    private static final int MAX_KEY_LENGTH = 100;
+
+    private final IdempotencyRecordRepository recordRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final long retentionHours;
+    private final Map<String, Entry> cache;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    public IdempotencyService(IdempotencyRecordRepository recordRepository,
+                              ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${app.idempotency.cache-size:1000}") int cacheSize,
+                              @Value("${app.idempotency.retention-hours:48}") long retentionHours) {
+        this.recordRepository = recordRepository;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.retentionHours = retentionHours;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Ejecuta la acción si la clave no se ha visto; si ya se completó, devuelve la respuesta guardada.
+     * Sin clave la acción se ejecuta normalmente.
+     *
+     * @param scope operación protegida (ej: "SALE", "TABLE_PAY:12"); una clave no puede reutilizarse en otra
+     */
+    public <T> T execute(String scope, String idempotencyKey, Class<T> responseType, Supplier<T> action) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return action.get();
+        }
+        String key = idempotencyKey.trim();
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("La Idempotency-Key no puede exceder " + MAX_KEY_LENGTH + " caracteres");
+        }
+
+        Entry cached = cache.get(key);
+        if (cached != null) {
+            return replay(key, scope, cached, responseType);
+        }
+
+        if (!inFlight.add(key)) {
+            throw new IllegalStateException("La solicitud con esta Idempotency-Key aún está en proceso");
+        }
+        try {
+            Optional<IdempotencyRecord> stored = recordRepository.findByIdempotencyKey(key);
+            if (stored.isPresent()) {
+                return replay(key, scope, remember(stored.get()), responseType);
+            }
+
+            T response;
+            try {
+                response = transactionTemplate.execute(status -> {
+                    T result = action.get();
+                    recordRepository.save(IdempotencyRecord.builder()
+                            .idempotencyKey(key)
+                            .scope(scope)
+                            .responseBody(serialize(result))
+                            .build());
+                    return result;
+                });
+            } catch (DataIntegrityViolationException e) {
+                // Otro nodo completó la misma clave primero: su venta es la válida
+                IdempotencyRecord winner = recordRepository.findByIdempotencyKey(key).orElseThrow(() -> e);
+                return replay(key, scope, remember(winner), responseType);
+            }
+
+            cache.put(key, new Entry(scope, response, null));
+            return response;
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+
+    private <T> T replay(String key, String scope, Entry entry, Class<T> responseType) {
+        if (!entry.scope.equals(scope)) {
+            throw new IllegalArgumentException("La Idempotency-Key ya fue usada en otra operación");
+        }
+        log.info("Reintento con Idempotency-Key {} ({}): se devuelve la respuesta original", key, scope);
+        if (responseType.isInstance(entry.response)) {
+            return responseType.cast(entry.response);
+        }
+        try {
+            T response = objectMapper.readValue(entry.json, responseType);
+            cache.put(key, new Entry(entry.scope, response, null));
+            return response;
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo leer la respuesta guardada para la Idempotency-Key", e);
+        }
+    }
+
+    private Entry remember(IdempotencyRecord record) {
+        Entry entry = new Entry(record.getScope(), null, record.getResponseBody());
+        cache.put(record.getIdempotencyKey(), entry);
+        return entry;
+    }
+
+    private String serialize(Object response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar la respuesta idempotente", e);
+        }
+    }
+
+    // Limpieza de claves vencidas (los reintentos llegan en segundos, no en días)
+    @Scheduled(cron = "0 30 3 * * ?") // Every day at 3:30 AM
+    @Transactional
+    public void cleanupExpiredKeys() {
+        int deleted = recordRepository.deleteOlderThan(LocalDateTime.now().minusHours(retentionHours));
+        if (deleted > 0) {
+            log.info("Limpieza de Idempotency-Keys: {} eliminadas", deleted);
+        }
+    }
+
+    private record Entry(String scope, Object response, String json) {
+    }
+}
@@ -0,0 +1,329 @@
+package com.morales.pos.application.service;
+
+import com.morales.pos.application.dto.response.InventoryLotResponse;
+import com.morales.pos.domain.entity.InventoryLot;
+import com.morales.pos.infrastructure.persistence.TransactionHooks;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lotes de inventario y su consumo FEFO (primero el que vence antes) o FIFO (primero el que
+ * llegó antes), según app.inventory-lots.policy.
+ *
+ * Los lotes abiertos se guardan en memoria en una cola de prioridad por producto, así una
+ * venta elige los lotes sin consultar la base: los productos sin lotes no cuestan más que
+ * una búsqueda en un mapa. Lo consumido en una transacción se escribe antes del commit con
+ * un solo UPDATE de lotes y un lote JDBC de consumos; si la transacción se revierte, las
+ * cantidades vuelven a la cola. Las salidas que superan lo que hay en lotes descuentan el
+ * resto del stock sin lote; las entradas sin lote (devoluciones, ajustes) no abren lotes.
+ *
+ * Cada hora se revisan en memoria los lotes que vencen en las próximas
+ * app.inventory-lots.expiry-warning-hours y se crea una notificación por lote.
+ * La cola es local a este nodo, como las reservas de mesas y el libro de stock.
+ */
+@Service
+@Slf4j
+public class InventoryLotService {
+
+    public enum Policy { FEFO, FIFO }
+
+    private static final String LOAD_SQL =
+            "SELECT id, product_id, lot_code, received_at, expires_at, initial_quantity, remaining_quantity, expiry_notified_at " +
+            "FROM inventory_lots WHERE remaining_quantity > 0";
+
+    private static final String CONSUME_SQL =
+            "UPDATE inventory_lots l SET remaining_quantity = GREATEST(l.remaining_quantity - d.quantity, 0), updated_at = ? " +
+            "FROM unnest(?::bigint[], ?::numeric[]) AS d(lot_id, quantity) WHERE l.id = d.lot_id";
+
+    private static final String CONSUMPTION_SQL =
+            "INSERT INTO inventory_lot_consumptions (lot_id, quantity, reason, created_at) VALUES (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NotificationService notificationService;
+    private final TransactionTemplate writeTransaction;
+    private final Comparator<Lot> order;
+    private final long warningHours;
+
+    // Producto → lotes abiertos en orden de consumo; cada cola se modifica bajo su propio candado
+    private final Map<Long, PriorityQueue<Lot>> open = new ConcurrentHashMap<>();
+
+    public InventoryLotService(JdbcTemplate jdbcTemplate,
+                               NotificationService notificationService,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${app.inventory-lots.policy:FEFO}") Policy policy,
+                               @Value("${app.inventory-lots.expiry-warning-hours:48}") long warningHours) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.notificationService = notificationService;
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        Comparator<Lot> fifo = Comparator.comparing((Lot lot) -> lot.receivedAt).thenComparing(lot -> lot.id);
+        this.order = policy == Policy.FIFO
+                ? fifo
+                : Comparator.comparing((Lot lot) -> lot.expiresAt, Comparator.nullsLast(Comparator.naturalOrder())).thenComparing(fifo);
+        this.warningHours = warningHours;
+    }
+
+    @PostConstruct
+    public void load() {
+        int[] count = {0};
+        jdbcTemplate.query(LOAD_SQL, rs -> {
+            Timestamp expiresAt = rs.getTimestamp(5);
+            Lot lot = new Lot(rs.getLong(1), rs.getLong(2), rs.getString(3), rs.getTimestamp(4).toLocalDateTime(),
+                    expiresAt != null ? expiresAt.toLocalDateTime() : null, rs.getBigDecimal(6), rs.getBigDecimal(7));
+            lot.notified = rs.getTimestamp(8) != null;
+            queue(lot.productId).add(lot);
+            count[0]++;
+        });
+        log.info("Lotes de inventario: {} lotes abiertos en {} productos", count[0], open.size());
+    }
+
+    /**
+     * Agrega a la cola un lote recién guardado, al confirmar la transacción.
+     */
+    public void register(InventoryLot lot) {
+        Lot entry = new Lot(lot.getId(), lot.getProduct().getId(), lot.getLotCode(), lot.getReceivedAt(),
+                lot.getExpiresAt(), lot.getInitialQuantity(), lot.getRemainingQuantity());
+        TransactionHooks.afterCommit(() -> {
+            PriorityQueue<Lot> lots = queue(entry.productId);
+            synchronized (lots) {
+                lots.add(entry);
+            }
+        });
+    }
+
+    /**
+     * Descuenta una salida de los lotes abiertos del producto en el orden de la política. Debe
+     * llamarse dentro de la transacción que descuenta el stock (con la fila de inventario ya
+     * bloqueada); lo consumido se escribe antes del commit.
+     */
+    public void consume(Long productId, BigDecimal quantity, String reason) {
+        PriorityQueue<Lot> lots = open.get(productId);
+        if (lots == null || quantity.signum() <= 0) {
+            return;
+        }
+        List<Consumption> taken = new ArrayList<>();
+        synchronized (lots) {
+            BigDecimal left = quantity;
+            while (left.signum() > 0 && !lots.isEmpty()) {
+                Lot lot = lots.peek();
+                BigDecimal used = lot.remaining.min(left);
+                lot.remaining = lot.remaining.subtract(used);
+                left = left.subtract(used);
+                if (lot.remaining.signum() == 0) {
+                    lots.poll();
+                }
+                taken.add(new Consumption(lot, used, reason));
+            }
+        }
+        if (!taken.isEmpty()) {
+            pendingForCurrentTransaction().addAll(taken);
+        }
+    }
+
+    /**
+     * Lotes abiertos que vencen antes de now + hours (los vencidos incluidos), por vencimiento.
+     */
+    public List<InventoryLotResponse> findExpiring(long hours) {
+        LocalDateTime limit = LocalDateTime.now().plusHours(hours);
+        List<Lot> expiring = new ArrayList<>();
+        for (PriorityQueue<Lot> lots : open.values()) {
+            synchronized (lots) {
+                for (Lot lot : lots) {
+                    if (lot.expiresAt != null && !lot.expiresAt.isAfter(limit)) {
+                        expiring.add(lot);
+                    }
+                }
+            }
+        }
+        expiring.sort(Comparator.comparing((Lot lot) -> lot.expiresAt).thenComparing(lot -> lot.id));
+        Map<Long, String> names = productNames(expiring);
+        LocalDateTime now = LocalDateTime.now();
+        return expiring.stream().map(lot -> toResponse(lot, names.get(lot.productId), now)).toList();
+    }
+
+    /**
+     * Lotes abiertos de un producto en el orden en que se van a consumir.
+     */
+    public List<InventoryLotResponse> findOpen(Long productId) {
+        PriorityQueue<Lot> lots = open.get(productId);
+        if (lots == null) {
+            return List.of();
+        }
+        List<Lot> ordered;
+        synchronized (lots) {
+            ordered = new ArrayList<>(lots);
+        }
+        ordered.sort(order);
+        LocalDateTime now = LocalDateTime.now();
+        return ordered.stream().map(lot -> toResponse(lot, null, now)).toList();
+    }
+
+    public static InventoryLotResponse toResponse(InventoryLot lot) {
+        return InventoryLotResponse.builder()
+                .id(lot.getId())
+                .productId(lot.getProduct().getId())
+                .lotCode(lot.getLotCode())
+                .receivedAt(lot.getReceivedAt())
+                .expiresAt(lot.getExpiresAt())
+                .initialQuantity(lot.getInitialQuantity())
+                .remainingQuantity(lot.getRemainingQuantity())
+                .expired(lot.getExpiresAt() != null && lot.getExpiresAt().isBefore(LocalDateTime.now()))
+                .build();
+    }
+
+    @Scheduled(fixedRate = 3600000) // Every hour
+    public void flagExpiring() {
+        LocalDateTime limit = LocalDateTime.now().plusHours(warningHours);
+        List<Lot> flagged = new ArrayList<>();
+        for (PriorityQueue<Lot> lots : open.values()) {
+            synchronized (lots) {
+                for (Lot lot : lots) {
+                    if (!lot.notified && lot.expiresAt != null && !lot.expiresAt.isAfter(limit)) {
+                        flagged.add(lot);
+                    }
+                }
+            }
+        }
+        if (flagged.isEmpty()) {
+            return;
+        }
+
+        Map<Long, String> names = productNames(flagged);
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            writeTransaction.executeWithoutResult(status -> {
+                notificationService.createLotExpiryAlerts(flagged.stream()
+                        .map(lot -> toResponse(lot, names.get(lot.productId), now))
+                        .toList());
+                Object[] ids = flagged.stream().map(lot -> lot.id).toArray();
+                jdbcTemplate.update("UPDATE inventory_lots SET expiry_notified_at = ? WHERE id = ANY(?)", ps -> {
+                    ps.setTimestamp(1, Timestamp.valueOf(now));
+                    ps.setArray(2, ps.getConnection().createArrayOf("bigint", ids));
+                });
+            });
+        } catch (Exception e) {
+            log.error("Lotes de inventario: no se pudieron marcar {} lotes por vencer: {}", flagged.size(), e.getMessage());
+            return;
+        }
+        flagged.forEach(lot -> lot.notified = true);
+        log.info("Lotes de inventario: {} lotes vencen en las próximas {} horas", flagged.size(), warningHours);
+    }
+
+    private PriorityQueue<Lot> queue(Long productId) {
+        return open.computeIfAbsent(productId, id -> new PriorityQueue<>(order));
+    }
+
+    private InventoryLotResponse toResponse(Lot lot, String productName, LocalDateTime now) {
+        return InventoryLotResponse.builder()
+                .id(lot.id)
+                .productId(lot.productId)
+                .productName(productName)
+                .lotCode(lot.lotCode)
+                .receivedAt(lot.receivedAt)
+                .expiresAt(lot.expiresAt)
+                .initialQuantity(lot.initialQuantity)
+                .remainingQuantity(lot.remaining)
+                .expired(lot.expiresAt != null && lot.expiresAt.isBefore(now))
+                .build();
+    }
+
+    private Map<Long, String> productNames(List<Lot> lots) {
+        Map<Long, String> names = new HashMap<>();
+        if (lots.isEmpty()) {
+            return names;
+        }
+        Object[] ids = lots.stream().map(lot -> lot.productId).distinct().toArray();
+        jdbcTemplate.query("SELECT id, name FROM products WHERE id = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids)),
+                rs -> {
+                    names.put(rs.getLong(1), rs.getString(2));
+                });
+        return names;
+    }
+
+    private List<Consumption> pendingForCurrentTransaction() {
+        return TransactionHooks.perTransaction(this, ArrayList::new, new TransactionHooks.Callbacks<List<Consumption>>() {
+            @Override
+            public void beforeCommit(List<Consumption> consumptions) {
+                write(consumptions);
+            }
+
+            @Override
+            public void afterCompletion(List<Consumption> consumptions, boolean committed) {
+                if (!committed) {
+                    consumptions.forEach(InventoryLotService.this::undo);
+                }
+            }
+        });
+    }
+
+    private void write(List<Consumption> consumptions) {
+        Map<Long, BigDecimal> byLot = new HashMap<>();
+        consumptions.forEach(c -> byLot.merge(c.lot.id, c.quantity, BigDecimal::add));
+        jdbcTemplate.update(CONSUME_SQL, ps -> {
+            ps.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now()));
+            ps.setArray(2, ps.getConnection().createArrayOf("bigint", byLot.keySet().toArray()));
+            ps.setArray(3, ps.getConnection().createArrayOf("numeric", byLot.values().toArray()));
+        });
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(CONSUMPTION_SQL, consumptions, 500, (ps, c) -> {
+            ps.setLong(1, c.lot.id);
+            ps.setBigDecimal(2, c.quantity);
+            ps.setString(3, c.reason);
+            ps.setTimestamp(4, now);
+        });
+    }
+
+    private void undo(Consumption consumption) {
+        Lot lot = consumption.lot;
+        PriorityQueue<Lot> lots = queue(lot.productId);
+        synchronized (lots) {
+            boolean wasClosed = lot.remaining.signum() == 0;
+            lot.remaining = lot.remaining.add(consumption.quantity);
+            if (wasClosed && !lots.contains(lot)) {
+                lots.add(lot);
+            }
+        }
+    }
+
+    private record Consumption(Lot lot, BigDecimal quantity, String reason) {
+    }
+
+    private static final class Lot {
+        final Long id;
+        final Long productId;
+        final String lotCode;
+        final LocalDateTime receivedAt;
+        final LocalDateTime expiresAt;
+        final BigDecimal initialQuantity;
+        BigDecimal remaining;
+        boolean notified;
+
+        Lot(Long id, Long productId, String lotCode, LocalDateTime receivedAt, LocalDateTime expiresAt,
+            BigDecimal initialQuantity, BigDecimal remaining) {
+            this.id = id;
+            this.productId = productId;
+            this.lotCode = lotCode;
+            this.receivedAt = receivedAt;
+            this.expiresAt = expiresAt;
+            this.initialQuantity = initialQuantity;
+            this.remaining = remaining;
+        }
+    }
+}
@@ -1,12 +1,20 @@
 package com.morales.pos.application.service;
 
+import com.morales.pos.application.dto.request.ReceiveLotRequest;
+import com.morales.pos.application.dto.response.InventoryLotResponse;
 import com.morales.pos.application.dto.response.InventoryResponse;
+import com.morales.pos.application.service.StockMutationService.CostEntry;
+import com.morales.pos.application.service.StockMutationService.StockChange;
+import com.morales.pos.application.service.StockMutationService.StockLimits;
 import com.morales.pos.domain.entity.Inventory;
+import com.morales.pos.domain.entity.InventoryLot;
 import com.morales.pos.domain.entity.InventoryMovement;
 import com.morales.pos.domain.entity.User;
 import com.morales.pos.domain.enums.MovementType;
+import com.morales.pos.domain.repository.InventoryLotRepository;
 import com.morales.pos.domain.repository.InventoryMovementRepository;
 import com.morales.pos.domain.repository.InventoryRepository;
+import com.morales.pos.domain.repository.ProductRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -14,7 +22,9 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -23,12 +33,19 @@ public class InventoryService {
 
     private final InventoryRepository inventoryRepository;
     private final InventoryMovementRepository movementRepository;
-    private final NotificationService notificationService;
+    private final ProductRepository productRepository;
+    private final StockMutationService stockMutationService;
+    private final StockLedger stockLedger;
+    private final StockAlertEngine stockAlertEngine;
+    private final InventoryValuationService inventoryValuationService;
+    private final StockReservationService stockReservationService;
+    private final InventoryLotService inventoryLotService;
+    private final InventoryLotRepository inventoryLotRepository;
 
     @Transactional(readOnly = true)
     public List<InventoryResponse> findAll() {
         return inventoryRepository.findAllWithProduct().stream()
-                .map(InventoryResponse::fromEntity)
+                .map(this::toResponse)
                 .toList();
     }
 
@@ -36,7 +53,7 @@ public class InventoryService {
     public InventoryResponse findByProductId(Long productId) {
         Inventory inventory = inventoryRepository.findByProductIdWithProduct(productId)
                 .orElseThrow(() -> new RuntimeException("Inventario no encontrado para producto ID: " + productId));
-        return InventoryResponse.fromEntity(inventory);
+        return toResponse(inventory);
     }
 
     @Transactional(readOnly = true)
@@ -48,79 +65,235 @@ public class InventoryService {
     @Transactional(readOnly = true)
     public List<InventoryResponse> findLowStock() {
         return inventoryRepository.findLowStockProducts().stream()
-                .map(InventoryResponse::fromEntity)
+                .map(this::toResponse)
                 .toList();
     }
 
     @Transactional(readOnly = true)
     public List<InventoryResponse> findOutOfStock() {
         return inventoryRepository.findOutOfStockProducts().stream()
-                .map(InventoryResponse::fromEntity)
+                .map(this::toResponse)
                 .toList();
     }
 
     @Transactional
     public InventoryResponse addStock(Long productId, BigDecimal quantity, String reason, User user) {
-        return adjustStock(productId, quantity, MovementType.ENTRADA, reason, user);
+        return adjustStock(productId, quantity, MovementType.ENTRADA, null, reason, user);
+    }
+
+    /**
+     * Entrada con costo unitario: además de sumar stock recalcula el costo promedio ponderado.
+     */
+    @Transactional
+    public InventoryResponse addStock(Long productId, BigDecimal quantity, BigDecimal unitCost, String reason, User user) {
+        return adjustStock(productId, quantity, MovementType.ENTRADA, unitCost, reason, user);
     }
 
     @Transactional
     public InventoryResponse removeStock(Long productId, BigDecimal quantity, String reason, User user) {
-        Inventory inventory = findEntityByProductId(productId);
-        if (inventory.getQuantity().compareTo(quantity) < 0) {
-            throw new RuntimeException("Stock insuficiente. Disponible: " + inventory.getQuantity());
-        }
         return adjustStock(productId, quantity.negate(), MovementType.SALIDA, reason, user);
     }
 
+    /**
+     * Aplica un cambio de stock con un UPDATE condicional (ver {@link StockMutationService}),
+     * o en memoria si el libro de stock está activo ({@link StockLedger}).
+     * Una cantidad negativa que deje el stock bajo cero se rechaza con InsufficientStockException.
+     */
     @Transactional
     public InventoryResponse adjustStock(Long productId, BigDecimal quantity, MovementType type, String reason, User user) {
-        Inventory inventory = findEntityByProductId(productId);
-        BigDecimal previousQuantity = inventory.getQuantity();
-        BigDecimal newQuantity = previousQuantity.add(quantity);
-        
-        if (newQuantity.compareTo(BigDecimal.ZERO) < 0) {
-            throw new RuntimeException("El stock no puede ser negativo");
+        return adjustStock(productId, quantity, type, null, reason, user);
+    }
+
+    /**
+     * Igual que {@link #adjustStock(Long, BigDecimal, MovementType, String, User)}; una ENTRADA
+     * con unitCost actualiza además el costo promedio del producto
+     * (ver {@link StockMutationService#updateAverageCosts}).
+     */
+    @Transactional
+    public InventoryResponse adjustStock(Long productId, BigDecimal quantity, MovementType type, BigDecimal unitCost,
+                                         String reason, User user) {
+        if (unitCost != null && (type != MovementType.ENTRADA || quantity.signum() <= 0)) {
+            throw new IllegalArgumentException("El costo unitario solo aplica a entradas de stock");
+        }
+        if (unitCost != null && unitCost.signum() < 0) {
+            throw new IllegalArgumentException("El costo unitario no puede ser negativo");
+        }
+        StockChange change;
+        if (stockLedger.isEnabled()) {
+            change = stockLedger.apply(productId, quantity.abs(), quantity.signum() < 0, type, reason, user, unitCost);
+        } else {
+            change = quantity.signum() < 0
+                    ? stockMutationService.decrement(productId, quantity.negate())
+                    : stockMutationService.increment(productId, quantity, type == MovementType.ENTRADA);
+            InventoryMovement movement = toMovement(change, type, quantity.abs(), reason, user);
+            movement.setUnitCost(unitCost);
+            movementRepository.save(movement);
+        }
+
+        log.info("Stock ajustado para producto {}: {} -> {} ({})",
+                productId, change.previousQuantity(), change.newQuantity(), type);
+
+        record(change, reason);
+        if (unitCost != null) {
+            inventoryValuationService.recordAverageCosts(stockMutationService.updateAverageCosts(
+                    List.of(new CostEntry(productId, change.previousQuantity(), quantity, unitCost))));
+        }
+
+        // Con el libro de stock la fila todavía no tiene la cantidad nueva
+        InventoryResponse response = toResponse(findEntityByProductId(productId));
+        response.setQuantity(change.newQuantity());
+        response.setAvailableQuantity(change.newQuantity().subtract(stockReservationService.getHeld(productId)));
+        response.setOutOfStock(change.newQuantity().signum() <= 0);
+        response.setLowStock(change.minStock() != null && change.newQuantity().compareTo(change.minStock()) <= 0);
+        return response;
+    }
+
+    /**
+     * Descuenta stock de varias líneas de una venta. Las filas se bloquean en orden de producto
+     * y se descuentan con un solo UPDATE; si alguna línea no alcanza se lanza
+     * InsufficientStockException y no se descuenta ninguna. Los movimientos se insertan juntos
+     * en un lote JDBC al hacer flush.
+     *
+     * @param quantities cantidad total a descontar por producto (ID de producto → cantidad)
+     */
+    @Transactional
+    public void removeStockBatch(Map<Long, BigDecimal> quantities, String reason, User user) {
+        List<StockChange> changes;
+        if (stockLedger.isEnabled()) {
+            changes = stockLedger.apply(quantities, true, MovementType.SALIDA, reason, user);
+            changes.forEach(change -> record(change, reason));
+        } else {
+            changes = stockMutationService.decrementAll(quantities);
+            saveMovements(changes, MovementType.SALIDA, quantities, reason, user);
+        }
+        log.debug("Stock descontado en lote: {} productos ({})", changes.size(), reason);
+    }
+
+    /**
+     * Como {@link #removeStockBatch}, para ventas de mostrador: solo descuenta de lo que no
+     * está reservado por mesas abiertas. Lo reservado se lee con las filas (o los contadores
+     * del libro de stock) ya bloqueados, así la venta no toma stock que una mesa va a pagar.
+     */
+    @Transactional
+    public void removeUnreservedStockBatch(Map<Long, BigDecimal> quantities, String reason, User user) {
+        List<StockChange> changes;
+        if (stockLedger.isEnabled()) {
+            changes = stockLedger.apply(quantities, true, MovementType.SALIDA, reason, user,
+                    stockReservationService::getHeld);
+            changes.forEach(change -> record(change, reason));
+        } else {
+            changes = stockMutationService.decrementAll(quantities, stockReservationService::getHeld);
+            saveMovements(changes, MovementType.SALIDA, quantities, reason, user);
+        }
+        log.debug("Stock descontado en lote: {} productos ({})", changes.size(), reason);
+    }
+
+    /**
+     * Descuenta lo reservado por una mesa al pagarla. No rechaza por falta de stock: la mesa ya
+     * se sirvió, y la reserva pudo vencer o un ajuste manual pudo tomar ese stock. La existencia
+     * queda negativa, lo que dispara la alerta de stock agotado, y el faltante queda en el log.
+     */
+    @Transactional
+    public void consumeReservedStockBatch(Map<Long, BigDecimal> quantities, String reason, User user) {
+        List<StockChange> changes;
+        if (stockLedger.isEnabled()) {
+            changes = stockLedger.applyAllowingShortage(quantities, MovementType.SALIDA, reason, user);
+            changes.forEach(change -> record(change, reason));
+        } else {
+            changes = stockMutationService.decrementAllowingShortage(quantities);
+            saveMovements(changes, MovementType.SALIDA, quantities, reason, user);
         }
-        
-        inventory.setQuantity(newQuantity);
-        inventory.setUpdatedAt(LocalDateTime.now());
-        
-        if (type == MovementType.ENTRADA) {
-            inventory.setLastRestockDate(LocalDateTime.now());
+        for (StockChange change : changes) {
+            if (change.newQuantity().signum() < 0) {
+                log.warn("Faltante de stock al descontar {}: producto {} quedó en {}",
+                        reason, change.productName(), change.newQuantity());
+            }
+        }
+        log.debug("Stock reservado descontado: {} productos ({})", changes.size(), reason);
+    }
+
+    /**
+     * Devuelve stock de varias líneas (anulaciones, ítems retirados de una mesa) con el mismo
+     * orden de bloqueo que {@link #removeStockBatch}.
+     */
+    @Transactional
+    public void addStockBatch(Map<Long, BigDecimal> quantities, String reason, User user) {
+        List<StockChange> changes;
+        if (stockLedger.isEnabled()) {
+            changes = stockLedger.apply(quantities, false, MovementType.ENTRADA, reason, user);
+            changes.forEach(change -> record(change, reason));
+        } else {
+            changes = stockMutationService.incrementAll(quantities, true);
+            saveMovements(changes, MovementType.ENTRADA, quantities, reason, user);
+        }
+        log.debug("Stock devuelto en lote: {} productos ({})", changes.size(), reason);
+    }
+
+    private void saveMovements(List<StockChange> changes, MovementType type, Map<Long, BigDecimal> quantities,
+                               String reason, User user) {
+        List<InventoryMovement> movements = new ArrayList<>(changes.size());
+        for (StockChange change : changes) {
+            movements.add(toMovement(change, type, quantities.get(change.productId()), reason, user));
         }
-        
-        InventoryMovement movement = InventoryMovement.builder()
-                .product(inventory.getProduct())
+        movementRepository.saveAll(movements);
+        changes.forEach(change -> record(change, reason));
+    }
+
+    /**
+     * Pasa un cambio de stock a las alertas y al valor de inventario en memoria; una salida
+     * además consume los lotes abiertos del producto.
+     */
+    private void record(StockChange change, String reason) {
+        stockAlertEngine.record(change);
+        inventoryValuationService.record(change);
+        inventoryLotService.consume(change.productId(), change.previousQuantity().subtract(change.newQuantity()), reason);
+    }
+
+    private InventoryMovement toMovement(StockChange change, MovementType type, BigDecimal quantity,
+                                         String reason, User user) {
+        return InventoryMovement.builder()
+                .product(productRepository.getReferenceById(change.productId()))
                 .movementType(type)
-                .quantity(quantity.abs())
-                .previousQuantity(previousQuantity)
-                .newQuantity(newQuantity)
+                .quantity(quantity)
+                .previousQuantity(change.previousQuantity())
+                .newQuantity(change.newQuantity())
                 .reason(reason)
                 .user(user)
                 .build();
-        
-        movementRepository.save(movement);
-        Inventory savedInventory = inventoryRepository.save(inventory);
-        
-        log.info("Stock ajustado para producto {}: {} -> {} ({})", 
-                productId, previousQuantity, newQuantity, type);
-
-        // Check stock alerts
-        try {
-            String productName = inventory.getProduct().getName();
-            int currentQty = newQuantity.intValue();
-            int minQty = inventory.getMinStock().intValue();
-            if (currentQty == 0) {
-                notificationService.notifyOutOfStock(productName, productId);
-            } else if (currentQty <= minQty) {
-                notificationService.notifyLowStock(productName, productId, currentQty, minQty);
-            }
-        } catch (Exception e) {
-            log.warn("Error al crear notificación de stock: {}", e.getMessage());
+    }
+
+    /**
+     * Entrada de stock con lote: suma la cantidad como una ENTRADA normal y abre un lote con
+     * su fecha de recepción y vencimiento (ver {@link InventoryLotService}).
+     */
+    @Transactional
+    public InventoryLotResponse receiveLot(Long productId, ReceiveLotRequest request, User user) {
+        if (request.getExpiresAt() != null && !request.getExpiresAt().isAfter(LocalDateTime.now())) {
+            throw new IllegalArgumentException("La fecha de vencimiento del lote debe ser futura");
         }
+        String reason = request.getReason() != null ? request.getReason()
+                : "Recepción de lote" + (request.getLotCode() != null ? " " + request.getLotCode() : "");
+        adjustStock(productId, request.getQuantity(), MovementType.ENTRADA, request.getUnitCost(), reason, user);
 
-        return InventoryResponse.fromEntity(savedInventory);
+        InventoryLot lot = inventoryLotRepository.save(InventoryLot.builder()
+                .product(productRepository.getReferenceById(productId))
+                .lotCode(request.getLotCode())
+                .receivedAt(LocalDateTime.now())
+                .expiresAt(request.getExpiresAt())
+                .initialQuantity(request.getQuantity())
+                .remainingQuantity(request.getQuantity())
+                .build());
+        inventoryLotService.register(lot);
+        log.info("Lote recibido para producto ID {}: {} ({} unidades, vence {})",
+                productId, lot.getLotCode(), lot.getInitialQuantity(), lot.getExpiresAt());
+        return InventoryLotService.toResponse(lot);
+    }
+
+    @Transactional(readOnly = true)
+    public List<InventoryLotResponse> getLotsByProduct(Long productId) {
+        return inventoryLotRepository.findByProductId(productId).stream()
+                .map(InventoryLotService::toResponse)
+                .toList();
     }
 
     @Transactional
@@ -129,8 +302,39 @@ public class InventoryService {
         inventory.setMinStock(minStock);
         inventory.setMaxStock(maxStock);
         inventory.setLocation(location);
+        stockLedger.updateMinStock(productId, minStock);
+        stockAlertEngine.record(productId, inventory.getProduct().getName(), inventory.getQuantity(), minStock);
+        inventoryValuationService.recordMinStock(productId, minStock);
         log.info("Límites de stock actualizados para producto ID: {}", productId);
-        return InventoryResponse.fromEntity(inventoryRepository.save(inventory));
+        return toResponse(inventoryRepository.save(inventory));
+    }
+
+    /**
+     * Cambia el stock mínimo y máximo de varios productos a la vez (sugerencias de
+     * {@link StockForecastService}) y avisa a las alertas y al valor de inventario.
+     *
+     * @return cantidad de productos actualizados
+     */
+    @Transactional
+    public int updateStockLimitsBatch(Map<Long, StockLimits> limits) {
+        List<StockChange> changes = stockMutationService.updateLimits(limits);
+        for (StockChange change : changes) {
+            stockLedger.updateMinStock(change.productId(), change.minStock());
+            stockAlertEngine.record(change);
+            inventoryValuationService.recordMinStock(change.productId(), change.minStock());
+        }
+        log.info("Límites de stock actualizados en lote: {} productos", changes.size());
+        return changes.size();
+    }
+
+    private InventoryResponse toResponse(Inventory inventory) {
+        InventoryResponse response = InventoryResponse.fromEntity(inventory);
+        if (response.getProductId() != null && response.getQuantity() != null) {
+            BigDecimal reserved = stockReservationService.getHeld(response.getProductId());
+            response.setReservedQuantity(reserved);
+            response.setAvailableQuantity(response.getQuantity().subtract(reserved));
+        }
+        return response;
     }
 
     @Transactional(readOnly = true)
@@ -0,0 +1,270 @@
+package com.morales.pos.application.service;
+
+import com.morales.pos.application.dto.response.ReportResponse.InventoryValue;
+import com.morales.pos.application.service.StockMutationService.StockChange;
+import com.morales.pos.infrastructure.persistence.TransactionHooks;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Valor del inventario y conteo de productos bajos o agotados como agregados en memoria.
+ *
+ * Se guarda por producto la existencia, el mínimo, los precios y si está activo, y se mantienen
+ * los totales restando la contribución anterior del producto y sumando la nueva; el tablero lee
+ * los totales sin consultar la base. El valor al costo usa el costo promedio ponderado
+ * (products.average_cost). Los cambios de stock se aplican como diferencias (nueva −
+ * anterior) al confirmar la transacción, así dos transacciones que confirman en cualquier orden
+ * dejan el mismo total. Los cambios de costo, precio, mínimo o estado se aplican como valor absoluto.
+ *
+ * Los totales se reconstruyen desde la base al arrancar, a pedido y cada
+ * app.inventory-valuation.rebuild-interval-ms, lo que corrige los cambios hechos desde otro
+ * nodo y el desfase de una reconstrucción que coincide con ventas en curso.
+ */
+@Service
+@Slf4j
+public class InventoryValuationService {
+
+    private static final String REBUILD_SQL =
+            "SELECT p.id, p.is_active, p.average_cost, p.sale_price, i.quantity, i.min_stock " +
+            "FROM products p LEFT JOIN inventory i ON i.product_id = p.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StockLedger stockLedger;
+    private final ReportCacheService reportCacheService;
+
+    // Producto → estado; las modificaciones se hacen bajo el candado de esta clase
+    private final Map<Long, Entry> entries = new HashMap<>();
+    // Totales inmutables: se reemplazan bajo el candado y el tablero los lee sin él
+    private volatile Totals totals = Totals.EMPTY;
+
+    public InventoryValuationService(JdbcTemplate jdbcTemplate, StockLedger stockLedger,
+                                     ReportCacheService reportCacheService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.stockLedger = stockLedger;
+        this.reportCacheService = reportCacheService;
+    }
+
+    @PostConstruct
+    public void load() {
+        rebuild();
+    }
+
+    /**
+     * Recalcula todos los totales desde la base.
+     */
+    public InventoryValue rebuild() {
+        Map<Long, Entry> loaded = new HashMap<>();
+        jdbcTemplate.query(REBUILD_SQL, rs -> {
+            Entry entry = new Entry();
+            entry.active = rs.getBoolean(2);
+            entry.averageCost = zeroIfNull(rs.getBigDecimal(3));
+            entry.salePrice = zeroIfNull(rs.getBigDecimal(4));
+            entry.quantity = rs.getBigDecimal(5);
+            entry.minStock = rs.getBigDecimal(6);
+            loaded.put(rs.getLong(1), entry);
+        });
+        if (stockLedger.isEnabled()) {
+            // La fila de inventario va detrás de los contadores del libro de stock: la existencia se toma de ellos
+            List<Long> stocked = loaded.entrySet().stream()
+                    .filter(e -> e.getValue().quantity != null)
+                    .map(Map.Entry::getKey)
+                    .toList();
+            stockLedger.quantities(stocked).forEach((productId, quantity) -> loaded.get(productId).quantity = quantity);
+        }
+
+        Totals rebuilt = Totals.EMPTY;
+        for (Entry entry : loaded.values()) {
+            rebuilt = rebuilt.plus(entry);
+        }
+        synchronized (this) {
+            entries.clear();
+            entries.putAll(loaded);
+            totals = rebuilt;
+        }
+        reportCacheService.stockChanged();
+        log.info("Valor de inventario reconstruido: {} productos activos, {} bajos, {} agotados",
+                rebuilt.activeProducts, rebuilt.lowStock, rebuilt.outOfStock);
+        return getInventoryValue();
+    }
+
+    @Scheduled(fixedDelayString = "${app.inventory-valuation.rebuild-interval-ms:900000}",
+               initialDelayString = "${app.inventory-valuation.rebuild-interval-ms:900000}")
+    public void scheduledRebuild() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.error("Valor de inventario: no se pudo reconstruir: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Valor y conteos actuales; no consulta la base.
+     */
+    public InventoryValue getInventoryValue() {
+        Totals current = totals;
+        return InventoryValue.builder()
+                .totalCostValue(current.costValue)
+                .totalSaleValue(current.saleValue)
+                .totalProducts(current.activeProducts)
+                .lowStockProducts(current.lowStock)
+                .outOfStockProducts(current.outOfStock)
+                .build();
+    }
+
+    /**
+     * Registra un cambio de stock; se aplica al confirmar la transacción actual (o en el
+     * momento si no hay transacción).
+     */
+    public void record(StockChange change) {
+        BigDecimal delta = change.newQuantity().subtract(change.previousQuantity());
+        if (TransactionHooks.isActive()) {
+            pendingForCurrentTransaction().merge(change.productId(), new StockDelta(delta, change.minStock()),
+                    (a, b) -> new StockDelta(a.quantity.add(b.quantity), b.minStock));
+        } else {
+            applyStock(change.productId(), delta, change.minStock());
+        }
+    }
+
+    /**
+     * Registra un cambio del stock mínimo al confirmar la transacción.
+     */
+    public void recordMinStock(Long productId, BigDecimal minStock) {
+        TransactionHooks.afterCommit(() -> update(productId, entry -> entry.minStock = minStock));
+    }
+
+    /**
+     * Registra un producto nuevo con su existencia inicial al confirmar la transacción.
+     */
+    public void recordNewProduct(Long productId, boolean active, BigDecimal averageCost, BigDecimal salePrice,
+                                 BigDecimal quantity, BigDecimal minStock) {
+        TransactionHooks.afterCommit(() -> {
+            Entry entry = new Entry();
+            entry.active = active;
+            entry.averageCost = zeroIfNull(averageCost);
+            entry.salePrice = zeroIfNull(salePrice);
+            entry.quantity = quantity;
+            entry.minStock = minStock;
+            synchronized (this) {
+                Entry previous = entries.put(productId, entry);
+                Totals current = previous != null ? totals.minus(previous) : totals;
+                totals = current.plus(entry);
+            }
+            reportCacheService.stockChanged();
+        });
+    }
+
+    /**
+     * Registra un cambio de precio de venta o de estado de un producto al confirmar la
+     * transacción. El costo promedio cambia solo con entradas ({@link #recordAverageCosts}).
+     */
+    public void recordProduct(Long productId, boolean active, BigDecimal salePrice) {
+        TransactionHooks.afterCommit(() -> update(productId, entry -> {
+            entry.active = active;
+            entry.salePrice = zeroIfNull(salePrice);
+        }));
+    }
+
+    /**
+     * Registra los costos promedio nuevos (ID de producto → costo) al confirmar la transacción.
+     */
+    public void recordAverageCosts(Map<Long, BigDecimal> averageCosts) {
+        if (averageCosts.isEmpty()) {
+            return;
+        }
+        TransactionHooks.afterCommit(() -> averageCosts.forEach((productId, averageCost) ->
+                update(productId, entry -> entry.averageCost = zeroIfNull(averageCost))));
+    }
+
+    private void applyStock(Long productId, BigDecimal delta, BigDecimal minStock) {
+        update(productId, entry -> {
+            entry.quantity = entry.quantity != null ? entry.quantity.add(delta) : delta;
+            if (minStock != null) {
+                entry.minStock = minStock;
+            }
+        });
+    }
+
+    private synchronized void update(Long productId, Consumer<Entry> change) {
+        Entry entry = entries.get(productId);
+        if (entry == null) {
+            // Producto creado desde otro nodo: lo trae la próxima reconstrucción
+            return;
+        }
+        Totals current = totals.minus(entry);
+        change.accept(entry);
+        totals = current.plus(entry);
+        // El tablero en caché muestra estos totales
+        reportCacheService.stockChanged();
+    }
+
+    private Map<Long, StockDelta> pendingForCurrentTransaction() {
+        return TransactionHooks.perTransaction(this, LinkedHashMap::new, new TransactionHooks.Callbacks<Map<Long, StockDelta>>() {
+            @Override
+            public void afterCommit(Map<Long, StockDelta> changes) {
+                changes.forEach((productId, change) -> applyStock(productId, change.quantity, change.minStock));
+            }
+        });
+    }
+
+    private static BigDecimal zeroIfNull(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+
+    private record StockDelta(BigDecimal quantity, BigDecimal minStock) {
+    }
+
+    private static final class Entry {
+        boolean active;
+        BigDecimal averageCost;
+        BigDecimal salePrice;
+        BigDecimal quantity;  // null si el producto no tiene fila de inventario
+        BigDecimal minStock;
+    }
+
+    /**
+     * Totales con las mismas reglas que las consultas que reemplazan: solo productos activos,
+     * bajo = existencia ≤ mínimo (incluye agotados), agotado = existencia ≤ 0.
+     */
+    private record Totals(BigDecimal costValue, BigDecimal saleValue, long activeProducts,
+                          long lowStock, long outOfStock) {
+
+        static final Totals EMPTY = new Totals(BigDecimal.ZERO, BigDecimal.ZERO, 0, 0, 0);
+
+        Totals plus(Entry entry) {
+            return combine(entry, 1);
+        }
+
+        Totals minus(Entry entry) {
+            return combine(entry, -1);
+        }
+
+        private Totals combine(Entry entry, int sign) {
+            if (!entry.active) {
+                return this;
+            }
+            if (entry.quantity == null) {
+                return new Totals(costValue, saleValue, activeProducts + sign, lowStock, outOfStock);
+            }
+            BigDecimal cost = entry.quantity.multiply(entry.averageCost);
+            BigDecimal sale = entry.quantity.multiply(entry.salePrice);
+            boolean low = entry.minStock != null && entry.quantity.compareTo(entry.minStock) <= 0;
+            boolean out = entry.quantity.signum() <= 0;
+            return new Totals(
+                    sign > 0 ? costValue.add(cost) : costValue.subtract(cost),
+                    sign > 0 ? saleValue.add(sale) : saleValue.subtract(sale),
+                    activeProducts + sign,
+                    lowStock + (low ? sign : 0),
+                    outOfStock + (out ? sign : 0));
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.morales.pos.application.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exporta facturas con sus líneas en CSV o NDJSON, escribiendo cada fila a la respuesta
+ * apenas llega de la base de datos.
+ *
+ * La consulta usa un cursor de PostgreSQL (fetch size dentro de una transacción de solo
+ * lectura) y no pasa por Hibernate, así que la memoria no crece con el rango de fechas.
+ */
+@Service
+@Slf4j
+public class InvoiceExportService {
+
+    private static final int FETCH_SIZE = 500;
+
+    private static final String EXPORT_SQL =
+            "SELECT i.id, i.invoice_number, i.created_at, i.status, i.invoice_type, i.payment_method, " +
+            "       c.document_number AS customer_document, c.full_name AS customer_name, u.full_name AS cashier_name, " +
+            "       i.subtotal, i.tax_amount, i.discount_amount, i.service_charge_amount, i.delivery_charge_amount, i.total, " +
+            "       d.product_id, d.product_name, d.quantity, d.unit_price, d.cost_price, " +
+            "       d.discount_amount AS line_discount, d.tax_amount AS line_tax, d.subtotal AS line_subtotal " +
+            "FROM invoices i " +
+            "LEFT JOIN customers c ON c.id = i.customer_id " +
+            "LEFT JOIN users u ON u.id = i.user_id " +
+            "LEFT JOIN invoice_details d ON d.invoice_id = i.id " +
+            "WHERE i.created_at BETWEEN ? AND ? AND i.status <> 'ABIERTA' " +
+            "ORDER BY i.created_at, i.id, d.id";
+
+    private static final String[] CSV_HEADER = {
+            "factura", "fecha", "estado", "tipo", "metodo_pago", "documento_cliente", "cliente", "cajero",
+            "subtotal_factura", "impuesto_factura", "descuento_factura", "servicio", "domicilio", "total_factura",
+            "producto_id", "producto", "cantidad", "precio_unitario", "costo_unitario",
+            "descuento_linea", "impuesto_linea", "subtotal_linea"
+    };
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static Format parse(String value) {
+            try {
+                return Format.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException | NullPointerException e) {
+                throw new IllegalArgumentException("Formato de exportación inválido: " + value + " (use csv o ndjson)");
+            }
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readTransaction;
+
+    public InvoiceExportService(JdbcTemplate jdbcTemplate,
+                                ObjectMapper objectMapper,
+                                PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+    }
+
+    public void validateRange(LocalDateTime start, LocalDateTime end) {
+        if (start == null || end == null || start.isAfter(end)) {
+            throw new IllegalArgumentException("Rango de fechas inválido para la exportación");
+        }
+    }
+
+    /**
+     * Escribe la exportación en el stream indicado. No cierra el stream original.
+     */
+    public void export(LocalDateTime start, LocalDateTime end, Format format, boolean gzip, OutputStream out) throws IOException {
+        long startedAt = System.currentTimeMillis();
+        GZIPOutputStream gzipStream = gzip ? new GZIPOutputStream(out, 8192) : null;
+        OutputStream target = gzip ? gzipStream : out;
+
+        long rows;
+        try {
+            rows = format == Format.CSV ? writeCsv(start, end, target) : writeNdjson(start, end, target);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (gzipStream != null) {
+            gzipStream.finish();
+        }
+        out.flush();
+
+        log.info("Exportación {} de facturas {} a {}: {} filas en {} ms",
+                format, start, end, rows, System.currentTimeMillis() - startedAt);
+    }
+
+    private long writeCsv(LocalDateTime start, LocalDateTime end, OutputStream target) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), 16 * 1024);
+        writer.write('\uFEFF'); // BOM para que Excel reconozca UTF-8 (tildes y ñ)
+        writeCsvLine(writer, (Object[]) CSV_HEADER);
+
+        long rows = stream(start, end, rs -> {
+            try {
+                writeCsvLine(writer,
+                        rs.getString("invoice_number"), toLocalDateTime(rs.getTimestamp("created_at")),
+                        rs.getString("status"), rs.getString("invoice_type"), rs.getString("payment_method"),
+                        rs.getString("customer_document"), rs.getString("customer_name"), rs.getString("cashier_name"),
+                        rs.getBigDecimal("subtotal"), rs.getBigDecimal("tax_amount"), rs.getBigDecimal("discount_amount"),
+                        rs.getBigDecimal("service_charge_amount"), rs.getBigDecimal("delivery_charge_amount"),
+                        rs.getBigDecimal("total"),
+                        rs.getObject("product_id"), rs.getString("product_name"), rs.getBigDecimal("quantity"),
+                        rs.getBigDecimal("unit_price"), rs.getBigDecimal("cost_price"),
+                        rs.getBigDecimal("line_discount"), rs.getBigDecimal("line_tax"), rs.getBigDecimal("line_subtotal"));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+        return rows;
+    }
+
+    /**
+     * Una factura por línea con sus detalles anidados. Las filas llegan ordenadas por factura,
+     * así que solo se mantiene abierta la factura actual.
+     */
+    private long writeNdjson(LocalDateTime start, LocalDateTime end, OutputStream target) throws IOException {
+        JsonGenerator json = objectMapper.getFactory().createGenerator(target);
+        json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        json.setRootValueSeparator(null); // el separador lo pone endInvoice (salto de línea)
+        long[] currentInvoice = {-1};
+
+        long rows = stream(start, end, rs -> {
+            try {
+                long invoiceId = rs.getLong("id");
+                if (invoiceId != currentInvoice[0]) {
+                    if (currentInvoice[0] != -1) {
+                        endInvoice(json);
+                    }
+                    currentInvoice[0] = invoiceId;
+                    json.writeStartObject();
+                    json.writeNumberField("id", invoiceId);
+                    json.writeStringField("invoiceNumber", rs.getString("invoice_number"));
+                    writeField(json, "createdAt", toLocalDateTime(rs.getTimestamp("created_at")));
+                    json.writeStringField("status", rs.getString("status"));
+                    json.writeStringField("invoiceType", rs.getString("invoice_type"));
+                    json.writeStringField("paymentMethod", rs.getString("payment_method"));
+                    json.writeStringField("customerDocument", rs.getString("customer_document"));
+                    json.writeStringField("customerName", rs.getString("customer_name"));
+                    json.writeStringField("cashierName", rs.getString("cashier_name"));
+                    writeField(json, "subtotal", rs.getBigDecimal("subtotal"));
+                    writeField(json, "taxAmount", rs.getBigDecimal("tax_amount"));
+                    writeField(json, "discountAmount", rs.getBigDecimal("discount_amount"));
+                    writeField(json, "serviceChargeAmount", rs.getBigDecimal("service_charge_amount"));
+                    writeField(json, "deliveryChargeAmount", rs.getBigDecimal("delivery_charge_amount"));
+                    writeField(json, "total", rs.getBigDecimal("total"));
+                    json.writeArrayFieldStart("details");
+                }
+                if (rs.getBigDecimal("quantity") != null) { // LEFT JOIN: factura sin líneas
+                    json.writeStartObject();
+                    writeField(json, "productId", rs.getObject("product_id"));
+                    json.writeStringField("productName", rs.getString("product_name"));
+                    writeField(json, "quantity", rs.getBigDecimal("quantity"));
+                    writeField(json, "unitPrice", rs.getBigDecimal("unit_price"));
+                    writeField(json, "costPrice", rs.getBigDecimal("cost_price"));
+                    writeField(json, "discountAmount", rs.getBigDecimal("line_discount"));
+                    writeField(json, "taxAmount", rs.getBigDecimal("line_tax"));
+                    writeField(json, "subtotal", rs.getBigDecimal("line_subtotal"));
+                    json.writeEndObject();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        if (currentInvoice[0] != -1) {
+            endInvoice(json);
+        }
+        json.flush();
+        return rows;
+    }
+
+    private long stream(LocalDateTime start, LocalDateTime end, RowWriter rowWriter) {
+        Long rows = readTransaction.execute(status -> {
+            long[] count = {0};
+            // Un JdbcTemplate propio por exportación: el fetch size no debe afectar a otras consultas
+            JdbcTemplate cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+            cursorTemplate.setFetchSize(FETCH_SIZE);
+            cursorTemplate.query(EXPORT_SQL, rs -> {
+                rowWriter.write(rs);
+                count[0]++;
+            }, Timestamp.valueOf(start), Timestamp.valueOf(end));
+            return count[0];
+        });
+        return rows != null ? rows : 0;
+    }
+
+    private static void endInvoice(JsonGenerator json) throws IOException {
+        json.writeEndArray();
+        json.writeEndObject();
+        json.writeRaw('\n');
+    }
+
+    private static void writeField(JsonGenerator json, String name, Object value) throws IOException {
+        if (value == null) {
+            json.writeNullField(name);
+        } else if (value instanceof BigDecimal decimal) {
+            json.writeNumberField(name, decimal);
+        } else if (value instanceof Number number) {
+            json.writeNumberField(name, number.longValue());
+        } else {
+            json.writeStringField(name, value.toString());
+        }
+    }
+
+    private static void writeCsvLine(Writer writer, Object... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            Object value = values[i];
+            if (value == null) {
+                continue;
+            }
+            String text = value instanceof BigDecimal decimal ? decimal.toPlainString() : value.toString();
+            if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0) {
+                writer.write('"');
+                writer.write(text.replace("\"", "\"\""));
+                writer.write('"');
+            } else {
+                writer.write(text);
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(ResultSet rs) throws SQLException;
+    }
+}
@@ -0,0 +1,164 @@
+package com.morales.pos.application.service;
+
+import com.morales.pos.domain.repository.InvoiceNumberSequenceRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Asigna números de factura con formato {prefijo}{MMdd}-{secuencia}, ej: V1017-0003 o M5-1017-0001.
+ *
+ * Cada nodo reserva bloques de números en invoice_number_sequences (un UPDATE atómico en
+ * su propia transacción corta) y los entrega desde memoria, así que generar un número
+ * no consulta la tabla de facturas y dos cajas nunca reciben el mismo.
+ * Los números de un bloque sin usar (reinicio, venta revertida) quedan como huecos.
+ *
+ * Las reservas corren en un hilo propio, fuera de la transacción y de la conexión de la venta
+ * que pide el número: una venta nunca ocupa dos conexiones del pool y, como las reservas van
+ * de a una, todas juntas usan a lo sumo una conexión extra. Al pasar la mitad de un bloque
+ * se pide el siguiente por adelantado; solo espera la primera venta de un prefijo en el día
+ * (o la que agota el bloque antes de que llegue el siguiente), y espera sin tomar el candado
+ * del bloque.
+ */
+@Service
+@Slf4j
+public class InvoiceNumberAllocator {
+
+    private static final DateTimeFormatter DATE_PART = DateTimeFormatter.ofPattern("MMdd");
+    private static final long RESERVE_TIMEOUT_SECONDS = 10;
+
+    private final InvoiceNumberSequenceRepository sequenceRepository;
+    private final TransactionTemplate reserveTransaction;
+    private final ExecutorService reserver;
+    private final int blockSize;
+    private final Map<String, Block> blocks = new ConcurrentHashMap<>();
+
+    public InvoiceNumberAllocator(InvoiceNumberSequenceRepository sequenceRepository,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${app.invoice-numbering.block-size:20}") int blockSize) {
+        this.sequenceRepository = sequenceRepository;
+        this.reserveTransaction = new TransactionTemplate(transactionManager);
+        this.reserver = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "invoice-numbering");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    /**
+     * Siguiente número para el prefijo indicado ("V" para POS, "M{mesa}-" para mesas).
+     */
+    public String next(String prefix) {
+        return next(prefix, LocalDate.now());
+    }
+
+    /**
+     * Siguiente número para el prefijo en un día dado (ventas offline sincronizadas después).
+     */
+    public String next(String prefix, LocalDate businessDate) {
+        String key = prefix + businessDate.format(DATE_PART);
+
+        Block block = blocks.get(key);
+        if (block == null || !block.date.equals(businessDate)) {
+            // Los bloques de otros días ya no se usan (salvo el de hoy)
+            LocalDate today = LocalDate.now();
+            blocks.entrySet().removeIf(e -> !e.getValue().date.equals(today) && !e.getValue().date.equals(businessDate));
+            block = blocks.computeIfAbsent(key, k -> new Block(businessDate));
+        }
+
+        while (true) {
+            CompletableFuture<Range> refill;
+            synchronized (block) {
+                if (block.next > block.end && block.refill != null && block.refill.isDone()
+                        && !block.refill.isCompletedExceptionally()) {
+                    Range range = block.refill.join();
+                    block.next = range.first();
+                    block.end = range.last();
+                    block.refill = null;
+                }
+                if (block.next <= block.end) {
+                    long value = block.next++;
+                    if (block.refill == null && block.end - value < (blockSize + 1) / 2) {
+                        block.refill = reserve(key, block.date);
+                    }
+                    return String.format("%s-%04d", key, value);
+                }
+                if (block.refill == null || block.refill.isCompletedExceptionally()) {
+                    block.refill = reserve(key, block.date);
+                }
+                refill = block.refill;
+            }
+            await(key, block, refill);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reserver.shutdown();
+    }
+
+    private CompletableFuture<Range> reserve(String key, LocalDate date) {
+        return CompletableFuture.supplyAsync(() -> {
+            Long last = reserveTransaction.execute(status -> {
+                if (sequenceRepository.advance(key, date, blockSize) == 0) {
+                    sequenceRepository.seed(key, date);
+                    sequenceRepository.advance(key, date, blockSize);
+                }
+                return sequenceRepository.findLastValue(key, date);
+            });
+            if (last == null) {
+                throw new IllegalStateException("No se pudo reservar numeración para " + key);
+            }
+            log.debug("Bloque de numeración reservado para {}: {}-{}", key, last - blockSize + 1, last);
+            return new Range(last - blockSize + 1, last);
+        }, reserver);
+    }
+
+    // Espera fuera del candado; el bloque se adopta en la siguiente vuelta de next()
+    private void await(String key, Block block, CompletableFuture<Range> refill) {
+        try {
+            refill.get(RESERVE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Reserva de numeración interrumpida para " + key, e);
+        } catch (ExecutionException | TimeoutException e) {
+            synchronized (block) {
+                if (block.refill == refill && refill.isCompletedExceptionally()) {
+                    block.refill = null; // el próximo intento pide otro bloque
+                }
+            }
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            throw new IllegalStateException("No se pudo reservar numeración para " + key + ": " + cause.getMessage(), cause);
+        }
+    }
+
+    private record Range(long first, long last) {
+    }
+
+    private static final class Block {
+        private final LocalDate date;
+        private long next = 1;
+        private long end = 0;
+        // Siguiente bloque pedido y todavía sin usar
+        private CompletableFuture<Range> refill;
+
+        private Block(LocalDate date) {
+            this.date = date;
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.morales.pos.application.service;
 
 import com.morales.pos.application.dto.request.CreateSaleRequest;
+import com.morales.pos.application.dto.request.InvoiceSearchRequest;
 import com.morales.pos.application.dto.request.VoidInvoiceRequest;
+import com.morales.pos.application.dto.response.CursorPageResponse;
 import com.morales.pos.application.dto.response.InvoiceResponse;
 import com.morales.pos.domain.entity.*;
 import com.morales.pos.domain.enums.InvoiceStatus;
@@ -10,18 +12,32 @@ import com.morales.pos.domain.enums.KitchenStatus;
 import com.morales.pos.domain.enums.PaymentMethod;
 import com.morales.pos.domain.enums.PaymentStatus;
 import com.morales.pos.domain.repository.*;
+import com.morales.pos.infrastructure.persistence.SqlStatementCounter;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -29,13 +45,21 @@ import java.util.stream.Collectors;
 @Slf4j
 public class InvoiceService {
 
+    private static final int DEFAULT_SEARCH_SIZE = 20;
+    private static final int MAX_SEARCH_SIZE = 100;
+
     private final InvoiceRepository invoiceRepository;
     private final InvoiceDetailRepository invoiceDetailRepository;
     private final CustomerRepository customerRepository;
     private final ProductRepository productRepository;
     private final InventoryService inventoryService;
+    private final StockReservationService stockReservationService;
+    private final StockLedger stockLedger;
+    private final RecipeService recipeService;
+    private final InvoiceNumberAllocator invoiceNumberAllocator;
     private final SseService sseService;
     private final NotificationService notificationService;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional(readOnly = true)
     public Page<InvoiceResponse> findAll(Pageable pageable) {
@@ -77,6 +101,89 @@ public class InvoiceService {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Búsqueda de facturas por cursor, de la más reciente a la más antigua.
+     * Cada página continúa desde (createdAt, id) de la última fila de la anterior, sin OFFSET
+     * ni COUNT, así que la página N cuesta lo mismo que la primera.
+     */
+    @Transactional(readOnly = true)
+    public CursorPageResponse<InvoiceResponse> search(InvoiceSearchRequest request) {
+        int size = request.getSize() == null ? DEFAULT_SEARCH_SIZE
+                : Math.max(1, Math.min(request.getSize(), MAX_SEARCH_SIZE));
+
+        InvoiceStatus status = parseEnum(InvoiceStatus.class, request.getStatus(), "Estado");
+        PaymentMethod paymentMethod = parseEnum(PaymentMethod.class, request.getPaymentMethod(), "Método de pago");
+
+        Specification<Invoice> spec = Specification.where(InvoiceSpecifications.hasStatus(status))
+                .and(InvoiceSpecifications.createdFrom(request.getStart()))
+                .and(InvoiceSpecifications.createdUntil(request.getEnd()))
+                .and(InvoiceSpecifications.hasCustomer(request.getCustomerId()))
+                .and(InvoiceSpecifications.hasCashier(request.getUserId()))
+                .and(InvoiceSpecifications.hasPaymentMethod(paymentMethod))
+                .and(InvoiceSpecifications.fetchParties());
+
+        if (request.getCursor() != null && !request.getCursor().isBlank()) {
+            InvoiceCursor cursor = InvoiceCursor.decode(request.getCursor());
+            spec = spec.and(InvoiceSpecifications.before(cursor.createdAt(), cursor.id()));
+        }
+
+        // Se pide una fila de más para saber si hay otra página sin contar
+        List<Invoice> rows = invoiceRepository.findBy(spec, q -> q
+                .sortBy(Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id")))
+                .limit(size + 1)
+                .all());
+
+        boolean hasMore = rows.size() > size;
+        List<Invoice> page = hasMore ? rows.subList(0, size) : rows;
+        String nextCursor = null;
+        if (hasMore) {
+            Invoice last = page.get(page.size() - 1);
+            nextCursor = new InvoiceCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+
+        return CursorPageResponse.<InvoiceResponse>builder()
+                .content(page.stream()
+                        .map(inv -> InvoiceResponse.fromEntity(inv, false))
+                        .collect(Collectors.toList()))
+                .size(page.size())
+                .hasMore(hasMore)
+                .nextCursor(nextCursor)
+                .build();
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String value, String label) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(label + " inválido: " + value);
+        }
+    }
+
+    /**
+     * Posición de la última factura entregada, codificada en Base64 URL ("createdAt|id").
+     */
+    private record InvoiceCursor(LocalDateTime createdAt, Long id) {
+
+        String encode() {
+            String raw = createdAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static InvoiceCursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+                int separator = raw.lastIndexOf('|');
+                return new InvoiceCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                        Long.parseLong(raw.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Cursor de paginación inválido");
+            }
+        }
+    }
+
     @Transactional(readOnly = true)
     public List<InvoiceResponse> findTodaySales() {
         LocalDateTime startOfDay = LocalDateTime.now().withHour(0).withMinute(0).withSecond(0);
@@ -88,39 +195,66 @@ public class InvoiceService {
 
     /**
      * Crea una venta directa desde el módulo POS.
-     * Flujo: validar stock → generar número → construir cabecera → procesar líneas → calcular totales → guardar.
+     * Flujo: precargar carrito → validar stock → generar número → procesar líneas → calcular totales → guardar.
+     * Productos e inventario se leen en una sola consulta y los detalles, movimientos y
+     * actualizaciones de stock se escriben en lotes JDBC al hacer flush.
      */
     @Transactional
     public InvoiceResponse createSale(CreateSaleRequest request, User user) {
+        try (SqlStatementCounter.Scope statements = SqlStatementCounter.start()) {
+            // ── 1. PRECARGA Y PRE-VALIDACIÓN DE STOCK ───────────────────────────────
+            // Todos los productos del carrito (con su inventario) en una sola consulta.
+            // Las cantidades se agrupan por producto para validar líneas repetidas juntas.
+            // Si alguno falla, se lanza excepción y no se guarda nada.
+            Map<Long, Product> products = loadCartProducts(request.getDetails());
+            Map<Long, BigDecimal> stock = stockQuantities(request);
+            addStockProducts(products, stock.keySet());
+            String stockError = checkStock(products, availableStock(products), stock);
+            if (stockError != null) {
+                throw new IllegalArgumentException(stockError);
+            }
 
-        // ── 1. PRE-VALIDACIÓN DE STOCK ──────────────────────────────────────────
-        // Antes de crear nada, verificamos que haya stock suficiente para TODOS
-        // los productos. Si alguno falla, se lanza excepción y no se guarda nada.
-        for (CreateSaleRequest.SaleDetailRequest detail : request.getDetails()) {
-            Inventory inventory = inventoryService.findEntityByProductId(detail.getProductId());
-            if (inventory.getQuantity().compareTo(detail.getQuantity()) < 0) {
-                Product product = productRepository.findById(detail.getProductId())
-                        .orElseThrow(() -> new EntityNotFoundException("Producto no encontrado"));
-                throw new IllegalArgumentException(
-                        String.format("Stock insuficiente para %s. Disponible: %s, Solicitado: %s",
-                                product.getName(), inventory.getQuantity(), detail.getQuantity()));
+            // ── 2. CLIENTE (OPCIONAL) ───────────────────────────────────────────────
+            // Si no se especifica cliente, la venta queda como "Cliente General"
+            Customer customer = null;
+            if (request.getCustomerId() != null) {
+                customer = customerRepository.findById(request.getCustomerId())
+                        .orElseThrow(() -> new EntityNotFoundException("Cliente no encontrado"));
             }
-        }
 
-        // ── 2. NÚMERO DE FACTURA ────────────────────────────────────────────────
-        // Genera un número único con formato V{MMDD}-{secuencia}, ej: V0221-0003
-        String invoiceNumber = generateInvoiceNumber();
+            // ── 3. FACTURA, LÍNEAS Y STOCK ──────────────────────────────────────────
+            Invoice finalInvoice = persistSale(request, user, customer, products, null);
+
+            // Flush explícito para que el conteo incluya los lotes pendientes
+            invoiceRepository.flush();
+            log.info("Venta creada: {} - Total: {} - {} líneas en {} sentencias SQL",
+                    finalInvoice.getInvoiceNumber(), finalInvoice.getTotal(),
+                    finalInvoice.getDetails().size(), statements.count());
+
+            // Ventas directas del POS no emiten SSE a cocina — solo mesas activas lo hacen
 
-        // ── 3. CLIENTE (OPCIONAL) ───────────────────────────────────────────────
-        // Si no se especifica cliente, la venta queda como "Cliente General"
-        Customer customer = null;
-        if (request.getCustomerId() != null) {
-            customer = customerRepository.findById(request.getCustomerId())
-                    .orElseThrow(() -> new EntityNotFoundException("Cliente no encontrado"));
+            return InvoiceResponse.fromEntity(finalInvoice);
         }
+    }
+
+    /**
+     * Registra una venta POS sobre un carrito ya precargado y validado (ver {@link #createSale}
+     * y la sincronización de ventas offline). Se ejecuta dentro de la transacción del llamador;
+     * la cabecera se inserta ya con sus totales y el resto queda encolado para el flush.
+     *
+     * @param products   productos del carrito con su inventario cargado (ID → producto)
+     * @param recordedAt fecha real de la venta si se registró sin conexión; null = ahora
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Invoice persistSale(CreateSaleRequest request, User user, Customer customer,
+                               Map<Long, Product> products, LocalDateTime recordedAt) {
+
+        // ── NÚMERO DE FACTURA ───────────────────────────────────────────────────
+        // Número único con formato V{MMDD}-{secuencia}, ej: V0221-0003 (bloques en memoria, sin COUNT)
+        LocalDate businessDate = recordedAt != null ? recordedAt.toLocalDate() : LocalDate.now();
+        String invoiceNumber = invoiceNumberAllocator.next("V", businessDate);
 
-        // ── 4. CABECERA DE FACTURA ──────────────────────────────────────────────
-        // Se guarda primero la cabecera para obtener el ID y poder asociar detalles.
+        // ── CABECERA DE FACTURA ─────────────────────────────────────────────────
         // Estado COMPLETADA y pago PAGADO porque el POS cobra en el momento.
         Invoice invoice = Invoice.builder()
                 .invoiceNumber(invoiceNumber)
@@ -128,114 +262,76 @@ public class InvoiceService {
                 .customer(customer)
                 .user(user)                                          // cajero que realiza la venta
                 .paymentMethod(PaymentMethod.valueOf(request.getPaymentMethod()))
-                .discountPercent(request.getDiscountPercent())
                 .amountReceived(request.getAmountReceived())         // dinero entregado por el cliente
                 .notes(request.getNotes())
                 .status(InvoiceStatus.COMPLETADA)
                 .paymentStatus(PaymentStatus.PAGADO)
+                .recordedAt(recordedAt)
                 .build();
 
-        Invoice savedInvoice = invoiceRepository.save(invoice);
-
-        // ── 5. LÍNEAS DE DETALLE ────────────────────────────────────────────────
+        // ── LÍNEAS DE DETALLE ───────────────────────────────────────────────────
         // Acumuladores para calcular totales al final del bucle
         BigDecimal subtotal = BigDecimal.ZERO;
         BigDecimal taxAmount = BigDecimal.ZERO;
 
         for (CreateSaleRequest.SaleDetailRequest detailRequest : request.getDetails()) {
-            Product product = productRepository.findById(detailRequest.getProductId())
-                    .orElseThrow(() -> new EntityNotFoundException("Producto no encontrado: " + detailRequest.getProductId()));
+            Product product = products.get(detailRequest.getProductId());
 
             // Construir línea de detalle con snapshot del nombre y precio al momento de la venta
             InvoiceDetail detail = InvoiceDetail.builder()
-                    .invoice(savedInvoice)
                     .product(product)
                     .productName(product.getName())                  // snapshot: nombre al momento de venta
                     .quantity(detailRequest.getQuantity())
                     .unitPrice(detailRequest.getUnitPrice())         // precio enviado desde el frontend
-                    .costPrice(product.getCostPrice())               // costo para cálculo de margen
+                    .costPrice(product.getAverageCost().setScale(2, RoundingMode.HALF_UP)) // snapshot: costo promedio para el margen
                     .discountAmount(detailRequest.getDiscountAmount() != null ? detailRequest.getDiscountAmount() : BigDecimal.ZERO)
                     .notes(detailRequest.getNotes())                 // exigencias/notas del cliente
                     .kitchenStatus(KitchenStatus.ENTREGADO)          // POS directo: ya se entrega en caja
                     .build();
 
-            // Subtotal de línea = (precio × cantidad) − descuento por ítem
-            BigDecimal lineSubtotal = detail.getUnitPrice().multiply(detail.getQuantity()).subtract(detail.getDiscountAmount());
-            // Impuesto de línea = subtotal × tasa de impuesto del producto (en %)
-            BigDecimal lineTax = lineSubtotal.multiply(product.getTaxRate().divide(BigDecimal.valueOf(100)));
-
-            detail.setSubtotal(lineSubtotal);
-            detail.setTaxAmount(lineTax);
+            // Subtotal e impuesto de línea con el mismo motor que mesas y cotizaciones
+            SaleTotalsCalculator.applyLine(detail, product.getTaxRate());
 
             // Acumular en totales de factura
-            subtotal = subtotal.add(lineSubtotal);
-            taxAmount = taxAmount.add(lineTax);
-
-            invoiceDetailRepository.save(detail);
-
-            // Descontar stock inmediatamente al registrar la venta
-            inventoryService.removeStock(
-                    product.getId(),
-                    detail.getQuantity(),
-                    "Venta - Factura " + invoiceNumber,
-                    user
-            );
-        }
+            subtotal = subtotal.add(detail.getSubtotal());
+            taxAmount = taxAmount.add(detail.getTaxAmount());
 
-        // ── 6. CÁLCULO DE TOTALES ───────────────────────────────────────────────
-        // Descuento global sobre el subtotal acumulado (porcentaje aplicado al total)
-        BigDecimal discountAmount = request.getDiscountPercent() != null && request.getDiscountPercent().compareTo(BigDecimal.ZERO) > 0
-                ? subtotal.multiply(request.getDiscountPercent().divide(BigDecimal.valueOf(100), 2, java.math.RoundingMode.HALF_UP))
-                : BigDecimal.ZERO;
-
-        // Base sobre la que se aplica cargo de servicio y domicilio
-        BigDecimal afterDiscount = subtotal.add(taxAmount).subtract(discountAmount);
-
-        // Cargo de servicio — si viene monto fijo lo usa directamente, si no calcula desde porcentaje
-        BigDecimal serviceChargePercent = request.getServiceChargePercent() != null ? request.getServiceChargePercent() : BigDecimal.ZERO;
-        BigDecimal fixedServiceAmount = request.getServiceChargeAmount() != null ? request.getServiceChargeAmount() : BigDecimal.ZERO;
-        BigDecimal serviceChargeAmount;
-        if (fixedServiceAmount.compareTo(BigDecimal.ZERO) > 0) {
-            serviceChargeAmount = fixedServiceAmount;
-            serviceChargePercent = BigDecimal.ZERO;
-        } else if (serviceChargePercent.compareTo(BigDecimal.ZERO) > 0) {
-            serviceChargeAmount = afterDiscount.multiply(serviceChargePercent).divide(BigDecimal.valueOf(100), 2, java.math.RoundingMode.HALF_UP);
-        } else {
-            serviceChargeAmount = BigDecimal.ZERO;
+            invoice.addDetail(detail);
         }
 
-        // Cargo de domicilio (monto fijo, opcional)
-        BigDecimal deliveryChargeAmount = request.getDeliveryChargeAmount() != null ? request.getDeliveryChargeAmount() : BigDecimal.ZERO;
-
-        // ── 7. PERSISTIR TOTALES ────────────────────────────────────────────────
-        savedInvoice.setSubtotal(subtotal);
-        savedInvoice.setTaxAmount(taxAmount);
-        savedInvoice.setDiscountAmount(discountAmount);
-        savedInvoice.setServiceChargePercent(serviceChargePercent);
-        savedInvoice.setServiceChargeAmount(serviceChargeAmount);
-        savedInvoice.setDeliveryChargeAmount(deliveryChargeAmount);
-        // Total final = (subtotal + impuestos − descuento) + servicio + domicilio
-        savedInvoice.setTotal(afterDiscount.add(serviceChargeAmount).add(deliveryChargeAmount));
+        // ── CÁLCULO DE TOTALES ──────────────────────────────────────────────────
+        // Descuento global, cargo de servicio (fijo o %) y domicilio
+        SaleTotalsCalculator.totals(subtotal, taxAmount, request.getDiscountPercent(),
+                request.getServiceChargePercent(), request.getServiceChargeAmount(),
+                request.getDeliveryChargeAmount()).applyTo(invoice);
 
         // Calcular cambio (vuelto) si el cliente pagó más del total
         if (request.getAmountReceived() != null) {
-            savedInvoice.setChangeAmount(request.getAmountReceived().subtract(savedInvoice.getTotal()));
+            invoice.setChangeAmount(request.getAmountReceived().subtract(invoice.getTotal()));
         }
 
         // Pago mixto: guardar montos individuales si aplica
         if (request.getCashAmount() != null && request.getCashAmount().compareTo(BigDecimal.ZERO) > 0) {
-            savedInvoice.setCashAmount(request.getCashAmount());
+            invoice.setCashAmount(request.getCashAmount());
         }
         if (request.getTransferAmount() != null && request.getTransferAmount().compareTo(BigDecimal.ZERO) > 0) {
-            savedInvoice.setTransferAmount(request.getTransferAmount());
+            invoice.setTransferAmount(request.getTransferAmount());
         }
 
-        Invoice finalInvoice = invoiceRepository.save(savedInvoice);
-        log.info("Venta creada: {} - Total: {}", invoiceNumber, finalInvoice.getTotal());
+        // ── PERSISTIR ───────────────────────────────────────────────────────────
+        // La cabecera sale con sus totales en un solo INSERT; los detalles se persisten en
+        // cascada con IDs por secuencia (pooled), así que sus INSERT salen en un solo lote
+        Invoice savedInvoice = invoiceRepository.save(invoice);
+        eventPublisher.publishEvent(SaleEvent.completed(savedInvoice));
 
-        // Ventas directas del POS no emiten SSE a cocina — solo mesas activas lo hacen
+        // Descontar stock de todo el carrito con un UPDATE condicional; la validación previa
+        // sobre el inventario cargado es solo un atajo, la que cuenta es la de las filas
+        // bloqueadas, que además deja intacto lo reservado por mesas
+        Map<Long, BigDecimal> deducted = stockQuantities(request);
+        inventoryService.removeUnreservedStockBatch(deducted, "Venta - Factura " + invoiceNumber, user);
+        recipeService.recordDeducted(savedInvoice.getId(), deducted);
 
-        return InvoiceResponse.fromEntity(finalInvoice);
+        return savedInvoice;
     }
 
     @Transactional
@@ -246,15 +342,28 @@ public class InvoiceService {
             throw new IllegalArgumentException("La factura ya está anulada");
         }
 
-        for (InvoiceDetail detail : invoice.getDetails()) {
-            inventoryService.addStock(
-                    detail.getProduct().getId(),
-                    detail.getQuantity(),
-                    "Anulación - Factura " + invoice.getInvoiceNumber(),
-                    user
-            );
+        // Se devuelve lo que la factura descontó, con la receta de ese momento. Las líneas de
+        // una mesa sin pagar solo tenían stock reservado
+        Map<Long, BigDecimal> returned = recipeService.deductedFor(invoice.getId());
+        if (returned.isEmpty()) {
+            // Factura anterior a V30: se explota con la receta actual
+            Map<Long, BigDecimal> lines = new LinkedHashMap<>();
+            for (InvoiceDetail detail : invoice.getDetails()) {
+                if (!Boolean.FALSE.equals(detail.getStockDeducted())) {
+                    lines.merge(detail.getProduct().getId(), detail.getQuantity(), BigDecimal::add);
+                }
+            }
+            returned = recipeService.explode(lines);
+        }
+        stockReservationService.releaseAll(invoice.getId());
+        if (!returned.isEmpty()) {
+            inventoryService.addStockBatch(returned, "Anulación - Factura " + invoice.getInvoiceNumber(), user);
         }
 
+        // Solo una venta completada sumó a los acumulados de reportes
+        if (InvoiceStatus.COMPLETADA.equals(invoice.getStatus())) {
+            eventPublisher.publishEvent(SaleEvent.voided(invoice));
+        }
         invoice.setStatus(InvoiceStatus.ANULADA);
         invoice.setVoidedBy(user);
         invoice.setVoidedAt(LocalDateTime.now());
@@ -272,11 +381,92 @@ public class InvoiceService {
         return InvoiceResponse.fromEntity(voidedInvoice);
     }
 
-    private String generateInvoiceNumber() {
-        String prefix = "V";
-        String datePart = java.time.LocalDate.now().format(java.time.format.DateTimeFormatter.ofPattern("MMdd"));
-        Long count = invoiceRepository.countByInvoiceNumberStartingWith(prefix + datePart) + 1;
-        return String.format("%s%s-%04d", prefix, datePart, count);
+    /**
+     * Carga los productos del carrito junto con su inventario en una sola consulta.
+     */
+    private Map<Long, Product> loadCartProducts(List<CreateSaleRequest.SaleDetailRequest> lines) {
+        Set<Long> productIds = lines.stream()
+                .map(CreateSaleRequest.SaleDetailRequest::getProductId)
+                .collect(Collectors.toSet());
+        Map<Long, Product> products = productRepository.findAllByIdWithInventory(productIds).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        for (Long productId : productIds) {
+            if (!products.containsKey(productId)) {
+                throw new EntityNotFoundException("Producto no encontrado: " + productId);
+            }
+        }
+        return products;
+    }
+
+    /**
+     * Cantidad total pedida por producto; las líneas repetidas del mismo producto se suman.
+     */
+    static Map<Long, BigDecimal> quantitiesByProduct(CreateSaleRequest request) {
+        Map<Long, BigDecimal> quantities = new LinkedHashMap<>();
+        for (CreateSaleRequest.SaleDetailRequest detail : request.getDetails()) {
+            quantities.merge(detail.getProductId(), detail.getQuantity(), BigDecimal::add);
+        }
+        return quantities;
+    }
+
+    /**
+     * Cantidades a descontar del inventario por una venta: las del carrito por producto, con
+     * los productos que tienen receta reemplazados por sus ingredientes (ver {@link RecipeService}).
+     */
+    public Map<Long, BigDecimal> stockQuantities(CreateSaleRequest request) {
+        return recipeService.explode(quantitiesByProduct(request));
+    }
+
+    /**
+     * Agrega al mapa de productos precargados los ingredientes que faltan (con su inventario),
+     * en una sola consulta, para validar el stock de una venta con receta.
+     */
+    public void addStockProducts(Map<Long, Product> products, Collection<Long> stockProductIds) {
+        List<Long> missing = stockProductIds.stream().filter(id -> !products.containsKey(id)).toList();
+        if (!missing.isEmpty()) {
+            productRepository.findAllByIdWithInventory(missing).forEach(p -> products.put(p.getId(), p));
+        }
+    }
+
+    /**
+     * Stock disponible según el inventario cargado con los productos (o los contadores del
+     * libro de stock, si está activo), menos lo reservado por mesas abiertas (ID de producto →
+     * cantidad). Es una lectura sin bloqueo para rechazar pronto; el descuento vuelve a validar.
+     * Los descuentos posteriores no actualizan estas entidades; quien registre varias ventas
+     * sobre el mismo mapa debe restar lo vendido.
+     */
+    public Map<Long, BigDecimal> availableStock(Map<Long, Product> products) {
+        Map<Long, BigDecimal> available = new HashMap<>();
+        if (stockLedger.isEnabled()) {
+            available.putAll(stockLedger.quantities(products.keySet()));
+        } else {
+            products.forEach((id, product) -> {
+                if (product.getInventory() != null) {
+                    available.put(id, product.getInventory().getQuantity());
+                }
+            });
+        }
+        return stockReservationService.subtractHeld(available);
+    }
+
+    /**
+     * Verifica el stock del carrito contra el disponible precargado.
+     *
+     * @return mensaje del primer faltante, o null si alcanza para todo
+     */
+    static String checkStock(Map<Long, Product> products, Map<Long, BigDecimal> available,
+                             Map<Long, BigDecimal> quantities) {
+        for (Map.Entry<Long, BigDecimal> entry : quantities.entrySet()) {
+            BigDecimal quantity = available.get(entry.getKey());
+            if (quantity == null) {
+                return "Inventario no encontrado para producto ID: " + entry.getKey();
+            }
+            if (quantity.compareTo(entry.getValue()) < 0) {
+                return String.format("Stock insuficiente para %s. Disponible: %s, Solicitado: %s",
+                        products.get(entry.getKey()).getName(), quantity, entry.getValue());
+            }
+        }
+        return null;
     }
 
     @Transactional(readOnly = true)
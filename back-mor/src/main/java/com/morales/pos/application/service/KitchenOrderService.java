@@ -4,6 +4,7 @@ import com.morales.pos.domain.entity.InvoiceDetail;
 import com.morales.pos.domain.entity.KitchenOrder;
 import com.morales.pos.domain.entity.RestaurantTable;
 import com.morales.pos.domain.enums.KitchenStatus;
+import com.morales.pos.domain.enums.OutboxEventType;
 import com.morales.pos.domain.repository.KitchenOrderRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -21,6 +22,7 @@ public class KitchenOrderService {
 
     private final KitchenOrderRepository kitchenOrderRepository;
     private final SseService sseService;
+    private final OutboxPublisher outboxPublisher;
 
     /**
      * Create kitchen order for an invoice detail
@@ -62,19 +64,15 @@ public class KitchenOrderService {
         log.info("Kitchen order created: Table {} - Sequence {} - Product: {}", 
                  table.getName(), nextSequence, invoiceDetail.getProductName());
 
-        // Emit SSE notification to kitchen, but don't break the transaction if a client disconnects
-        try {
-            sseService.broadcastToRoles("new_order", Map.of(
-                    "type", "NEW_ORDER",
-                    "tableId", table.getId(),
-                    "tableName", table.getName(),
-                    "orderId", saved.getId(),
-                    "productName", invoiceDetail.getProductName(),
-                    "quantity", invoiceDetail.getQuantity()
-            ), "COCINERO", "ADMIN", "SUPERVISOR");
-        } catch (Exception e) {
-            log.warn("Failed to broadcast new kitchen order {}: {}", saved.getId(), e.getMessage());
-        }
+        // The kitchen screens are notified after commit through the outbox
+        outboxPublisher.publish(OutboxEventType.KITCHEN_ORDER_CREATED, "KITCHEN_ORDER", saved.getId(), Map.of(
+                "type", "NEW_ORDER",
+                "tableId", table.getId(),
+                "tableName", table.getName(),
+                "orderId", saved.getId(),
+                "productName", invoiceDetail.getProductName(),
+                "quantity", invoiceDetail.getQuantity()
+        ));
 
         return saved;
     }
@@ -1,6 +1,8 @@
 package com.morales.pos.application.service;
 
+import com.morales.pos.application.dto.response.InventoryLotResponse;
 import com.morales.pos.application.dto.response.NotificationResponse;
+import com.morales.pos.application.service.StockAlertEngine.StockAlert;
 import com.morales.pos.domain.entity.Notification;
 import com.morales.pos.domain.entity.TableSession;
 import com.morales.pos.domain.entity.User;
@@ -18,8 +20,12 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -111,28 +117,98 @@ public class NotificationService {
         );
     }
 
-    public void notifyLowStock(String productName, Long productId, int currentStock, int minStock) {
-        createNotification(
-                NotificationType.LOW_STOCK,
-                "Stock bajo: " + productName,
-                String.format("El producto %s tiene %d unidades (mínimo: %d)", productName, currentStock, minStock),
-                NotificationSeverity.WARNING,
-                List.of("ADMIN", "INVENTARIO"),
-                "PRODUCT",
-                productId
-        );
+    /**
+     * Crea en lote las notificaciones de los cruces de umbral de {@link StockAlertEngine}, con
+     * una sola consulta para omitir los productos que ya tienen una alerta sin leer.
+     *
+     * @return cantidad de notificaciones creadas
+     */
+    @Transactional
+    public int createStockAlerts(List<StockAlert> alerts) {
+        if (alerts.isEmpty()) {
+            return 0;
+        }
+        Set<String> unread = new HashSet<>();
+        notificationRepository.findUnreadReferences(
+                List.of(NotificationType.LOW_STOCK, NotificationType.OUT_OF_STOCK),
+                alerts.stream().map(StockAlert::productId).toList()
+        ).forEach(row -> unread.add(row[0] + ":" + row[1]));
+
+        List<Notification> notifications = new ArrayList<>();
+        for (StockAlert alert : alerts) {
+            Notification notification = alert.level() == StockAlertEngine.Level.OUT
+                    ? outOfStockNotification(alert.productName(), alert.productId())
+                    : lowStockNotification(alert.productName(), alert.productId(),
+                            alert.quantity().intValue(), alert.minStock() != null ? alert.minStock().intValue() : 0);
+            if (unread.add(notification.getType() + ":" + alert.productId())) {
+                notifications.add(notification);
+            }
+        }
+        notificationRepository.saveAll(notifications);
+        return notifications.size();
     }
 
-    public void notifyOutOfStock(String productName, Long productId) {
-        createNotification(
-                NotificationType.OUT_OF_STOCK,
-                "Sin stock: " + productName,
-                String.format("El producto %s se ha agotado", productName),
-                NotificationSeverity.ERROR,
-                List.of("ADMIN", "INVENTARIO", "CAJERO"),
-                "PRODUCT",
-                productId
-        );
+    /**
+     * Crea en lote las notificaciones de lotes por vencer de {@link InventoryLotService},
+     * omitiendo los lotes que ya tienen una alerta sin leer.
+     *
+     * @return cantidad de notificaciones creadas
+     */
+    @Transactional
+    public int createLotExpiryAlerts(List<InventoryLotResponse> lots) {
+        if (lots.isEmpty()) {
+            return 0;
+        }
+        Set<Long> unread = new HashSet<>();
+        notificationRepository.findUnreadReferences(
+                List.of(NotificationType.LOT_EXPIRING),
+                lots.stream().map(InventoryLotResponse::getId).toList()
+        ).forEach(row -> unread.add((Long) row[1]));
+
+        DateTimeFormatter format = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+        List<Notification> notifications = new ArrayList<>();
+        for (InventoryLotResponse lot : lots) {
+            if (!unread.add(lot.getId())) {
+                continue;
+            }
+            String label = lot.getLotCode() != null ? "lote " + lot.getLotCode() : "lote #" + lot.getId();
+            notifications.add(Notification.builder()
+                    .type(NotificationType.LOT_EXPIRING)
+                    .title((Boolean.TRUE.equals(lot.getExpired()) ? "Lote vencido: " : "Lote por vencer: ") + lot.getProductName())
+                    .message(String.format("El %s de %s (%s unidades) vence el %s", label, lot.getProductName(),
+                            lot.getRemainingQuantity().stripTrailingZeros().toPlainString(), lot.getExpiresAt().format(format)))
+                    .severity(Boolean.TRUE.equals(lot.getExpired()) ? NotificationSeverity.ERROR : NotificationSeverity.WARNING)
+                    .targetRoles(List.of("ADMIN", "INVENTARIO"))
+                    .referenceType("INVENTORY_LOT")
+                    .referenceId(lot.getId())
+                    .build());
+        }
+        notificationRepository.saveAll(notifications);
+        return notifications.size();
+    }
+
+    private Notification lowStockNotification(String productName, Long productId, int currentStock, int minStock) {
+        return Notification.builder()
+                .type(NotificationType.LOW_STOCK)
+                .title("Stock bajo: " + productName)
+                .message(String.format("El producto %s tiene %d unidades (mínimo: %d)", productName, currentStock, minStock))
+                .severity(NotificationSeverity.WARNING)
+                .targetRoles(List.of("ADMIN", "INVENTARIO"))
+                .referenceType("PRODUCT")
+                .referenceId(productId)
+                .build();
+    }
+
+    private Notification outOfStockNotification(String productName, Long productId) {
+        return Notification.builder()
+                .type(NotificationType.OUT_OF_STOCK)
+                .title("Sin stock: " + productName)
+                .message(String.format("El producto %s se ha agotado", productName))
+                .severity(NotificationSeverity.ERROR)
+                .targetRoles(List.of("ADMIN", "INVENTARIO", "CAJERO"))
+                .referenceType("PRODUCT")
+                .referenceId(productId)
+                .build();
     }
 
     // ==================== SCHEDULED CHECKS ====================
@@ -0,0 +1,154 @@
+package com.morales.pos.application.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.morales.pos.domain.entity.OutboxEvent;
+import com.morales.pos.domain.repository.OutboxEventRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Despacha los eventos del outbox a los {@link OutboxEventHandler} en un hilo propio.
+ *
+ * Camino normal: OutboxPublisher entrega los IDs de la transacción apenas hace commit.
+ * Respaldo: un sondeo periódico toma los pendientes con más de unos segundos (reinicio del
+ * nodo, handler caído) y los reintenta hasta app.outbox.max-attempts. Cada evento se procesa
+ * en su propia transacción con FOR UPDATE SKIP LOCKED, así nunca lo toman dos hilos a la vez.
+ */
+@Service
+@Slf4j
+public class OutboxDispatcher {
+
+    private static final int POLL_BATCH_SIZE = 100;
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final List<OutboxEventHandler> handlers;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxAttempts;
+    private final long graceSeconds;
+    private final long retentionDays;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "outbox-dispatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public OutboxDispatcher(OutboxEventRepository outboxEventRepository,
+                            List<OutboxEventHandler> handlers,
+                            ObjectMapper objectMapper,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${app.outbox.max-attempts:5}") int maxAttempts,
+                            @Value("${app.outbox.grace-seconds:10}") long graceSeconds,
+                            @Value("${app.outbox.retention-days:7}") long retentionDays) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.handlers = handlers;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.graceSeconds = graceSeconds;
+        this.retentionDays = retentionDays;
+    }
+
+    /**
+     * Entrega los eventos recién confirmados sin bloquear el hilo de la petición.
+     */
+    public void dispatchAsync(List<Long> eventIds) {
+        if (eventIds.isEmpty()) {
+            return;
+        }
+        try {
+            executor.execute(() -> dispatch(eventIds));
+        } catch (RejectedExecutionException e) {
+            log.warn("Outbox detenido, {} eventos quedan para el sondeo", eventIds.size());
+        }
+    }
+
+    // Los eventos recientes los despacha el camino normal; aquí solo los rezagados
+    @Scheduled(fixedDelayString = "${app.outbox.poll-interval-ms:5000}")
+    public void dispatchPending() {
+        List<Long> pending = outboxEventRepository.findPendingIdsCreatedBefore(
+                LocalDateTime.now().minusSeconds(graceSeconds), POLL_BATCH_SIZE);
+        if (!pending.isEmpty()) {
+            log.info("Outbox: {} eventos pendientes por reintentar", pending.size());
+            dispatchAsync(pending);
+        }
+    }
+
+    private void dispatch(List<Long> eventIds) {
+        for (Long id : eventIds) {
+            try {
+                transactionTemplate.executeWithoutResult(status ->
+                        outboxEventRepository.lockPending(id).ifPresent(this::deliver));
+            } catch (Exception e) {
+                recordFailure(id, e);
+            }
+        }
+    }
+
+    private void deliver(OutboxEvent event) {
+        JsonNode payload;
+        try {
+            payload = objectMapper.readTree(event.getPayload());
+        } catch (Exception e) {
+            throw new IllegalStateException("Payload inválido en evento " + event.getId(), e);
+        }
+        for (OutboxEventHandler handler : handlers) {
+            if (handler.supports(event.getEventType())) {
+                handler.handle(event.getEventType(), payload);
+            }
+        }
+        event.setAttempts(event.getAttempts() + 1);
+        event.setProcessedAt(LocalDateTime.now());
+    }
+
+    private void recordFailure(Long id, Exception error) {
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    outboxEventRepository.lockPending(id).ifPresent(event -> {
+                        String message = error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+                        event.setAttempts(event.getAttempts() + 1);
+                        event.setLastError(message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message);
+                        if (event.getAttempts() >= maxAttempts) {
+                            // Se marca como procesado para no reintentarlo más; queda el error para revisión
+                            event.setProcessedAt(LocalDateTime.now());
+                            log.error("Evento {} ({}) descartado tras {} intentos: {}",
+                                    event.getId(), event.getEventType(), event.getAttempts(), message);
+                        } else {
+                            log.warn("Error al despachar evento {} ({}), intento {}: {}",
+                                    event.getId(), event.getEventType(), event.getAttempts(), message);
+                        }
+                    }));
+        } catch (Exception e) {
+            log.error("No se pudo registrar el fallo del evento {}: {}", id, e.getMessage());
+        }
+    }
+
+    // Limpieza de eventos despachados
+    @Scheduled(cron = "0 15 4 * * ?") // Every day at 4:15 AM
+    @Transactional
+    public void cleanupProcessedEvents() {
+        int deleted = outboxEventRepository.deleteProcessedBefore(LocalDateTime.now().minusDays(retentionDays));
+        if (deleted > 0) {
+            log.info("Limpieza de outbox: {} eventos eliminados", deleted);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,18 @@
+package com.morales.pos.application.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.morales.pos.domain.enums.OutboxEventType;
+
+/**
+ * Consumidor de eventos del outbox. {@link OutboxDispatcher} entrega cada evento a todos
+ * los handlers que lo soportan, después del commit de la transacción que lo generó.
+ *
+ * La entrega es al menos una vez: si un handler falla el evento se reintenta completo,
+ * así que los demás deben tolerar recibirlo de nuevo.
+ */
+public interface OutboxEventHandler {
+
+    boolean supports(OutboxEventType type);
+
+    void handle(OutboxEventType type, JsonNode payload);
+}
@@ -0,0 +1,58 @@
+package com.morales.pos.application.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.morales.pos.domain.entity.OutboxEvent;
+import com.morales.pos.domain.enums.OutboxEventType;
+import com.morales.pos.domain.repository.OutboxEventRepository;
+import com.morales.pos.infrastructure.persistence.TransactionHooks;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registra eventos de dominio en outbox_events dentro de la transacción del negocio.
+ * Al hacer commit, los eventos de esa transacción se entregan a {@link OutboxDispatcher};
+ * si la transacción se revierte, los eventos desaparecen con ella.
+ */
+@Service
+@RequiredArgsConstructor
+public class OutboxPublisher {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final OutboxDispatcher outboxDispatcher;
+    private final ObjectMapper objectMapper;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publish(OutboxEventType type, String aggregateType, Long aggregateId, Map<String, ?> payload) {
+        OutboxEvent event = outboxEventRepository.save(OutboxEvent.builder()
+                .eventType(type)
+                .aggregateType(aggregateType)
+                .aggregateId(aggregateId)
+                .payload(serialize(payload))
+                .build());
+        pendingForCurrentTransaction().add(event.getId());
+    }
+
+    private List<Long> pendingForCurrentTransaction() {
+        return TransactionHooks.perTransaction(this, ArrayList::new, new TransactionHooks.Callbacks<List<Long>>() {
+            @Override
+            public void afterCommit(List<Long> ids) {
+                outboxDispatcher.dispatchAsync(List.copyOf(ids));
+            }
+        });
+    }
+
+    private String serialize(Map<String, ?> payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar el evento del outbox", e);
+        }
+    }
+}
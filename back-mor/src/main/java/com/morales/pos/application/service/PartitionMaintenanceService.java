@@ -0,0 +1,55 @@
+package com.morales.pos.application.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Mantiene creadas las particiones mensuales de las tablas particionadas por fecha
+ * (ver V20), para que los INSERT nunca caigan en la partición DEFAULT.
+ */
+@Service
+@Slf4j
+public class PartitionMaintenanceService {
+
+    private static final List<String> PARTITIONED_TABLES = List.of("inventory_movements");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int monthsAhead;
+
+    public PartitionMaintenanceService(JdbcTemplate jdbcTemplate,
+                                       @Value("${app.partitioning.months-ahead:3}") int monthsAhead) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.monthsAhead = Math.max(1, monthsAhead);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        ensurePartitions();
+    }
+
+    @Scheduled(cron = "0 45 2 * * ?") // Every day at 2:45 AM
+    public void ensurePartitions() {
+        LocalDate from = LocalDate.now().withDayOfMonth(1);
+        LocalDate to = from.plusMonths(monthsAhead);
+        for (String table : PARTITIONED_TABLES) {
+            try {
+                Integer created = jdbcTemplate.queryForObject("SELECT ensure_monthly_partitions(?, ?, ?)",
+                        Integer.class, table, Date.valueOf(from), Date.valueOf(to));
+                if (created != null && created > 0) {
+                    log.info("Particiones creadas para {}: {} (hasta {})", table, created, to);
+                }
+            } catch (Exception e) {
+                log.error("No se pudieron crear particiones para {}: {}", table, e.getMessage());
+            }
+        }
+    }
+}
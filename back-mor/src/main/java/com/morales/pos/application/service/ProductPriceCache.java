@@ -0,0 +1,95 @@
+package com.morales.pos.application.service;
+
+import com.morales.pos.domain.repository.ProductRepository;
+import com.morales.pos.infrastructure.persistence.TransactionHooks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snapshot en memoria de precio, impuesto y estado de los productos para cotizar carritos.
+ *
+ * Los productos que faltan se cargan en una sola consulta de proyección. ProductService
+ * invalida la entrada al editar un producto, al confirmar la edición; una carga que empezó
+ * antes de esa invalidación no se guarda, porque pudo leer el precio anterior. El
+ * vencimiento periódico cubre los cambios hechos desde otro nodo.
+ */
+@Service
+@Slf4j
+public class ProductPriceCache {
+
+    public record PriceSnapshot(Long productId, String name, BigDecimal salePrice, BigDecimal taxRate, boolean active) {
+    }
+
+    private final ProductRepository productRepository;
+    private final long ttlMillis;
+    private final Map<Long, PriceSnapshot> prices = new ConcurrentHashMap<>();
+    private volatile long loadedAt = System.currentTimeMillis();
+    // Avanza con cada invalidación
+    private final AtomicLong epoch = new AtomicLong();
+
+    public ProductPriceCache(ProductRepository productRepository,
+                             @Value("${app.pricing.snapshot-ttl-seconds:300}") long ttlSeconds) {
+        this.productRepository = productRepository;
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+
+    /**
+     * Precios de los productos pedidos; los IDs inexistentes no aparecen en el resultado.
+     */
+    public Map<Long, PriceSnapshot> getAll(Collection<Long> productIds) {
+        long now = System.currentTimeMillis();
+        if (now - loadedAt > ttlMillis) {
+            prices.clear();
+            loadedAt = now;
+        }
+
+        Map<Long, PriceSnapshot> result = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long id : productIds) {
+            PriceSnapshot snapshot = prices.get(id);
+            if (snapshot != null) {
+                result.put(id, snapshot);
+            } else {
+                missing.add(id);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            long loadEpoch = epoch.get();
+            for (Object[] row : productRepository.findPriceRowsByIdIn(missing)) {
+                PriceSnapshot snapshot = new PriceSnapshot(
+                        (Long) row[0],
+                        (String) row[1],
+                        row[2] != null ? (BigDecimal) row[2] : BigDecimal.ZERO,
+                        row[3] != null ? (BigDecimal) row[3] : BigDecimal.ZERO,
+                        Boolean.TRUE.equals(row[4]));
+                if (epoch.get() == loadEpoch) {
+                    prices.put(snapshot.productId(), snapshot);
+                }
+                result.put(snapshot.productId(), snapshot);
+            }
+            log.debug("Precios cargados para cotización: {} productos", missing.size());
+        }
+        return result;
+    }
+
+    /**
+     * Invalida el producto cuando la transacción actual confirma.
+     */
+    public void evict(Long productId) {
+        TransactionHooks.afterCommit(() -> {
+            epoch.incrementAndGet();
+            prices.remove(productId);
+        });
+    }
+}
@@ -29,6 +29,8 @@ public class ProductService {
     private final ProductRepository productRepository;
     private final CategoryRepository categoryRepository;
     private final InventoryRepository inventoryRepository;
+    private final ProductPriceCache productPriceCache;
+    private final InventoryValuationService inventoryValuationService;
 
     @Transactional(readOnly = true)
     public Page<ProductResponse> findAll(Pageable pageable) {
@@ -112,6 +114,7 @@ public class ProductService {
                 .category(category)
                 .imageUrl(request.getImageUrl())
                 .costPrice(request.getCostPrice())
+                .averageCost(request.getCostPrice() != null ? request.getCostPrice() : BigDecimal.ZERO)
                 .salePrice(request.getSalePrice())
                 .unit(request.getUnit())
                 .taxRate(request.getTaxRate())
@@ -129,6 +132,8 @@ public class ProductService {
                 .build();
         inventoryRepository.save(inventory);
         savedProduct.setInventory(inventory);
+        inventoryValuationService.recordNewProduct(savedProduct.getId(), Boolean.TRUE.equals(savedProduct.getIsActive()),
+                savedProduct.getAverageCost(), savedProduct.getSalePrice(), inventory.getQuantity(), inventory.getMinStock());
         
         log.info("Producto creado: {} ({})", savedProduct.getName(), savedProduct.getCode());
         return ProductResponse.fromEntity(savedProduct);
@@ -166,6 +171,8 @@ public class ProductService {
         if (request.getIsActive() != null) product.setIsActive(request.getIsActive());
         
         Product savedProduct = productRepository.save(product);
+        productPriceCache.evict(id);
+        inventoryValuationService.recordProduct(id, Boolean.TRUE.equals(savedProduct.getIsActive()), savedProduct.getSalePrice());
         log.info("Producto actualizado ID: {}", id);
         return ProductResponse.fromEntity(savedProduct);
     }
@@ -175,6 +182,8 @@ public class ProductService {
         Product product = findEntityById(id);
         product.setIsActive(false);
         productRepository.save(product);
+        productPriceCache.evict(id);
+        inventoryValuationService.recordProduct(id, false, product.getSalePrice());
         log.info("Producto desactivado ID: {}", id);
     }
 
@@ -0,0 +1,295 @@
+package com.morales.pos.application.service;
+
+import com.morales.pos.application.dto.request.UpdateRecipeRequest;
+import com.morales.pos.application.dto.response.RecipeResponse;
+import com.morales.pos.application.dto.response.RecipeResponse.RecipeItemResponse;
+import com.morales.pos.domain.entity.Product;
+import com.morales.pos.domain.entity.RecipeItem;
+import com.morales.pos.domain.repository.ProductRepository;
+import com.morales.pos.domain.repository.RecipeItemRepository;
+import com.morales.pos.infrastructure.persistence.TransactionHooks;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Recetas de productos y su explosión a ingredientes finales.
+ *
+ * Todas las recetas se leen en una sola consulta y se aplanan de una vez: para cada producto
+ * con receta queda un mapa ingrediente final → cantidad por unidad, así una venta solo busca
+ * en un mapa en lugar de recorrer el árbol. El caché se descarta al confirmar un cambio de
+ * receta en este nodo y vence cada app.recipes.cache-ttl-seconds por los cambios de otros nodos.
+ *
+ * Lo que cada factura descontó queda guardado ya explotado (V30): una anulación devuelve eso
+ * y no lo que diría la receta actual.
+ */
+@Service
+@Slf4j
+public class RecipeService {
+
+    private final RecipeItemRepository recipeItemRepository;
+    private final ProductRepository productRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final long ttlMillis;
+
+    private static final String RECORD_DEDUCTION_SQL =
+            "INSERT INTO invoice_stock_deductions (invoice_id, product_id, quantity) VALUES (?, ?, ?) " +
+            "ON CONFLICT (invoice_id, product_id) DO UPDATE SET quantity = invoice_stock_deductions.quantity + EXCLUDED.quantity";
+
+    private volatile Explosions explosions;
+    // Sube con cada cambio de receta confirmado; un caché cargado antes ya no sirve
+    private final AtomicLong epoch = new AtomicLong();
+
+    public RecipeService(RecipeItemRepository recipeItemRepository,
+                         ProductRepository productRepository,
+                         JdbcTemplate jdbcTemplate,
+                         @Value("${app.recipes.cache-ttl-seconds:300}") long ttlSeconds) {
+        this.recipeItemRepository = recipeItemRepository;
+        this.productRepository = productRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+
+    /**
+     * Convierte cantidades vendidas por producto en cantidades a descontar por producto de
+     * inventario: los productos con receta se reemplazan por sus ingredientes finales y los
+     * demás quedan igual. El resultado se redondea a la precisión del inventario (2 decimales).
+     */
+    public Map<Long, BigDecimal> explode(Map<Long, BigDecimal> quantities) {
+        Map<Long, Map<Long, BigDecimal>> flat = explosions();
+        if (flat.isEmpty()) {
+            return quantities;
+        }
+        Map<Long, BigDecimal> result = new LinkedHashMap<>();
+        quantities.forEach((productId, quantity) -> {
+            Map<Long, BigDecimal> leaves = flat.get(productId);
+            if (leaves == null) {
+                result.merge(productId, quantity, BigDecimal::add);
+            } else {
+                leaves.forEach((leafId, perUnit) -> result.merge(leafId, perUnit.multiply(quantity), BigDecimal::add));
+            }
+        });
+        result.replaceAll((id, quantity) -> quantity.setScale(2, RoundingMode.HALF_UP));
+        result.values().removeIf(quantity -> quantity.signum() == 0);
+        return result;
+    }
+
+    /**
+     * Guarda lo que una factura descontó del inventario, ya explotado (ver {@link #explode}),
+     * en la transacción del descuento.
+     */
+    public void recordDeducted(Long invoiceId, Map<Long, BigDecimal> deducted) {
+        List<Object[]> rows = new ArrayList<>(deducted.size());
+        deducted.forEach((productId, quantity) -> rows.add(new Object[]{invoiceId, productId, quantity}));
+        jdbcTemplate.batchUpdate(RECORD_DEDUCTION_SQL, rows);
+    }
+
+    /**
+     * Lo descontado por una factura según {@link #recordDeducted}; vacío si la factura es
+     * anterior a V30 o no descontó stock.
+     */
+    public Map<Long, BigDecimal> deductedFor(Long invoiceId) {
+        Map<Long, BigDecimal> deducted = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT product_id, quantity FROM invoice_stock_deductions WHERE invoice_id = ? ORDER BY product_id",
+                rs -> {
+                    deducted.put(rs.getLong(1), rs.getBigDecimal(2));
+                }, invoiceId);
+        return deducted;
+    }
+
+    public boolean hasRecipe(Long productId) {
+        return explosions().containsKey(productId);
+    }
+
+    @Transactional(readOnly = true)
+    public RecipeResponse getRecipe(Long productId) {
+        Product product = productRepository.findById(productId)
+                .orElseThrow(() -> new EntityNotFoundException("Producto no encontrado: " + productId));
+
+        return toResponse(product, recipeItemRepository.findByProductIdWithIngredient(productId),
+                explosions().getOrDefault(productId, Map.of()));
+    }
+
+    /**
+     * Reemplaza la receta de un producto. Rechaza ingredientes repetidos, inexistentes o que
+     * formen un ciclo (un ingrediente que, directa o indirectamente, usa al mismo producto).
+     */
+    @Transactional
+    public RecipeResponse updateRecipe(Long productId, UpdateRecipeRequest request) {
+        Product product = productRepository.findById(productId)
+                .orElseThrow(() -> new EntityNotFoundException("Producto no encontrado: " + productId));
+
+        Map<Long, BigDecimal> lines = new LinkedHashMap<>();
+        for (UpdateRecipeRequest.RecipeLine line : request.getItems()) {
+            if (line.getIngredientId().equals(productId)) {
+                throw new IllegalArgumentException("Un producto no puede ser ingrediente de sí mismo");
+            }
+            if (lines.put(line.getIngredientId(), line.getQuantity()) != null) {
+                throw new IllegalArgumentException("Ingrediente repetido en la receta: " + line.getIngredientId());
+            }
+        }
+        Map<Long, Product> ingredients = productRepository.findAllById(lines.keySet()).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        for (Long ingredientId : lines.keySet()) {
+            if (!ingredients.containsKey(ingredientId)) {
+                throw new EntityNotFoundException("Ingrediente no encontrado: " + ingredientId);
+            }
+        }
+
+        // Un cambio de receta a la vez: la verificación de ciclos ve las recetas confirmadas
+        jdbcTemplate.execute("LOCK TABLE product_recipes IN SHARE ROW EXCLUSIVE MODE");
+        Map<Long, Map<Long, BigDecimal>> graph = loadGraph();
+        if (lines.isEmpty()) {
+            graph.remove(productId);
+        } else {
+            graph.put(productId, lines);
+        }
+        for (Long ingredientId : lines.keySet()) {
+            if (reaches(graph, ingredientId, productId, new HashSet<>())) {
+                throw new IllegalArgumentException("La receta forma un ciclo: " + ingredients.get(ingredientId).getName()
+                        + " usa directa o indirectamente a " + product.getName());
+            }
+        }
+
+        recipeItemRepository.deleteByProductId(productId);
+        recipeItemRepository.flush();
+        List<RecipeItem> items = new ArrayList<>(lines.size());
+        lines.forEach((ingredientId, quantity) -> items.add(RecipeItem.builder()
+                .product(product)
+                .ingredient(ingredients.get(ingredientId))
+                .quantity(quantity)
+                .build()));
+        recipeItemRepository.saveAll(items);
+
+        invalidateAfterCommit();
+        log.info("Receta actualizada para producto {}: {} ingredientes", product.getName(), items.size());
+
+        // La respuesta usa el grafo de esta transacción; el caché se recarga después del commit
+        return toResponse(product, items, flatten(graph).getOrDefault(productId, Map.of()));
+    }
+
+    private RecipeResponse toResponse(Product product, List<RecipeItem> items, Map<Long, BigDecimal> leaves) {
+        List<RecipeItemResponse> itemResponses = items.stream()
+                .map(item -> RecipeItemResponse.builder()
+                        .ingredientId(item.getIngredient().getId())
+                        .ingredientCode(item.getIngredient().getCode())
+                        .ingredientName(item.getIngredient().getName())
+                        .quantity(item.getQuantity())
+                        .build())
+                .toList();
+
+        Map<Long, Product> leafProducts = productRepository.findAllById(leaves.keySet()).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        List<RecipeItemResponse> explosion = new ArrayList<>();
+        leaves.forEach((leafId, quantity) -> {
+            Product leaf = leafProducts.get(leafId);
+            explosion.add(RecipeItemResponse.builder()
+                    .ingredientId(leafId)
+                    .ingredientCode(leaf != null ? leaf.getCode() : null)
+                    .ingredientName(leaf != null ? leaf.getName() : null)
+                    .quantity(quantity)
+                    .build());
+        });
+
+        return RecipeResponse.builder()
+                .productId(product.getId())
+                .productName(product.getName())
+                .items(itemResponses)
+                .explosion(explosion)
+                .build();
+    }
+
+    private Map<Long, Map<Long, BigDecimal>> explosions() {
+        Explosions current = explosions;
+        long now = System.currentTimeMillis();
+        if (current == null || current.epoch() != epoch.get() || now - current.loadedAt() > ttlMillis) {
+            // Si una receta cambia durante la carga, el epoch ya no coincide y la próxima lectura recarga
+            long loadEpoch = epoch.get();
+            current = new Explosions(flatten(loadGraph()), loadEpoch, now);
+            explosions = current;
+            log.debug("Caché de recetas cargado: {} productos con receta", current.byProduct().size());
+        }
+        return current.byProduct();
+    }
+
+    private Map<Long, Map<Long, BigDecimal>> loadGraph() {
+        Map<Long, Map<Long, BigDecimal>> graph = new HashMap<>();
+        for (Object[] edge : recipeItemRepository.findAllEdges()) {
+            graph.computeIfAbsent((Long) edge[0], id -> new LinkedHashMap<>()).put((Long) edge[1], (BigDecimal) edge[2]);
+        }
+        return graph;
+    }
+
+    /**
+     * Aplana todas las recetas: producto → ingrediente final → cantidad por unidad.
+     */
+    private static Map<Long, Map<Long, BigDecimal>> flatten(Map<Long, Map<Long, BigDecimal>> graph) {
+        Map<Long, Map<Long, BigDecimal>> flat = new HashMap<>();
+        for (Long productId : graph.keySet()) {
+            flatten(graph, productId, flat, new HashSet<>());
+        }
+        return Map.copyOf(flat);
+    }
+
+    private static Map<Long, BigDecimal> flatten(Map<Long, Map<Long, BigDecimal>> graph, Long productId,
+                                                 Map<Long, Map<Long, BigDecimal>> flat, Set<Long> path) {
+        Map<Long, BigDecimal> done = flat.get(productId);
+        if (done != null) {
+            return done;
+        }
+        if (!path.add(productId)) {
+            throw new IllegalStateException("Ciclo en las recetas del producto ID: " + productId);
+        }
+        Map<Long, BigDecimal> leaves = new LinkedHashMap<>();
+        graph.get(productId).forEach((ingredientId, perUnit) -> {
+            if (graph.containsKey(ingredientId)) {
+                flatten(graph, ingredientId, flat, path)
+                        .forEach((leafId, leafQty) -> leaves.merge(leafId, leafQty.multiply(perUnit), BigDecimal::add));
+            } else {
+                leaves.merge(ingredientId, perUnit, BigDecimal::add);
+            }
+        });
+        path.remove(productId);
+        Map<Long, BigDecimal> result = Map.copyOf(leaves);
+        flat.put(productId, result);
+        return result;
+    }
+
+    private static boolean reaches(Map<Long, Map<Long, BigDecimal>> graph, Long from, Long target, Set<Long> visited) {
+        if (from.equals(target)) {
+            return true;
+        }
+        if (!visited.add(from)) {
+            return false;
+        }
+        for (Long next : graph.getOrDefault(from, Map.of()).keySet()) {
+            if (reaches(graph, next, target, visited)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void invalidateAfterCommit() {
+        TransactionHooks.afterCommit(epoch::incrementAndGet);
+    }
+
+    private record Explosions(Map<Long, Map<Long, BigDecimal>> byProduct, long epoch, long loadedAt) {
+    }
+}
@@ -0,0 +1,69 @@
+package com.morales.pos.application.service;
+
+import com.morales.pos.infrastructure.cache.BoundedCache;
+import com.morales.pos.infrastructure.cache.BoundedCache.Stats;
+import com.morales.pos.infrastructure.cache.ReportCacheKey;
+import com.morales.pos.infrastructure.config.CacheConfig;
+import com.morales.pos.infrastructure.persistence.TransactionHooks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Invalidación de los cachés de reportes por eventos de este nodo.
+ *
+ * Una venta o anulación desaloja los reportes cuyo rango incluye la fecha de la factura (una
+ * anulación de un mes anterior no toca los reportes de hoy) y el tablero; un cambio de stock
+ * solo desaloja el tablero, que es el único que muestra el valor del inventario. Los cambios
+ * de otros nodos se ven al vencer las entradas (app.report-cache.ttl-seconds).
+ */
+@Service
+@Slf4j
+public class ReportCacheService {
+
+    private final BoundedCache reports;
+    private final BoundedCache dashboard;
+
+    public ReportCacheService(CacheManager cacheManager) {
+        this.reports = (BoundedCache) cacheManager.getCache(CacheConfig.REPORTS);
+        this.dashboard = (BoundedCache) cacheManager.getCache(CacheConfig.DASHBOARD);
+    }
+
+    /**
+     * Desaloja los reportes afectados por facturas con estas fechas al confirmar la transacción.
+     */
+    public void salesChanged(Collection<LocalDateTime> invoiceDates) {
+        List<LocalDateTime> dates = List.copyOf(invoiceDates);
+        TransactionHooks.afterCommit(() -> {
+            int removed = reports.evictIf(key -> key instanceof ReportCacheKey report && dates.stream().anyMatch(report::covers));
+            dashboard.clear();
+            log.debug("Caché de reportes: {} entradas invalidadas por {} facturas", removed, dates.size());
+        });
+    }
+
+    @EventListener
+    public void onSale(SaleEvent event) {
+        salesChanged(List.of(event.saleTime()));
+    }
+
+    /**
+     * Desaloja el tablero por un cambio de stock ya confirmado.
+     */
+    public void stockChanged() {
+        dashboard.clear();
+    }
+
+    public void clear() {
+        reports.clear();
+        dashboard.clear();
+    }
+
+    public List<Stats> getStats() {
+        return List.of(reports.getStats(), dashboard.getStats());
+    }
+}
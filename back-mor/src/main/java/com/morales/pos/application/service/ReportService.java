@@ -1,10 +1,15 @@
 package com.morales.pos.application.service;
 
 import com.morales.pos.application.dto.response.ReportResponse.*;
-import com.morales.pos.domain.enums.InvoiceStatus;
+import com.morales.pos.application.service.ArchiveQueryService.ArchivedSales;
+import com.morales.pos.application.service.SalesSnapshotService.Plan;
+import com.morales.pos.application.service.SalesSnapshotService.Range;
+import com.morales.pos.application.service.SalesSnapshotService.Snapshot;
 import com.morales.pos.domain.repository.*;
+import com.morales.pos.infrastructure.config.CacheConfig;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -13,7 +18,10 @@ import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -21,19 +29,33 @@ import java.util.List;
 public class ReportService {
 
     private final InvoiceRepository invoiceRepository;
-    private final InvoiceDetailRepository invoiceDetailRepository;
-    private final ProductRepository productRepository;
-    private final InventoryRepository inventoryRepository;
+    private final ArchiveQueryService archiveQueryService;
+    private final SalesRollupService salesRollupService;
+    private final SalesSnapshotService salesSnapshotService;
+    private final InventoryValuationService inventoryValuationService;
 
+    // Las ventas de la base salen de los acumulados por día y hora (SalesRollupService) y los
+    // días cerrados de sus totales congelados (SalesSnapshotService)
+    @Cacheable(cacheNames = CacheConfig.REPORTS, keyGenerator = "reportKeyGenerator", sync = true)
     @Transactional(readOnly = true)
     public SalesSummary getSalesSummary(LocalDateTime start, LocalDateTime end) {
-        BigDecimal totalSales = invoiceRepository.sumTotalByDateRangeAndStatus(start, end, InvoiceStatus.COMPLETADA);
-        Long salesCount = invoiceRepository.countByCreatedAtBetweenAndStatus(start, end, InvoiceStatus.COMPLETADA);
-        BigDecimal totalCost = invoiceDetailRepository.sumCostByDateRange(start, end);
-
-        totalSales = totalSales != null ? totalSales : BigDecimal.ZERO;
-        salesCount = salesCount != null ? salesCount : 0L;
-        totalCost = totalCost != null ? totalCost : BigDecimal.ZERO;
+        // Días cerrados desde su total congelado; en vivo solo el día abierto y los bordes
+        Plan plan = salesSnapshotService.plan(start, end);
+        BigDecimal totalSales = BigDecimal.ZERO;
+        long salesCount = 0;
+        BigDecimal totalCost = BigDecimal.ZERO;
+        for (Snapshot snapshot : plan.frozen()) {
+            totalSales = totalSales.add(snapshot.totalSales());
+            salesCount += snapshot.salesCount();
+            totalCost = totalCost.add(snapshot.totalCost());
+        }
+        for (Range range : plan.live()) {
+            Object[] totals = salesRollupService.getTotals(range.start(), range.end());
+            ArchivedSales archived = archiveQueryService.getSales(range.start(), range.end());
+            totalSales = totalSales.add((BigDecimal) totals[0]).add(archived.totalSales());
+            salesCount += (Long) totals[1] + archived.salesCount();
+            totalCost = totalCost.add(salesRollupService.getCost(range.start(), range.end())).add(archived.totalCost());
+        }
 
         BigDecimal averageTicket = salesCount > 0 
             ? totalSales.divide(BigDecimal.valueOf(salesCount), 2, RoundingMode.HALF_UP)
@@ -68,12 +90,24 @@ public class ReportService {
         return getSalesSummary(startOfMonth, endOfMonth);
     }
 
+    @Cacheable(cacheNames = CacheConfig.REPORTS, keyGenerator = "reportKeyGenerator", sync = true)
     @Transactional(readOnly = true)
     public List<DailySales> getDailySales(LocalDate startDate, LocalDate endDate) {
-        List<Object[]> results = invoiceRepository.getDailySales(
-            startDate.atStartOfDay(), 
-            endDate.atTime(23, 59, 59)
-        );
+        LocalDateTime start = startDate.atStartOfDay();
+        LocalDateTime end = endDate.atTime(23, 59, 59);
+        Plan plan = salesSnapshotService.plan(start, end);
+        List<Object[]> results = new ArrayList<>();
+        for (Snapshot snapshot : plan.frozen()) {
+            if (snapshot.salesCount() > 0) {
+                results.add(new Object[]{snapshot.date(), snapshot.totalSales(), snapshot.salesCount()});
+            }
+        }
+        for (Range range : plan.live()) {
+            results.addAll(mergeRows(salesRollupService.getDailySales(range.start(), range.end()),
+                    archiveQueryService.getSales(range.start(), range.end()).daily(),
+                    Comparator.comparing(r -> (LocalDate) r[0]), Integer.MAX_VALUE));
+        }
+        results.sort(Comparator.comparing(r -> (LocalDate) r[0]));
 
         List<DailySales> dailySales = new ArrayList<>();
         for (Object[] row : results) {
@@ -91,9 +125,15 @@ public class ReportService {
         return getDailySales(LocalDate.now().minusDays(6), LocalDate.now());
     }
 
+    @Cacheable(cacheNames = CacheConfig.REPORTS, keyGenerator = "reportKeyGenerator", sync = true)
     @Transactional(readOnly = true)
     public List<TopProduct> getTopProducts(LocalDateTime start, LocalDateTime end, int limit) {
-        List<Object[]> results = invoiceDetailRepository.getTopProducts(start, end, limit);
+        ArchivedSales archived = archiveQueryService.getSales(start, end);
+        // Con periodos archivados el top se calcula después de sumar ambas fuentes
+        List<Object[]> results = archived.isEmpty()
+                ? salesRollupService.getTopProducts(start, end, limit)
+                : mergeRows(salesRollupService.getTopProducts(start, end, Integer.MAX_VALUE),
+                        archived.products(), byDecimalDesc(3), limit);
 
         List<TopProduct> topProducts = new ArrayList<>();
         for (Object[] row : results) {
@@ -108,9 +148,14 @@ public class ReportService {
         return topProducts;
     }
 
+    @Cacheable(cacheNames = CacheConfig.REPORTS, keyGenerator = "reportKeyGenerator", sync = true)
     @Transactional(readOnly = true)
     public List<TopCustomer> getTopCustomers(LocalDateTime start, LocalDateTime end, int limit) {
-        List<Object[]> results = invoiceRepository.getTopCustomers(start, end, limit);
+        ArchivedSales archived = archiveQueryService.getSales(start, end);
+        List<Object[]> results = archived.isEmpty()
+                ? invoiceRepository.getTopCustomers(start, end, limit)
+                : mergeRows(invoiceRepository.getTopCustomers(start, end, Integer.MAX_VALUE),
+                        archived.customers(), byDecimalDesc(3), limit);
 
         List<TopCustomer> topCustomers = new ArrayList<>();
         for (Object[] row : results) {
@@ -124,9 +169,11 @@ public class ReportService {
         return topCustomers;
     }
 
+    @Cacheable(cacheNames = CacheConfig.REPORTS, keyGenerator = "reportKeyGenerator", sync = true)
     @Transactional(readOnly = true)
     public List<SalesByCategory> getSalesByCategory(LocalDateTime start, LocalDateTime end) {
-        List<Object[]> results = invoiceDetailRepository.getSalesByCategory(start, end);
+        List<Object[]> results = mergeRows(salesRollupService.getSalesByCategory(start, end),
+                archiveQueryService.getSales(start, end).categories(), byDecimalDesc(2), Integer.MAX_VALUE);
         BigDecimal totalSales = results.stream()
                 .map(r -> (BigDecimal) r[2])
                 .reduce(BigDecimal.ZERO, BigDecimal::add);
@@ -149,9 +196,11 @@ public class ReportService {
         return salesByCategory;
     }
 
+    @Cacheable(cacheNames = CacheConfig.REPORTS, keyGenerator = "reportKeyGenerator", sync = true)
     @Transactional(readOnly = true)
     public List<SalesByPaymentMethod> getSalesByPaymentMethod(LocalDateTime start, LocalDateTime end) {
-        List<Object[]> results = invoiceRepository.getSalesByPaymentMethod(start, end);
+        List<Object[]> results = mergeRows(salesRollupService.getSalesByPaymentMethod(start, end),
+                archiveQueryService.getSales(start, end).paymentMethods(), byDecimalDesc(1), Integer.MAX_VALUE);
         BigDecimal totalSales = results.stream()
                 .map(r -> (BigDecimal) r[1])
                 .reduce(BigDecimal.ZERO, BigDecimal::add);
@@ -175,34 +224,53 @@ public class ReportService {
         return salesByPayment;
     }
 
-    @Transactional(readOnly = true)
+    /**
+     * Valor del inventario y conteos de stock desde los agregados en memoria
+     * ({@link InventoryValuationService}); no consulta la base.
+     */
     public InventoryValue getInventoryValue() {
-        BigDecimal totalCostValue = inventoryRepository.getTotalCostValue();
-        BigDecimal totalSaleValue = inventoryRepository.getTotalSaleValue();
-        Long totalProducts = productRepository.countByIsActiveTrue();
-        Long lowStockProducts = (long) productRepository.findLowStockProducts().size();
-        Long outOfStockProducts = (long) productRepository.findOutOfStockProducts().size();
-
-        return InventoryValue.builder()
-                .totalCostValue(totalCostValue != null ? totalCostValue : BigDecimal.ZERO)
-                .totalSaleValue(totalSaleValue != null ? totalSaleValue : BigDecimal.ZERO)
-                .totalProducts(totalProducts != null ? totalProducts : 0L)
-                .lowStockProducts(lowStockProducts)
-                .outOfStockProducts(outOfStockProducts)
-                .build();
+        return inventoryValuationService.getInventoryValue();
     }
 
-    @Transactional(readOnly = true)
-    public DashboardSummary getDashboardSummary() {
-        LocalDateTime monthStart = LocalDate.now().withDayOfMonth(1).atStartOfDay();
-        LocalDateTime now = LocalDateTime.now();
-
-        return DashboardSummary.builder()
-                .todaySales(getTodaySalesSummary())
-                .monthSales(getMonthSalesSummary())
-                .inventoryValue(getInventoryValue())
-                .topProducts(getTopProducts(monthStart, now, 5))
-                .last7DaysSales(getLast7DaysSales())
-                .build();
+    /**
+     * Suma las filas de la base con las del archivo histórico agrupando por la primera columna
+     * (id, fecha o método de pago). Las columnas numéricas se suman; las de texto se toman
+     * de la base cuando la fila existe en ambas.
+     */
+    private static List<Object[]> mergeRows(List<Object[]> hot, List<Object[]> archived,
+                                            Comparator<Object[]> order, int limit) {
+        if (archived.isEmpty()) {
+            return hot;
+        }
+        Map<String, Object[]> merged = new LinkedHashMap<>();
+        for (Object[] row : hot) {
+            merged.put(rowKey(row), row.clone());
+        }
+        for (Object[] row : archived) {
+            merged.merge(rowKey(row), row.clone(), (current, extra) -> {
+                for (int i = 1; i < current.length; i++) {
+                    if (current[i] == null) {
+                        current[i] = extra[i];
+                    } else if (current[i] instanceof BigDecimal a && extra[i] instanceof BigDecimal b) {
+                        current[i] = a.add(b);
+                    } else if (current[i] instanceof Number a && extra[i] instanceof Number b) {
+                        current[i] = a.longValue() + b.longValue();
+                    }
+                }
+                return current;
+            });
+        }
+        return merged.values().stream().sorted(order).limit(limit).toList();
+    }
+
+    private static String rowKey(Object[] row) {
+        if (row[0] == null) {
+            return "DESCONOCIDO";
+        }
+        return row[0] instanceof Enum<?> value ? value.name() : row[0].toString();
+    }
+
+    private static Comparator<Object[]> byDecimalDesc(int index) {
+        return Comparator.comparing((Object[] r) -> r[index] != null ? (BigDecimal) r[index] : BigDecimal.ZERO).reversed();
     }
 }
@@ -0,0 +1,25 @@
+package com.morales.pos.application.service;
+
+import com.morales.pos.domain.entity.Invoice;
+
+import java.time.LocalDateTime;
+
+/**
+ * Una factura que pasa a COMPLETADA o una completada que se anula. Se publica dentro de la
+ * transacción de la venta; los listeners corren en ella y cada uno registra lo suyo (acumulados,
+ * días congelados, análisis, caché de reportes) para cuando confirme.
+ */
+public record SaleEvent(Invoice invoice, boolean voided) {
+
+    public static SaleEvent completed(Invoice invoice) {
+        return new SaleEvent(invoice, false);
+    }
+
+    public static SaleEvent voided(Invoice invoice) {
+        return new SaleEvent(invoice, true);
+    }
+
+    public LocalDateTime saleTime() {
+        return invoice.getCreatedAt() != null ? invoice.getCreatedAt() : LocalDateTime.now();
+    }
+}
@@ -0,0 +1,81 @@
+package com.morales.pos.application.service;
+
+import com.morales.pos.application.dto.request.QuoteSaleRequest;
+import com.morales.pos.application.dto.response.SaleQuoteResponse;
+import com.morales.pos.application.service.ProductPriceCache.PriceSnapshot;
+import com.morales.pos.application.service.SaleTotalsCalculator.LineTotals;
+import com.morales.pos.application.service.SaleTotalsCalculator.Totals;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cotiza un carrito sin escribir en la base de datos: precios desde {@link ProductPriceCache}
+ * y totales con {@link SaleTotalsCalculator}, el mismo motor que registra ventas y cobra mesas.
+ */
+@Service
+@RequiredArgsConstructor
+public class SaleQuoteService {
+
+    private final ProductPriceCache productPriceCache;
+
+    public SaleQuoteResponse quote(QuoteSaleRequest request) {
+        Set<Long> productIds = new HashSet<>();
+        request.getDetails().forEach(d -> productIds.add(d.getProductId()));
+        Map<Long, PriceSnapshot> prices = productPriceCache.getAll(productIds);
+
+        List<SaleQuoteResponse.QuoteLine> lines = new ArrayList<>(request.getDetails().size());
+        BigDecimal subtotal = BigDecimal.ZERO;
+        BigDecimal taxAmount = BigDecimal.ZERO;
+
+        for (QuoteSaleRequest.QuoteLineRequest item : request.getDetails()) {
+            PriceSnapshot price = prices.get(item.getProductId());
+            if (price == null) {
+                throw new EntityNotFoundException("Producto no encontrado: " + item.getProductId());
+            }
+            if (!price.active()) {
+                throw new IllegalArgumentException("El producto '" + price.name() + "' no está activo");
+            }
+
+            BigDecimal unitPrice = item.getUnitPrice() != null ? item.getUnitPrice() : price.salePrice();
+            BigDecimal discount = item.getDiscountAmount() != null ? item.getDiscountAmount() : BigDecimal.ZERO;
+            LineTotals line = SaleTotalsCalculator.line(unitPrice, item.getQuantity(), discount, price.taxRate());
+
+            subtotal = subtotal.add(line.subtotal());
+            taxAmount = taxAmount.add(line.taxAmount());
+            lines.add(SaleQuoteResponse.QuoteLine.builder()
+                    .productId(price.productId())
+                    .productName(price.name())
+                    .quantity(item.getQuantity())
+                    .unitPrice(unitPrice)
+                    .discountAmount(discount)
+                    .taxRate(price.taxRate())
+                    .subtotal(line.subtotal())
+                    .taxAmount(line.taxAmount())
+                    .build());
+        }
+
+        Totals totals = SaleTotalsCalculator.totals(subtotal, taxAmount, request.getDiscountPercent(),
+                request.getServiceChargePercent(), request.getServiceChargeAmount(), request.getDeliveryChargeAmount());
+
+        return SaleQuoteResponse.builder()
+                .lines(lines)
+                .subtotal(totals.subtotal())
+                .taxAmount(totals.taxAmount())
+                .discountPercent(totals.discountPercent())
+                .discountAmount(totals.discountAmount())
+                .serviceChargePercent(totals.serviceChargePercent())
+                .serviceChargeAmount(totals.serviceChargeAmount())
+                .deliveryChargeAmount(totals.deliveryChargeAmount())
+                .total(totals.total())
+                .changeAmount(totals.changeFor(request.getAmountReceived()))
+                .build();
+    }
+}
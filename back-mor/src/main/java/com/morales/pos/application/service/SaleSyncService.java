@@ -0,0 +1,333 @@
+package com.morales.pos.application.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.morales.pos.application.dto.request.CreateSaleRequest;
+import com.morales.pos.application.dto.request.SyncSalesRequest;
+import com.morales.pos.application.dto.request.SyncSalesRequest.OfflineSale;
+import com.morales.pos.application.dto.response.InvoiceResponse;
+import com.morales.pos.application.dto.response.SaleSyncResponse;
+import com.morales.pos.application.dto.response.SaleSyncResponse.SaleSyncResult;
+import com.morales.pos.domain.entity.*;
+import com.morales.pos.domain.enums.PaymentMethod;
+import com.morales.pos.domain.repository.CustomerRepository;
+import com.morales.pos.domain.repository.ProductRepository;
+import com.morales.pos.domain.repository.SaleSyncRecordRepository;
+import com.morales.pos.infrastructure.persistence.SqlStatementCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Sincroniza las ventas que una caja registró sin conexión.
+ *
+ * Flujo: una lectura del inventario para todo el lote → validación en memoria, en orden
+ * cronológico, descontando del snapshot → registro de las ventas aceptadas en transacciones
+ * de N ventas con INSERT en lote. Cada venta queda ligada a su clientSaleId, así que
+ * reenviar el mismo lote solo devuelve DUPLICADA para lo ya registrado. Los clientSaleId se
+ * guardan en sale_sync_keys (V31) por app.sales-sync.retention-days, no con las Idempotency-Key.
+ */
+@Service
+@Slf4j
+public class SaleSyncService {
+
+    private static final String CREATED = "CREADA";
+    private static final String DUPLICATED = "DUPLICADA";
+    private static final String REJECTED = "RECHAZADA";
+
+    private final InvoiceService invoiceService;
+    private final ProductRepository productRepository;
+    private final CustomerRepository customerRepository;
+    private final SaleSyncRecordRepository recordRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate writeTransaction;
+    private final int chunkSize;
+    private final long retentionDays;
+
+    public SaleSyncService(InvoiceService invoiceService,
+                           ProductRepository productRepository,
+                           CustomerRepository customerRepository,
+                           SaleSyncRecordRepository recordRepository,
+                           ObjectMapper objectMapper,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${app.sales-sync.chunk-size:50}") int chunkSize,
+                           @Value("${app.sales-sync.retention-days:90}") long retentionDays) {
+        this.invoiceService = invoiceService;
+        this.productRepository = productRepository;
+        this.customerRepository = customerRepository;
+        this.recordRepository = recordRepository;
+        this.objectMapper = objectMapper;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.retentionDays = retentionDays;
+    }
+
+    public SaleSyncResponse syncSales(SyncSalesRequest request, User user) {
+        long startedAt = System.currentTimeMillis();
+        try (SqlStatementCounter.Scope statements = SqlStatementCounter.start()) {
+            List<OfflineSale> sales = request.getSales();
+            SaleSyncResult[] results = new SaleSyncResult[sales.size()];
+
+            // Orden cronológico de la caja: el stock se consume en el orden en que se vendió
+            List<Integer> order = new ArrayList<>(sales.size());
+            for (int i = 0; i < sales.size(); i++) {
+                order.add(i);
+            }
+            order.sort(Comparator.comparing(i -> sales.get(i).getClientTimestamp(),
+                    Comparator.nullsLast(Comparator.naturalOrder())));
+
+            // ── 1. SNAPSHOT ÚNICO DEL LOTE ──────────────────────────────────────────
+            Snapshot snapshot = readTransaction.execute(status -> loadSnapshot(sales));
+
+            // ── 2. VALIDACIÓN EN MEMORIA ────────────────────────────────────────────
+            Set<String> seenIds = new HashSet<>();
+            List<Integer> accepted = new ArrayList<>();
+            LocalDateTime latestAllowed = LocalDateTime.now().plusMinutes(5);
+            for (int index : order) {
+                OfflineSale sale = sales.get(index);
+                String clientSaleId = sale.getClientSaleId().trim();
+
+                SaleSyncRecord existing = snapshot.existing.get(clientSaleId);
+                if (existing != null || !seenIds.add(clientSaleId)) {
+                    results[index] = existing != null
+                            ? duplicate(clientSaleId, existing)
+                            : rejected(clientSaleId, "Venta repetida en el mismo lote");
+                    continue;
+                }
+                if (sale.getClientTimestamp() != null && sale.getClientTimestamp().isAfter(latestAllowed)) {
+                    results[index] = rejected(clientSaleId, "La fecha de la venta está en el futuro");
+                    continue;
+                }
+                String error = validate(sale.getSale(), snapshot);
+                if (error != null) {
+                    results[index] = rejected(clientSaleId, error);
+                    continue;
+                }
+                // Reservar el stock en el snapshot para las ventas siguientes del lote
+                invoiceService.stockQuantities(sale.getSale())
+                        .forEach((productId, qty) -> snapshot.available.merge(productId, qty.negate(), BigDecimal::add));
+                accepted.add(index);
+            }
+
+            // ── 3. REGISTRO POR BLOQUES ─────────────────────────────────────────────
+            for (int from = 0; from < accepted.size(); from += chunkSize) {
+                List<Integer> chunk = accepted.subList(from, Math.min(from + chunkSize, accepted.size()));
+                try {
+                    Map<Integer, SaleSyncResult> committed = writeTransaction.execute(status -> commitChunk(sales, chunk, user));
+                    committed.forEach((index, result) -> results[index] = result);
+                } catch (Exception e) {
+                    log.error("Error al sincronizar bloque de {} ventas: {}", chunk.size(), e.getMessage());
+                    for (int index : chunk) {
+                        results[index] = rejected(sales.get(index).getClientSaleId().trim(),
+                                "Error al registrar la venta, reintente la sincronización");
+                    }
+                }
+            }
+
+            List<SaleSyncResult> resultList = Arrays.asList(results);
+            SaleSyncResponse response = SaleSyncResponse.builder()
+                    .received(sales.size())
+                    .created(count(resultList, CREATED))
+                    .duplicated(count(resultList, DUPLICATED))
+                    .rejected(count(resultList, REJECTED))
+                    .results(resultList)
+                    .build();
+
+            log.info("Sincronización offline de {}: {} ventas ({} creadas, {} duplicadas, {} rechazadas) en {} ms, {} sentencias SQL",
+                    user.getFullName(), response.getReceived(), response.getCreated(), response.getDuplicated(),
+                    response.getRejected(), System.currentTimeMillis() - startedAt, statements.count());
+            return response;
+        }
+    }
+
+    private Snapshot loadSnapshot(List<OfflineSale> sales) {
+        Set<Long> productIds = new HashSet<>();
+        Set<Long> customerIds = new HashSet<>();
+        Set<String> clientSaleIds = new HashSet<>();
+        for (OfflineSale sale : sales) {
+            sale.getSale().getDetails().forEach(d -> productIds.add(d.getProductId()));
+            productIds.addAll(invoiceService.stockQuantities(sale.getSale()).keySet());
+            if (sale.getSale().getCustomerId() != null) {
+                customerIds.add(sale.getSale().getCustomerId());
+            }
+            clientSaleIds.add(sale.getClientSaleId().trim());
+        }
+
+        Snapshot snapshot = new Snapshot();
+        for (Product product : productRepository.findAllByIdWithInventory(productIds)) {
+            snapshot.productNames.put(product.getId(), product.getName());
+            if (product.getInventory() != null) {
+                snapshot.available.put(product.getId(), product.getInventory().getQuantity());
+            }
+        }
+        customerRepository.findAllById(customerIds).forEach(c -> snapshot.customerIds.add(c.getId()));
+        recordRepository.findByClientSaleIdIn(clientSaleIds)
+                .forEach(r -> snapshot.existing.put(r.getClientSaleId(), r));
+        return snapshot;
+    }
+
+    private String validate(CreateSaleRequest sale, Snapshot snapshot) {
+        try {
+            PaymentMethod.valueOf(sale.getPaymentMethod());
+        } catch (IllegalArgumentException e) {
+            return "Método de pago inválido: " + sale.getPaymentMethod();
+        }
+        if (sale.getCustomerId() != null && !snapshot.customerIds.contains(sale.getCustomerId())) {
+            return "Cliente no encontrado";
+        }
+        for (Long productId : InvoiceService.quantitiesByProduct(sale).keySet()) {
+            if (!snapshot.productNames.containsKey(productId)) {
+                return "Producto no encontrado: " + productId;
+            }
+        }
+        // Productos sin receta e ingredientes de los que tienen receta
+        for (Map.Entry<Long, BigDecimal> entry : invoiceService.stockQuantities(sale).entrySet()) {
+            String name = snapshot.productNames.get(entry.getKey());
+            if (name == null) {
+                return "Ingrediente no encontrado: " + entry.getKey();
+            }
+            BigDecimal available = snapshot.available.get(entry.getKey());
+            if (available == null) {
+                return "Inventario no encontrado para producto ID: " + entry.getKey();
+            }
+            if (available.compareTo(entry.getValue()) < 0) {
+                return String.format("Stock insuficiente para %s. Disponible: %s, Solicitado: %s",
+                        name, available, entry.getValue());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Registra un bloque de ventas ya validadas en la transacción actual. Recarga productos e
+     * inventario del bloque en una consulta y vuelve a verificar el stock, porque entre el
+     * snapshot y este punto las cajas en línea pueden haber vendido.
+     */
+    private Map<Integer, SaleSyncResult> commitChunk(List<OfflineSale> sales, List<Integer> chunk, User user) {
+        Set<Long> productIds = new HashSet<>();
+        Set<Long> customerIds = new HashSet<>();
+        Set<String> clientSaleIds = new HashSet<>();
+        for (int index : chunk) {
+            CreateSaleRequest sale = sales.get(index).getSale();
+            sale.getDetails().forEach(d -> productIds.add(d.getProductId()));
+            productIds.addAll(invoiceService.stockQuantities(sale).keySet());
+            if (sale.getCustomerId() != null) {
+                customerIds.add(sale.getCustomerId());
+            }
+            clientSaleIds.add(sales.get(index).getClientSaleId().trim());
+        }
+        Map<Long, Product> products = productRepository.findAllByIdWithInventory(productIds).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        Map<Long, Customer> customers = customerRepository.findAllById(customerIds).stream()
+                .collect(Collectors.toMap(Customer::getId, Function.identity()));
+        Map<String, SaleSyncRecord> existing = recordRepository.findByClientSaleIdIn(clientSaleIds).stream()
+                .collect(Collectors.toMap(SaleSyncRecord::getClientSaleId, Function.identity()));
+
+        // Disponible de la recarga menos lo que van registrando las ventas anteriores del bloque
+        Map<Long, BigDecimal> available = invoiceService.availableStock(products);
+
+        Map<Integer, SaleSyncResult> results = new HashMap<>();
+        List<SaleSyncRecord> records = new ArrayList<>(chunk.size());
+        for (int index : chunk) {
+            OfflineSale sale = sales.get(index);
+            String clientSaleId = sale.getClientSaleId().trim();
+
+            // Otro envío del mismo lote pudo registrarla mientras tanto
+            if (existing.containsKey(clientSaleId)) {
+                results.put(index, duplicate(clientSaleId, existing.get(clientSaleId)));
+                continue;
+            }
+            Map<Long, BigDecimal> quantities = invoiceService.stockQuantities(sale.getSale());
+            String stockError = InvoiceService.checkStock(products, available, quantities);
+            if (stockError != null) {
+                results.put(index, rejected(clientSaleId, stockError));
+                continue;
+            }
+
+            Customer customer = customers.get(sale.getSale().getCustomerId());
+            Invoice invoice = invoiceService.persistSale(sale.getSale(), user, customer, products, sale.getClientTimestamp());
+            quantities.forEach((productId, qty) -> available.merge(productId, qty.negate(), BigDecimal::add));
+
+            InvoiceResponse summary = InvoiceResponse.fromEntity(invoice, false);
+            records.add(SaleSyncRecord.builder()
+                    .clientSaleId(clientSaleId)
+                    .responseBody(serialize(summary))
+                    .build());
+            results.put(index, SaleSyncResult.builder()
+                    .clientSaleId(clientSaleId)
+                    .status(CREATED)
+                    .invoiceId(invoice.getId())
+                    .invoiceNumber(invoice.getInvoiceNumber())
+                    .total(invoice.getTotal())
+                    .build());
+        }
+        recordRepository.saveAll(records);
+        return results;
+    }
+
+    private SaleSyncResult duplicate(String clientSaleId, SaleSyncRecord record) {
+        SaleSyncResult.SaleSyncResultBuilder result = SaleSyncResult.builder()
+                .clientSaleId(clientSaleId)
+                .status(DUPLICATED)
+                .message("La venta ya estaba registrada");
+        try {
+            InvoiceResponse invoice = objectMapper.readValue(record.getResponseBody(), InvoiceResponse.class);
+            result.invoiceId(invoice.getId())
+                    .invoiceNumber(invoice.getInvoiceNumber())
+                    .total(invoice.getTotal());
+        } catch (JsonProcessingException e) {
+            log.warn("No se pudo leer la factura guardada para la venta offline {}: {}", clientSaleId, e.getMessage());
+        }
+        return result.build();
+    }
+
+    // Una caja puede pasar días sin conexión: los clientSaleId se guardan mucho más que las Idempotency-Key
+    @Scheduled(cron = "0 45 3 * * ?") // Every day at 3:45 AM
+    @Transactional
+    public void cleanupExpiredKeys() {
+        int deleted = recordRepository.deleteOlderThan(LocalDateTime.now().minusDays(retentionDays));
+        if (deleted > 0) {
+            log.info("Limpieza de ventas offline sincronizadas: {} claves eliminadas", deleted);
+        }
+    }
+
+    private SaleSyncResult rejected(String clientSaleId, String message) {
+        return SaleSyncResult.builder()
+                .clientSaleId(clientSaleId)
+                .status(REJECTED)
+                .message(message)
+                .build();
+    }
+
+    private String serialize(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar la factura sincronizada", e);
+        }
+    }
+
+    private static int count(List<SaleSyncResult> results, String status) {
+        return (int) results.stream().filter(r -> status.equals(r.getStatus())).count();
+    }
+
+    private static final class Snapshot {
+        private final Map<Long, String> productNames = new HashMap<>();
+        private final Map<Long, BigDecimal> available = new HashMap<>();
+        private final Set<Long> customerIds = new HashSet<>();
+        private final Map<String, SaleSyncRecord> existing = new HashMap<>();
+    }
+}
@@ -0,0 +1,142 @@
+package com.morales.pos.application.service;
+
+import com.morales.pos.domain.entity.Invoice;
+import com.morales.pos.domain.entity.InvoiceDetail;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collection;
+
+/**
+ * Motor único de totales para POS, mesas y cotizaciones.
+ *
+ * Reglas: línea = precio × cantidad − descuento, impuesto de línea según la tasa del producto;
+ * descuento global como % del subtotal; servicio fijo (tiene prioridad) o % sobre
+ * subtotal + impuestos − descuento; domicilio fijo. Todo se redondea a 2 decimales HALF_UP
+ * por línea, para que la suma de líneas coincida con lo que se guarda en invoice_details.
+ * Los porcentajes se aplican con movePointLeft(2) en lugar de dividir entre 100.
+ */
+public final class SaleTotalsCalculator {
+
+    private static final int SCALE = 2;
+
+    private SaleTotalsCalculator() {
+    }
+
+    public record LineTotals(BigDecimal subtotal, BigDecimal taxAmount) {
+    }
+
+    public record Totals(BigDecimal subtotal,
+                         BigDecimal taxAmount,
+                         BigDecimal discountPercent,
+                         BigDecimal discountAmount,
+                         BigDecimal serviceChargePercent,
+                         BigDecimal serviceChargeAmount,
+                         BigDecimal deliveryChargeAmount,
+                         BigDecimal total) {
+
+        /**
+         * Copia los totales a la cabecera de la factura.
+         */
+        public void applyTo(Invoice invoice) {
+            invoice.setSubtotal(subtotal);
+            invoice.setTaxAmount(taxAmount);
+            invoice.setDiscountPercent(discountPercent);
+            invoice.setDiscountAmount(discountAmount);
+            invoice.setServiceChargePercent(serviceChargePercent);
+            invoice.setServiceChargeAmount(serviceChargeAmount);
+            invoice.setDeliveryChargeAmount(deliveryChargeAmount);
+            invoice.setTotal(total);
+        }
+
+        /**
+         * Vuelto para el monto recibido (null si no se indicó).
+         */
+        public BigDecimal changeFor(BigDecimal amountReceived) {
+            return amountReceived != null ? amountReceived.subtract(total) : null;
+        }
+    }
+
+    public static LineTotals line(BigDecimal unitPrice, BigDecimal quantity, BigDecimal discountAmount, BigDecimal taxRate) {
+        BigDecimal subtotal = unitPrice.multiply(quantity);
+        if (isPositive(discountAmount)) {
+            subtotal = subtotal.subtract(discountAmount);
+        }
+        subtotal = round(subtotal);
+        BigDecimal tax = isPositive(taxRate) ? percentOf(subtotal, taxRate) : BigDecimal.ZERO;
+        return new LineTotals(subtotal, tax);
+    }
+
+    /**
+     * Calcula y asigna subtotal e impuesto de una línea de factura.
+     */
+    public static void applyLine(InvoiceDetail detail, BigDecimal taxRate) {
+        LineTotals line = line(detail.getUnitPrice(), detail.getQuantity(), detail.getDiscountAmount(), taxRate);
+        detail.setSubtotal(line.subtotal());
+        detail.setTaxAmount(line.taxAmount());
+    }
+
+    /**
+     * Totales a partir del subtotal e impuesto acumulados de las líneas.
+     *
+     * @param serviceChargeAmount monto fijo de servicio; si es mayor a 0 se ignora el porcentaje
+     */
+    public static Totals totals(BigDecimal subtotal,
+                                BigDecimal taxAmount,
+                                BigDecimal discountPercent,
+                                BigDecimal serviceChargePercent,
+                                BigDecimal serviceChargeAmount,
+                                BigDecimal deliveryChargeAmount) {
+        BigDecimal discountPct = orZero(discountPercent);
+        BigDecimal discount = isPositive(discountPct) ? percentOf(subtotal, discountPct) : BigDecimal.ZERO;
+        BigDecimal afterDiscount = subtotal.add(taxAmount).subtract(discount);
+
+        BigDecimal servicePct = orZero(serviceChargePercent);
+        BigDecimal service;
+        if (isPositive(serviceChargeAmount)) {
+            service = serviceChargeAmount;
+            servicePct = BigDecimal.ZERO;
+        } else if (isPositive(servicePct)) {
+            service = percentOf(afterDiscount, servicePct);
+        } else {
+            service = BigDecimal.ZERO;
+        }
+
+        BigDecimal delivery = orZero(deliveryChargeAmount);
+        return new Totals(subtotal, taxAmount, discountPct, discount, servicePct, service, delivery,
+                afterDiscount.add(service).add(delivery));
+    }
+
+    /**
+     * Recalcula la cabecera desde sus líneas conservando los cargos ya asignados
+     * (descuento %, servicio % o fijo, domicilio). Se usa al agregar o quitar ítems de una mesa.
+     */
+    public static Totals recalculate(Invoice invoice, Collection<InvoiceDetail> details) {
+        BigDecimal subtotal = BigDecimal.ZERO;
+        BigDecimal taxAmount = BigDecimal.ZERO;
+        for (InvoiceDetail detail : details) {
+            subtotal = subtotal.add(detail.getSubtotal());
+            taxAmount = taxAmount.add(orZero(detail.getTaxAmount()));
+        }
+        // Con porcentaje de servicio el monto guardado es derivado, no fijo
+        BigDecimal fixedService = isPositive(invoice.getServiceChargePercent()) ? null : invoice.getServiceChargeAmount();
+        return totals(subtotal, taxAmount, invoice.getDiscountPercent(), invoice.getServiceChargePercent(),
+                fixedService, invoice.getDeliveryChargeAmount());
+    }
+
+    private static BigDecimal percentOf(BigDecimal amount, BigDecimal percent) {
+        return round(amount.multiply(percent).movePointLeft(2));
+    }
+
+    private static BigDecimal round(BigDecimal value) {
+        return value.scale() > SCALE ? value.setScale(SCALE, RoundingMode.HALF_UP) : value;
+    }
+
+    private static boolean isPositive(BigDecimal value) {
+        return value != null && value.signum() > 0;
+    }
+
+    private static BigDecimal orZero(BigDecimal value) {
+        return value != null ? value : BigDecimal.ZERO;
+    }
+}
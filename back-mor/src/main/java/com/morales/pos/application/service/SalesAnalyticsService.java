@@ -0,0 +1,355 @@
+package com.morales.pos.application.service;
+
+import com.morales.pos.application.dto.request.SalesSliceRequest;
+import com.morales.pos.application.dto.response.ReportResponse.SalesSlice;
+import com.morales.pos.application.dto.response.ReportResponse.SliceRow;
+import com.morales.pos.domain.entity.Invoice;
+import com.morales.pos.domain.entity.InvoiceDetail;
+import com.morales.pos.domain.entity.Product;
+import com.morales.pos.domain.entity.RestaurantTable;
+import com.morales.pos.domain.entity.User;
+import com.morales.pos.infrastructure.analytics.GroupTotals;
+import com.morales.pos.infrastructure.analytics.SalesColumnStore;
+import com.morales.pos.infrastructure.analytics.SalesColumnStore.Line;
+import com.morales.pos.infrastructure.analytics.SalesColumnStore.Member;
+import com.morales.pos.infrastructure.analytics.SalesColumnStore.Scan;
+import com.morales.pos.infrastructure.analytics.SalesDimension;
+import com.morales.pos.infrastructure.persistence.TransactionHooks;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cortes de venta a pedido (categoría por hora, cajero por método de pago, …) sobre las
+ * líneas de los últimos app.sales-analytics.window-days días en memoria (SalesColumnStore).
+ *
+ * Al arrancar se cargan las líneas de las facturas COMPLETADA de la ventana en una pasada
+ * (cursor); después cada venta y anulación se agrega al confirmar su transacción, desde los
+ * mismos puntos que los acumulados de SalesRollupService. Cada noche se vuelve a cargar para
+ * descartar los días que salieron de la ventana.
+ *
+ * Mientras se carga, las ventas nuevas van al almacén anterior y a una lista de espera; al
+ * terminar se aplican al nuevo solo las que la carga no vio (por id de factura), así una
+ * venta no cuenta dos veces ni se pierde. Solo refleja las ventas de este nodo desde la
+ * última carga; los reportes oficiales siguen saliendo de la base (ReportService).
+ */
+@Service
+@Slf4j
+public class SalesAnalyticsService {
+
+    private static final String LOAD_SQL =
+            "SELECT i.id, i.created_at, COALESCE(i.payment_method, 'DESCONOCIDO'), " +
+            "    COALESCE(i.user_id, 0), COALESCE(u.full_name, u.username), COALESCE(t.id, 0), t.table_number, " +
+            "    COALESCE(d.product_id, 0), COALESCE(p.name, d.product_name), COALESCE(p.category_id, 0), c.name, " +
+            "    d.quantity, d.subtotal, d.quantity * COALESCE(d.cost_price, 0) " +
+            "FROM invoice_details d JOIN invoices i ON i.id = d.invoice_id " +
+            "LEFT JOIN users u ON u.id = i.user_id " +
+            "LEFT JOIN table_sessions s ON s.invoice_id = i.id " +
+            "LEFT JOIN restaurant_tables t ON t.id = s.table_id " +
+            "LEFT JOIN products p ON p.id = d.product_id " +
+            "LEFT JOIN categories c ON c.id = p.category_id " +
+            "WHERE i.status = 'COMPLETADA' AND i.created_at >= ? ORDER BY i.created_at";
+
+    private static final int FETCH_SIZE = 5000;
+    private static final int DEFAULT_LIMIT = 100;
+    private static final String UNKNOWN_METHOD = "DESCONOCIDO";
+    private static final long NO_KEY = 0L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readTransaction;
+    private final ForkJoinPool pool;
+    private final int windowDays;
+
+    private final Object lock = new Object();
+    private volatile SalesColumnStore store;
+    private volatile boolean ready;
+    // Ventas confirmadas durante una carga; null fuera de ella (bajo lock)
+    private List<Sale> waiting;
+    private final AtomicBoolean loading = new AtomicBoolean();
+
+    public SalesAnalyticsService(JdbcTemplate jdbcTemplate,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${app.sales-analytics.window-days:90}") int windowDays,
+                                 @Value("${app.sales-analytics.threads:0}") int threads) {
+        if (windowDays < 1) {
+            throw new IllegalArgumentException("app.sales-analytics.window-days debe ser >= 1");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.windowDays = windowDays;
+        int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("sales-analytics-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        this.store = new SalesColumnStore(firstDay());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.error("Análisis de ventas: no se pudo cargar: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(cron = "0 0 4 * * ?") // Every day at 4:00 AM
+    public void scheduledReload() {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.error("Análisis de ventas: no se pudo recargar: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Vuelve a cargar la ventana desde la base y reemplaza el almacén.
+     */
+    public LoadResult reload() {
+        if (!loading.compareAndSet(false, true)) {
+            throw new IllegalStateException("Ya hay una carga del análisis de ventas en curso");
+        }
+        long started = System.currentTimeMillis();
+        try {
+            synchronized (lock) {
+                waiting = new ArrayList<>();
+            }
+            LocalDate firstDay = firstDay();
+            SalesColumnStore loaded = new SalesColumnStore(firstDay);
+            Set<Long> invoiceIds = new HashSet<>();
+            readTransaction.executeWithoutResult(status -> {
+                // Un JdbcTemplate propio: el fetch size no debe afectar a otras consultas
+                JdbcTemplate cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+                cursorTemplate.setFetchSize(FETCH_SIZE);
+                cursorTemplate.query(LOAD_SQL, rs -> {
+                    invoiceIds.add(rs.getLong(1));
+                    long tableId = rs.getLong(6);
+                    loaded.append(new Line(rs.getTimestamp(2).toLocalDateTime(), 1,
+                            new Member(rs.getLong(8), rs.getString(9)),
+                            new Member(rs.getLong(10), categoryLabel(rs.getString(11))),
+                            new Member(rs.getLong(4), cashierLabel(rs.getString(5))),
+                            new Member(tableId, tableLabel(tableId == NO_KEY ? null : rs.getInt(7))),
+                            new Member(rs.getString(3), rs.getString(3)),
+                            milli(rs.getBigDecimal(12)), cents(rs.getBigDecimal(13)), cents(rs.getBigDecimal(14))));
+                }, Timestamp.valueOf(firstDay.atStartOfDay()));
+            });
+
+            int replayed = 0;
+            synchronized (lock) {
+                for (Sale sale : waiting) {
+                    // Completada: solo si la carga no la vio. Anulada: solo si el almacén la tiene sumada
+                    boolean apply = sale.sign() > 0 ? invoiceIds.add(sale.invoiceId()) : invoiceIds.contains(sale.invoiceId());
+                    if (apply) {
+                        sale.lines().forEach(loaded::append);
+                        replayed++;
+                    }
+                }
+                store = loaded;
+            }
+            ready = true;
+            long elapsed = System.currentTimeMillis() - started;
+            log.info("Análisis de ventas cargado: {} líneas desde {} ({} ventas durante la carga) en {} ms",
+                    loaded.size(), firstDay, replayed, elapsed);
+            return new LoadResult(firstDay, loaded.size(), elapsed);
+        } finally {
+            synchronized (lock) {
+                waiting = null;
+            }
+            loading.set(false);
+        }
+    }
+
+    /**
+     * Agrega las líneas de una factura recién completada, o las resta si se anula, al confirmar
+     * la transacción.
+     */
+    @EventListener
+    public void onSale(SaleEvent event) {
+        Sale sale = toSale(event.invoice(), event.voided() ? -1 : 1);
+        TransactionHooks.afterCommit(() -> append(sale));
+    }
+
+    /**
+     * Agrupa y filtra las líneas en memoria. Cada segmento del almacén se recorre en un hilo
+     * del pool y los totales parciales se suman al final.
+     */
+    public SalesSlice slice(SalesSliceRequest request) {
+        if (!ready) {
+            throw new IllegalStateException("El análisis de ventas todavía se está cargando");
+        }
+        SalesColumnStore current = store;
+        LocalDate to = request.getTo() != null ? request.getTo() : LocalDate.now();
+        LocalDate from = request.getFrom() != null ? request.getFrom() : current.getFirstDay();
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("La fecha inicial es posterior a la final");
+        }
+        if (from.isBefore(current.getFirstDay())) {
+            throw new IllegalArgumentException("El análisis en memoria cubre desde " + current.getFirstDay()
+                    + "; para fechas anteriores use los reportes de ventas");
+        }
+        List<SalesDimension> groupBy = request.getGroupBy() != null ? request.getGroupBy() : List.of();
+        if (groupBy.stream().distinct().count() != groupBy.size()) {
+            throw new IllegalArgumentException("Dimensión repetida en groupBy: " + groupBy);
+        }
+        int limit = request.getLimit() != null && request.getLimit() > 0 ? request.getLimit() : DEFAULT_LIMIT;
+
+        long started = System.nanoTime();
+        Scan scan = current.scan(from, to, groupBy, request.getFilters());
+        GroupTotals totals = aggregateInParallel(scan);
+
+        List<SliceRow> rows = new ArrayList<>(totals.size());
+        totals.forEach((key, revenue, cost, quantity, lines) -> {
+            if (lines == 0 && revenue == 0) {
+                return; // solo ventas anuladas
+            }
+            SalesColumnStore.Group group = scan.decode(key);
+            BigDecimal totalSales = BigDecimal.valueOf(revenue, 2);
+            BigDecimal totalCost = BigDecimal.valueOf(cost, 2);
+            rows.add(SliceRow.builder()
+                    .keys(group.keys())
+                    .labels(group.labels())
+                    .totalSales(totalSales)
+                    .totalCost(totalCost)
+                    .grossProfit(totalSales.subtract(totalCost))
+                    .quantity(BigDecimal.valueOf(quantity, 3))
+                    .lineCount(lines)
+                    .build());
+        });
+        rows.sort(Comparator.comparing(SliceRow::getTotalSales).reversed());
+
+        return SalesSlice.builder()
+                .from(from)
+                .to(to)
+                .groupBy(groupBy.stream().map(Enum::name).toList())
+                .rows(rows.size() > limit ? new ArrayList<>(rows.subList(0, limit)) : rows)
+                .totalGroups(rows.size())
+                .scannedRows((long) scan.rows())
+                .elapsedMicros((System.nanoTime() - started) / 1_000)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private GroupTotals aggregateInParallel(Scan scan) {
+        int segments = scan.segmentCount();
+        if (segments <= 1) {
+            return segments == 0 ? new GroupTotals() : scan.aggregate(0);
+        }
+        List<CompletableFuture<GroupTotals>> parts = new ArrayList<>(segments);
+        for (int s = 0; s < segments; s++) {
+            int segment = s;
+            parts.add(CompletableFuture.supplyAsync(() -> scan.aggregate(segment), pool));
+        }
+        GroupTotals merged = new GroupTotals();
+        try {
+            for (CompletableFuture<GroupTotals> part : parts) {
+                merged.addAll(part.join());
+            }
+        } catch (CompletionException e) {
+            throw new IllegalStateException("No se pudo calcular el corte de ventas: " + e.getCause().getMessage(), e.getCause());
+        }
+        return merged;
+    }
+
+    private void append(Sale sale) {
+        synchronized (lock) {
+            if (waiting != null) {
+                waiting.add(sale);
+            }
+            SalesColumnStore current = store;
+            sale.lines().forEach(current::append);
+        }
+    }
+
+    /**
+     * Copia lo necesario de la factura dentro de la transacción; al confirmar ya no se leen
+     * las relaciones perezosas.
+     */
+    private static Sale toSale(Invoice invoice, int sign) {
+        LocalDateTime at = invoice.getCreatedAt() != null ? invoice.getCreatedAt() : LocalDateTime.now();
+        User user = invoice.getUser();
+        Member cashier = user != null
+                ? new Member(user.getId(), cashierLabel(user.getFullName() != null ? user.getFullName() : user.getUsername()))
+                : new Member(NO_KEY, cashierLabel(null));
+        RestaurantTable restaurantTable = invoice.getTableSession() != null ? invoice.getTableSession().getRestaurantTable() : null;
+        Member table = restaurantTable != null
+                ? new Member(restaurantTable.getId(), tableLabel(restaurantTable.getTableNumber()))
+                : new Member(NO_KEY, tableLabel(null));
+        String method = invoice.getPaymentMethod() != null ? invoice.getPaymentMethod().name() : UNKNOWN_METHOD;
+        Member paymentMethod = new Member(method, method);
+
+        List<Line> lines = new ArrayList<>(invoice.getDetails().size());
+        for (InvoiceDetail detail : invoice.getDetails()) {
+            Product product = detail.getProduct();
+            Member productMember = product != null
+                    ? new Member(product.getId(), product.getName())
+                    : new Member(NO_KEY, detail.getProductName());
+            Member category = product != null && product.getCategory() != null
+                    ? new Member(product.getCategory().getId(), categoryLabel(product.getCategory().getName()))
+                    : new Member(NO_KEY, categoryLabel(null));
+            BigDecimal cost = detail.getCostPrice() != null ? detail.getQuantity().multiply(detail.getCostPrice()) : BigDecimal.ZERO;
+            lines.add(new Line(at, sign, productMember, category, cashier, table, paymentMethod,
+                    sign * milli(detail.getQuantity()), sign * cents(detail.getSubtotal()), sign * cents(cost)));
+        }
+        return new Sale(invoice.getId(), sign, lines);
+    }
+
+    private LocalDate firstDay() {
+        return LocalDate.now().minusDays(windowDays - 1L);
+    }
+
+    private static String cashierLabel(String name) {
+        return name != null ? name : "SIN USUARIO";
+    }
+
+    private static String tableLabel(Integer tableNumber) {
+        return tableNumber != null ? "Mesa #" + tableNumber : "SIN MESA";
+    }
+
+    private static String categoryLabel(String name) {
+        return name != null ? name : "SIN CATEGORÍA";
+    }
+
+    private static long cents(BigDecimal amount) {
+        return amount == null ? 0 : amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    private static long milli(BigDecimal quantity) {
+        return quantity == null ? 0 : quantity.movePointRight(3).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+
+    private record Sale(Long invoiceId, int sign, List<Line> lines) {
+    }
+
+    public record LoadResult(LocalDate firstDay, int lines, long elapsedMs) {
+    }
+}
@@ -0,0 +1,403 @@
+package com.morales.pos.application.service;
+
+import com.morales.pos.domain.entity.Invoice;
+import com.morales.pos.domain.entity.InvoiceDetail;
+import com.morales.pos.infrastructure.persistence.TransactionHooks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Acumulados de ventas por día y por hora (V28) y las consultas de reportes que los leen.
+ *
+ * Cada factura suma a los acumulados al pasar a COMPLETADA y resta al anularse ({@link SaleEvent}). Las
+ * diferencias de la transacción se agrupan en memoria y se escriben justo antes del commit
+ * con un UPSERT por clave, en orden de clave para que dos ventas no se bloqueen en cruz; si
+ * la transacción se revierte no queda nada escrito.
+ *
+ * Un rango de reporte se parte en días completos (tablas diarias), horas completas en los
+ * bordes (tablas por hora) y fracciones de hora (facturas de la base), así el costo depende
+ * del largo del rango y no del historial. El extremo final se toma hasta el final de su segundo.
+ */
+@Service
+@Slf4j
+public class SalesRollupService {
+
+    private static final String UNKNOWN_METHOD = "DESCONOCIDO";
+    private static final long NO_KEY = 0L;
+
+    private static final String INVOICE_UPSERT =
+            "INSERT INTO %1$s (%2$s, payment_method, user_id, invoice_count, total) VALUES (?, ?, ?, ?, ?) " +
+            "ON CONFLICT (%2$s, payment_method, user_id) DO UPDATE SET " +
+            "invoice_count = %1$s.invoice_count + EXCLUDED.invoice_count, total = %1$s.total + EXCLUDED.total";
+    private static final String PRODUCT_UPSERT =
+            "INSERT INTO %1$s (%2$s, product_id, quantity, revenue, cost, line_count) VALUES (?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (%2$s, product_id) DO UPDATE SET " +
+            "quantity = %1$s.quantity + EXCLUDED.quantity, revenue = %1$s.revenue + EXCLUDED.revenue, " +
+            "cost = %1$s.cost + EXCLUDED.cost, line_count = %1$s.line_count + EXCLUDED.line_count";
+
+    // Resta de facturas que salen de la base (archivo); mismas claves que la carga inicial de V28
+    private static final String INVOICE_SUBTRACT =
+            "INSERT INTO %1$s (%2$s, payment_method, user_id, invoice_count, total) " +
+            "SELECT %3$s, COALESCE(payment_method, 'DESCONOCIDO'), COALESCE(user_id, 0), -COUNT(*), -SUM(total) " +
+            "FROM invoices WHERE id = ANY(?) AND status = 'COMPLETADA' GROUP BY 1, 2, 3 " +
+            "ON CONFLICT (%2$s, payment_method, user_id) DO UPDATE SET " +
+            "invoice_count = %1$s.invoice_count + EXCLUDED.invoice_count, total = %1$s.total + EXCLUDED.total";
+    private static final String PRODUCT_SUBTRACT =
+            "INSERT INTO %1$s (%2$s, product_id, quantity, revenue, cost, line_count) " +
+            "SELECT %3$s, COALESCE(d.product_id, 0), -SUM(d.quantity), -SUM(d.subtotal), -SUM(d.quantity * d.cost_price), -COUNT(*) " +
+            "FROM invoice_details d JOIN invoices i ON i.id = d.invoice_id " +
+            "WHERE i.id = ANY(?) AND i.status = 'COMPLETADA' GROUP BY 1, 2 " +
+            "ON CONFLICT (%2$s, product_id) DO UPDATE SET " +
+            "quantity = %1$s.quantity + EXCLUDED.quantity, revenue = %1$s.revenue + EXCLUDED.revenue, " +
+            "cost = %1$s.cost + EXCLUDED.cost, line_count = %1$s.line_count + EXCLUDED.line_count";
+
+    private static final List<String> REBUILD_SQL = List.of(
+            // TRUNCATE espera a las ventas que ya escribieron su diferencia y frena a las siguientes hasta el commit
+            "TRUNCATE sales_rollup_daily, sales_rollup_hourly, sales_product_rollup_daily, sales_product_rollup_hourly",
+            "INSERT INTO sales_rollup_hourly (bucket_start, payment_method, user_id, invoice_count, total) " +
+            "SELECT date_trunc('hour', created_at), COALESCE(payment_method, 'DESCONOCIDO'), COALESCE(user_id, 0), COUNT(*), SUM(total) " +
+            "FROM invoices WHERE status = 'COMPLETADA' GROUP BY 1, 2, 3",
+            "INSERT INTO sales_rollup_daily (sale_date, payment_method, user_id, invoice_count, total) " +
+            "SELECT CAST(bucket_start AS DATE), payment_method, user_id, SUM(invoice_count), SUM(total) " +
+            "FROM sales_rollup_hourly GROUP BY 1, 2, 3",
+            "INSERT INTO sales_product_rollup_hourly (bucket_start, product_id, quantity, revenue, cost, line_count) " +
+            "SELECT date_trunc('hour', i.created_at), COALESCE(d.product_id, 0), " +
+            "SUM(d.quantity), SUM(d.subtotal), SUM(d.quantity * d.cost_price), COUNT(*) " +
+            "FROM invoice_details d JOIN invoices i ON i.id = d.invoice_id WHERE i.status = 'COMPLETADA' GROUP BY 1, 2",
+            "INSERT INTO sales_product_rollup_daily (sale_date, product_id, quantity, revenue, cost, line_count) " +
+            "SELECT CAST(bucket_start AS DATE), product_id, SUM(quantity), SUM(revenue), SUM(cost), SUM(line_count) " +
+            "FROM sales_product_rollup_hourly GROUP BY 1, 2");
+
+    // Rango partido: días completos, horas completas en los bordes y fracciones de hora (ver Plan)
+    private static final String DAILY_RANGE = "sale_date >= ? AND sale_date < ?";
+    private static final String HOURLY_RANGE =
+            "((bucket_start >= ? AND bucket_start < ?) OR (bucket_start >= ? AND bucket_start < ?))";
+    private static final String RAW_RANGE = "i.status = 'COMPLETADA' " +
+            "AND ((i.created_at >= ? AND i.created_at < ?) OR (i.created_at >= ? AND i.created_at < ?))";
+
+    private static final String INVOICE_SOURCES =
+            "SELECT sale_date AS day, payment_method, total, invoice_count FROM sales_rollup_daily WHERE " + DAILY_RANGE +
+            " UNION ALL SELECT CAST(bucket_start AS DATE), payment_method, total, invoice_count " +
+            "FROM sales_rollup_hourly WHERE " + HOURLY_RANGE +
+            " UNION ALL SELECT CAST(i.created_at AS DATE), COALESCE(i.payment_method, 'DESCONOCIDO'), i.total, 1 " +
+            "FROM invoices i WHERE " + RAW_RANGE;
+    private static final String PRODUCT_SOURCES =
+            "SELECT product_id, quantity, revenue, cost, line_count FROM sales_product_rollup_daily WHERE " + DAILY_RANGE +
+            " UNION ALL SELECT product_id, quantity, revenue, cost, line_count " +
+            "FROM sales_product_rollup_hourly WHERE " + HOURLY_RANGE +
+            " UNION ALL SELECT COALESCE(d.product_id, 0), d.quantity, d.subtotal, d.quantity * d.cost_price, 1 " +
+            "FROM invoice_details d JOIN invoices i ON i.id = d.invoice_id WHERE " + RAW_RANGE;
+
+    private static final String TOTALS_SQL =
+            "SELECT COALESCE(SUM(total), 0), COALESCE(SUM(invoice_count), 0) FROM (" + INVOICE_SOURCES + ") s";
+    private static final String COST_SQL =
+            "SELECT COALESCE(SUM(cost), 0) FROM (" + PRODUCT_SOURCES + ") s";
+    private static final String DAILY_SQL =
+            "SELECT day, SUM(total), SUM(invoice_count) FROM (" + INVOICE_SOURCES + ") s GROUP BY day ORDER BY day";
+    private static final String PAYMENT_METHOD_SQL =
+            "SELECT payment_method, SUM(total), SUM(invoice_count) FROM (" + INVOICE_SOURCES + ") s " +
+            "GROUP BY payment_method ORDER BY SUM(total) DESC";
+    private static final String TOP_PRODUCTS_SQL =
+            "SELECT p.id, p.code, p.name, s.quantity, s.revenue FROM (" +
+            "  SELECT product_id, SUM(quantity) AS quantity, SUM(revenue) AS revenue " +
+            "  FROM (" + PRODUCT_SOURCES + ") x GROUP BY product_id) s " +
+            "JOIN products p ON p.id = s.product_id ORDER BY s.quantity DESC LIMIT ?";
+    private static final String CATEGORY_SQL =
+            "SELECT c.id, c.name, SUM(s.revenue), SUM(s.line_count) FROM (" + PRODUCT_SOURCES + ") s " +
+            "JOIN products p ON p.id = s.product_id JOIN categories c ON c.id = p.category_id " +
+            "GROUP BY c.id, c.name ORDER BY SUM(s.revenue) DESC";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReportCacheService reportCacheService;
+    private final TransactionTemplate writeTransaction;
+
+    public SalesRollupService(JdbcTemplate jdbcTemplate, ReportCacheService reportCacheService,
+                              PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.reportCacheService = reportCacheService;
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Suma una factura recién completada a los acumulados o resta una completada que se anula
+     * (al confirmar la transacción). Las facturas que no llegaron a COMPLETADA (mesas liberadas)
+     * nunca sumaron y no se publican.
+     */
+    @EventListener
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onSale(SaleEvent event) {
+        pendingForCurrentTransaction().add(event, event.voided() ? -1 : 1);
+    }
+
+    /**
+     * Resta facturas que se borran de la base al archivar su periodo; desde ese momento las
+     * responde el archivo histórico. Debe llamarse antes del DELETE, en la misma transacción.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void subtractArchived(List<Long> invoiceIds) {
+        if (invoiceIds.isEmpty()) {
+            return;
+        }
+        Object[] ids = invoiceIds.toArray();
+        for (String[] target : List.of(
+                new String[]{INVOICE_SUBTRACT, "sales_rollup_hourly", "bucket_start", "date_trunc('hour', created_at)"},
+                new String[]{INVOICE_SUBTRACT, "sales_rollup_daily", "sale_date", "CAST(created_at AS DATE)"},
+                new String[]{PRODUCT_SUBTRACT, "sales_product_rollup_hourly", "bucket_start", "date_trunc('hour', i.created_at)"},
+                new String[]{PRODUCT_SUBTRACT, "sales_product_rollup_daily", "sale_date", "CAST(i.created_at AS DATE)"})) {
+            jdbcTemplate.update(target[0].formatted(target[1], target[2], target[3]),
+                    ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids)));
+        }
+    }
+
+    /**
+     * Borra y vuelve a cargar los acumulados desde las facturas que hay en la base. Las ventas
+     * que confirman durante la reconstrucción esperan a que termine y se suman después.
+     */
+    public RebuildResult rebuild() {
+        long startedAt = System.currentTimeMillis();
+        int[] rows = writeTransaction.execute(status -> REBUILD_SQL.stream()
+                .mapToInt(jdbcTemplate::update)
+                .toArray());
+        RebuildResult result = new RebuildResult(rows[1], rows[3], System.currentTimeMillis() - startedAt);
+        reportCacheService.clear();
+        log.info("Acumulados de ventas reconstruidos: {} filas por hora, {} filas de producto por hora en {} ms",
+                result.hourlyRows(), result.productHourlyRows(), result.elapsedMs());
+        return result;
+    }
+
+    /**
+     * Total vendido y cantidad de facturas completadas: [total, cantidad].
+     */
+    public Object[] getTotals(LocalDateTime start, LocalDateTime end) {
+        Plan plan = Plan.of(start, end);
+        return jdbcTemplate.queryForObject(TOTALS_SQL,
+                (rs, n) -> new Object[]{rs.getBigDecimal(1), rs.getLong(2)}, plan.args());
+    }
+
+    /**
+     * Costo de lo vendido con el costo copiado en cada línea.
+     */
+    public BigDecimal getCost(LocalDateTime start, LocalDateTime end) {
+        return jdbcTemplate.queryForObject(COST_SQL, BigDecimal.class, Plan.of(start, end).args());
+    }
+
+    /**
+     * Filas [fecha, total, cantidad] ordenadas por fecha.
+     */
+    public List<Object[]> getDailySales(LocalDateTime start, LocalDateTime end) {
+        return jdbcTemplate.query(DAILY_SQL,
+                (rs, n) -> new Object[]{rs.getDate(1).toLocalDate(), rs.getBigDecimal(2), rs.getLong(3)},
+                Plan.of(start, end).args());
+    }
+
+    /**
+     * Filas [método de pago, total, cantidad] de mayor a menor total.
+     */
+    public List<Object[]> getSalesByPaymentMethod(LocalDateTime start, LocalDateTime end) {
+        return jdbcTemplate.query(PAYMENT_METHOD_SQL,
+                (rs, n) -> new Object[]{rs.getString(1), rs.getBigDecimal(2), rs.getLong(3)},
+                Plan.of(start, end).args());
+    }
+
+    /**
+     * Filas [ID, código, nombre, cantidad, ingresos] de los productos más vendidos.
+     */
+    public List<Object[]> getTopProducts(LocalDateTime start, LocalDateTime end, int limit) {
+        return jdbcTemplate.query(TOP_PRODUCTS_SQL,
+                (rs, n) -> new Object[]{rs.getLong(1), rs.getString(2), rs.getString(3), rs.getBigDecimal(4), rs.getBigDecimal(5)},
+                Plan.of(start, end).args(limit));
+    }
+
+    /**
+     * Filas [ID, nombre, total, líneas] por categoría actual del producto.
+     */
+    public List<Object[]> getSalesByCategory(LocalDateTime start, LocalDateTime end) {
+        return jdbcTemplate.query(CATEGORY_SQL,
+                (rs, n) -> new Object[]{rs.getLong(1), rs.getString(2), rs.getBigDecimal(3), rs.getLong(4)},
+                Plan.of(start, end).args());
+    }
+
+    private Pending pendingForCurrentTransaction() {
+        return TransactionHooks.perTransaction(this, Pending::new, new TransactionHooks.Callbacks<Pending>() {
+            @Override
+            public void beforeCommit(Pending pending) {
+                write(pending);
+            }
+        });
+    }
+
+    private void write(Pending pending) {
+        if (pending.invoices.isEmpty()) {
+            return;
+        }
+        Map<InvoiceKey, Totals> daily = new TreeMap<>();
+        pending.invoices.forEach((key, totals) -> daily.merge(key.truncatedToDay(), totals, Totals::plus));
+        Map<ProductKey, ProductTotals> productDaily = new TreeMap<>();
+        pending.products.forEach((key, totals) -> productDaily.merge(key.truncatedToDay(), totals, ProductTotals::plus));
+
+        writeInvoices("sales_rollup_hourly", "bucket_start", pending.invoices, false);
+        writeInvoices("sales_rollup_daily", "sale_date", daily, true);
+        writeProducts("sales_product_rollup_hourly", "bucket_start", pending.products, false);
+        writeProducts("sales_product_rollup_daily", "sale_date", productDaily, true);
+    }
+
+    private void writeInvoices(String table, String bucketColumn, Map<InvoiceKey, Totals> rows, boolean byDay) {
+        List<Object[]> args = new ArrayList<>(rows.size());
+        rows.forEach((key, totals) -> args.add(new Object[]{
+                bucket(key.bucket(), byDay), key.paymentMethod(), key.userId(), totals.count(), totals.total()}));
+        jdbcTemplate.batchUpdate(INVOICE_UPSERT.formatted(table, bucketColumn), args);
+    }
+
+    private void writeProducts(String table, String bucketColumn, Map<ProductKey, ProductTotals> rows, boolean byDay) {
+        List<Object[]> args = new ArrayList<>(rows.size());
+        rows.forEach((key, totals) -> args.add(new Object[]{
+                bucket(key.bucket(), byDay), key.productId(), totals.quantity(), totals.revenue(), totals.cost(), totals.lines()}));
+        jdbcTemplate.batchUpdate(PRODUCT_UPSERT.formatted(table, bucketColumn), args);
+    }
+
+    private static Object bucket(LocalDateTime bucket, boolean byDay) {
+        return byDay ? Date.valueOf(bucket.toLocalDate()) : Timestamp.valueOf(bucket);
+    }
+
+    /**
+     * Diferencias de la transacción por clave, ordenadas para escribirlas siempre en el mismo orden.
+     */
+    private static final class Pending {
+        final Map<InvoiceKey, Totals> invoices = new TreeMap<>();
+        final Map<ProductKey, ProductTotals> products = new TreeMap<>();
+
+        void add(SaleEvent event, int sign) {
+            Invoice invoice = event.invoice();
+            LocalDateTime hour = event.saleTime().truncatedTo(ChronoUnit.HOURS);
+            BigDecimal factor = BigDecimal.valueOf(sign);
+            invoices.merge(new InvoiceKey(hour,
+                            invoice.getPaymentMethod() != null ? invoice.getPaymentMethod().name() : UNKNOWN_METHOD,
+                            invoice.getUser() != null ? invoice.getUser().getId() : NO_KEY),
+                    new Totals(sign, invoice.getTotal().multiply(factor)), Totals::plus);
+            for (InvoiceDetail detail : invoice.getDetails()) {
+                ProductKey key = new ProductKey(hour, detail.getProduct() != null ? detail.getProduct().getId() : NO_KEY);
+                products.merge(key, new ProductTotals(
+                        detail.getQuantity().multiply(factor),
+                        detail.getSubtotal().multiply(factor),
+                        detail.getQuantity().multiply(detail.getCostPrice()).multiply(factor),
+                        sign), ProductTotals::plus);
+            }
+        }
+    }
+
+    private record InvoiceKey(LocalDateTime bucket, String paymentMethod, long userId) implements Comparable<InvoiceKey> {
+
+        private static final Comparator<InvoiceKey> ORDER = Comparator.comparing(InvoiceKey::bucket)
+                .thenComparing(InvoiceKey::paymentMethod)
+                .thenComparingLong(InvoiceKey::userId);
+
+        InvoiceKey truncatedToDay() {
+            return new InvoiceKey(bucket.truncatedTo(ChronoUnit.DAYS), paymentMethod, userId);
+        }
+
+        @Override
+        public int compareTo(InvoiceKey other) {
+            return ORDER.compare(this, other);
+        }
+    }
+
+    private record ProductKey(LocalDateTime bucket, long productId) implements Comparable<ProductKey> {
+
+        private static final Comparator<ProductKey> ORDER = Comparator.comparing(ProductKey::bucket)
+                .thenComparingLong(ProductKey::productId);
+
+        ProductKey truncatedToDay() {
+            return new ProductKey(bucket.truncatedTo(ChronoUnit.DAYS), productId);
+        }
+
+        @Override
+        public int compareTo(ProductKey other) {
+            return ORDER.compare(this, other);
+        }
+    }
+
+    private record Totals(long count, BigDecimal total) {
+        Totals plus(Totals other) {
+            return new Totals(count + other.count, total.add(other.total));
+        }
+    }
+
+    private record ProductTotals(BigDecimal quantity, BigDecimal revenue, BigDecimal cost, long lines) {
+        ProductTotals plus(ProductTotals other) {
+            return new ProductTotals(quantity.add(other.quantity), revenue.add(other.revenue),
+                    cost.add(other.cost), lines + other.lines);
+        }
+    }
+
+    /**
+     * Partición de [inicio, fin + 1 s) en las tres fuentes. Los tramos vacíos quedan como
+     * [x, x) para que todas las consultas tengan los mismos parámetros.
+     */
+    private record Plan(LocalDate dayFrom, LocalDate dayTo,
+                        LocalDateTime hour1From, LocalDateTime hour1To, LocalDateTime hour2From, LocalDateTime hour2To,
+                        LocalDateTime raw1From, LocalDateTime raw1To, LocalDateTime raw2From, LocalDateTime raw2To) {
+
+        static Plan of(LocalDateTime start, LocalDateTime end) {
+            LocalDateTime from = start;
+            LocalDateTime to = end.truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+            LocalDate noDays = from.toLocalDate();
+            if (!from.isBefore(to)) {
+                return new Plan(noDays, noDays, from, from, from, from, from, from, from, from);
+            }
+            LocalDateTime firstHour = ceil(from, ChronoUnit.HOURS);
+            LocalDateTime lastHour = to.truncatedTo(ChronoUnit.HOURS);
+            if (!firstHour.isBefore(lastHour)) {
+                return new Plan(noDays, noDays, from, from, from, from, from, to, to, to);
+            }
+            LocalDateTime firstDay = ceil(firstHour, ChronoUnit.DAYS);
+            LocalDateTime lastDay = lastHour.truncatedTo(ChronoUnit.DAYS);
+            if (!firstDay.isBefore(lastDay)) {
+                return new Plan(noDays, noDays, firstHour, lastHour, lastHour, lastHour, from, firstHour, lastHour, to);
+            }
+            return new Plan(firstDay.toLocalDate(), lastDay.toLocalDate(),
+                    firstHour, firstDay, lastDay, lastHour, from, firstHour, lastHour, to);
+        }
+
+        private static LocalDateTime ceil(LocalDateTime value, ChronoUnit unit) {
+            LocalDateTime truncated = value.truncatedTo(unit);
+            return truncated.equals(value) ? value : truncated.plus(1, unit);
+        }
+
+        Object[] args(Object... extra) {
+            Object[] args = new Object[10 + extra.length];
+            args[0] = Date.valueOf(dayFrom);
+            args[1] = Date.valueOf(dayTo);
+            args[2] = Timestamp.valueOf(hour1From);
+            args[3] = Timestamp.valueOf(hour1To);
+            args[4] = Timestamp.valueOf(hour2From);
+            args[5] = Timestamp.valueOf(hour2To);
+            args[6] = Timestamp.valueOf(raw1From);
+            args[7] = Timestamp.valueOf(raw1To);
+            args[8] = Timestamp.valueOf(raw2From);
+            args[9] = Timestamp.valueOf(raw2To);
+            System.arraycopy(extra, 0, args, 10, extra.length);
+            return args;
+        }
+    }
+
+    public record RebuildResult(int hourlyRows, int productHourlyRows, long elapsedMs) {
+    }
+}
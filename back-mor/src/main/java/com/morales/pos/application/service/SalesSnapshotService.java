@@ -0,0 +1,205 @@
+package com.morales.pos.application.service;
+
+import com.morales.pos.infrastructure.persistence.TransactionHooks;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Totales congelados de los días cerrados (V29).
+ *
+ * Un día cerrado (anterior a hoy) ya no cambia: el cierre diario copia sus totales de los
+ * acumulados diarios de SalesRollupService a una fila de sales_day_snapshots, y los reportes
+ * por rango leen esa fila en lugar de recalcular el día. Solo el día abierto, los bordes que
+ * no cubren un día completo y los días sin congelar se calculan en vivo (ver {@link #plan}).
+ *
+ * Un cambio tardío en un día cerrado (anulación, venta offline con fecha pasada) borra la fila
+ * en la misma transacción, así el día se calcula en vivo hasta que se vuelve a congelar al
+ * confirmar. Congelar y borrar toman el mismo candado por día, de modo que un cierre no puede
+ * guardar totales leídos antes de un cambio que confirmó después.
+ *
+ * Los días de periodos ya archivados no se congelan: en la base sus acumulados quedaron en
+ * cero y sus ventas las responde el archivo histórico.
+ */
+@Service
+@Slf4j
+public class SalesSnapshotService {
+
+    private static final String LOCK_SQL = "SELECT pg_advisory_xact_lock(hashtext('sales_day_snapshots'), ?)";
+
+    private static final String LIVE_DAY_SQL =
+            "SELECT COALESCE((SELECT SUM(total) FROM sales_rollup_daily WHERE sale_date = ?), 0), " +
+            "COALESCE((SELECT SUM(invoice_count) FROM sales_rollup_daily WHERE sale_date = ?), 0), " +
+            "COALESCE((SELECT SUM(cost) FROM sales_product_rollup_daily WHERE sale_date = ?), 0)";
+    private static final String UPSERT_SQL =
+            "INSERT INTO sales_day_snapshots (business_date, total_sales, sales_count, total_cost, frozen_at) " +
+            "VALUES (?, ?, ?, ?, ?) ON CONFLICT (business_date) DO UPDATE SET " +
+            "total_sales = EXCLUDED.total_sales, sales_count = EXCLUDED.sales_count, " +
+            "total_cost = EXCLUDED.total_cost, frozen_at = EXCLUDED.frozen_at";
+    private static final String FIRST_OPEN_DAY_SQL =
+            "SELECT GREATEST((SELECT MIN(sale_date) FROM sales_rollup_daily), (SELECT MAX(period_end) FROM archive_batches))";
+    private static final String ARCHIVED_UNTIL_SQL = "SELECT MAX(period_end) FROM archive_batches";
+    private static final String MISSING_DAYS_SQL =
+            "SELECT CAST(d AS DATE) FROM generate_series(CAST(? AS DATE), CAST(? AS DATE), INTERVAL '1 day') d " +
+            "WHERE NOT EXISTS (SELECT 1 FROM sales_day_snapshots s WHERE s.business_date = CAST(d AS DATE)) ORDER BY 1";
+    private static final String RANGE_SQL =
+            "SELECT business_date, total_sales, sales_count, total_cost FROM sales_day_snapshots " +
+            "WHERE business_date BETWEEN ? AND ? ORDER BY business_date";
+
+    // Un rango que termina en este segundo cubre el día completo (ver SalesRollupService)
+    private static final LocalTime LAST_SECOND = LocalTime.of(23, 59, 59);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate freezeTransaction;
+
+    public SalesSnapshotService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Transacción propia también cuando se congela desde el afterCommit de otra
+        this.freezeTransaction = new TransactionTemplate(transactionManager);
+        this.freezeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Cierre diario: congela los días cerrados que no tienen fila, incluidos los que un cambio
+     * tardío dejó sin congelar. Devuelve cuántos días se congelaron.
+     */
+    @Scheduled(cron = "0 10 0 * * ?") // Every day at 0:10 AM
+    public int closeDays() {
+        LocalDate firstOpen = jdbcTemplate.queryForObject(FIRST_OPEN_DAY_SQL, LocalDate.class);
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        if (firstOpen == null || firstOpen.isAfter(yesterday)) {
+            return 0;
+        }
+        List<LocalDate> missing = jdbcTemplate.queryForList(MISSING_DAYS_SQL, LocalDate.class,
+                Date.valueOf(firstOpen), Date.valueOf(yesterday));
+        int frozen = 0;
+        for (LocalDate day : missing) {
+            try {
+                freeze(day);
+                frozen++;
+            } catch (Exception e) {
+                log.error("Cierre diario: no se pudo congelar {}: {}", day, e.getMessage());
+            }
+        }
+        if (frozen > 0) {
+            log.info("Cierre diario: {} días congelados (hasta {})", frozen, yesterday);
+        }
+        return frozen;
+    }
+
+    /**
+     * Congela (o vuelve a congelar) un día cerrado con los totales actuales de la base.
+     */
+    public Snapshot freeze(LocalDate day) {
+        if (!day.isBefore(LocalDate.now())) {
+            throw new IllegalArgumentException("Solo se pueden congelar días cerrados: " + day);
+        }
+        LocalDate archivedUntil = jdbcTemplate.queryForObject(ARCHIVED_UNTIL_SQL, LocalDate.class);
+        if (archivedUntil != null && day.isBefore(archivedUntil)) {
+            throw new IllegalArgumentException("El día " + day + " está archivado; sus ventas las responde el archivo histórico");
+        }
+        return freezeTransaction.execute(status -> {
+            lock(day);
+            Date date = Date.valueOf(day);
+            Snapshot snapshot = jdbcTemplate.queryForObject(LIVE_DAY_SQL,
+                    (rs, n) -> new Snapshot(day, rs.getBigDecimal(1), rs.getLong(2), rs.getBigDecimal(3)),
+                    date, date, date);
+            jdbcTemplate.update(UPSERT_SQL, date, snapshot.totalSales(), snapshot.salesCount(),
+                    snapshot.totalCost(), Timestamp.valueOf(LocalDateTime.now()));
+            return snapshot;
+        });
+    }
+
+    /**
+     * Una venta completada o anulada cambia el día en que se facturó.
+     */
+    @EventListener
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void onSale(SaleEvent event) {
+        invalidate(event.saleTime().toLocalDate());
+    }
+
+    /**
+     * Marca un día como cambiado por la transacción actual. Si el día ya cerró se borra su
+     * fila y se vuelve a congelar al confirmar; el día abierto no tiene fila y no hace nada.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void invalidate(LocalDate day) {
+        if (!day.isBefore(LocalDate.now())) {
+            return;
+        }
+        lock(day);
+        if (jdbcTemplate.update("DELETE FROM sales_day_snapshots WHERE business_date = ?", Date.valueOf(day)) == 0) {
+            return; // sin congelar todavía: lo toma el cierre diario
+        }
+        TransactionHooks.afterCommit(() -> {
+            try {
+                freeze(day);
+                log.info("Día cerrado {} congelado de nuevo por un cambio tardío", day);
+            } catch (Exception e) {
+                // Mientras tanto el día se calcula en vivo; el próximo cierre diario lo congela
+                log.warn("No se pudo volver a congelar {}: {}", day, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Parte [start, end] en días congelados y tramos a calcular en vivo. Los tramos usan los
+     * mismos extremos que los reportes: el final incluye todo su segundo.
+     */
+    public Plan plan(LocalDateTime start, LocalDateTime end) {
+        LocalDate firstFull = start.toLocalTime().equals(LocalTime.MIDNIGHT) ? start.toLocalDate() : start.toLocalDate().plusDays(1);
+        LocalDate lastFull = end.toLocalTime().isBefore(LAST_SECOND) ? end.toLocalDate().minusDays(1) : end.toLocalDate();
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        if (lastFull.isAfter(yesterday)) {
+            lastFull = yesterday;
+        }
+
+        List<Snapshot> frozen = firstFull.isAfter(lastFull) ? List.of() : jdbcTemplate.query(RANGE_SQL,
+                (rs, n) -> new Snapshot(rs.getDate(1).toLocalDate(), rs.getBigDecimal(2), rs.getLong(3), rs.getBigDecimal(4)),
+                Date.valueOf(firstFull), Date.valueOf(lastFull));
+
+        List<Range> live = new ArrayList<>();
+        LocalDateTime cursor = start;
+        for (Snapshot snapshot : frozen) {
+            LocalDateTime dayStart = snapshot.date().atStartOfDay();
+            if (cursor.isBefore(dayStart)) {
+                live.add(new Range(cursor, dayStart.minusSeconds(1)));
+            }
+            cursor = dayStart.plusDays(1);
+        }
+        if (!cursor.isAfter(end)) {
+            live.add(new Range(cursor, end));
+        }
+        return new Plan(frozen, live);
+    }
+
+    private void lock(LocalDate day) {
+        jdbcTemplate.query(LOCK_SQL, rs -> { }, (int) day.toEpochDay());
+    }
+
+    public record Snapshot(LocalDate date, BigDecimal totalSales, long salesCount, BigDecimal totalCost) {
+    }
+
+    public record Range(LocalDateTime start, LocalDateTime end) {
+    }
+
+    public record Plan(List<Snapshot> frozen, List<Range> live) {
+    }
+}
@@ -0,0 +1,33 @@
+package com.morales.pos.application.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.morales.pos.domain.enums.OutboxEventType;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reenvía a las pantallas (SSE) los eventos de cocina y mesas una vez confirmada la venta.
+ */
+@Component
+@RequiredArgsConstructor
+public class SseOutboxHandler implements OutboxEventHandler {
+
+    private final SseService sseService;
+
+    @Override
+    public boolean supports(OutboxEventType type) {
+        return type == OutboxEventType.KITCHEN_ORDER_CREATED
+                || type == OutboxEventType.TABLE_ITEMS_ADDED
+                || type == OutboxEventType.TABLE_PAID;
+    }
+
+    @Override
+    public void handle(OutboxEventType type, JsonNode payload) {
+        switch (type) {
+            case KITCHEN_ORDER_CREATED -> sseService.broadcastToRoles("new_order", payload, "COCINERO", "ADMIN", "SUPERVISOR");
+            case TABLE_ITEMS_ADDED -> sseService.broadcast("new_order", payload);
+            case TABLE_PAID -> sseService.broadcast("order_paid", payload);
+            default -> { }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.morales.pos.application.service;
+
+import com.morales.pos.application.service.StockMutationService.StockChange;
+import com.morales.pos.infrastructure.persistence.TransactionHooks;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Alertas de stock por cruce de umbral.
+ *
+ * Guarda en memoria el nivel de cada producto (OK, bajo, agotado) y solo genera una alerta
+ * cuando el nivel cambia y la transacción que lo cambió confirma; un producto que sigue bajo
+ * el mínimo venta tras venta no vuelve a consultar ni escribir nada. Las alertas se acumulan
+ * (la última por producto gana) y se crean en lote desde un hilo programado.
+ *
+ * Los niveles se cargan de la base al arrancar; un producto que ya estaba bajo el mínimo no
+ * genera alerta hasta su próximo cruce.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StockAlertEngine {
+
+    public enum Level { OK, LOW, OUT }
+
+    /**
+     * Cruce de umbral pendiente de convertirse en notificación.
+     */
+    public record StockAlert(Long productId, String productName, BigDecimal quantity, BigDecimal minStock,
+                             Level level) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NotificationService notificationService;
+
+    private final Map<Long, Level> levels = new ConcurrentHashMap<>();
+    private final Map<Long, StockAlert> pending = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void loadLevels() {
+        jdbcTemplate.query("SELECT product_id, quantity, min_stock FROM inventory", rs -> {
+            levels.put(rs.getLong(1), levelOf(rs.getBigDecimal(2), rs.getBigDecimal(3)));
+        });
+        log.info("Alertas de stock: {} productos cargados", levels.size());
+    }
+
+    /**
+     * Registra un cambio de stock; se evalúa al confirmar la transacción actual (o en el
+     * momento si no hay transacción).
+     */
+    public void record(StockChange change) {
+        record(change.productId(), change.productName(), change.newQuantity(), change.minStock());
+    }
+
+    public void record(Long productId, String productName, BigDecimal quantity, BigDecimal minStock) {
+        StockAlert observed = new StockAlert(productId, productName, quantity, minStock, levelOf(quantity, minStock));
+        if (TransactionHooks.isActive()) {
+            // Solo el último valor de cada producto en la transacción importa
+            pendingForCurrentTransaction().put(productId, observed);
+        } else {
+            evaluate(observed);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.stock-alerts.flush-interval-ms:2000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<StockAlert> batch = new ArrayList<>(pending.size());
+        for (Long productId : List.copyOf(pending.keySet())) {
+            StockAlert alert = pending.remove(productId);
+            if (alert != null) {
+                batch.add(alert);
+            }
+        }
+        try {
+            int created = notificationService.createStockAlerts(batch);
+            log.debug("Alertas de stock: {} cruces, {} notificaciones creadas", batch.size(), created);
+        } catch (Exception e) {
+            // Se reintentan salvo que llegue un cruce más nuevo del mismo producto
+            batch.forEach(alert -> pending.putIfAbsent(alert.productId(), alert));
+            log.error("Alertas de stock: no se pudieron crear {} notificaciones: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    private void evaluate(StockAlert observed) {
+        Level previous = levels.put(observed.productId(), observed.level());
+        if (previous == null) {
+            previous = Level.OK; // producto creado después del arranque
+        }
+        if (previous == observed.level()) {
+            return;
+        }
+        if (observed.level() == Level.OK) {
+            // Volvió a la normalidad: descarta una alerta que todavía no se creó
+            pending.remove(observed.productId());
+        } else {
+            pending.put(observed.productId(), observed);
+        }
+    }
+
+    private Map<Long, StockAlert> pendingForCurrentTransaction() {
+        return TransactionHooks.perTransaction(this, LinkedHashMap::new, new TransactionHooks.Callbacks<Map<Long, StockAlert>>() {
+            @Override
+            public void afterCommit(Map<Long, StockAlert> changes) {
+                changes.values().forEach(StockAlertEngine.this::evaluate);
+            }
+        });
+    }
+
+    private static Level levelOf(BigDecimal quantity, BigDecimal minStock) {
+        if (quantity == null || quantity.signum() <= 0) {
+            return Level.OUT;
+        }
+        if (minStock != null && quantity.compareTo(minStock) <= 0) {
+            return Level.LOW;
+        }
+        return Level.OK;
+    }
+}
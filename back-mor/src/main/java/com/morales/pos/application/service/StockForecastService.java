@@ -0,0 +1,354 @@
+package com.morales.pos.application.service;
+
+import com.morales.pos.application.dto.response.StockForecastResponse;
+import com.morales.pos.application.service.StockMutationService.StockLimits;
+import com.morales.pos.domain.entity.StockForecast;
+import com.morales.pos.domain.repository.StockForecastRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pronóstico de reposición: stock mínimo y máximo sugeridos según la velocidad de venta.
+ *
+ * El proceso nocturno lee en una sola pasada (cursor) las ventas completadas de los últimos
+ * app.stock-forecast.history-days días agregadas por producto, día y hora, ya explotadas a
+ * ingredientes finales (ver RecipeService), y reparte los productos en particiones que se
+ * calculan en un ForkJoinPool propio. Para cada producto:
+ * <ul>
+ *   <li>velocidad = unidades por día (los días sin venta cuentan como cero) y su desvío;</li>
+ *   <li>estacionalidad = promedio por día de la semana; el consumo durante el plazo de
+ *       reposición se toma de los días consecutivos de la semana que más venden;</li>
+ *   <li>mínimo = consumo en el plazo de reposición + z · desvío · √plazo;</li>
+ *   <li>máximo = mínimo + velocidad · días entre revisiones.</li>
+ * </ul>
+ * Las sugerencias se guardan en stock_forecasts (V25). Con app.stock-forecast.auto-apply se
+ * copian también a inventory; si no, se aplican a pedido desde la API.
+ */
+@Service
+@Slf4j
+public class StockForecastService {
+
+    private static final String HISTORY_SQL =
+            "SELECT d.product_id, CAST(i.created_at AS date), EXTRACT(HOUR FROM i.created_at)::int, SUM(d.quantity) " +
+            "FROM invoice_details d JOIN invoices i ON i.id = d.invoice_id " +
+            "WHERE i.status = 'COMPLETADA' AND i.created_at >= ? AND i.created_at < ? AND d.product_id IS NOT NULL " +
+            "GROUP BY 1, 2, 3";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO stock_forecasts (product_id, daily_velocity, daily_std_dev, peak_weekday, peak_weekday_factor, " +
+            "    peak_hour, suggested_min_stock, suggested_max_stock, history_days, computed_at) " +
+            "SELECT ?, ?, ?, ?, ?, ?, ?, ?, ?, ? WHERE EXISTS (SELECT 1 FROM inventory WHERE product_id = ?)";
+
+    private static final int FETCH_SIZE = 2000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final RecipeService recipeService;
+    private final InventoryService inventoryService;
+    private final StockForecastRepository stockForecastRepository;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate writeTransaction;
+    private final ForkJoinPool pool;
+    private final int historyDays;
+    private final int leadTimeDays;
+    private final int reviewDays;
+    private final double serviceLevelZ;
+    private final boolean autoApply;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public StockForecastService(JdbcTemplate jdbcTemplate,
+                                RecipeService recipeService,
+                                InventoryService inventoryService,
+                                StockForecastRepository stockForecastRepository,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${app.stock-forecast.threads:4}") int threads,
+                                @Value("${app.stock-forecast.history-days:56}") int historyDays,
+                                @Value("${app.stock-forecast.lead-time-days:2}") int leadTimeDays,
+                                @Value("${app.stock-forecast.review-days:7}") int reviewDays,
+                                @Value("${app.stock-forecast.service-level-z:1.65}") double serviceLevelZ,
+                                @Value("${app.stock-forecast.auto-apply:false}") boolean autoApply) {
+        if (historyDays < 7 || leadTimeDays < 1 || leadTimeDays > 7 || reviewDays < 0) {
+            throw new IllegalArgumentException("app.stock-forecast: history-days >= 7, lead-time-days entre 1 y 7, review-days >= 0");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.recipeService = recipeService;
+        this.inventoryService = inventoryService;
+        this.stockForecastRepository = stockForecastRepository;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.pool = new ForkJoinPool(Math.max(1, threads), forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("stock-forecast-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        this.historyDays = historyDays;
+        this.leadTimeDays = leadTimeDays;
+        this.reviewDays = reviewDays;
+        this.serviceLevelZ = serviceLevelZ;
+        this.autoApply = autoApply;
+    }
+
+    @Scheduled(cron = "0 15 2 * * ?") // Every day at 2:15 AM
+    public void scheduledRun() {
+        try {
+            run();
+        } catch (Exception e) {
+            log.error("Pronóstico de reposición: no se pudo calcular: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Recalcula todas las sugerencias (y las aplica si auto-apply está activo).
+     *
+     * @return cantidad de productos con sugerencia
+     */
+    public int run() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("El pronóstico de reposición ya se está calculando");
+        }
+        try {
+            long startedAt = System.currentTimeMillis();
+            LocalDate to = LocalDate.now();
+            LocalDate from = to.minusDays(historyDays);
+
+            Map<Long, Demand> demands = readHistory(from, to);
+            List<Forecast> forecasts = computeInParallel(new ArrayList<>(demands.values()), from);
+
+            LocalDateTime computedAt = LocalDateTime.now();
+            Integer saved = writeTransaction.execute(status -> {
+                jdbcTemplate.update("DELETE FROM stock_forecasts");
+                int[][] counts = jdbcTemplate.batchUpdate(INSERT_SQL, forecasts, 500, (ps, f) -> {
+                    ps.setLong(1, f.productId);
+                    ps.setBigDecimal(2, f.dailyVelocity);
+                    ps.setBigDecimal(3, f.dailyStdDev);
+                    ps.setInt(4, f.peakWeekday);
+                    ps.setBigDecimal(5, f.peakWeekdayFactor);
+                    ps.setInt(6, f.peakHour);
+                    ps.setBigDecimal(7, f.suggestedMin);
+                    ps.setBigDecimal(8, f.suggestedMax);
+                    ps.setInt(9, historyDays);
+                    ps.setTimestamp(10, Timestamp.valueOf(computedAt));
+                    ps.setLong(11, f.productId);
+                });
+                int rows = 0;
+                for (int[] batch : counts) {
+                    for (int count : batch) {
+                        rows += Math.max(count, 0);
+                    }
+                }
+                if (autoApply) {
+                    Map<Long, StockLimits> limits = new HashMap<>();
+                    forecasts.forEach(f -> limits.put(f.productId, new StockLimits(f.suggestedMin, f.suggestedMax)));
+                    applyLimits(limits);
+                }
+                return rows;
+            });
+
+            log.info("Pronóstico de reposición: {} productos con venta en {} días, {} sugerencias{} en {} ms",
+                    demands.size(), historyDays, saved, autoApply ? " aplicadas" : "",
+                    System.currentTimeMillis() - startedAt);
+            return saved != null ? saved : 0;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public List<StockForecastResponse> findAll() {
+        return stockForecastRepository.findAllWithProduct().stream()
+                .map(StockForecastResponse::fromEntity)
+                .toList();
+    }
+
+    /**
+     * Copia a inventory el mínimo y máximo sugeridos de los productos indicados (o de todos).
+     *
+     * @return cantidad de productos actualizados
+     */
+    @Transactional
+    public int apply(Collection<Long> productIds) {
+        List<StockForecast> forecasts = productIds == null || productIds.isEmpty()
+                ? stockForecastRepository.findAll()
+                : stockForecastRepository.findAllById(productIds);
+        Map<Long, StockLimits> limits = new HashMap<>();
+        forecasts.forEach(f -> limits.put(f.getProductId(), new StockLimits(f.getSuggestedMinStock(), f.getSuggestedMaxStock())));
+        return applyLimits(limits);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private int applyLimits(Map<Long, StockLimits> limits) {
+        if (limits.isEmpty()) {
+            return 0;
+        }
+        int updated = inventoryService.updateStockLimitsBatch(limits);
+        Object[] ids = limits.keySet().toArray();
+        jdbcTemplate.update("UPDATE stock_forecasts SET applied_at = ? WHERE product_id = ANY(?)", ps -> {
+            ps.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now()));
+            ps.setArray(2, ps.getConnection().createArrayOf("bigint", ids));
+        });
+        return updated;
+    }
+
+    /**
+     * Una pasada por las ventas agregadas; cada fila se explota a ingredientes finales y se
+     * acumula en el día y la hora de su producto.
+     */
+    private Map<Long, Demand> readHistory(LocalDate from, LocalDate to) {
+        Map<Long, Demand> demands = new HashMap<>();
+        readTransaction.executeWithoutResult(status -> {
+            // Un JdbcTemplate propio: el fetch size no debe afectar a otras consultas
+            JdbcTemplate cursorTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+            cursorTemplate.setFetchSize(FETCH_SIZE);
+            cursorTemplate.query(HISTORY_SQL, rs -> {
+                int day = (int) ChronoUnit.DAYS.between(from, rs.getDate(2).toLocalDate());
+                int hour = rs.getInt(3);
+                recipeService.explode(Map.of(rs.getLong(1), rs.getBigDecimal(4))).forEach((productId, quantity) ->
+                        demands.computeIfAbsent(productId, id -> new Demand(id, historyDays)).add(day, hour, quantity.doubleValue()));
+            }, Timestamp.valueOf(from.atStartOfDay()), Timestamp.valueOf(to.atStartOfDay()));
+        });
+        return demands;
+    }
+
+    private List<Forecast> computeInParallel(List<Demand> demands, LocalDate from) {
+        if (demands.isEmpty()) {
+            return List.of();
+        }
+        int partitions = Math.min(pool.getParallelism(), demands.size());
+        int size = (demands.size() + partitions - 1) / partitions;
+        List<CompletableFuture<List<Forecast>>> parts = new ArrayList<>(partitions);
+        for (int start = 0; start < demands.size(); start += size) {
+            List<Demand> slice = demands.subList(start, Math.min(start + size, demands.size()));
+            parts.add(CompletableFuture.supplyAsync(() -> slice.stream().map(d -> forecast(d, from)).toList(), pool));
+        }
+
+        List<Forecast> forecasts = new ArrayList<>(demands.size());
+        try {
+            for (CompletableFuture<List<Forecast>> part : parts) {
+                forecasts.addAll(part.join());
+            }
+        } catch (CompletionException e) {
+            throw new IllegalStateException("No se pudo calcular el pronóstico de reposición: " + e.getCause().getMessage(), e.getCause());
+        }
+        return forecasts;
+    }
+
+    private Forecast forecast(Demand demand, LocalDate from) {
+        int days = demand.daily.length;
+        double total = 0;
+        double[] weekdayTotal = new double[7];
+        int[] weekdayDays = new int[7];
+        for (int d = 0; d < days; d++) {
+            int weekday = from.plusDays(d).getDayOfWeek().getValue() - 1;
+            total += demand.daily[d];
+            weekdayTotal[weekday] += demand.daily[d];
+            weekdayDays[weekday]++;
+        }
+        double velocity = total / days;
+
+        double squares = 0;
+        for (double sold : demand.daily) {
+            squares += (sold - velocity) * (sold - velocity);
+        }
+        double stdDev = Math.sqrt(squares / (days - 1));
+
+        double[] weekdayAverage = new double[7];
+        int peakWeekday = 0;
+        for (int w = 0; w < 7; w++) {
+            weekdayAverage[w] = weekdayDays[w] > 0 ? weekdayTotal[w] / weekdayDays[w] : velocity;
+            if (weekdayAverage[w] > weekdayAverage[peakWeekday]) {
+                peakWeekday = w;
+            }
+        }
+        int peakHour = 0;
+        for (int h = 1; h < 24; h++) {
+            if (demand.hourly[h] > demand.hourly[peakHour]) {
+                peakHour = h;
+            }
+        }
+
+        // El plazo de reposición puede caer en cualquier día: se cubre la racha que más vende
+        double leadTimeDemand = 0;
+        for (int start = 0; start < 7; start++) {
+            double window = 0;
+            for (int i = 0; i < leadTimeDays; i++) {
+                window += weekdayAverage[(start + i) % 7];
+            }
+            leadTimeDemand = Math.max(leadTimeDemand, window);
+        }
+        double min = leadTimeDemand + serviceLevelZ * stdDev * Math.sqrt(leadTimeDays);
+        double max = min + velocity * reviewDays;
+
+        Forecast forecast = new Forecast();
+        forecast.productId = demand.productId;
+        forecast.dailyVelocity = BigDecimal.valueOf(velocity).setScale(4, RoundingMode.HALF_UP);
+        forecast.dailyStdDev = BigDecimal.valueOf(stdDev).setScale(4, RoundingMode.HALF_UP);
+        forecast.peakWeekday = peakWeekday + 1;
+        forecast.peakWeekdayFactor = BigDecimal.valueOf(velocity > 0 ? weekdayAverage[peakWeekday] / velocity : 1)
+                .setScale(3, RoundingMode.HALF_UP);
+        forecast.peakHour = peakHour;
+        forecast.suggestedMin = BigDecimal.valueOf(min).setScale(0, RoundingMode.CEILING);
+        forecast.suggestedMax = BigDecimal.valueOf(max).setScale(0, RoundingMode.CEILING).max(forecast.suggestedMin);
+        return forecast;
+    }
+
+    /**
+     * Venta de un producto por día de la ventana y por hora del día.
+     */
+    private static final class Demand {
+        final Long productId;
+        final double[] daily;
+        final double[] hourly = new double[24];
+
+        Demand(Long productId, int days) {
+            this.productId = productId;
+            this.daily = new double[days];
+        }
+
+        void add(int day, int hour, double quantity) {
+            if (day >= 0 && day < daily.length) {
+                daily[day] += quantity;
+                hourly[hour] += quantity;
+            }
+        }
+    }
+
+    private static final class Forecast {
+        Long productId;
+        BigDecimal dailyVelocity;
+        BigDecimal dailyStdDev;
+        int peakWeekday;
+        BigDecimal peakWeekdayFactor;
+        int peakHour;
+        BigDecimal suggestedMin;
+        BigDecimal suggestedMax;
+    }
+}
@@ -0,0 +1,435 @@
+package com.morales.pos.application.service;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.morales.pos.application.dto.request.StockImportLine;
+import com.morales.pos.application.dto.response.StockImportResponse;
+import com.morales.pos.application.dto.response.StockImportResponse.StockImportResult;
+import com.morales.pos.application.service.StockMutationService.CostEntry;
+import com.morales.pos.application.service.StockMutationService.StockChange;
+import com.morales.pos.domain.entity.InventoryMovement;
+import com.morales.pos.domain.entity.User;
+import com.morales.pos.domain.enums.MovementType;
+import com.morales.pos.domain.repository.InventoryMovementRepository;
+import com.morales.pos.domain.repository.ProductRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Importación masiva de stock (entregas de proveedores y conteos físicos) desde un CSV o JSON.
+ *
+ * El archivo se lee en streaming y se procesa en bloques de app.inventory-import.chunk-size
+ * líneas: una consulta resuelve todos los códigos del bloque, una pasada valida las líneas y
+ * una transacción por bloque bloquea las filas de inventario en orden, aplica un solo UPDATE
+ * y registra los movimientos en lote. Cada línea recibe su propio resultado; un bloque que
+ * falla no deshace los anteriores.
+ */
+@Service
+@Slf4j
+public class StockImportService {
+
+    private static final String APPLIED = "APLICADA";
+    private static final String REJECTED = "RECHAZADA";
+    private static final String COUNT = "CONTEO";
+
+    private static final String RESOLVE_SQL =
+            "SELECT p.id, p.code, p.barcode FROM products p WHERE p.code = ANY(?) OR p.barcode = ANY(?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StockMutationService stockMutationService;
+    private final StockLedger stockLedger;
+    private final StockAlertEngine stockAlertEngine;
+    private final InventoryValuationService inventoryValuationService;
+    private final InventoryLotService inventoryLotService;
+    private final InventoryMovementRepository movementRepository;
+    private final ProductRepository productRepository;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate writeTransaction;
+    private final int chunkSize;
+
+    public StockImportService(JdbcTemplate jdbcTemplate,
+                              StockMutationService stockMutationService,
+                              StockLedger stockLedger,
+                              StockAlertEngine stockAlertEngine,
+                              InventoryValuationService inventoryValuationService,
+                              InventoryLotService inventoryLotService,
+                              InventoryMovementRepository movementRepository,
+                              ProductRepository productRepository,
+                              ObjectMapper objectMapper,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${app.inventory-import.chunk-size:500}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.stockMutationService = stockMutationService;
+        this.stockLedger = stockLedger;
+        this.stockAlertEngine = stockAlertEngine;
+        this.inventoryValuationService = inventoryValuationService;
+        this.inventoryLotService = inventoryLotService;
+        this.movementRepository = movementRepository;
+        this.productRepository = productRepository;
+        this.objectMapper = objectMapper;
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * @param json true si el cuerpo es JSON (arreglo de líneas o una línea por renglón), false para CSV
+     */
+    public StockImportResponse importStock(InputStream in, boolean json, String reason, User user) {
+        if (stockLedger.isEnabled()) {
+            // Con el libro de stock la fila de inventario no es la cantidad vigente
+            throw new IllegalStateException("La importación masiva no está disponible con el libro de stock activo");
+        }
+        long startedAt = System.currentTimeMillis();
+        String movementReason = reason != null && !reason.isBlank() ? reason : "Importación de inventario";
+
+        List<StockImportResult> results = new ArrayList<>();
+        List<Row> chunk = new ArrayList<>(chunkSize);
+        Position position = new Position();
+        RowConsumer consumer = row -> {
+            chunk.add(row);
+            if (chunk.size() == chunkSize) {
+                processChunk(chunk, movementReason, user, results);
+                chunk.clear();
+            }
+        };
+        try {
+            if (json) {
+                readJson(in, position, consumer);
+            } else {
+                readCsv(in, position, consumer);
+            }
+        } catch (IOException e) {
+            // Lo leído hasta aquí se aplica; el resto del archivo queda como una línea rechazada
+            log.warn("Importación de stock cortada por formato inválido: {}", e.getMessage());
+            processChunk(chunk, movementReason, user, results);
+            chunk.clear();
+            results.add(StockImportResult.builder()
+                    .line(position.line + 1)
+                    .status(REJECTED)
+                    .message("Formato inválido, no se leyó el resto del archivo: " + e.getMessage())
+                    .build());
+        }
+        if (!chunk.isEmpty()) {
+            processChunk(chunk, movementReason, user, results);
+        }
+        if (results.isEmpty()) {
+            throw new IllegalArgumentException("El archivo de importación no tiene líneas");
+        }
+
+        int applied = (int) results.stream().filter(r -> APPLIED.equals(r.getStatus())).count();
+        StockImportResponse response = StockImportResponse.builder()
+                .received(results.size())
+                .applied(applied)
+                .rejected(results.size() - applied)
+                .results(results)
+                .build();
+        log.info("Importación de stock de {}: {} líneas ({} aplicadas, {} rechazadas) en {} ms",
+                user.getFullName(), response.getReceived(), response.getApplied(), response.getRejected(),
+                System.currentTimeMillis() - startedAt);
+        return response;
+    }
+
+    private void processChunk(List<Row> rows, String reason, User user, List<StockImportResult> results) {
+        StockImportResult[] chunkResults = new StockImportResult[rows.size()];
+
+        // ── 1. CÓDIGOS DEL BLOQUE EN UNA CONSULTA ───────────────────────────────
+        Set<String> codes = new HashSet<>();
+        rows.forEach(row -> {
+            if (row.code != null) {
+                codes.add(row.code);
+            }
+        });
+        Map<String, Long> productIds = resolveCodes(codes);
+
+        // ── 2. VALIDACIÓN ───────────────────────────────────────────────────────
+        List<Integer> valid = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            String error = validate(row, productIds);
+            if (error != null) {
+                chunkResults[i] = rejected(row, error);
+            } else {
+                row.productId = productIds.get(row.code);
+                valid.add(i);
+            }
+        }
+
+        // ── 3. APLICACIÓN EN UNA TRANSACCIÓN ────────────────────────────────────
+        if (!valid.isEmpty()) {
+            try {
+                writeTransaction.executeWithoutResult(status -> apply(rows, valid, reason, user, chunkResults));
+            } catch (Exception e) {
+                log.error("Error al importar bloque de {} líneas: {}", valid.size(), e.getMessage());
+                for (int i : valid) {
+                    chunkResults[i] = rejected(rows.get(i), "Error al registrar el bloque, reintente estas líneas");
+                }
+            }
+        }
+        results.addAll(List.of(chunkResults));
+    }
+
+    private void apply(List<Row> rows, List<Integer> valid, String reason, User user,
+                       StockImportResult[] chunkResults) {
+        Set<Long> touched = new LinkedHashSet<>();
+        valid.forEach(i -> touched.add(rows.get(i).productId));
+        Map<Long, BigDecimal> locked = stockMutationService.lockQuantities(touched);
+
+        // Las líneas se aplican en el orden del archivo sobre la cantidad en curso del producto
+        Map<Long, BigDecimal> running = new HashMap<>(locked);
+        Set<Long> restocked = new HashSet<>();
+        List<InventoryMovement> movements = new ArrayList<>();
+        List<CostEntry> costs = new ArrayList<>();
+        for (int i : valid) {
+            Row row = rows.get(i);
+            BigDecimal current = running.get(row.productId);
+            if (current == null) {
+                chunkResults[i] = rejected(row, "Inventario no encontrado para producto ID: " + row.productId);
+                continue;
+            }
+            BigDecimal next;
+            MovementType movementType;
+            switch (row.type) {
+                case "SALIDA" -> {
+                    if (current.compareTo(row.quantity) < 0) {
+                        chunkResults[i] = rejected(row, String.format(
+                                "Stock insuficiente. Disponible: %s, Solicitado: %s", current, row.quantity));
+                        continue;
+                    }
+                    next = current.subtract(row.quantity);
+                    movementType = MovementType.SALIDA;
+                }
+                case COUNT -> {
+                    next = row.quantity;
+                    movementType = MovementType.AJUSTE;
+                }
+                default -> {
+                    next = current.add(row.quantity);
+                    movementType = MovementType.ENTRADA;
+                    restocked.add(row.productId);
+                    if (row.unitCost != null) {
+                        // Sobre la cantidad en curso: varias entradas del mismo producto se encadenan
+                        costs.add(new CostEntry(row.productId, current, row.quantity, row.unitCost));
+                    }
+                }
+            }
+            running.put(row.productId, next);
+            chunkResults[i] = StockImportResult.builder()
+                    .line(row.line)
+                    .code(row.code)
+                    .type(row.type)
+                    .status(APPLIED)
+                    .productId(row.productId)
+                    .previousQuantity(current)
+                    .newQuantity(next)
+                    .message(next.compareTo(current) == 0 ? "Sin diferencia" : null)
+                    .build();
+            if (next.compareTo(current) != 0) {
+                movements.add(InventoryMovement.builder()
+                        .product(productRepository.getReferenceById(row.productId))
+                        .movementType(movementType)
+                        .quantity(next.subtract(current).abs())
+                        .previousQuantity(current)
+                        .newQuantity(next)
+                        .unitCost(row.unitCost)
+                        .reason(reason)
+                        .user(user)
+                        .build());
+            }
+        }
+
+        Map<Long, BigDecimal> deltas = new HashMap<>();
+        running.forEach((productId, quantity) -> {
+            BigDecimal delta = quantity.subtract(locked.get(productId));
+            if (delta.signum() != 0 || restocked.contains(productId)) {
+                deltas.put(productId, delta);
+            }
+        });
+        List<StockChange> changes = stockMutationService.applyDeltas(deltas, restocked);
+        movementRepository.saveAll(movements);
+        inventoryValuationService.recordAverageCosts(stockMutationService.updateAverageCosts(costs));
+        changes.forEach(stockAlertEngine::record);
+        changes.forEach(inventoryValuationService::record);
+        // Las bajas netas (salidas y conteos por debajo) consumen lotes como cualquier salida
+        changes.forEach(change -> inventoryLotService.consume(change.productId(),
+                change.previousQuantity().subtract(change.newQuantity()), reason));
+    }
+
+    private String validate(Row row, Map<String, Long> productIds) {
+        if (row.code == null) {
+            return "El código del producto es requerido";
+        }
+        if (!productIds.containsKey(row.code)) {
+            return "Producto no encontrado: " + row.code;
+        }
+        if (!"ENTRADA".equals(row.type) && !"SALIDA".equals(row.type) && !COUNT.equals(row.type)) {
+            return "Tipo inválido: " + row.type + " (use ENTRADA, SALIDA o CONTEO)";
+        }
+        if (row.rawQuantity == null) {
+            return "La cantidad es requerida";
+        }
+        try {
+            row.quantity = new BigDecimal(row.rawQuantity);
+        } catch (NumberFormatException e) {
+            return "Cantidad inválida: " + row.rawQuantity;
+        }
+        if (row.quantity.scale() > 2) {
+            return "La cantidad admite como máximo 2 decimales";
+        }
+        if (row.quantity.signum() < 0 || (row.quantity.signum() == 0 && !COUNT.equals(row.type))) {
+            return "La cantidad debe ser mayor a 0";
+        }
+        if (row.rawUnitCost != null) {
+            if (!"ENTRADA".equals(row.type)) {
+                return "El costo unitario solo aplica a ENTRADA";
+            }
+            try {
+                row.unitCost = new BigDecimal(row.rawUnitCost);
+            } catch (NumberFormatException e) {
+                return "Costo unitario inválido: " + row.rawUnitCost;
+            }
+            if (row.unitCost.signum() < 0) {
+                return "El costo unitario no puede ser negativo";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resuelve códigos internos y códigos de barras en una sola consulta; si un valor coincide
+     * con el código de un producto y el código de barras de otro, gana el código interno.
+     */
+    private Map<String, Long> resolveCodes(Set<String> codes) {
+        Map<String, Long> byCode = new HashMap<>();
+        Map<String, Long> byBarcode = new HashMap<>();
+        if (codes.isEmpty()) {
+            return byCode;
+        }
+        Object[] values = codes.toArray();
+        jdbcTemplate.query(RESOLVE_SQL, ps -> {
+            ps.setArray(1, ps.getConnection().createArrayOf("varchar", values));
+            ps.setArray(2, ps.getConnection().createArrayOf("varchar", values));
+        }, rs -> {
+            byCode.put(rs.getString(2), rs.getLong(1));
+            if (rs.getString(3) != null) {
+                byBarcode.putIfAbsent(rs.getString(3), rs.getLong(1));
+            }
+        });
+        byBarcode.forEach(byCode::putIfAbsent);
+        return byCode;
+    }
+
+    private void readJson(InputStream in, Position position, RowConsumer consumer) throws IOException {
+        try (MappingIterator<StockImportLine> lines = objectMapper.readerFor(StockImportLine.class).readValues(in)) {
+            while (lines.hasNextValue()) {
+                StockImportLine value = lines.nextValue();
+                consumer.accept(new Row(++position.line, value));
+            }
+        }
+    }
+
+    /**
+     * CSV con columnas código, cantidad, tipo (opcional) y costo unitario (opcional), separado
+     * por coma o punto y coma.
+     * La primera línea se toma como encabezado si su cantidad no es numérica. Con punto y coma
+     * la cantidad puede usar coma decimal.
+     */
+    private void readCsv(InputStream in, Position position, RowConsumer consumer) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String text;
+        String separator = null;
+        while ((text = reader.readLine()) != null) {
+            int line = ++position.line;
+            if (line == 1 && text.startsWith("\uFEFF")) {
+                text = text.substring(1);
+            }
+            if (text.isBlank()) {
+                continue;
+            }
+            if (separator == null) {
+                separator = text.contains(";") ? ";" : ",";
+            }
+            String[] cells = text.split(separator, -1);
+            String quantity = cells.length > 1 ? unquote(cells[1]) : null;
+            String unitCost = cells.length > 3 ? unquote(cells[3]) : null;
+            if (";".equals(separator) && quantity != null) {
+                quantity = quantity.replace(',', '.');
+            }
+            if (";".equals(separator) && unitCost != null) {
+                unitCost = unitCost.replace(',', '.');
+            }
+            if (line == 1 && quantity != null && !quantity.matches("-?[0-9.]+")) {
+                continue; // encabezado
+            }
+            consumer.accept(new Row(line, new StockImportLine(unquote(cells[0]), quantity,
+                    cells.length > 2 ? unquote(cells[2]) : null, unitCost)));
+        }
+    }
+
+    private static String unquote(String cell) {
+        String value = cell.trim();
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1).replace("\"\"", "\"").trim();
+        }
+        return value.isEmpty() ? null : value;
+    }
+
+    private static StockImportResult rejected(Row row, String message) {
+        return StockImportResult.builder()
+                .line(row.line)
+                .code(row.code)
+                .type(row.type)
+                .status(REJECTED)
+                .productId(row.productId)
+                .message(message)
+                .build();
+    }
+
+    // Última línea leída del archivo (en JSON, último elemento), contando vacías y encabezado
+    private static final class Position {
+        int line;
+    }
+
+    @FunctionalInterface
+    private interface RowConsumer {
+        void accept(Row row);
+    }
+
+    private static final class Row {
+        final int line;
+        final String code;
+        final String rawQuantity;
+        final String type;
+        final String rawUnitCost;
+        BigDecimal quantity;
+        BigDecimal unitCost;
+        Long productId;
+
+        Row(int line, StockImportLine source) {
+            this.line = line;
+            this.code = source.getCode() != null && !source.getCode().isBlank() ? source.getCode().trim() : null;
+            this.rawQuantity = source.getQuantity() != null ? source.getQuantity().trim() : null;
+            this.type = source.getType() != null && !source.getType().isBlank()
+                    ? source.getType().trim().toUpperCase() : "ENTRADA";
+            this.rawUnitCost = source.getUnitCost() != null && !source.getUnitCost().isBlank()
+                    ? source.getUnitCost().trim() : null;
+        }
+    }
+}
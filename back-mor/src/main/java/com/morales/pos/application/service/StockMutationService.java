@@ -0,0 +1,347 @@
+package com.morales.pos.application.service;
+
+import com.morales.pos.domain.exception.InsufficientStockException;
+import com.morales.pos.domain.exception.InsufficientStockException.Shortage;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * Cambia el stock directamente en la base, sin leer y reescribir la entidad Inventory.
+ *
+ * Una sola línea es un UPDATE condicional (quantity >= ?) con RETURNING: si no alcanza,
+ * no se toca nada y se lanza {@link InsufficientStockException}. Varias líneas bloquean primero
+ * las filas en orden de product_id (así dos carritos con los mismos productos no se bloquean
+ * mutuamente), validan todas a la vez y aplican un único UPDATE.
+ *
+ * Las entidades Inventory ya cargadas en la sesión no se actualizan; los llamadores deben
+ * usar las cantidades devueltas en {@link StockChange}.
+ */
+@Service
+@RequiredArgsConstructor
+public class StockMutationService {
+
+    private static final String RETURNING = " RETURNING i.product_id, p.name, i.quantity, i.min_stock";
+
+    private static final String DECREMENT_ONE_SQL =
+            "UPDATE inventory i SET quantity = i.quantity - ?, updated_at = ? FROM products p " +
+            "WHERE p.id = i.product_id AND i.product_id = ? AND i.quantity >= ?" + RETURNING + ", ? AS delta";
+
+    private static final String INCREMENT_ONE_SQL =
+            "UPDATE inventory i SET quantity = i.quantity + ?, updated_at = ?, " +
+            "    last_restock_date = CASE WHEN ? THEN ? ELSE i.last_restock_date END FROM products p " +
+            "WHERE p.id = i.product_id AND i.product_id = ?" + RETURNING + ", ? AS delta";
+
+    private static final String LOCK_SQL =
+            "SELECT i.product_id, p.name, i.quantity FROM inventory i JOIN products p ON p.id = i.product_id " +
+            "WHERE i.product_id = ANY(?) ORDER BY i.product_id FOR UPDATE OF i";
+
+    private static final String DECREMENT_MANY_SQL =
+            "UPDATE inventory i SET quantity = i.quantity - d.delta, updated_at = ? " +
+            "FROM unnest(?::bigint[], ?::numeric[]) AS d(product_id, delta), products p " +
+            "WHERE i.product_id = d.product_id AND p.id = i.product_id AND i.quantity >= d.delta" + RETURNING + ", d.delta";
+
+    private static final String INCREMENT_MANY_SQL =
+            "UPDATE inventory i SET quantity = i.quantity + d.delta, updated_at = ?, " +
+            "    last_restock_date = CASE WHEN ? THEN ? ELSE i.last_restock_date END " +
+            "FROM unnest(?::bigint[], ?::numeric[]) AS d(product_id, delta), products p " +
+            "WHERE i.product_id = d.product_id AND p.id = i.product_id" + RETURNING + ", d.delta";
+
+    private static final String APPLY_MANY_SQL =
+            "UPDATE inventory i SET quantity = i.quantity + d.delta, updated_at = ?, " +
+            "    last_restock_date = CASE WHEN d.restock THEN ? ELSE i.last_restock_date END " +
+            "FROM unnest(?::bigint[], ?::numeric[], ?::boolean[]) AS d(product_id, delta, restock), products p " +
+            "WHERE i.product_id = d.product_id AND p.id = i.product_id" + RETURNING + ", d.delta";
+
+    private static final String LIMITS_MANY_SQL =
+            "UPDATE inventory i SET min_stock = d.min_stock, max_stock = d.max_stock, updated_at = ? " +
+            "FROM unnest(?::bigint[], ?::numeric[], ?::numeric[]) AS d(product_id, min_stock, max_stock), products p " +
+            "WHERE i.product_id = d.product_id AND p.id = i.product_id" + RETURNING + ", 0 AS delta";
+
+    // Promedio ponderado: la existencia anterior (nunca negativa) al promedio vigente más la entrada a su costo
+    private static final String AVERAGE_COST_SQL =
+            "UPDATE products SET average_cost = ROUND((? * average_cost + ? * ?) / (? + ?), 4) WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Resultado de un cambio de stock ya aplicado.
+     */
+    public record StockChange(Long productId, String productName, BigDecimal previousQuantity,
+                              BigDecimal newQuantity, BigDecimal minStock) {
+    }
+
+    /**
+     * Entrada de stock con costo unitario; previousQuantity es la existencia antes de la entrada.
+     */
+    public record CostEntry(Long productId, BigDecimal previousQuantity, BigDecimal quantity, BigDecimal unitCost) {
+    }
+
+    /**
+     * Stock mínimo y máximo de un producto.
+     */
+    public record StockLimits(BigDecimal minStock, BigDecimal maxStock) {
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public StockChange decrement(Long productId, BigDecimal quantity) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<StockChange> changes = jdbcTemplate.query(DECREMENT_ONE_SQL, decrementMapper(),
+                quantity, now, productId, quantity, quantity);
+        if (changes.isEmpty()) {
+            // Camino de error: se lee el stock solo para explicar el rechazo
+            List<Shortage> shortage = jdbcTemplate.query(
+                    "SELECT p.name, i.quantity FROM inventory i JOIN products p ON p.id = i.product_id WHERE i.product_id = ?",
+                    (rs, n) -> new Shortage(productId, rs.getString(1), rs.getBigDecimal(2), quantity), productId);
+            if (shortage.isEmpty()) {
+                throw new EntityNotFoundException("Inventario no encontrado para producto ID: " + productId);
+            }
+            throw new InsufficientStockException(shortage);
+        }
+        return changes.get(0);
+    }
+
+    /**
+     * Descuenta varias líneas a la vez; si una sola no alcanza no se descuenta ninguna.
+     *
+     * @param quantities cantidad a descontar por producto (ID de producto → cantidad)
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<StockChange> decrementAll(Map<Long, BigDecimal> quantities) {
+        if (quantities.size() == 1) {
+            Map.Entry<Long, BigDecimal> only = quantities.entrySet().iterator().next();
+            return List.of(decrement(only.getKey(), only.getValue()));
+        }
+        return decrementAll(quantities, null);
+    }
+
+    /**
+     * Igual que {@link #decrementAll(Map)}, pero cada producto debe conservar lo reservado
+     * (reserved), leído después de bloquear sus filas: una reserva toma los mismos candados
+     * (ver StockReservationService.reserve), así que no puede crecer entre la lectura y el UPDATE.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<StockChange> decrementAll(Map<Long, BigDecimal> quantities, Function<Long, BigDecimal> reserved) {
+        Map<Long, BigDecimal> ordered = new TreeMap<>(quantities);
+        Map<Long, Object[]> locked = lockInOrder(ordered);
+
+        List<Shortage> shortages = new ArrayList<>();
+        for (Map.Entry<Long, BigDecimal> entry : ordered.entrySet()) {
+            Object[] row = locked.get(entry.getKey());
+            BigDecimal available = (BigDecimal) row[1];
+            if (reserved != null) {
+                available = available.subtract(reserved.apply(entry.getKey())).max(BigDecimal.ZERO);
+            }
+            if (available.compareTo(entry.getValue()) < 0) {
+                shortages.add(new Shortage(entry.getKey(), (String) row[0], available, entry.getValue()));
+            }
+        }
+        if (!shortages.isEmpty()) {
+            throw new InsufficientStockException(shortages);
+        }
+
+        List<StockChange> changes = jdbcTemplate.query(DECREMENT_MANY_SQL, ps -> {
+            ps.setTimestamp(1, Timestamp.valueOf(LocalDateTime.now()));
+            ps.setArray(2, ps.getConnection().createArrayOf("bigint", ordered.keySet().toArray()));
+            ps.setArray(3, ps.getConnection().createArrayOf("numeric", ordered.values().toArray()));
+        }, decrementMapper());
+        if (changes.size() != ordered.size()) {
+            // No debería pasar: las filas están bloqueadas desde la validación
+            throw new IllegalStateException("El stock cambió durante el descuento, intente de nuevo");
+        }
+        return changes;
+    }
+
+    /**
+     * Descuenta varias líneas sin validar la existencia, que puede quedar negativa: para lo que
+     * ya salió físicamente (una mesa servida que se paga). Los productos sin fila de inventario
+     * se omiten.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<StockChange> decrementAllowingShortage(Map<Long, BigDecimal> quantities) {
+        Map<Long, BigDecimal> locked = lockQuantities(quantities.keySet());
+        Map<Long, BigDecimal> deltas = new TreeMap<>();
+        quantities.forEach((productId, quantity) -> {
+            if (locked.containsKey(productId)) {
+                deltas.put(productId, quantity.negate());
+            }
+        });
+        return applyDeltas(deltas, Set.of());
+    }
+
+    /**
+     * Suma stock a un producto. Con restock=true también actualiza la fecha de último reabastecimiento.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public StockChange increment(Long productId, BigDecimal quantity, boolean restock) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<StockChange> changes = jdbcTemplate.query(INCREMENT_ONE_SQL, incrementMapper(),
+                quantity, now, restock, now, productId, quantity);
+        if (changes.isEmpty()) {
+            throw new EntityNotFoundException("Inventario no encontrado para producto ID: " + productId);
+        }
+        return changes.get(0);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<StockChange> incrementAll(Map<Long, BigDecimal> quantities, boolean restock) {
+        if (quantities.size() == 1) {
+            Map.Entry<Long, BigDecimal> only = quantities.entrySet().iterator().next();
+            return List.of(increment(only.getKey(), only.getValue(), restock));
+        }
+        Map<Long, BigDecimal> ordered = new TreeMap<>(quantities);
+        lockInOrder(ordered);
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        return jdbcTemplate.query(INCREMENT_MANY_SQL, ps -> {
+            ps.setTimestamp(1, now);
+            ps.setBoolean(2, restock);
+            ps.setTimestamp(3, now);
+            ps.setArray(4, ps.getConnection().createArrayOf("bigint", ordered.keySet().toArray()));
+            ps.setArray(5, ps.getConnection().createArrayOf("numeric", ordered.values().toArray()));
+        }, incrementMapper());
+    }
+
+    /**
+     * Cambia el stock mínimo y máximo de varios productos con un solo UPDATE. Las filas se
+     * bloquean primero en orden de product_id, igual que los descuentos en lote. La cantidad
+     * no cambia: cada {@link StockChange} trae la existencia actual y el mínimo nuevo.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<StockChange> updateLimits(Map<Long, StockLimits> limits) {
+        if (limits.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, StockLimits> ordered = new TreeMap<>(limits);
+        lockQuantities(ordered.keySet());
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        return jdbcTemplate.query(LIMITS_MANY_SQL, ps -> {
+            ps.setTimestamp(1, now);
+            ps.setArray(2, ps.getConnection().createArrayOf("bigint", ordered.keySet().toArray()));
+            ps.setArray(3, ps.getConnection().createArrayOf("numeric",
+                    ordered.values().stream().map(StockLimits::minStock).toArray()));
+            ps.setArray(4, ps.getConnection().createArrayOf("numeric",
+                    ordered.values().stream().map(StockLimits::maxStock).toArray()));
+        }, incrementMapper());
+    }
+
+    /**
+     * Actualiza el costo promedio ponderado con cada entrada, en O(1) por entrada: un UPDATE
+     * por línea, todas en un lote JDBC que la base aplica en orden, así varias entradas del
+     * mismo producto se encadenan. Debe llamarse con la fila de inventario ya bloqueada por el
+     * cambio de stock, para que previousQuantity siga vigente. Las salidas no cambian el promedio.
+     *
+     * @return costo promedio nuevo por producto
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Map<Long, BigDecimal> updateAverageCosts(List<CostEntry> entries) {
+        if (entries.isEmpty()) {
+            return Map.of();
+        }
+        jdbcTemplate.batchUpdate(AVERAGE_COST_SQL, entries, 500, (ps, entry) -> {
+            BigDecimal base = entry.previousQuantity().max(BigDecimal.ZERO);
+            ps.setBigDecimal(1, base);
+            ps.setBigDecimal(2, entry.quantity());
+            ps.setBigDecimal(3, entry.unitCost());
+            ps.setBigDecimal(4, base);
+            ps.setBigDecimal(5, entry.quantity());
+            ps.setLong(6, entry.productId());
+        });
+        Map<Long, BigDecimal> averages = new HashMap<>();
+        Object[] ids = entries.stream().map(CostEntry::productId).distinct().toArray();
+        jdbcTemplate.query("SELECT id, average_cost FROM products WHERE id = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids)),
+                rs -> {
+                    averages.put(rs.getLong(1), rs.getBigDecimal(2));
+                });
+        return averages;
+    }
+
+    /**
+     * Bloquea las filas de inventario en orden de product_id para que el llamador valide con
+     * las cantidades actuales y luego aplique {@link #applyDeltas}. Los productos sin
+     * inventario no aparecen en el resultado.
+     *
+     * @return cantidad actual por producto
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Map<Long, BigDecimal> lockQuantities(Collection<Long> productIds) {
+        Map<Long, BigDecimal> quantities = new HashMap<>();
+        Object[] ids = new TreeSet<>(productIds).toArray();
+        jdbcTemplate.query(LOCK_SQL,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids)),
+                rs -> {
+                    quantities.put(rs.getLong(1), rs.getBigDecimal(3));
+                });
+        return quantities;
+    }
+
+    /**
+     * Aplica deltas con signo ya validados por el llamador bajo {@link #lockQuantities}, en un
+     * solo UPDATE. Los productos de restocked además actualizan la fecha de reabastecimiento.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<StockChange> applyDeltas(Map<Long, BigDecimal> deltas, Set<Long> restocked) {
+        if (deltas.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, BigDecimal> ordered = new TreeMap<>(deltas);
+        Object[] restock = ordered.keySet().stream().map(restocked::contains).toArray();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        return jdbcTemplate.query(APPLY_MANY_SQL, ps -> {
+            ps.setTimestamp(1, now);
+            ps.setTimestamp(2, now);
+            ps.setArray(3, ps.getConnection().createArrayOf("bigint", ordered.keySet().toArray()));
+            ps.setArray(4, ps.getConnection().createArrayOf("numeric", ordered.values().toArray()));
+            ps.setArray(5, ps.getConnection().createArrayOf("boolean", restock));
+        }, incrementMapper());
+    }
+
+    /**
+     * Bloquea las filas de inventario en orden de product_id.
+     *
+     * @return nombre y cantidad actual por producto
+     */
+    private Map<Long, Object[]> lockInOrder(Map<Long, BigDecimal> ordered) {
+        Map<Long, Object[]> locked = new HashMap<>();
+        jdbcTemplate.query(LOCK_SQL,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ordered.keySet().toArray())),
+                rs -> {
+                    locked.put(rs.getLong(1), new Object[]{rs.getString(2), rs.getBigDecimal(3)});
+                });
+        for (Long productId : ordered.keySet()) {
+            if (!locked.containsKey(productId)) {
+                throw new EntityNotFoundException("Inventario no encontrado para producto ID: " + productId);
+            }
+        }
+        return locked;
+    }
+
+    // RETURNING trae la cantidad nueva; la anterior se reconstruye con el delta aplicado
+    private static RowMapper<StockChange> decrementMapper() {
+        return (rs, n) -> new StockChange(rs.getLong(1), rs.getString(2),
+                rs.getBigDecimal(3).add(rs.getBigDecimal(5)), rs.getBigDecimal(3), rs.getBigDecimal(4));
+    }
+
+    private static RowMapper<StockChange> incrementMapper() {
+        return (rs, n) -> new StockChange(rs.getLong(1), rs.getString(2),
+                rs.getBigDecimal(3).subtract(rs.getBigDecimal(5)), rs.getBigDecimal(3), rs.getBigDecimal(4));
+    }
+}
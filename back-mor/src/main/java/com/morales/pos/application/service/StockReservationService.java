@@ -0,0 +1,287 @@
+package com.morales.pos.application.service;
+
+import com.morales.pos.domain.exception.InsufficientStockException;
+import com.morales.pos.domain.exception.InsufficientStockException.Shortage;
+import com.morales.pos.infrastructure.persistence.TransactionHooks;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reservas de stock de las mesas abiertas.
+ *
+ * Los ítems de una mesa no descuentan inventario al pedirse: quedan reservados en memoria por
+ * factura y producto, y el disponible para vender es la existencia menos lo reservado: las
+ * ventas de mostrador lo validan con las filas bloqueadas (InventoryService.removeUnreservedStockBatch). Al
+ * pagar la mesa las líneas se descuentan de una vez (InventoryService.consumeReservedStockBatch)
+ * y la reserva se libera; quitar un ítem solo libera su reserva, sin movimientos de inventario.
+ *
+ * La tabla en memoria se reconstruye al arrancar con las líneas stock_deducted = false de las
+ * facturas ABIERTA (V23). Las reservas son blandas: una mesa sin actividad durante
+ * app.table-reservations.expiry-minutes pierde su reserva, y los ajustes manuales de stock no
+ * las respetan. Por eso el pago nunca se rechaza por stock: lo servido se descuenta aunque la
+ * existencia quede negativa, y eso genera la alerta de stock agotado.
+ */
+@Service
+@Slf4j
+public class StockReservationService {
+
+    private static final String REBUILD_SQL =
+            "SELECT d.invoice_id, d.product_id, SUM(d.quantity), MAX(d.created_at) " +
+            "FROM invoice_details d JOIN invoices i ON i.id = d.invoice_id " +
+            "WHERE i.status = 'ABIERTA' AND d.stock_deducted = false AND d.product_id IS NOT NULL " +
+            "GROUP BY d.invoice_id, d.product_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StockMutationService stockMutationService;
+    private final StockLedger stockLedger;
+    private final RecipeService recipeService;
+    private final long expiryMinutes;
+
+    // Factura abierta → reserva; las modificaciones se hacen bajo el candado de esta clase
+    private final Map<Long, Hold> holds = new HashMap<>();
+    // Total reservado por producto, leído sin candado por las ventas
+    private final Map<Long, BigDecimal> heldByProduct = new ConcurrentHashMap<>();
+
+    public StockReservationService(JdbcTemplate jdbcTemplate,
+                                   StockMutationService stockMutationService,
+                                   StockLedger stockLedger,
+                                   RecipeService recipeService,
+                                   @Value("${app.table-reservations.expiry-minutes:240}") long expiryMinutes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.stockMutationService = stockMutationService;
+        this.stockLedger = stockLedger;
+        this.recipeService = recipeService;
+        this.expiryMinutes = expiryMinutes;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        LocalDateTime threshold = LocalDateTime.now().minusMinutes(expiryMinutes);
+        Map<Long, Map<Long, BigDecimal>> requested = new HashMap<>();
+        Map<Long, LocalDateTime> lastActivity = new HashMap<>();
+        jdbcTemplate.query(REBUILD_SQL, rs -> {
+            Timestamp lastItem = rs.getTimestamp(4);
+            LocalDateTime at = lastItem != null ? lastItem.toLocalDateTime() : LocalDateTime.now();
+            requested.computeIfAbsent(rs.getLong(1), id -> new HashMap<>()).merge(rs.getLong(2), rs.getBigDecimal(3), BigDecimal::add);
+            lastActivity.merge(rs.getLong(1), at, (a, b) -> a.isAfter(b) ? a : b);
+        });
+
+        int expired = 0;
+        synchronized (this) {
+            for (Map.Entry<Long, Map<Long, BigDecimal>> entry : requested.entrySet()) {
+                LocalDateTime at = lastActivity.get(entry.getKey());
+                if (at.isBefore(threshold)) {
+                    expired++;
+                    continue;
+                }
+                // Lo reservado son los ingredientes de lo pedido (ver RecipeService)
+                Hold hold = holds.computeIfAbsent(entry.getKey(), id -> new Hold());
+                hold.touch(at);
+                recipeService.explode(entry.getValue()).forEach((productId, quantity) -> add(hold, productId, quantity));
+            }
+        }
+        log.info("Reservas de stock: {} mesas abiertas con reserva ({} vencidas sin reservar)", holds.size(), expired);
+    }
+
+    /**
+     * Reserva stock para ítems de una mesa. Las filas de inventario se bloquean en orden de
+     * producto hasta el fin de la transacción, y las ventas de mostrador leen lo reservado
+     * después de bloquear las mismas filas: dos reservas, o una reserva y una venta, no ven la
+     * misma existencia. Con el libro de stock activo el mismo papel lo cumplen los candados de
+     * sus contadores. Si algún producto no alcanza no se reserva nada.
+     *
+     * @param quantities cantidad por producto (ID de producto → cantidad)
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void reserve(Long invoiceId, Map<Long, BigDecimal> quantities) {
+        Map<Long, BigDecimal> ordered = new TreeMap<>(quantities);
+        if (stockLedger.isEnabled()) {
+            // La fila de inventario va atrasada: se valida contra los contadores
+            stockLedger.hold(ordered, this::getHeld, () -> addHold(invoiceId, ordered));
+        } else {
+            reserveLocked(invoiceId, ordered);
+        }
+
+        // Se reserva antes del commit (así nadie más toma ese stock); si la transacción se revierte se devuelve
+        TransactionHooks.afterRollback(() -> subtract(invoiceId, ordered));
+        log.debug("Stock reservado para factura {}: {} productos", invoiceId, ordered.size());
+    }
+
+    private void reserveLocked(Long invoiceId, Map<Long, BigDecimal> ordered) {
+        Map<Long, BigDecimal> onHand = stockMutationService.lockQuantities(ordered.keySet());
+
+        synchronized (this) {
+            List<Shortage> shortages = new ArrayList<>();
+            for (Map.Entry<Long, BigDecimal> entry : ordered.entrySet()) {
+                BigDecimal quantity = onHand.get(entry.getKey());
+                if (quantity == null) {
+                    throw new EntityNotFoundException("Inventario no encontrado para producto ID: " + entry.getKey());
+                }
+                BigDecimal available = quantity.subtract(getHeld(entry.getKey()));
+                if (available.compareTo(entry.getValue()) < 0) {
+                    shortages.add(new Shortage(entry.getKey(), null, available.max(BigDecimal.ZERO), entry.getValue()));
+                }
+            }
+            if (!shortages.isEmpty()) {
+                throw new InsufficientStockException(withNames(shortages));
+            }
+            addHold(invoiceId, ordered);
+        }
+    }
+
+    private synchronized void addHold(Long invoiceId, Map<Long, BigDecimal> quantities) {
+        Hold hold = holds.computeIfAbsent(invoiceId, id -> new Hold());
+        hold.touch(LocalDateTime.now());
+        quantities.forEach((productId, quantity) -> add(hold, productId, quantity));
+    }
+
+    /**
+     * Libera parte de la reserva de una factura (ítem retirado de la mesa) al confirmar la transacción.
+     */
+    public void release(Long invoiceId, Map<Long, BigDecimal> quantities) {
+        TransactionHooks.afterCommit(() -> subtract(invoiceId, quantities));
+    }
+
+    /**
+     * Libera toda la reserva de una factura (mesa pagada, liberada o anulada) al confirmar la transacción.
+     */
+    public void releaseAll(Long invoiceId) {
+        TransactionHooks.afterCommit(() -> {
+            synchronized (this) {
+                Hold hold = holds.remove(invoiceId);
+                if (hold != null) {
+                    hold.quantities.forEach(this::subtractFromProduct);
+                }
+            }
+        });
+    }
+
+    /**
+     * Cantidad reservada por mesas abiertas para un producto.
+     */
+    public BigDecimal getHeld(Long productId) {
+        return heldByProduct.getOrDefault(productId, BigDecimal.ZERO);
+    }
+
+    /**
+     * Descuenta lo reservado de un mapa de existencias (ID de producto → cantidad) y lo devuelve.
+     */
+    public Map<Long, BigDecimal> subtractHeld(Map<Long, BigDecimal> onHand) {
+        onHand.replaceAll((productId, quantity) -> quantity.subtract(getHeld(productId)));
+        return onHand;
+    }
+
+    /**
+     * Suelta las reservas de mesas sin actividad y las de facturas que ya no están abiertas
+     * (por ejemplo, cerradas por otra vía).
+     */
+    @Scheduled(fixedRate = 300000) // Every 5 minutes
+    public void releaseExpired() {
+        LocalDateTime threshold = LocalDateTime.now().minusMinutes(expiryMinutes);
+        Set<Long> invoiceIds;
+        synchronized (this) {
+            invoiceIds = new HashSet<>(holds.keySet());
+        }
+        if (invoiceIds.isEmpty()) {
+            return;
+        }
+        Set<Long> open = new HashSet<>(jdbcTemplate.query(
+                "SELECT id FROM invoices WHERE status = 'ABIERTA' AND id = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", invoiceIds.toArray())),
+                (rs, n) -> rs.getLong(1)));
+
+        int released = 0;
+        synchronized (this) {
+            for (Long invoiceId : invoiceIds) {
+                Hold hold = holds.get(invoiceId);
+                if (hold != null && (!open.contains(invoiceId) || hold.lastActivity.isBefore(threshold))) {
+                    holds.remove(invoiceId);
+                    hold.quantities.forEach(this::subtractFromProduct);
+                    released++;
+                }
+            }
+        }
+        if (released > 0) {
+            log.info("Reservas de stock: {} mesas sin actividad o cerradas liberaron su reserva", released);
+        }
+    }
+
+    private void add(Hold hold, Long productId, BigDecimal quantity) {
+        hold.quantities.merge(productId, quantity, BigDecimal::add);
+        heldByProduct.merge(productId, quantity, BigDecimal::add);
+    }
+
+    private synchronized void subtract(Long invoiceId, Map<Long, BigDecimal> quantities) {
+        Hold hold = holds.get(invoiceId);
+        if (hold == null) {
+            return; // ya vencida o liberada
+        }
+        quantities.forEach((productId, quantity) -> {
+            BigDecimal held = hold.quantities.get(productId);
+            if (held == null) {
+                return;
+            }
+            BigDecimal removed = held.min(quantity);
+            if (held.compareTo(removed) == 0) {
+                hold.quantities.remove(productId);
+            } else {
+                hold.quantities.put(productId, held.subtract(removed));
+            }
+            subtractFromProduct(productId, removed);
+        });
+        if (hold.quantities.isEmpty()) {
+            holds.remove(invoiceId);
+        }
+    }
+
+    private void subtractFromProduct(Long productId, BigDecimal quantity) {
+        heldByProduct.computeIfPresent(productId, (id, held) -> {
+            BigDecimal remaining = held.subtract(quantity);
+            return remaining.signum() > 0 ? remaining : null;
+        });
+    }
+
+    // Camino de error: el nombre solo hace falta para el mensaje
+    private List<Shortage> withNames(List<Shortage> shortages) {
+        Map<Long, String> names = new HashMap<>();
+        Object[] ids = shortages.stream().map(Shortage::productId).toArray();
+        jdbcTemplate.query("SELECT id, name FROM products WHERE id = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids)),
+                rs -> {
+                    names.put(rs.getLong(1), rs.getString(2));
+                });
+        return shortages.stream()
+                .map(s -> new Shortage(s.productId(), names.get(s.productId()), s.available(), s.requested()))
+                .toList();
+    }
+
+    private static final class Hold {
+        final Map<Long, BigDecimal> quantities = new HashMap<>();
+        LocalDateTime lastActivity = LocalDateTime.MIN;
+
+        void touch(LocalDateTime at) {
+            if (at.isAfter(lastActivity)) {
+                lastActivity = at;
+            }
+        }
+    }
+}
@@ -10,11 +10,14 @@ import com.morales.pos.domain.repository.*;
 import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -33,8 +36,11 @@ public class TableService {
     private final CustomerRepository customerRepository;
     private final ProductRepository productRepository;
     private final InventoryService inventoryService;
-    private final InventoryRepository inventoryRepository;
-    private final SseService sseService;
+    private final StockReservationService stockReservationService;
+    private final RecipeService recipeService;
+    private final InvoiceNumberAllocator invoiceNumberAllocator;
+    private final OutboxPublisher outboxPublisher;
+    private final ApplicationEventPublisher eventPublisher;
 
     // ==================== TABLE CRUD ====================
 
@@ -156,7 +162,7 @@ public class TableService {
         }
 
         // Create an ABIERTA invoice for this table session
-        String invoiceNumber = generateTableInvoiceNumber(table.getTableNumber());
+        String invoiceNumber = invoiceNumberAllocator.next("M" + table.getTableNumber() + "-");
         Invoice invoice = Invoice.builder()
                 .invoiceNumber(invoiceNumber)
                 .invoiceType(InvoiceType.VENTA)
@@ -204,6 +210,7 @@ public class TableService {
             priorityReason = null;
         }
 
+        Map<Long, BigDecimal> quantities = new LinkedHashMap<>();
         for (AddTableItemsRequest.TableItemRequest item : request.getItems()) {
             Product product = productRepository.findById(item.getProductId())
                     .orElseThrow(() -> new EntityNotFoundException("Producto no encontrado: " + item.getProductId()));
@@ -212,14 +219,7 @@ public class TableService {
                 throw new IllegalArgumentException("El producto '" + product.getName() + "' no está activo");
             }
 
-            // Validate stock (skip if product has no inventory record)
-            inventoryRepository.findByProductId(product.getId()).ifPresent(inventory -> {
-                if (inventory.getQuantity().compareTo(item.getQuantity()) < 0) {
-                    throw new IllegalArgumentException(
-                            String.format("Stock insuficiente para %s. Disponible: %s, Solicitado: %s",
-                                    product.getName(), inventory.getQuantity(), item.getQuantity()));
-                }
-            });
+            quantities.merge(product.getId(), item.getQuantity(), BigDecimal::add);
 
             BigDecimal discountAmt = item.getDiscountAmount() != null ? item.getDiscountAmount() : BigDecimal.ZERO;
 
@@ -230,16 +230,13 @@ public class TableService {
                     .productName(product.getName())
                     .quantity(item.getQuantity())
                     .unitPrice(item.getUnitPrice())
-                    .costPrice(product.getCostPrice())
+                    .costPrice(product.getAverageCost().setScale(2, RoundingMode.HALF_UP))
                     .discountAmount(discountAmt)
                     .notes(item.getNotes())
+                    .stockDeducted(false)
                     .build();
 
-            BigDecimal taxRate = product.getTaxRate() != null ? product.getTaxRate() : BigDecimal.ZERO;
-            BigDecimal lineSubtotal = detail.getUnitPrice().multiply(detail.getQuantity()).subtract(discountAmt);
-            BigDecimal lineTax = lineSubtotal.multiply(taxRate.divide(BigDecimal.valueOf(100)));
-            detail.setSubtotal(lineSubtotal);
-            detail.setTaxAmount(lineTax);
+            SaleTotalsCalculator.applyLine(detail, product.getTaxRate());
 
             InvoiceDetail savedDetail = invoiceDetailRepository.save(detail);
             invoice.addDetail(savedDetail);
@@ -257,25 +254,15 @@ public class TableService {
             } catch (Exception e) {
                 log.error("Error creating kitchen order for detail {}: {}", savedDetail.getId(), e.getMessage());
             }
-
-            // Deduct stock immediately
-            inventoryService.removeStock(
-                    product.getId(),
-                    item.getQuantity(),
-                    "Mesa #" + session.getRestaurantTable().getTableNumber() + " - " + invoice.getInvoiceNumber(),
-                    user
-            );
         }
 
+        // Reserve stock for the whole batch; it is deducted when the table is paid.
+        // If any product runs short nothing is reserved and the transaction rolls back.
+        stockReservationService.reserve(invoice.getId(), recipeService.explode(quantities));
+
         // Recalculate totals from all details in the invoice
         List<InvoiceDetail> allDetails = invoiceDetailRepository.findByInvoiceId(invoice.getId());
-        BigDecimal subtotal = allDetails.stream().map(InvoiceDetail::getSubtotal).reduce(BigDecimal.ZERO, BigDecimal::add);
-        BigDecimal taxAmount = allDetails.stream().map(InvoiceDetail::getTaxAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
-
-        invoice.setSubtotal(subtotal);
-        invoice.setTaxAmount(taxAmount);
-        invoice.setTotal(subtotal.add(taxAmount).subtract(
-                invoice.getDiscountAmount() != null ? invoice.getDiscountAmount() : BigDecimal.ZERO));
+        SaleTotalsCalculator.recalculate(invoice, allDetails).applyTo(invoice);
         invoiceRepository.save(invoice);
 
         // Flush to ensure details are persisted and visible
@@ -283,17 +270,13 @@ public class TableService {
 
         log.info("Items agregados a Mesa #{} - {} items", session.getRestaurantTable().getTableNumber(), request.getItems().size());
 
-        // Broadcast SSE event for kitchen
-        try {
-            sseService.broadcast("new_order", Map.of(
-                    "type", "NEW_TABLE_ITEMS",
-                    "tableNumber", session.getRestaurantTable().getTableNumber(),
-                    "invoiceId", invoice.getId(),
-                    "invoiceNumber", invoice.getInvoiceNumber()
-            ));
-        } catch (Exception e) {
-            log.warn("Error broadcasting SSE event: {}", e.getMessage());
-        }
+        // Kitchen screens are notified after commit through the outbox
+        outboxPublisher.publish(OutboxEventType.TABLE_ITEMS_ADDED, "INVOICE", invoice.getId(), Map.of(
+                "type", "NEW_TABLE_ITEMS",
+                "tableNumber", session.getRestaurantTable().getTableNumber(),
+                "invoiceId", invoice.getId(),
+                "invoiceNumber", invoice.getInvoiceNumber()
+        ));
 
         return TableSessionResponse.fromEntity(session, true);
     }
@@ -333,26 +316,21 @@ public class TableService {
             throw new IllegalArgumentException("El detalle no pertenece a esta mesa");
         }
 
-        // Restore stock
-        inventoryService.addStock(
-                detail.getProduct().getId(),
-                detail.getQuantity(),
-                "Eliminado de Mesa #" + session.getRestaurantTable().getTableNumber(),
-                user
-        );
-
-        // Recalculate totals
-        BigDecimal subtotal = invoice.getSubtotal().subtract(detail.getSubtotal());
-        BigDecimal taxAmount = invoice.getTaxAmount().subtract(detail.getTaxAmount());
+        // Release the reservation; lines deducted before reservations existed get their stock back
+        if (Boolean.FALSE.equals(detail.getStockDeducted())) {
+            stockReservationService.release(invoice.getId(),
+                    recipeService.explode(Map.of(detail.getProduct().getId(), detail.getQuantity())));
+        } else {
+            inventoryService.addStockBatch(Map.of(detail.getProduct().getId(), detail.getQuantity()),
+                    "Eliminado de Mesa #" + session.getRestaurantTable().getTableNumber(), user);
+        }
 
         // Remove from in-memory collection and delete
         invoice.getDetails().remove(detail);
         invoiceDetailRepository.delete(detail);
 
-        invoice.setSubtotal(subtotal);
-        invoice.setTaxAmount(taxAmount);
-        invoice.setTotal(subtotal.add(taxAmount).subtract(
-                invoice.getDiscountAmount() != null ? invoice.getDiscountAmount() : BigDecimal.ZERO));
+        // Recalculate totals from the remaining details
+        SaleTotalsCalculator.recalculate(invoice, invoice.getDetails()).applyTo(invoice);
         invoiceRepository.save(invoice);
         invoiceRepository.flush();
 
@@ -369,38 +347,10 @@ public class TableService {
             throw new IllegalArgumentException("No se puede pagar una venta sin productos");
         }
 
-        // Apply discount if provided
-        if (request.getDiscountPercent() != null && request.getDiscountPercent().compareTo(BigDecimal.ZERO) > 0) {
-            BigDecimal discountAmount = invoice.getSubtotal()
-                    .multiply(request.getDiscountPercent())
-                    .divide(BigDecimal.valueOf(100), 2, java.math.RoundingMode.HALF_UP);
-            invoice.setDiscountPercent(request.getDiscountPercent());
-            invoice.setDiscountAmount(discountAmount);
-            invoice.setTotal(invoice.getSubtotal().add(invoice.getTaxAmount()).subtract(discountAmount));
-        }
-
-        // Apply service charge — fixed amount takes priority over percent
-        BigDecimal serviceChargePercent = request.getServiceChargePercent() != null ? request.getServiceChargePercent() : BigDecimal.ZERO;
-        BigDecimal fixedServiceAmt = request.getServiceChargeAmount() != null ? request.getServiceChargeAmount() : BigDecimal.ZERO;
-        if (fixedServiceAmt.compareTo(BigDecimal.ZERO) > 0) {
-            invoice.setServiceChargeAmount(fixedServiceAmt);
-            invoice.setServiceChargePercent(BigDecimal.ZERO);
-            invoice.setTotal(invoice.getTotal().add(fixedServiceAmt));
-        } else if (serviceChargePercent.compareTo(BigDecimal.ZERO) > 0) {
-            BigDecimal serviceChargeAmount = invoice.getTotal()
-                    .multiply(serviceChargePercent)
-                    .divide(BigDecimal.valueOf(100), 2, java.math.RoundingMode.HALF_UP);
-            invoice.setServiceChargePercent(serviceChargePercent);
-            invoice.setServiceChargeAmount(serviceChargeAmount);
-            invoice.setTotal(invoice.getTotal().add(serviceChargeAmount));
-        }
-
-        // Apply delivery charge if provided
-        BigDecimal deliveryChargeAmount = request.getDeliveryChargeAmount() != null ? request.getDeliveryChargeAmount() : BigDecimal.ZERO;
-        if (deliveryChargeAmount.compareTo(BigDecimal.ZERO) > 0) {
-            invoice.setDeliveryChargeAmount(deliveryChargeAmount);
-            invoice.setTotal(invoice.getTotal().add(deliveryChargeAmount));
-        }
+        // Apply discount, service charge (fixed amount takes priority over percent) and delivery
+        SaleTotalsCalculator.totals(invoice.getSubtotal(), invoice.getTaxAmount(), request.getDiscountPercent(),
+                request.getServiceChargePercent(), request.getServiceChargeAmount(),
+                request.getDeliveryChargeAmount()).applyTo(invoice);
 
         // Process payment
         invoice.setPaymentMethod(PaymentMethod.valueOf(request.getPaymentMethod()));
@@ -419,7 +369,24 @@ public class TableService {
             invoice.setNotes(request.getNotes());
         }
 
+        // Turn the reserved lines (exploded into ingredients) into SALIDA movements in one batch
+        Map<Long, BigDecimal> reserved = new LinkedHashMap<>();
+        for (InvoiceDetail d : invoice.getDetails()) {
+            if (Boolean.FALSE.equals(d.getStockDeducted())) {
+                reserved.merge(d.getProduct().getId(), d.getQuantity(), BigDecimal::add);
+                d.setStockDeducted(true);
+            }
+        }
+        if (!reserved.isEmpty()) {
+            Map<Long, BigDecimal> deducted = recipeService.explode(reserved);
+            inventoryService.consumeReservedStockBatch(deducted,
+                    "Mesa #" + session.getRestaurantTable().getTableNumber() + " - " + invoice.getInvoiceNumber(), user);
+            recipeService.recordDeducted(invoice.getId(), deducted);
+        }
+        stockReservationService.releaseAll(invoice.getId());
+
         Invoice savedInvoice = invoiceRepository.save(invoice);
+        eventPublisher.publishEvent(SaleEvent.completed(savedInvoice));
 
         // Close session
         session.setStatus(TableSessionStatus.CERRADA);
@@ -457,16 +424,12 @@ public class TableService {
         log.info("Mesa #{} pagada - Total: {} - Método: {}",
                 table.getTableNumber(), savedInvoice.getTotal(), request.getPaymentMethod());
 
-        // Broadcast SSE event
-        try {
-            sseService.broadcast("order_paid", Map.of(
-                    "type", "ORDER_PAID",
-                    "invoiceId", savedInvoice.getId(),
-                    "tableNumber", table.getTableNumber()
-            ));
-        } catch (Exception e) {
-            log.warn("Error broadcasting SSE event: {}", e.getMessage());
-        }
+        // Broadcast after commit through the outbox
+        outboxPublisher.publish(OutboxEventType.TABLE_PAID, "INVOICE", savedInvoice.getId(), Map.of(
+                "type", "ORDER_PAID",
+                "invoiceId", savedInvoice.getId(),
+                "tableNumber", table.getTableNumber()
+        ));
 
         return InvoiceResponse.fromEntity(savedInvoice);
     }
@@ -496,6 +459,7 @@ public class TableService {
         invoice.setStatus(InvoiceStatus.ANULADA);
         invoice.setVoidReason("Mesa liberada sin pedido");
         invoiceRepository.save(invoice);
+        stockReservationService.releaseAll(invoice.getId());
 
         log.info("Mesa #{} liberada por {} (sin pedido)", table.getTableNumber(), user.getFullName());
         return TableResponse.fromEntity(table);
@@ -528,11 +492,4 @@ public class TableService {
                 .orElseThrow(() -> new EntityNotFoundException(
                         "No hay sesión activa para la mesa con ID: " + tableId));
     }
-
-    private String generateTableInvoiceNumber(Integer tableNumber) {
-        String prefix = "M" + tableNumber + "-";
-        String datePart = java.time.LocalDate.now().format(java.time.format.DateTimeFormatter.ofPattern("MMdd"));
-        Long count = invoiceRepository.countByInvoiceNumberStartingWith(prefix + datePart) + 1;
-        return String.format("%s%s-%04d", prefix, datePart, count);
-    }
 }
@@ -0,0 +1,49 @@
+package com.morales.pos.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "archive_batches")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ArchiveBatch {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "period_start", nullable = false)
+    private LocalDate periodStart;
+
+    // Exclusivo: el lote cubre [periodStart, periodEnd)
+    @Column(name = "period_end", nullable = false)
+    private LocalDate periodEnd;
+
+    // Relativo a app.archive.directory
+    @Column(name = "directory", nullable = false, length = 500)
+    private String directory;
+
+    @Column(name = "invoice_count", nullable = false)
+    private Long invoiceCount;
+
+    @Column(name = "detail_count", nullable = false)
+    private Long detailCount;
+
+    @Column(name = "movement_count", nullable = false)
+    private Long movementCount;
+
+    @Column(name = "archived_at", nullable = false)
+    private LocalDateTime archivedAt;
+
+    @PrePersist
+    public void prePersist() {
+        this.archivedAt = LocalDateTime.now();
+    }
+}
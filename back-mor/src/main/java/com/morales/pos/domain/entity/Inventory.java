@@ -2,12 +2,16 @@ package com.morales.pos.domain.entity;
 
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
+// La cantidad la cambia StockMutationService con UPDATE directos; al guardar la entidad
+// (límites, ubicación) solo se escriben las columnas modificadas para no pisar ese valor
 @Entity
 @Table(name = "inventory")
+@DynamicUpdate
 @Getter
 @Setter
 @NoArgsConstructor
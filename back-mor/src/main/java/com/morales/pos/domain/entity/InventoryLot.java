@@ -0,0 +1,57 @@
+package com.morales.pos.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Lote recibido de un producto. remainingQuantity baja con cada salida (ver InventoryLotService).
+ */
+@Entity
+@Table(name = "inventory_lots")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class InventoryLot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "product_id", nullable = false)
+    private Product product;
+
+    @Column(name = "lot_code", length = 50)
+    private String lotCode;
+
+    @Column(name = "received_at", nullable = false)
+    private LocalDateTime receivedAt;
+
+    // Null si el producto no vence
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
+    @Column(name = "initial_quantity", precision = 12, scale = 2, nullable = false)
+    private BigDecimal initialQuantity;
+
+    @Column(name = "remaining_quantity", precision = 12, scale = 2, nullable = false)
+    private BigDecimal remainingQuantity;
+
+    @Column(name = "expiry_notified_at")
+    private LocalDateTime expiryNotifiedAt;
+
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
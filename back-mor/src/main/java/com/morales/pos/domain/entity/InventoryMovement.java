@@ -16,8 +16,10 @@ import java.time.LocalDateTime;
 @Builder
 public class InventoryMovement {
 
+    // Secuencia con optimizador pooled: permite agrupar los INSERT en lotes JDBC
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "inventory_movements_seq")
+    @SequenceGenerator(name = "inventory_movements_seq", sequenceName = "inventory_movements_id_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -43,6 +45,10 @@ public class InventoryMovement {
     @Column(name = "reference_id")
     private Long referenceId;
 
+    // Solo en entradas que informan costo (ver StockMutationService.updateAverageCosts)
+    @Column(name = "unit_cost", precision = 12, scale = 4)
+    private BigDecimal unitCost;
+
     @Column(name = "reason", columnDefinition = "TEXT")
     private String reason;
 
@@ -55,6 +61,9 @@ public class InventoryMovement {
 
     @PrePersist
     public void prePersist() {
-        this.createdAt = LocalDateTime.now();
+        // El libro de stock escribe en diferido y conserva la hora real del movimiento
+        if (this.createdAt == null) {
+            this.createdAt = LocalDateTime.now();
+        }
     }
 }
@@ -120,28 +120,21 @@ public class Invoice extends BaseEntity {
     @Builder.Default
     private List<InvoiceDetail> details = new ArrayList<>();
 
+    // Fecha real de una venta registrada sin conexión; reemplaza la fecha de auditoría al persistir
+    @Transient
+    private LocalDateTime recordedAt;
+
+    @PrePersist
+    public void prePersist() {
+        // Se ejecuta después de AuditingEntityListener, así que prevalece sobre @CreatedDate
+        if (recordedAt != null) {
+            setCreatedAt(recordedAt);
+        }
+    }
+
     public void addDetail(InvoiceDetail detail) {
         details.add(detail);
         detail.setInvoice(this);
     }
 
-    public void calculateTotals() {
-        this.subtotal = details.stream()
-                .map(InvoiceDetail::getSubtotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        
-        this.taxAmount = details.stream()
-                .map(InvoiceDetail::getTaxAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        
-        BigDecimal totalBeforeDiscount = subtotal.add(taxAmount);
-        
-        if (discountPercent != null && discountPercent.compareTo(BigDecimal.ZERO) > 0) {
-            this.discountAmount = totalBeforeDiscount
-                    .multiply(discountPercent)
-                    .divide(BigDecimal.valueOf(100), 2, java.math.RoundingMode.HALF_UP);
-        }
-        
-        this.total = totalBeforeDiscount.subtract(discountAmount);
-    }
 }
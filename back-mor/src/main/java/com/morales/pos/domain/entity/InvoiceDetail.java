@@ -17,8 +17,10 @@ import java.time.LocalDateTime;
 @Builder
 public class InvoiceDetail {
 
+    // Secuencia con optimizador pooled: permite agrupar los INSERT en lotes JDBC
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "invoice_details_seq")
+    @SequenceGenerator(name = "invoice_details_seq", sequenceName = "invoice_details_id_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -60,6 +62,11 @@ public class InvoiceDetail {
     @Builder.Default
     private KitchenStatus kitchenStatus = KitchenStatus.PENDIENTE;
 
+    // false mientras la línea de una mesa abierta solo reserva stock (se descuenta al pagar)
+    @Column(name = "stock_deducted", nullable = false)
+    @Builder.Default
+    private Boolean stockDeducted = true;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
@@ -0,0 +1,38 @@
+package com.morales.pos.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Contador de numeración de facturas para un prefijo (ej: "V1017", "M5-1017") en un día.
+ * last_value es el último número reservado por algún nodo, no el último emitido.
+ */
+@Entity
+@Table(name = "invoice_number_sequences")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class InvoiceNumberSequence {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "prefix", nullable = false, length = 30)
+    private String prefix;
+
+    @Column(name = "business_date", nullable = false)
+    private LocalDate businessDate;
+
+    @Column(name = "last_value", nullable = false)
+    @Builder.Default
+    private Long lastValue = 0L;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
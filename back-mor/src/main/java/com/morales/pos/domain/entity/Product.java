@@ -38,6 +38,11 @@ public class Product extends BaseEntity {
     @Builder.Default
     private BigDecimal costPrice = BigDecimal.ZERO;
 
+    // Promedio ponderado de las entradas con costo; es el costo que copian las ventas
+    @Column(name = "average_cost", precision = 12, scale = 4, nullable = false)
+    @Builder.Default
+    private BigDecimal averageCost = BigDecimal.ZERO;
+
     @Column(name = "sale_price", precision = 12, scale = 2)
     @Builder.Default
     private BigDecimal salePrice = BigDecimal.ZERO;
@@ -0,0 +1,40 @@
+package com.morales.pos.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Venta offline ya registrada, por el clientSaleId que le asignó la caja.
+ */
+@Entity
+@Table(name = "sale_sync_keys")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SaleSyncRecord {
+
+    // Secuencia pooled: cada bloque sincronizado inserta sus claves en un solo lote
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "sale_sync_keys_seq")
+    @SequenceGenerator(name = "sale_sync_keys_seq", sequenceName = "sale_sync_keys_id_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "client_sale_id", nullable = false, unique = true, length = 100)
+    private String clientSaleId;
+
+    // Resumen de la factura creada, en JSON
+    @Column(name = "response_body", nullable = false, columnDefinition = "TEXT")
+    private String responseBody;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    public void prePersist() {
+        this.createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,61 @@
+package com.morales.pos.domain.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Pronóstico de reposición de un producto (ver StockForecastService).
+ */
+@Entity
+@Table(name = "stock_forecasts")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StockForecast {
+
+    @Id
+    @Column(name = "product_id")
+    private Long productId;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "product_id", insertable = false, updatable = false)
+    private Product product;
+
+    // Unidades por día en la ventana de historia
+    @Column(name = "daily_velocity", precision = 12, scale = 4, nullable = false)
+    private BigDecimal dailyVelocity;
+
+    @Column(name = "daily_std_dev", precision = 12, scale = 4, nullable = false)
+    private BigDecimal dailyStdDev;
+
+    // ISO: 1 = lunes … 7 = domingo
+    @Column(name = "peak_weekday", nullable = false)
+    private Integer peakWeekday;
+
+    // Venta del día pico sobre el promedio diario
+    @Column(name = "peak_weekday_factor", precision = 6, scale = 3, nullable = false)
+    private BigDecimal peakWeekdayFactor;
+
+    @Column(name = "peak_hour", nullable = false)
+    private Integer peakHour;
+
+    @Column(name = "suggested_min_stock", precision = 12, scale = 2, nullable = false)
+    private BigDecimal suggestedMinStock;
+
+    @Column(name = "suggested_max_stock", precision = 12, scale = 2, nullable = false)
+    private BigDecimal suggestedMaxStock;
+
+    @Column(name = "history_days", nullable = false)
+    private Integer historyDays;
+
+    @Column(name = "computed_at", nullable = false)
+    private LocalDateTime computedAt;
+
+    @Column(name = "applied_at")
+    private LocalDateTime appliedAt;
+}
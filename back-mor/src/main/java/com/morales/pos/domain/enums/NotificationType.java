@@ -6,6 +6,7 @@ public enum NotificationType {
     INVOICE_PENDING_PAYMENT,
     LOW_STOCK,
     OUT_OF_STOCK,
+    LOT_EXPIRING,
     CASH_REGISTER_OPEN,
     VOID_ATTEMPT,
     SYSTEM_ERROR
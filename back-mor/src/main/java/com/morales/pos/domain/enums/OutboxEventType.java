@@ -0,0 +1,7 @@
+package com.morales.pos.domain.enums;
+
+public enum OutboxEventType {
+    KITCHEN_ORDER_CREATED,
+    TABLE_ITEMS_ADDED,
+    TABLE_PAID
+}
@@ -0,0 +1,32 @@
+package com.morales.pos.domain.exception;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * No hay stock suficiente para una o más líneas. Extiende IllegalStateException para
+ * responder 409 como el resto de conflictos; el detalle por producto va en {@link #getShortages()}.
+ */
+public class InsufficientStockException extends IllegalStateException {
+
+    private final List<Shortage> shortages;
+
+    public InsufficientStockException(List<Shortage> shortages) {
+        super(buildMessage(shortages));
+        this.shortages = List.copyOf(shortages);
+    }
+
+    public List<Shortage> getShortages() {
+        return shortages;
+    }
+
+    private static String buildMessage(List<Shortage> shortages) {
+        Shortage first = shortages.get(0);
+        String message = String.format("Stock insuficiente para %s. Disponible: %s, Solicitado: %s",
+                first.productName(), first.available(), first.requested());
+        return shortages.size() > 1 ? message + " (y " + (shortages.size() - 1) + " productos más)" : message;
+    }
+
+    public record Shortage(Long productId, String productName, BigDecimal available, BigDecimal requested) {
+    }
+}
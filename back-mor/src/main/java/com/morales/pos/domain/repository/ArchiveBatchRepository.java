@@ -0,0 +1,20 @@
+package com.morales.pos.domain.repository;
+
+import com.morales.pos.domain.entity.ArchiveBatch;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface ArchiveBatchRepository extends JpaRepository<ArchiveBatch, Long> {
+
+    /**
+     * Lotes cuyo periodo [periodStart, periodEnd) se cruza con [start, end].
+     */
+    @Query("SELECT b FROM ArchiveBatch b WHERE b.periodStart <= :end AND b.periodEnd > :start ORDER BY b.periodStart")
+    List<ArchiveBatch> findOverlapping(@Param("start") LocalDate start, @Param("end") LocalDate end);
+}
@@ -0,0 +1,16 @@
+package com.morales.pos.domain.repository;
+
+import com.morales.pos.domain.entity.InventoryLot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface InventoryLotRepository extends JpaRepository<InventoryLot, Long> {
+
+    @Query("SELECT l FROM InventoryLot l WHERE l.product.id = :productId ORDER BY l.receivedAt DESC, l.id DESC")
+    List<InventoryLot> findByProductId(@Param("productId") Long productId);
+}
@@ -0,0 +1,33 @@
+package com.morales.pos.domain.repository;
+
+import com.morales.pos.domain.entity.InvoiceNumberSequence;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+
+@Repository
+public interface InvoiceNumberSequenceRepository extends JpaRepository<InvoiceNumberSequence, Long> {
+
+    // Reserva un bloque: bloquea la fila solo durante la transacción corta del asignador
+    @Modifying
+    @Query(value = "UPDATE invoice_number_sequences SET last_value = last_value + :block, updated_at = CURRENT_TIMESTAMP " +
+           "WHERE prefix = :prefix AND business_date = :date", nativeQuery = true)
+    int advance(@Param("prefix") String prefix, @Param("date") LocalDate date, @Param("block") long block);
+
+    // Primer uso del prefijo en el día: parte del mayor número ya emitido con ese prefijo
+    // (MMdd se repite cada año, así que se respetan los números de años anteriores)
+    @Modifying
+    @Query(value = "INSERT INTO invoice_number_sequences (prefix, business_date, last_value, updated_at) " +
+           "SELECT :prefix, :date, COALESCE(MAX(CAST(SUBSTRING(i.invoice_number FROM CHAR_LENGTH(:prefix) + 2) AS BIGINT)), 0), CURRENT_TIMESTAMP " +
+           "FROM invoices i WHERE i.invoice_number LIKE CONCAT(:prefix, '-%') " +
+           "AND i.invoice_number ~ CONCAT('^', :prefix, '-[0-9]+$') " +
+           "ON CONFLICT (prefix, business_date) DO NOTHING", nativeQuery = true)
+    int seed(@Param("prefix") String prefix, @Param("date") LocalDate date);
+
+    @Query("SELECT s.lastValue FROM InvoiceNumberSequence s WHERE s.prefix = :prefix AND s.businessDate = :date")
+    Long findLastValue(@Param("prefix") String prefix, @Param("date") LocalDate date);
+}
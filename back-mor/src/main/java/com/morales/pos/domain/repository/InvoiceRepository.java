@@ -62,36 +62,11 @@ public interface InvoiceRepository extends JpaRepository<Invoice, Long>, JpaSpec
 
     Long countByCreatedAtBetween(LocalDateTime start, LocalDateTime end);
 
-    @Query("SELECT COUNT(i) FROM Invoice i WHERE i.invoiceNumber LIKE :prefix%")
-    Long countByInvoiceNumberStartingWith(@Param("prefix") String prefix);
-
-    @Query("SELECT SUM(i.total) FROM Invoice i WHERE i.createdAt BETWEEN :start AND :end AND i.status = :status")
-    BigDecimal sumTotalByDateRangeAndStatus(
-            @Param("start") LocalDateTime start,
-            @Param("end") LocalDateTime end,
-            @Param("status") InvoiceStatus status);
-
-    @Query("SELECT COUNT(i) FROM Invoice i WHERE i.createdAt BETWEEN :start AND :end AND i.status = :status")
-    Long countByCreatedAtBetweenAndStatus(
-            @Param("start") LocalDateTime start,
-            @Param("end") LocalDateTime end,
-            @Param("status") InvoiceStatus status);
-
-    @Query("SELECT CAST(i.createdAt AS LocalDate), SUM(i.total), COUNT(i) FROM Invoice i " +
-           "WHERE i.createdAt BETWEEN :start AND :end AND i.status = 'COMPLETADA' " +
-           "GROUP BY CAST(i.createdAt AS LocalDate) ORDER BY CAST(i.createdAt AS LocalDate)")
-    List<Object[]> getDailySales(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
-
     @Query(value = "SELECT c.id, c.full_name, COUNT(i.id), SUM(i.total) FROM invoices i " +
            "JOIN customers c ON i.customer_id = c.id WHERE i.created_at BETWEEN :start AND :end AND i.status = 'COMPLETADA' " +
            "GROUP BY c.id, c.full_name ORDER BY SUM(i.total) DESC LIMIT :limit", nativeQuery = true)
     List<Object[]> getTopCustomers(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end, @Param("limit") int limit);
 
-    @Query("SELECT i.paymentMethod, SUM(i.total), COUNT(i) FROM Invoice i " +
-           "WHERE i.createdAt BETWEEN :start AND :end AND i.status = 'COMPLETADA' " +
-           "GROUP BY i.paymentMethod ORDER BY SUM(i.total) DESC")
-    List<Object[]> getSalesByPaymentMethod(@Param("start") LocalDateTime start, @Param("end") LocalDateTime end);
-
     @Query("SELECT DISTINCT i FROM Invoice i LEFT JOIN FETCH i.details d LEFT JOIN FETCH i.user " +
            "LEFT JOIN FETCH i.tableSession ts LEFT JOIN FETCH ts.restaurantTable " +
            "WHERE i.status IN :statuses AND d.kitchenStatus IN :kitchenStatuses " +
@@ -0,0 +1,77 @@
+package com.morales.pos.domain.repository;
+
+import com.morales.pos.domain.entity.Invoice;
+import com.morales.pos.domain.enums.InvoiceStatus;
+import com.morales.pos.domain.enums.PaymentMethod;
+import jakarta.persistence.criteria.JoinType;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+
+/**
+ * Filtros de búsqueda de facturas para {@link InvoiceRepository#findBy}.
+ * Cada método devuelve null si el filtro no aplica, así se pueden encadenar con and().
+ */
+public final class InvoiceSpecifications {
+
+    private InvoiceSpecifications() {
+    }
+
+    public static Specification<Invoice> createdFrom(LocalDateTime start) {
+        return start == null ? null : (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("createdAt"), start);
+    }
+
+    public static Specification<Invoice> createdUntil(LocalDateTime end) {
+        return end == null ? null : (root, query, cb) -> cb.lessThanOrEqualTo(root.get("createdAt"), end);
+    }
+
+    /**
+     * Sin estado explícito se excluyen las cuentas de mesa abiertas, igual que el listado paginado.
+     */
+    public static Specification<Invoice> hasStatus(InvoiceStatus status) {
+        return status == null
+                ? (root, query, cb) -> cb.notEqual(root.get("status"), InvoiceStatus.ABIERTA)
+                : (root, query, cb) -> cb.equal(root.get("status"), status);
+    }
+
+    public static Specification<Invoice> hasCustomer(Long customerId) {
+        return customerId == null ? null : (root, query, cb) -> cb.equal(root.get("customer").get("id"), customerId);
+    }
+
+    public static Specification<Invoice> hasCashier(Long userId) {
+        return userId == null ? null : (root, query, cb) -> cb.equal(root.get("user").get("id"), userId);
+    }
+
+    public static Specification<Invoice> hasPaymentMethod(PaymentMethod paymentMethod) {
+        return paymentMethod == null ? null : (root, query, cb) -> cb.equal(root.get("paymentMethod"), paymentMethod);
+    }
+
+    /**
+     * Predicado de búsqueda por posición: facturas anteriores a (createdAt, id) en orden descendente.
+     * La condición redundante created_at <= :createdAt acota el recorrido del índice (created_at, id).
+     */
+    public static Specification<Invoice> before(LocalDateTime createdAt, Long id) {
+        if (createdAt == null || id == null) {
+            return null;
+        }
+        return (root, query, cb) -> cb.and(
+                cb.lessThanOrEqualTo(root.get("createdAt"), createdAt),
+                cb.or(
+                        cb.lessThan(root.get("createdAt"), createdAt),
+                        cb.lessThan(root.get("id"), id)));
+    }
+
+    /**
+     * Trae cliente, cajero y usuario que anuló en la misma consulta (la respuesta usa sus nombres).
+     */
+    public static Specification<Invoice> fetchParties() {
+        return (root, query, cb) -> {
+            if (query.getResultType() != Long.class && query.getResultType() != long.class) {
+                root.fetch("customer", JoinType.LEFT);
+                root.fetch("user", JoinType.LEFT);
+                root.fetch("voidedBy", JoinType.LEFT);
+            }
+            return null;
+        };
+    }
+}
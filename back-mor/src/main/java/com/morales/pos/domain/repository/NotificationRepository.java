@@ -38,6 +38,11 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
 
     boolean existsByTypeAndReferenceIdAndIsReadFalse(NotificationType type, Long referenceId);
 
+    @Query("SELECT n.type, n.referenceId FROM Notification n WHERE n.isRead = false " +
+           "AND n.type IN :types AND n.referenceId IN :referenceIds")
+    List<Object[]> findUnreadReferences(@Param("types") List<NotificationType> types,
+                                        @Param("referenceIds") List<Long> referenceIds);
+
     @Modifying
     @Query("DELETE FROM Notification n WHERE n.createdAt < :before AND n.isRead = true")
     int deleteOldReadNotifications(@Param("before") LocalDateTime before);
@@ -0,0 +1,31 @@
+package com.morales.pos.domain.repository;
+
+import com.morales.pos.domain.entity.OutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    /**
+     * Bloquea un evento pendiente; si otro hilo o nodo ya lo tiene, no lo devuelve.
+     */
+    @Query(value = "SELECT * FROM outbox_events WHERE id = :id AND processed_at IS NULL FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    Optional<OutboxEvent> lockPending(@Param("id") Long id);
+
+    @Query(value = "SELECT id FROM outbox_events WHERE processed_at IS NULL AND created_at < :before " +
+                   "ORDER BY created_at LIMIT :limit", nativeQuery = true)
+    List<Long> findPendingIdsCreatedBefore(@Param("before") LocalDateTime before, @Param("limit") int limit);
+
+    @Modifying
+    @Query("DELETE FROM OutboxEvent e WHERE e.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") LocalDateTime before);
+}
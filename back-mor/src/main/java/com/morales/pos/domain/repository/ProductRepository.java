@@ -9,6 +9,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -26,6 +27,12 @@ public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpec
     @Query("SELECT p FROM Product p WHERE p.isActive = true")
     List<Product> findAllActive();
 
+    /**
+     * Solo los campos de precio (id, nombre, precio de venta, tasa de impuesto, activo), sin cargar entidades.
+     */
+    @Query("SELECT p.id, p.name, p.salePrice, p.taxRate, p.isActive FROM Product p WHERE p.id IN :ids")
+    List<Object[]> findPriceRowsByIdIn(@Param("ids") Collection<Long> ids);
+
     @Query("SELECT DISTINCT p FROM Product p LEFT JOIN FETCH p.category LEFT JOIN FETCH p.inventory WHERE p.isActive = true")
     List<Product> findByIsActiveTrue();
 
@@ -56,6 +63,10 @@ public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpec
     @Query("SELECT p FROM Product p LEFT JOIN FETCH p.category LEFT JOIN FETCH p.inventory WHERE p.id = :id")
     Optional<Product> findByIdWithDetails(@Param("id") Long id);
 
+    // Precarga de un carrito completo: productos + inventario en una sola consulta
+    @Query("SELECT p FROM Product p LEFT JOIN FETCH p.inventory WHERE p.id IN :ids")
+    List<Product> findAllByIdWithInventory(@Param("ids") Collection<Long> ids);
+
     Long countByIsActiveTrue();
 
     @Query("SELECT MAX(CAST(SUBSTRING(p.code, 5) AS integer)) FROM Product p WHERE p.code LIKE 'PRD-%'")
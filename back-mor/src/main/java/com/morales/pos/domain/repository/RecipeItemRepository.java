@@ -0,0 +1,25 @@
+package com.morales.pos.domain.repository;
+
+import com.morales.pos.domain.entity.RecipeItem;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface RecipeItemRepository extends JpaRepository<RecipeItem, Long> {
+
+    @Query("SELECT r FROM RecipeItem r JOIN FETCH r.ingredient WHERE r.product.id = :productId ORDER BY r.id")
+    List<RecipeItem> findByProductIdWithIngredient(@Param("productId") Long productId);
+
+    // Todas las aristas producto → ingrediente, para armar el caché de explosiones
+    @Query("SELECT r.product.id, r.ingredient.id, r.quantity FROM RecipeItem r")
+    List<Object[]> findAllEdges();
+
+    @Modifying
+    @Query("DELETE FROM RecipeItem r WHERE r.product.id = :productId")
+    int deleteByProductId(@Param("productId") Long productId);
+}
@@ -0,0 +1,22 @@
+package com.morales.pos.domain.repository;
+
+import com.morales.pos.domain.entity.SaleSyncRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface SaleSyncRecordRepository extends JpaRepository<SaleSyncRecord, Long> {
+
+    List<SaleSyncRecord> findByClientSaleIdIn(Collection<String> clientSaleIds);
+
+    @Modifying
+    @Query("DELETE FROM SaleSyncRecord r WHERE r.createdAt < :before")
+    int deleteOlderThan(@Param("before") LocalDateTime before);
+}
@@ -0,0 +1,15 @@
+package com.morales.pos.domain.repository;
+
+import com.morales.pos.domain.entity.StockForecast;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface StockForecastRepository extends JpaRepository<StockForecast, Long> {
+
+    @Query("SELECT f FROM StockForecast f JOIN FETCH f.product p LEFT JOIN FETCH p.inventory ORDER BY p.name")
+    List<StockForecast> findAllWithProduct();
+}
@@ -0,0 +1,102 @@
+package com.morales.pos.infrastructure.analytics;
+
+import java.util.Arrays;
+
+/**
+ * Totales por grupo de un recorrido de {@link SalesColumnStore}: tabla hash de direccionamiento
+ * abierto sobre la llave empaquetada del grupo, con los montos en arreglos paralelos para no
+ * crear un objeto por fila.
+ */
+public final class GroupTotals {
+
+    private static final long EMPTY = -1L;
+
+    private long[] keys;
+    private long[] revenue;
+    private long[] cost;
+    private long[] quantity;
+    private long[] lines;
+    private int size;
+
+    public GroupTotals() {
+        allocate(64);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    void add(long key, long revenueCents, long costCents, long quantityMilli, long lineCount) {
+        int slot = slot(key);
+        if (keys[slot] == EMPTY) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+                slot = slot(key);
+            }
+            keys[slot] = key;
+            size++;
+        }
+        revenue[slot] += revenueCents;
+        cost[slot] += costCents;
+        quantity[slot] += quantityMilli;
+        lines[slot] += lineCount;
+    }
+
+    public void addAll(GroupTotals other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != EMPTY) {
+                add(other.keys[i], other.revenue[i], other.cost[i], other.quantity[i], other.lines[i]);
+            }
+        }
+    }
+
+    public void forEach(GroupConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                consumer.accept(keys[i], revenue[i], cost[i], quantity[i], lines[i]);
+            }
+        }
+    }
+
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int i = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldRevenue = revenue;
+        long[] oldCost = cost;
+        long[] oldQuantity = quantity;
+        long[] oldLines = lines;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                revenue[slot] = oldRevenue[i];
+                cost[slot] = oldCost[i];
+                quantity[slot] = oldQuantity[i];
+                lines[slot] = oldLines[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        revenue = new long[capacity];
+        cost = new long[capacity];
+        quantity = new long[capacity];
+        lines = new long[capacity];
+    }
+
+    @FunctionalInterface
+    public interface GroupConsumer {
+        void accept(long key, long revenueCents, long costCents, long quantityMilli, long lineCount);
+    }
+}
@@ -0,0 +1,385 @@
+package com.morales.pos.infrastructure.analytics;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Líneas de venta recientes en columnas de arreglos primitivos, para agrupar y filtrar por
+ * cualquier combinación de {@link SalesDimension} sin una consulta nueva por reporte.
+ *
+ * Cada fila es una línea de factura: día (epoch day), hora, un código de diccionario por
+ * cada dimensión codificada y los montos en enteros (centavos y milésimas de unidad). Una
+ * anulación agrega las mismas líneas con signo negativo, igual que los acumulados de V28.
+ *
+ * Las filas se guardan en segmentos de tamaño fijo que no se copian al crecer; cada segmento
+ * se recorre por separado (ver {@link Scan#aggregate}), así el recorrido se reparte entre
+ * hilos. Escribe un solo hilo a la vez (append sincronizado); las lecturas no toman candado:
+ * leen el tamaño publicado y solo recorren las filas que ya estaban escritas en ese momento.
+ */
+public class SalesColumnStore {
+
+    private static final int SEGMENT_BITS = 16;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+    private static final Locale SPANISH = Locale.forLanguageTag("es");
+
+    private final LocalDate firstDay;
+    private final int firstEpochDay;
+    private final Dictionary[] dictionaries = new Dictionary[SalesDimension.values().length];
+
+    private volatile Segment[] segments = new Segment[0];
+    // Se escribe después de la fila; leerlo primero garantiza ver las filas y códigos anteriores
+    private volatile int size;
+
+    public SalesColumnStore(LocalDate firstDay) {
+        this.firstDay = firstDay;
+        this.firstEpochDay = (int) firstDay.toEpochDay();
+        for (SalesDimension dimension : SalesDimension.values()) {
+            if (dimension.isEncoded()) {
+                dictionaries[dimension.ordinal()] = new Dictionary();
+            }
+        }
+    }
+
+    /**
+     * Primer día que guarda; las líneas anteriores se descartan al agregarlas.
+     */
+    public LocalDate getFirstDay() {
+        return firstDay;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int cardinality(SalesDimension dimension) {
+        return dimension.isEncoded() ? dictionaries[dimension.ordinal()].size() : 0;
+    }
+
+    /**
+     * Agrega una línea. Devuelve false si es anterior al primer día y no se guardó.
+     */
+    public synchronized boolean append(Line line) {
+        int day = (int) line.at().toLocalDate().toEpochDay();
+        if (day < firstEpochDay) {
+            return false;
+        }
+        int row = size;
+        int index = row >>> SEGMENT_BITS;
+        Segment[] current = segments;
+        if (index == current.length) {
+            current = Arrays.copyOf(current, index + 1);
+            current[index] = new Segment();
+            segments = current;
+        }
+        Segment segment = current[index];
+        int i = row & SEGMENT_MASK;
+
+        segment.day[i] = day;
+        segment.hour[i] = (byte) line.at().getHour();
+        segment.sign[i] = (byte) Integer.signum(line.sign());
+        segment.codes[SalesDimension.PRODUCT.ordinal()][i] = encode(SalesDimension.PRODUCT, line.product());
+        segment.codes[SalesDimension.CATEGORY.ordinal()][i] = encode(SalesDimension.CATEGORY, line.category());
+        segment.codes[SalesDimension.CASHIER.ordinal()][i] = encode(SalesDimension.CASHIER, line.cashier());
+        segment.codes[SalesDimension.TABLE.ordinal()][i] = encode(SalesDimension.TABLE, line.table());
+        segment.codes[SalesDimension.PAYMENT_METHOD.ordinal()][i] = encode(SalesDimension.PAYMENT_METHOD, line.paymentMethod());
+        segment.quantity[i] = line.quantityMilli();
+        segment.revenue[i] = line.revenueCents();
+        segment.cost[i] = line.costCents();
+        segment.minDay = Math.min(segment.minDay, day);
+        segment.maxDay = Math.max(segment.maxDay, day);
+
+        size = row + 1;
+        return true;
+    }
+
+    /**
+     * Prepara un recorrido de las filas ya publicadas entre from y to (inclusive).
+     *
+     * @param filters valores permitidos por dimensión: el id (o el nombre del método de pago)
+     *                para las codificadas, 1–7 para WEEKDAY y 0–23 para HOUR
+     */
+    public Scan scan(LocalDate from, LocalDate to, List<SalesDimension> groupBy,
+                     Map<SalesDimension, ? extends Collection<String>> filters) {
+        int rows = size;
+        Segment[] current = segments;
+        int dayFrom = (int) from.toEpochDay();
+        int dayTo = (int) to.toEpochDay();
+
+        SalesDimension[] groups = groupBy.toArray(new SalesDimension[0]);
+        long[] radix = new long[groups.length];
+        long combinations = 1;
+        for (int g = 0; g < groups.length; g++) {
+            radix[g] = Math.max(1, cardinality(groups[g], dayFrom, dayTo));
+            try {
+                combinations = Math.multiplyExact(combinations, radix[g]);
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("Demasiadas combinaciones de agrupación: " + groupBy);
+            }
+        }
+
+        List<SalesDimension> filterDimensions = new ArrayList<>();
+        List<boolean[]> allowed = new ArrayList<>();
+        if (filters != null) {
+            filters.forEach((dimension, values) -> {
+                if (values == null || values.isEmpty()) {
+                    return;
+                }
+                if (dimension == SalesDimension.DAY) {
+                    throw new IllegalArgumentException("Para filtrar por día se usa el rango de fechas");
+                }
+                filterDimensions.add(dimension);
+                allowed.add(allowedCodes(dimension, values));
+            });
+        }
+
+        return new Scan(current, rows, dayFrom, dayTo, groups, radix,
+                filterDimensions.toArray(new SalesDimension[0]), allowed.toArray(new boolean[0][]));
+    }
+
+    private int encode(SalesDimension dimension, Member member) {
+        return dictionaries[dimension.ordinal()].encode(member.key(), member.label());
+    }
+
+    private int cardinality(SalesDimension dimension, int dayFrom, int dayTo) {
+        return switch (dimension) {
+            case DAY -> dayTo - dayFrom + 1;
+            case WEEKDAY -> 7;
+            case HOUR -> 24;
+            default -> dictionaries[dimension.ordinal()].size();
+        };
+    }
+
+    private boolean[] allowedCodes(SalesDimension dimension, Collection<String> values) {
+        if (dimension.isEncoded()) {
+            return dictionaries[dimension.ordinal()].match(values);
+        }
+        int max = dimension == SalesDimension.WEEKDAY ? 7 : 23;
+        int offset = dimension == SalesDimension.WEEKDAY ? 1 : 0;
+        boolean[] allowed = new boolean[max + 1 - offset];
+        for (String value : values) {
+            int parsed;
+            try {
+                parsed = Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Valor no válido para " + dimension + ": " + value);
+            }
+            if (parsed < offset || parsed > max) {
+                throw new IllegalArgumentException("Valor fuera de rango para " + dimension + ": " + value);
+            }
+            allowed[parsed - offset] = true;
+        }
+        return allowed;
+    }
+
+    /**
+     * Recorrido preparado: las filas, los diccionarios y los tamaños quedan fijos al crearlo.
+     */
+    public final class Scan {
+
+        private final Segment[] segments;
+        private final int rows;
+        private final int dayFrom;
+        private final int dayTo;
+        private final SalesDimension[] groupBy;
+        private final long[] radix;
+        private final SalesDimension[] filterDimensions;
+        private final boolean[][] allowed;
+
+        private Scan(Segment[] segments, int rows, int dayFrom, int dayTo, SalesDimension[] groupBy,
+                     long[] radix, SalesDimension[] filterDimensions, boolean[][] allowed) {
+            this.segments = segments;
+            this.rows = rows;
+            this.dayFrom = dayFrom;
+            this.dayTo = dayTo;
+            this.groupBy = groupBy;
+            this.radix = radix;
+            this.filterDimensions = filterDimensions;
+            this.allowed = allowed;
+        }
+
+        public int rows() {
+            return rows;
+        }
+
+        public int segmentCount() {
+            return (rows + SEGMENT_SIZE - 1) >>> SEGMENT_BITS;
+        }
+
+        /**
+         * Agrega un segmento; cada segmento puede recorrerse en un hilo distinto.
+         */
+        public GroupTotals aggregate(int segmentIndex) {
+            GroupTotals totals = new GroupTotals();
+            Segment segment = segments[segmentIndex];
+            if (segment.maxDay < dayFrom || segment.minDay > dayTo) {
+                return totals;
+            }
+            int count = Math.min(SEGMENT_SIZE, rows - (segmentIndex << SEGMENT_BITS));
+            next:
+            for (int i = 0; i < count; i++) {
+                int day = segment.day[i];
+                if (day < dayFrom || day > dayTo) {
+                    continue;
+                }
+                for (int f = 0; f < filterDimensions.length; f++) {
+                    int code = code(segment, i, day, filterDimensions[f]);
+                    boolean[] permitted = allowed[f];
+                    if (code >= permitted.length || !permitted[code]) {
+                        continue next;
+                    }
+                }
+                long key = 0;
+                for (int g = 0; g < groupBy.length; g++) {
+                    key = key * radix[g] + code(segment, i, day, groupBy[g]);
+                }
+                totals.add(key, segment.revenue[i], segment.cost[i], segment.quantity[i], segment.sign[i]);
+            }
+            return totals;
+        }
+
+        /**
+         * Separa una llave empaquetada en el valor de cada dimensión agrupada.
+         */
+        public Group decode(long key) {
+            Object[] keys = new Object[groupBy.length];
+            String[] labels = new String[groupBy.length];
+            for (int g = groupBy.length - 1; g >= 0; g--) {
+                int code = (int) (key % radix[g]);
+                key /= radix[g];
+                switch (groupBy[g]) {
+                    case DAY -> {
+                        LocalDate date = LocalDate.ofEpochDay((long) dayFrom + code);
+                        keys[g] = date;
+                        labels[g] = date.toString();
+                    }
+                    case WEEKDAY -> {
+                        keys[g] = code + 1;
+                        labels[g] = DayOfWeek.of(code + 1).getDisplayName(TextStyle.FULL, SPANISH);
+                    }
+                    case HOUR -> {
+                        keys[g] = code;
+                        labels[g] = String.format("%02d:00", code);
+                    }
+                    default -> {
+                        Dictionary dictionary = dictionaries[groupBy[g].ordinal()];
+                        keys[g] = dictionary.key(code);
+                        labels[g] = dictionary.label(code);
+                    }
+                }
+            }
+            return new Group(Arrays.asList(keys), Arrays.asList(labels));
+        }
+
+        private int code(Segment segment, int i, int day, SalesDimension dimension) {
+            return switch (dimension) {
+                case DAY -> day - dayFrom;
+                case WEEKDAY -> Math.floorMod(day + 3, 7); // epoch day 0 fue jueves; 0 = lunes
+                case HOUR -> segment.hour[i];
+                default -> segment.codes[dimension.ordinal()][i];
+            };
+        }
+    }
+
+    /**
+     * Valor de una dimensión codificada: la llave (id o nombre) y el texto a mostrar.
+     */
+    public record Member(Object key, String label) {
+    }
+
+    public record Line(LocalDateTime at, int sign, Member product, Member category, Member cashier,
+                       Member table, Member paymentMethod, long quantityMilli, long revenueCents, long costCents) {
+    }
+
+    public record Group(List<Object> keys, List<String> labels) {
+    }
+
+    private static final class Segment {
+        final int[] day = new int[SEGMENT_SIZE];
+        final byte[] hour = new byte[SEGMENT_SIZE];
+        final byte[] sign = new byte[SEGMENT_SIZE];
+        final int[][] codes = new int[SalesDimension.values().length][];
+        final long[] quantity = new long[SEGMENT_SIZE];
+        final long[] revenue = new long[SEGMENT_SIZE];
+        final long[] cost = new long[SEGMENT_SIZE];
+        // Rango de días del segmento, para saltarlo entero si no cruza el filtro
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+
+        Segment() {
+            for (SalesDimension dimension : SalesDimension.values()) {
+                if (dimension.isEncoded()) {
+                    codes[dimension.ordinal()] = new int[SEGMENT_SIZE];
+                }
+            }
+        }
+    }
+
+    /**
+     * Llave → código consecutivo. Se escribe bajo el candado del almacén; el texto se
+     * actualiza con el último visto (un producto renombrado muestra el nombre nuevo).
+     */
+    private static final class Dictionary {
+        private final Map<Object, Integer> codes = new HashMap<>();
+        private volatile Object[] keys = new Object[16];
+        private volatile String[] labels = new String[16];
+        private volatile int size;
+
+        int encode(Object key, String label) {
+            Integer code = codes.get(key);
+            if (code != null) {
+                if (label != null && !label.equals(labels[code])) {
+                    labels[code] = label;
+                }
+                return code;
+            }
+            int next = size;
+            if (next == keys.length) {
+                keys = Arrays.copyOf(keys, next * 2);
+                labels = Arrays.copyOf(labels, next * 2);
+            }
+            keys[next] = key;
+            labels[next] = label != null ? label : String.valueOf(key);
+            codes.put(key, next);
+            size = next + 1;
+            return next;
+        }
+
+        int size() {
+            return size;
+        }
+
+        Object key(int code) {
+            return keys[code];
+        }
+
+        String label(int code) {
+            return labels[code];
+        }
+
+        boolean[] match(Collection<String> values) {
+            int count = size;
+            Object[] current = keys;
+            boolean[] allowed = new boolean[count];
+            for (int code = 0; code < count; code++) {
+                String key = String.valueOf(current[code]);
+                for (String value : values) {
+                    if (key.equalsIgnoreCase(value.trim())) {
+                        allowed[code] = true;
+                        break;
+                    }
+                }
+            }
+            return allowed;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.morales.pos.infrastructure.analytics;
+
+/**
+ * Columnas por las que se puede agrupar o filtrar en {@link SalesColumnStore}.
+ *
+ * Las primeras se guardan codificadas con diccionario (un entero por fila); DAY, WEEKDAY y
+ * HOUR se derivan de la fecha de la venta.
+ */
+public enum SalesDimension {
+
+    PRODUCT(true),
+    CATEGORY(true),
+    CASHIER(true),
+    TABLE(true),
+    PAYMENT_METHOD(true),
+    DAY(false),
+    WEEKDAY(false),     // ISO: 1 = lunes … 7 = domingo
+    HOUR(false);
+
+    private final boolean encoded;
+
+    SalesDimension(boolean encoded) {
+        this.encoded = encoded;
+    }
+
+    public boolean isEncoded() {
+        return encoded;
+    }
+}
@@ -0,0 +1,61 @@
+package com.morales.pos.infrastructure.archive;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Bloque descomprimido de un archivo columnar: una columna por arreglo.
+ * TIMESTAMP y LONG llegan como milisegundos / valores; DECIMAL como centavos.
+ */
+public final class ArchiveBlock {
+
+    private final int rowCount;
+    private final long fromMillis;
+    private final long toMillis;
+    private final long[] times;
+    private final Map<String, Object> columns;
+
+    ArchiveBlock(int rowCount, long fromMillis, long toMillis, String timeColumn, Map<String, Object> columns) {
+        this.rowCount = rowCount;
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        this.times = (long[]) columns.get(timeColumn);
+        this.columns = columns;
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Indica si la fila cae dentro del rango pedido al lector (ambos extremos incluidos).
+     */
+    public boolean inRange(int row) {
+        long time = times[row];
+        return time != ColumnarArchiveWriter.NULL_LONG && time >= fromMillis && time <= toMillis;
+    }
+
+    public long[] longs(String column) {
+        return (long[]) require(column);
+    }
+
+    public String[] strings(String column) {
+        return (String[]) require(column);
+    }
+
+    public static boolean isNull(long value) {
+        return value == ColumnarArchiveWriter.NULL_LONG;
+    }
+
+    public static BigDecimal toDecimal(long cents) {
+        return isNull(cents) ? BigDecimal.ZERO : BigDecimal.valueOf(cents, 2);
+    }
+
+    private Object require(String column) {
+        Object values = columns.get(column);
+        if (values == null) {
+            throw new IllegalArgumentException("Columna no leída o inexistente: " + column);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,30 @@
+package com.morales.pos.infrastructure.archive;
+
+/**
+ * Columna de un archivo columnar de archivo histórico.
+ */
+public record ArchiveColumn(String name, Type type) {
+
+    public enum Type {
+        TIMESTAMP,  // LocalDateTime, milisegundos sin zona
+        LONG,
+        DECIMAL,    // BigDecimal con 2 decimales, guardado como centavos
+        STRING
+    }
+
+    public static ArchiveColumn timestamp(String name) {
+        return new ArchiveColumn(name, Type.TIMESTAMP);
+    }
+
+    public static ArchiveColumn longValue(String name) {
+        return new ArchiveColumn(name, Type.LONG);
+    }
+
+    public static ArchiveColumn decimal(String name) {
+        return new ArchiveColumn(name, Type.DECIMAL);
+    }
+
+    public static ArchiveColumn string(String name) {
+        return new ArchiveColumn(name, Type.STRING);
+    }
+}
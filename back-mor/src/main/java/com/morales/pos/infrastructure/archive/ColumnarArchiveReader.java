@@ -0,0 +1,96 @@
+package com.morales.pos.infrastructure.archive;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Lee archivos escritos por {@link ColumnarArchiveWriter}.
+ *
+ * Solo descomprime los bloques cuyo rango [min, max] toca el rango pedido y, dentro de ellos,
+ * solo las columnas solicitadas. Los bloques de los bordes pueden traer filas fuera del rango:
+ * el visitante las filtra con {@link ArchiveBlock#inRange(int)}.
+ */
+public final class ColumnarArchiveReader {
+
+    private ColumnarArchiveReader() {
+    }
+
+    public static void scan(Path file, LocalDateTime from, LocalDateTime to,
+                            Set<String> columns, Consumer<ArchiveBlock> visitor) {
+        long fromMillis = ColumnarArchiveWriter.toMillis(from);
+        long toMillis = ColumnarArchiveWriter.toMillis(to);
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            if (in.readInt() != ColumnarArchiveWriter.MAGIC) {
+                throw new IOException("No es un archivo de históricos: " + file);
+            }
+            int version = in.readInt();
+            if (version != ColumnarArchiveWriter.VERSION) {
+                throw new IOException("Versión de archivo no soportada " + version + ": " + file);
+            }
+            List<ArchiveColumn> schema = new ArrayList<>();
+            int columnCount = in.readInt();
+            for (int c = 0; c < columnCount; c++) {
+                String name = in.readUTF();
+                schema.add(new ArchiveColumn(name, ArchiveColumn.Type.values()[in.readUnsignedByte()]));
+            }
+            String timeColumn = schema.get(0).name();
+
+            int rowCount;
+            while ((rowCount = in.readInt()) > 0) {
+                long min = in.readLong();
+                long max = in.readLong();
+                int blockLength = in.readInt();
+                if (max < fromMillis || min > toMillis) {
+                    in.skipNBytes(blockLength);
+                    continue;
+                }
+
+                Map<String, Object> values = new HashMap<>();
+                for (ArchiveColumn column : schema) {
+                    int length = in.readInt();
+                    boolean needed = column.name().equals(timeColumn) || columns.contains(column.name());
+                    if (!needed) {
+                        in.skipNBytes(length);
+                        continue;
+                    }
+                    values.put(column.name(), decode(column.type(), in.readNBytes(length), rowCount));
+                }
+                visitor.accept(new ArchiveBlock(rowCount, fromMillis, toMillis, timeColumn, values));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error al leer archivo de históricos " + file, e);
+        }
+    }
+
+    private static Object decode(ArchiveColumn.Type type, byte[] compressed, int rowCount) throws IOException {
+        try (DataInputStream data = new DataInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(compressed)))) {
+            if (type == ArchiveColumn.Type.STRING) {
+                String[] strings = new String[rowCount];
+                for (int r = 0; r < rowCount; r++) {
+                    strings[r] = data.readBoolean() ? data.readUTF() : null;
+                }
+                return strings;
+            }
+            long[] longs = new long[rowCount];
+            for (int r = 0; r < rowCount; r++) {
+                longs[r] = data.readLong();
+            }
+            return longs;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.morales.pos.infrastructure.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Escribe filas en el formato columnar de archivo histórico.
+ *
+ * Formato: cabecera (MAGIC, versión, esquema) seguida de bloques de hasta N filas y un bloque
+ * vacío de cierre. Cada bloque lleva filas, fecha mínima y máxima de la primera columna (siempre
+ * TIMESTAMP), su tamaño en bytes y luego cada columna comprimida por separado con Deflate. El
+ * lector descarta bloques fuera del rango pedido y columnas que no necesita sin descomprimirlos.
+ */
+public class ColumnarArchiveWriter implements Closeable {
+
+    static final int MAGIC = 0x4D504341; // "MPCA"
+    static final int VERSION = 1;
+    static final long NULL_LONG = Long.MIN_VALUE;
+    private static final int MAX_STRING_LENGTH = 20_000;
+
+    private final List<ArchiveColumn> columns;
+    private final int blockSize;
+    private final DataOutputStream out;
+    private final Object[][] buffer;
+    private int buffered;
+    private long rowsWritten;
+
+    public ColumnarArchiveWriter(Path file, List<ArchiveColumn> columns, int blockSize) throws IOException {
+        if (columns.isEmpty() || columns.get(0).type() != ArchiveColumn.Type.TIMESTAMP) {
+            throw new IllegalArgumentException("La primera columna del archivo debe ser de tipo TIMESTAMP");
+        }
+        this.columns = List.copyOf(columns);
+        this.blockSize = blockSize;
+        this.buffer = new Object[columns.size()][blockSize];
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024));
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(columns.size());
+        for (ArchiveColumn column : columns) {
+            out.writeUTF(column.name());
+            out.writeByte(column.type().ordinal());
+        }
+    }
+
+    /**
+     * Agrega una fila; los valores van en el orden del esquema.
+     */
+    public void append(Object... values) throws IOException {
+        if (values.length != columns.size()) {
+            throw new IllegalArgumentException("Se esperaban " + columns.size() + " valores y llegaron " + values.length);
+        }
+        for (int c = 0; c < values.length; c++) {
+            buffer[c][buffered] = values[c];
+        }
+        buffered++;
+        rowsWritten++;
+        if (buffered == blockSize) {
+            flushBlock();
+        }
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (buffered > 0) {
+                flushBlock();
+            }
+            out.writeInt(0); // fin de archivo: bloque sin filas
+        } finally {
+            out.close();
+        }
+    }
+
+    private void flushBlock() throws IOException {
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int r = 0; r < buffered; r++) {
+            long time = toMillis((LocalDateTime) buffer[0][r]);
+            if (time != NULL_LONG) {
+                min = Math.min(min, time);
+                max = Math.max(max, time);
+            }
+        }
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        DataOutputStream blockOut = new DataOutputStream(block);
+        for (int c = 0; c < columns.size(); c++) {
+            byte[] compressed = encodeColumn(columns.get(c).type(), buffer[c]);
+            blockOut.writeInt(compressed.length);
+            blockOut.write(compressed);
+            Arrays.fill(buffer[c], 0, buffered, null);
+        }
+        blockOut.flush();
+
+        out.writeInt(buffered);
+        out.writeLong(min);
+        out.writeLong(max);
+        out.writeInt(block.size());
+        block.writeTo(out);
+        buffered = 0;
+    }
+
+    private byte[] encodeColumn(ArchiveColumn.Type type, Object[] values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream data = new DataOutputStream(new DeflaterOutputStream(bytes, deflater, 8192))) {
+            for (int r = 0; r < buffered; r++) {
+                Object value = values[r];
+                switch (type) {
+                    case TIMESTAMP -> data.writeLong(toMillis((LocalDateTime) value));
+                    case LONG -> data.writeLong(value != null ? ((Number) value).longValue() : NULL_LONG);
+                    case DECIMAL -> data.writeLong(value != null
+                            ? ((BigDecimal) value).setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact()
+                            : NULL_LONG);
+                    case STRING -> {
+                        data.writeBoolean(value != null);
+                        if (value != null) {
+                            // writeUTF admite hasta 64 KB codificados
+                            String text = value.toString();
+                            data.writeUTF(text.length() > MAX_STRING_LENGTH ? text.substring(0, MAX_STRING_LENGTH) : text);
+                        }
+                    }
+                }
+            }
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    static long toMillis(LocalDateTime value) {
+        return value != null ? value.toInstant(ZoneOffset.UTC).toEpochMilli() : NULL_LONG;
+    }
+}
@@ -0,0 +1,177 @@
+package com.morales.pos.infrastructure.cache;
+
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Caché en memoria para @Cacheable con tope de entradas (se descarta la usada hace más
+ * tiempo) y vencimiento fijo desde que se escribe la entrada.
+ *
+ * Además del desalojo completo permite desalojar por condición sobre la llave, para invalidar
+ * solo los resultados que un cambio afecta, y lleva contadores de aciertos, fallos y
+ * desalojos. Un fallo calcula el valor fuera del candado: dos lecturas simultáneas de la
+ * misma llave pueden calcularlo dos veces, pero una consulta lenta no frena al resto.
+ *
+ * Cada invalidación avanza una época; el valor calculado tras un fallo no se guarda si hubo
+ * una invalidación mientras se calculaba, porque pudo leer datos anteriores al cambio.
+ */
+public class BoundedCache extends AbstractValueAdaptingCache {
+
+    private final String name;
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    // Orden de acceso: la primera entrada es la usada hace más tiempo
+    private final LinkedHashMap<Object, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private final AtomicLong epoch = new AtomicLong();
+    // Época del último fallo de este hilo; la escritura siguiente la compara con la actual
+    private final ThreadLocal<Long> missEpoch = new ThreadLocal<>();
+
+    public BoundedCache(String name, int maxEntries, long ttlSeconds) {
+        super(false);
+        this.name = name;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return entries;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && now - entry.writtenAt > ttlNanos) {
+                entries.remove(key);
+                evictions.increment();
+                entry = null;
+            }
+            if (entry != null) {
+                hits.increment();
+                return entry.value;
+            }
+            misses.increment();
+            missEpoch.set(epoch.get());
+            return null;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper cached = get(key);
+        if (cached != null) {
+            return (T) cached.get();
+        }
+        T value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        put(key, value);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        Entry entry = new Entry(toStoreValue(value), System.nanoTime());
+        Long seen = missEpoch.get();
+        missEpoch.remove();
+        synchronized (entries) {
+            if (seen != null && seen != epoch.get()) {
+                return;
+            }
+            entries.put(key, entry);
+            while (entries.size() > maxEntries) {
+                Iterator<Object> eldest = entries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        synchronized (entries) {
+            epoch.incrementAndGet();
+            if (entries.remove(key) != null) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    /**
+     * Desaloja las entradas cuya llave cumple la condición y devuelve cuántas salieron.
+     */
+    public int evictIf(Predicate<Object> condition) {
+        int removed = 0;
+        synchronized (entries) {
+            epoch.incrementAndGet();
+            Iterator<Map.Entry<Object, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                if (condition.test(it.next().getKey())) {
+                    it.remove();
+                    removed++;
+                }
+            }
+        }
+        invalidations.add(removed);
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        synchronized (entries) {
+            epoch.incrementAndGet();
+            invalidations.add(entries.size());
+            entries.clear();
+        }
+    }
+
+    public Stats getStats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(name, size, maxEntries, ttlNanos / 1_000_000_000L,
+                hits.sum(), misses.sum(), evictions.sum(), invalidations.sum());
+    }
+
+    private record Entry(Object value, long writtenAt) {
+    }
+
+    /**
+     * Contadores desde el arranque. evictions = por tope o vencimiento; invalidations = por cambios.
+     */
+    public record Stats(String name, int size, int maxEntries, long ttlSeconds,
+                        long hits, long misses, long evictions, long invalidations) {
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total > 0 ? (double) hits / total : 0;
+        }
+    }
+}
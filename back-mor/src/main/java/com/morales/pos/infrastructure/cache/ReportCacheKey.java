@@ -0,0 +1,38 @@
+package com.morales.pos.infrastructure.cache;
+
+import java.lang.reflect.Method;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Llave de un reporte en caché: el método, sus argumentos y el rango de fechas que cubre,
+ * para invalidar solo los reportes cuyo rango incluye una venta o anulación.
+ *
+ * El rango son los dos primeros argumentos de fecha (LocalDateTime o LocalDate; una fecha
+ * cubre el día completo). El final se extiende al final de su segundo, igual que las
+ * consultas de SalesRollupService. Sin fechas el reporte se considera afectado por cualquier venta.
+ */
+public record ReportCacheKey(String method, List<Object> args, LocalDateTime from, LocalDateTime to) {
+
+    public static ReportCacheKey of(Method method, Object... params) {
+        List<LocalDateTime> dates = new ArrayList<>(2);
+        for (Object param : params) {
+            if (param instanceof LocalDateTime dateTime) {
+                dates.add(dates.isEmpty() ? dateTime : dateTime.withNano(999_999_999));
+            } else if (param instanceof LocalDate date) {
+                dates.add(dates.isEmpty() ? date.atStartOfDay() : date.atTime(LocalTime.MAX));
+            }
+        }
+        LocalDateTime from = dates.size() == 2 ? dates.get(0) : LocalDateTime.MIN;
+        LocalDateTime to = dates.size() == 2 ? dates.get(1) : LocalDateTime.MAX;
+        return new ReportCacheKey(method.getName(), Arrays.asList(params.clone()), from, to);
+    }
+
+    public boolean covers(LocalDateTime at) {
+        return !at.isBefore(from) && !at.isAfter(to);
+    }
+}
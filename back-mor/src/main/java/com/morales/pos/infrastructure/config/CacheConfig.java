@@ -0,0 +1,41 @@
+package com.morales.pos.infrastructure.config;
+
+import com.morales.pos.infrastructure.cache.BoundedCache;
+import com.morales.pos.infrastructure.cache.ReportCacheKey;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.cache.support.SimpleCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * Cachés de reportes (ver ReportCacheService para la invalidación).
+ *
+ * reports: resultados de ReportService por método y rango; dashboard: el tablero del día.
+ * Ambos con tope de entradas y vencimiento como respaldo de la invalidación por eventos,
+ * que solo ve los cambios hechos en este nodo.
+ */
+@Configuration
+public class CacheConfig {
+
+    public static final String REPORTS = "reports";
+    public static final String DASHBOARD = "dashboard";
+
+    @Bean
+    public CacheManager cacheManager(@Value("${app.report-cache.max-entries:500}") int maxEntries,
+                                     @Value("${app.report-cache.ttl-seconds:300}") long ttlSeconds) {
+        SimpleCacheManager manager = new SimpleCacheManager();
+        manager.setCaches(List.of(
+                new BoundedCache(REPORTS, maxEntries, ttlSeconds),
+                new BoundedCache(DASHBOARD, 4, ttlSeconds)));
+        return manager;
+    }
+
+    @Bean
+    public KeyGenerator reportKeyGenerator() {
+        return (target, method, params) -> ReportCacheKey.of(method, params);
+    }
+}
@@ -0,0 +1,53 @@
+package com.morales.pos.infrastructure.persistence;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Cuenta las sentencias SQL que Hibernate prepara en el hilo actual.
+ * Un lote JDBC se prepara una sola vez, por lo que el conteo equivale
+ * a los viajes de ida y vuelta a la base de datos.
+ *
+ * Se registra en application.yml (hibernate.session_factory.statement_inspector).
+ */
+public class SqlStatementCounter implements StatementInspector {
+
+    private static final ThreadLocal<int[]> COUNTER = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        int[] counter = COUNTER.get();
+        if (counter != null) {
+            counter[0]++;
+        }
+        return sql;
+    }
+
+    /**
+     * Inicia (o reinicia) el conteo para el hilo actual. Usar con try-with-resources: al
+     * cerrarse el conteo se detiene también si la operación lanza una excepción, así no queda
+     * activo en el hilo del pool contando sentencias de otra petición.
+     */
+    public static Scope start() {
+        COUNTER.set(new int[1]);
+        return new Scope();
+    }
+
+    public static final class Scope implements AutoCloseable {
+
+        private Scope() {
+        }
+
+        /**
+         * Sentencias preparadas hasta ahora desde {@link #start()}.
+         */
+        public int count() {
+            int[] counter = COUNTER.get();
+            return counter != null ? counter[0] : 0;
+        }
+
+        @Override
+        public void close() {
+            COUNTER.remove();
+        }
+    }
+}
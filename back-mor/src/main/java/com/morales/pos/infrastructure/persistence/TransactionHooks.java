@@ -0,0 +1,106 @@
+package com.morales.pos.infrastructure.persistence;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.function.Supplier;
+
+/**
+ * Acciones atadas al fin de la transacción actual.
+ *
+ * Los cachés y estructuras en memoria se actualizan recién al confirmar: si se tocan antes,
+ * una lectura concurrente puede volver a cargar el valor anterior a la escritura, y si la
+ * transacción se revierte quedan con un cambio que no existió.
+ *
+ * {@link #perTransaction} guarda un estado por transacción (lo que una venta fue acumulando)
+ * que se crea en el primer uso y se suelta al terminar, pase lo que pase.
+ */
+public final class TransactionHooks {
+
+    private TransactionHooks() {
+    }
+
+    public static boolean isActive() {
+        return TransactionSynchronizationManager.isSynchronizationActive();
+    }
+
+    /**
+     * Ejecuta la acción al confirmar la transacción actual, o en el momento si no hay una.
+     */
+    public static void afterCommit(Runnable action) {
+        if (!isActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Ejecuta la acción si la transacción actual se revierte; para deshacer cambios en memoria
+     * hechos antes del commit. Requiere una transacción activa.
+     */
+    public static void afterRollback(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    action.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Estado de la transacción actual guardado bajo la llave (normalmente el servicio dueño).
+     * La primera llamada lo crea y registra los callbacks; las siguientes devuelven el mismo.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T perTransaction(Object key, Supplier<T> factory, Callbacks<T> callbacks) {
+        T state = (T) TransactionSynchronizationManager.getResource(key);
+        if (state != null) {
+            return state;
+        }
+        T created = factory.get();
+        TransactionSynchronizationManager.bindResource(key, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                callbacks.beforeCommit(created);
+            }
+
+            @Override
+            public void afterCommit() {
+                callbacks.afterCommit(created);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(key);
+                callbacks.afterCompletion(created, status == STATUS_COMMITTED);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * Qué hacer con el estado de la transacción; cada servicio implementa solo lo que usa.
+     */
+    public interface Callbacks<T> {
+
+        /** Dentro de la transacción, justo antes del commit; una excepción la revierte. */
+        default void beforeCommit(T state) {
+        }
+
+        default void afterCommit(T state) {
+        }
+
+        /** Después de soltar el estado, con commit o rollback. */
+        default void afterCompletion(T state, boolean committed) {
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.morales.pos.infrastructure.stock;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Contadores de stock por producto en memoria, en centésimas (DECIMAL(12,2) → long).
+ *
+ * Las llaves son long primitivos en tablas de direccionamiento abierto, repartidas en franjas
+ * con su propio candado: dos cajas que venden productos de franjas distintas no se esperan.
+ * Un cambio de varias líneas toma los candados de sus franjas en orden ascendente, así
+ * nunca hay bloqueo mutuo entre carritos.
+ */
+public class StripedStockCounters {
+
+    /** Valor devuelto cuando el producto no está cargado. */
+    public static final long MISSING = Long.MIN_VALUE;
+
+    private final Stripe[] stripes;
+    private final int mask;
+
+    public StripedStockCounters(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Carga o reemplaza el contador de un producto.
+     */
+    public void put(long productId, long quantity, long minStock, String name) {
+        Stripe stripe = stripeFor(productId);
+        stripe.lock.lock();
+        try {
+            stripe.put(productId, quantity, minStock, name);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Carga el contador solo si el producto todavía no está en memoria.
+     */
+    public void putIfAbsent(long productId, long quantity, long minStock, String name) {
+        Stripe stripe = stripeFor(productId);
+        stripe.lock.lock();
+        try {
+            if (stripe.indexOf(productId) < 0) {
+                stripe.put(productId, quantity, minStock, name);
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public boolean contains(long productId) {
+        Stripe stripe = stripeFor(productId);
+        stripe.lock.lock();
+        try {
+            return stripe.indexOf(productId) >= 0;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Cantidad actual de un producto, o {@link #MISSING} si no está cargado.
+     */
+    public long get(long productId) {
+        Stripe stripe = stripeFor(productId);
+        stripe.lock.lock();
+        try {
+            int slot = stripe.indexOf(productId);
+            return slot >= 0 ? stripe.values[slot] : MISSING;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void setMinStock(long productId, long minStock) {
+        Stripe stripe = stripeFor(productId);
+        stripe.lock.lock();
+        try {
+            int slot = stripe.indexOf(productId);
+            if (slot >= 0) {
+                stripe.minStocks[slot] = minStock;
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                stripe.clear();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Aplica todos los deltas o ninguno. Con allowNegative=false, si algún producto quedaría
+     * bajo cero no se cambia nada.
+     *
+     * @return resultado con la cantidad previa, nueva y el mínimo por línea, o el índice
+     *         de la primera línea que falló (producto no cargado o stock insuficiente)
+     */
+    public Result applyAll(long[] productIds, long[] deltas, boolean allowNegative) {
+        return applyAll(productIds, deltas, allowNegative ? null : productId -> 0L, null);
+    }
+
+    /**
+     * Aplica todos los deltas o ninguno; cada producto debe quedar en al menos floor(productId),
+     * que se lee con los candados de las franjas tomados (null: sin validar). onApplied corre
+     * también bajo esos candados, así lo que registre no se cruza con otro cambio de los mismos
+     * productos. Si una línea falla, getFailedAvailable() es lo que tenía por encima de su piso.
+     */
+    public Result applyAll(long[] productIds, long[] deltas, LongUnaryOperator floor, Runnable onApplied) {
+        int[] stripeIndexes = new int[productIds.length];
+        for (int i = 0; i < productIds.length; i++) {
+            stripeIndexes[i] = stripeIndex(productIds[i]);
+        }
+        int[] lockOrder = Arrays.stream(stripeIndexes).distinct().sorted().toArray();
+        for (int index : lockOrder) {
+            stripes[index].lock.lock();
+        }
+        try {
+            int[] slots = new int[productIds.length];
+            for (int i = 0; i < productIds.length; i++) {
+                Stripe stripe = stripes[stripeIndexes[i]];
+                slots[i] = stripe.indexOf(productIds[i]);
+                if (slots[i] < 0) {
+                    return Result.failed(i, MISSING, null);
+                }
+                if (floor != null) {
+                    long minimum = floor.applyAsLong(productIds[i]);
+                    if (stripe.values[slots[i]] + deltas[i] < minimum) {
+                        return Result.failed(i, stripe.values[slots[i]] - minimum, stripe.names[slots[i]]);
+                    }
+                }
+            }
+            Result result = new Result(productIds.length);
+            for (int i = 0; i < productIds.length; i++) {
+                Stripe stripe = stripes[stripeIndexes[i]];
+                int slot = slots[i];
+                result.previous[i] = stripe.values[slot];
+                stripe.values[slot] += deltas[i];
+                result.current[i] = stripe.values[slot];
+                result.minStock[i] = stripe.minStocks[slot];
+                result.names[i] = stripe.names[slot];
+            }
+            if (onApplied != null) {
+                onApplied.run();
+            }
+            return result;
+        } finally {
+            for (int i = lockOrder.length - 1; i >= 0; i--) {
+                stripes[lockOrder[i]].lock.unlock();
+            }
+        }
+    }
+
+    private Stripe stripeFor(long productId) {
+        return stripes[stripeIndex(productId)];
+    }
+
+    private int stripeIndex(long productId) {
+        return (int) mix(productId) & mask;
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    public static final class Result {
+        public final long[] previous;
+        public final long[] current;
+        public final long[] minStock;
+        public final String[] names;
+        private final int failedIndex;
+        private final long failedAvailable;
+        private final String failedName;
+
+        private Result(int size) {
+            this.previous = new long[size];
+            this.current = new long[size];
+            this.minStock = new long[size];
+            this.names = new String[size];
+            this.failedIndex = -1;
+            this.failedAvailable = 0;
+            this.failedName = null;
+        }
+
+        private Result(int failedIndex, long failedAvailable, String failedName) {
+            this.previous = null;
+            this.current = null;
+            this.minStock = null;
+            this.names = null;
+            this.failedIndex = failedIndex;
+            this.failedAvailable = failedAvailable;
+            this.failedName = failedName;
+        }
+
+        private static Result failed(int index, long available, String name) {
+            return new Result(index, available, name);
+        }
+
+        public boolean isApplied() {
+            return failedIndex < 0;
+        }
+
+        /** Línea que impidió el cambio, o -1 si se aplicó. */
+        public int getFailedIndex() {
+            return failedIndex;
+        }
+
+        /** Stock disponible de la línea que falló, o {@link #MISSING} si el producto no estaba cargado. */
+        public long getFailedAvailable() {
+            return failedAvailable;
+        }
+
+        public String getFailedName() {
+            return failedName;
+        }
+    }
+
+    /**
+     * Tabla de direccionamiento abierto con sondeo lineal; crece al superar 60% de ocupación.
+     */
+    private static final class Stripe {
+        private static final long EMPTY = Long.MIN_VALUE;
+
+        final ReentrantLock lock = new ReentrantLock();
+        long[] keys;
+        long[] values;
+        long[] minStocks;
+        String[] names;
+        int size;
+
+        Stripe() {
+            clear();
+        }
+
+        void clear() {
+            keys = new long[16];
+            Arrays.fill(keys, EMPTY);
+            values = new long[16];
+            minStocks = new long[16];
+            names = new String[16];
+            size = 0;
+        }
+
+        int indexOf(long key) {
+            int slot = (int) (mix(key) >>> 40) & (keys.length - 1);
+            while (keys[slot] != EMPTY) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            return -1;
+        }
+
+        void put(long key, long value, long minStock, String name) {
+            int existing = indexOf(key);
+            if (existing >= 0) {
+                values[existing] = value;
+                minStocks[existing] = minStock;
+                names[existing] = name;
+                return;
+            }
+            if ((size + 1) * 10 > keys.length * 6) {
+                grow();
+            }
+            int slot = (int) (mix(key) >>> 40) & (keys.length - 1);
+            while (keys[slot] != EMPTY) {
+                slot = (slot + 1) & (keys.length - 1);
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            minStocks[slot] = minStock;
+            names[slot] = name;
+            size++;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            long[] oldMinStocks = minStocks;
+            String[] oldNames = names;
+            int capacity = oldKeys.length * 2;
+            keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            values = new long[capacity];
+            minStocks = new long[capacity];
+            names = new String[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    put(oldKeys[i], oldValues[i], oldMinStocks[i], oldNames[i]);
+                }
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.morales.pos.presentation.controller;
 
 import com.morales.pos.application.dto.response.ApiResponse;
 import com.morales.pos.application.dto.response.ReportResponse.*;
+import com.morales.pos.application.service.DashboardService;
 import com.morales.pos.application.service.ReportService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
@@ -23,10 +24,11 @@ import java.util.List;
 public class DashboardController {
 
     private final ReportService reportService;
+    private final DashboardService dashboardService;
 
     @GetMapping("/summary")
     public ResponseEntity<ApiResponse<DashboardSummary>> getDashboardSummary() {
-        return ResponseEntity.ok(ApiResponse.success(reportService.getDashboardSummary()));
+        return ResponseEntity.ok(ApiResponse.success(dashboardService.getDashboardSummary()));
     }
 
     @GetMapping("/sales/summary")
@@ -1,12 +1,21 @@
 package com.morales.pos.presentation.controller;
 
+import com.morales.pos.application.dto.request.ReceiveLotRequest;
 import com.morales.pos.application.dto.response.ApiResponse;
+import com.morales.pos.application.dto.response.InventoryLotResponse;
 import com.morales.pos.application.dto.response.InventoryResponse;
+import com.morales.pos.application.dto.response.StockForecastResponse;
+import com.morales.pos.application.dto.response.StockImportResponse;
+import com.morales.pos.application.service.InventoryLotService;
 import com.morales.pos.application.service.InventoryService;
+import com.morales.pos.application.service.StockForecastService;
+import com.morales.pos.application.service.StockImportService;
 import com.morales.pos.domain.entity.InventoryMovement;
 import com.morales.pos.domain.entity.User;
 import com.morales.pos.domain.repository.UserRepository;
 import com.morales.pos.infrastructure.security.jwt.CustomUserDetails;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
@@ -14,6 +23,7 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -24,6 +34,9 @@ import java.util.List;
 public class InventoryController {
 
     private final InventoryService inventoryService;
+    private final StockImportService stockImportService;
+    private final StockForecastService stockForecastService;
+    private final InventoryLotService inventoryLotService;
     private final UserRepository userRepository;
 
     @GetMapping
@@ -51,11 +64,12 @@ public class InventoryController {
     public ResponseEntity<ApiResponse<InventoryResponse>> addStock(
             @PathVariable Long productId,
             @RequestParam BigDecimal quantity,
+            @RequestParam(required = false) BigDecimal unitCost,
             @RequestParam(required = false) String reason,
             @AuthenticationPrincipal CustomUserDetails userDetails) {
         User user = userRepository.findById(userDetails.getId())
                 .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
-        InventoryResponse inventory = inventoryService.addStock(productId, quantity, reason, user);
+        InventoryResponse inventory = inventoryService.addStock(productId, quantity, unitCost, reason, user);
         return ResponseEntity.ok(ApiResponse.success(inventory, "Stock agregado exitosamente"));
     }
 
@@ -72,6 +86,51 @@ public class InventoryController {
         return ResponseEntity.ok(ApiResponse.success(inventory, "Stock removido exitosamente"));
     }
 
+    /**
+     * Importación masiva: CSV (código, cantidad, tipo) o JSON ([{code, quantity, type}] o una
+     * línea por renglón). El cuerpo se lee en streaming.
+     */
+    @PostMapping(value = "/import", consumes = {"text/csv", "text/plain", "application/json", "application/x-ndjson"})
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPERVISOR', 'INVENTARIO')")
+    public ResponseEntity<ApiResponse<StockImportResponse>> importStock(
+            HttpServletRequest request,
+            @RequestParam(required = false) String reason,
+            @AuthenticationPrincipal CustomUserDetails userDetails) throws IOException {
+        User user = userRepository.findById(userDetails.getId())
+                .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+        boolean json = request.getContentType() != null && request.getContentType().contains("json");
+        StockImportResponse response = stockImportService.importStock(request.getInputStream(), json, reason, user);
+        return ResponseEntity.ok(ApiResponse.success(response, "Importación completada"));
+    }
+
+    @PostMapping("/product/{productId}/lots")
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPERVISOR', 'INVENTARIO')")
+    public ResponseEntity<ApiResponse<InventoryLotResponse>> receiveLot(
+            @PathVariable Long productId,
+            @Valid @RequestBody ReceiveLotRequest request,
+            @AuthenticationPrincipal CustomUserDetails userDetails) {
+        User user = userRepository.findById(userDetails.getId())
+                .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+        InventoryLotResponse lot = inventoryService.receiveLot(productId, request, user);
+        return ResponseEntity.ok(ApiResponse.success(lot, "Lote recibido exitosamente"));
+    }
+
+    @GetMapping("/product/{productId}/lots")
+    public ResponseEntity<ApiResponse<List<InventoryLotResponse>>> getLots(
+            @PathVariable Long productId,
+            @RequestParam(defaultValue = "true") boolean openOnly) {
+        List<InventoryLotResponse> lots = openOnly
+                ? inventoryLotService.findOpen(productId)
+                : inventoryService.getLotsByProduct(productId);
+        return ResponseEntity.ok(ApiResponse.success(lots));
+    }
+
+    @GetMapping("/lots/expiring")
+    public ResponseEntity<ApiResponse<List<InventoryLotResponse>>> getExpiringLots(
+            @RequestParam(defaultValue = "48") long hours) {
+        return ResponseEntity.ok(ApiResponse.success(inventoryLotService.findExpiring(hours)));
+    }
+
     @PutMapping("/product/{productId}/limits")
     @PreAuthorize("hasAnyRole('ADMIN', 'SUPERVISOR', 'INVENTARIO')")
     public ResponseEntity<ApiResponse<InventoryResponse>> updateStockLimits(
@@ -83,6 +142,24 @@ public class InventoryController {
         return ResponseEntity.ok(ApiResponse.success(inventory, "Límites de stock actualizados"));
     }
 
+    @GetMapping("/forecasts")
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPERVISOR', 'INVENTARIO')")
+    public ResponseEntity<ApiResponse<List<StockForecastResponse>>> getForecasts() {
+        return ResponseEntity.ok(ApiResponse.success(stockForecastService.findAll()));
+    }
+
+    @PostMapping("/forecasts/run")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<Integer>> runForecasts() {
+        return ResponseEntity.ok(ApiResponse.success(stockForecastService.run(), "Pronóstico de reposición calculado"));
+    }
+
+    @PostMapping("/forecasts/apply")
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPERVISOR', 'INVENTARIO')")
+    public ResponseEntity<ApiResponse<Integer>> applyForecasts(@RequestBody(required = false) List<Long> productIds) {
+        return ResponseEntity.ok(ApiResponse.success(stockForecastService.apply(productIds), "Límites de stock sugeridos aplicados"));
+    }
+
     @GetMapping("/movements/product/{productId}")
     public ResponseEntity<ApiResponse<List<InventoryMovement>>> getMovementsByProduct(@PathVariable Long productId) {
         return ResponseEntity.ok(ApiResponse.success(inventoryService.getMovementsByProduct(productId)));
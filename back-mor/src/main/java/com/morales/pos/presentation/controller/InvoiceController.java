@@ -1,10 +1,17 @@
 package com.morales.pos.presentation.controller;
 
 import com.morales.pos.application.dto.request.CreateSaleRequest;
+import com.morales.pos.application.dto.request.InvoiceSearchRequest;
+import com.morales.pos.application.dto.request.SyncSalesRequest;
 import com.morales.pos.application.dto.request.VoidInvoiceRequest;
 import com.morales.pos.application.dto.response.ApiResponse;
+import com.morales.pos.application.dto.response.CursorPageResponse;
 import com.morales.pos.application.dto.response.InvoiceResponse;
+import com.morales.pos.application.dto.response.SaleSyncResponse;
+import com.morales.pos.application.service.IdempotencyService;
+import com.morales.pos.application.service.InvoiceExportService;
 import com.morales.pos.application.service.InvoiceService;
+import com.morales.pos.application.service.SaleSyncService;
 import com.morales.pos.domain.entity.User;
 import com.morales.pos.domain.repository.UserRepository;
 import com.morales.pos.infrastructure.security.jwt.CustomUserDetails;
@@ -14,10 +21,14 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -29,6 +40,9 @@ import java.util.Map;
 public class InvoiceController {
 
     private final InvoiceService invoiceService;
+    private final InvoiceExportService invoiceExportService;
+    private final IdempotencyService idempotencyService;
+    private final SaleSyncService saleSyncService;
     private final UserRepository userRepository;
 
     @GetMapping
@@ -37,6 +51,12 @@ public class InvoiceController {
         return ResponseEntity.ok(ApiResponse.success(invoiceService.findAll(pageable)));
     }
 
+    @GetMapping("/search")
+    public ResponseEntity<ApiResponse<CursorPageResponse<InvoiceResponse>>> search(
+            @ModelAttribute InvoiceSearchRequest request) {
+        return ResponseEntity.ok(ApiResponse.success(invoiceService.search(request)));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<ApiResponse<InvoiceResponse>> findById(@PathVariable Long id) {
         return ResponseEntity.ok(ApiResponse.success(invoiceService.findById(id)));
@@ -65,6 +85,27 @@ public class InvoiceController {
         return ResponseEntity.ok(ApiResponse.success(invoiceService.findByDateRange(start, end)));
     }
 
+    @GetMapping("/export")
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPERVISOR', 'REPORTES')")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime start,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime end,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        // Validar antes de empezar a escribir: luego ya no se puede responder con un error JSON
+        invoiceExportService.validateRange(start, end);
+        InvoiceExportService.Format exportFormat = InvoiceExportService.Format.parse(format);
+
+        String fileName = String.format("facturas_%s_%s.%s%s", start.toLocalDate(), end.toLocalDate(),
+                exportFormat.getExtension(), gzip ? ".gz" : "");
+        StreamingResponseBody body = out -> invoiceExportService.export(start, end, exportFormat, gzip, out);
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build().toString())
+                .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : exportFormat.getContentType() + ";charset=UTF-8"))
+                .body(body);
+    }
+
     @GetMapping("/stats/today")
     public ResponseEntity<ApiResponse<Map<String, Object>>> getTodayStats() {
         Map<String, Object> stats = Map.of(
@@ -78,13 +119,26 @@ public class InvoiceController {
     @PreAuthorize("hasAnyRole('ADMIN', 'CAJERO', 'SUPERVISOR')")
     public ResponseEntity<ApiResponse<InvoiceResponse>> createSale(
             @Valid @RequestBody CreateSaleRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @AuthenticationPrincipal CustomUserDetails userDetails) {
         User user = userRepository.findById(userDetails.getId())
                 .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
-        InvoiceResponse invoice = invoiceService.createSale(request, user);
+        InvoiceResponse invoice = idempotencyService.execute("SALE", idempotencyKey, InvoiceResponse.class,
+                () -> invoiceService.createSale(request, user));
         return ResponseEntity.ok(ApiResponse.success(invoice, "Venta registrada exitosamente"));
     }
 
+    @PostMapping("/sync")
+    @PreAuthorize("hasAnyRole('ADMIN', 'CAJERO', 'SUPERVISOR')")
+    public ResponseEntity<ApiResponse<SaleSyncResponse>> syncOfflineSales(
+            @Valid @RequestBody SyncSalesRequest request,
+            @AuthenticationPrincipal CustomUserDetails userDetails) {
+        User user = userRepository.findById(userDetails.getId())
+                .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
+        SaleSyncResponse response = saleSyncService.syncSales(request, user);
+        return ResponseEntity.ok(ApiResponse.success(response, "Sincronización completada"));
+    }
+
     @PostMapping("/{id}/void")
     @PreAuthorize("hasAnyRole('ADMIN', 'SUPERVISOR')")
     public ResponseEntity<ApiResponse<InvoiceResponse>> voidInvoice(
@@ -0,0 +1,33 @@
+package com.morales.pos.presentation.controller;
+
+import com.morales.pos.application.dto.request.UpdateRecipeRequest;
+import com.morales.pos.application.dto.response.ApiResponse;
+import com.morales.pos.application.dto.response.RecipeResponse;
+import com.morales.pos.application.service.RecipeService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/products/{productId}/recipe")
+@RequiredArgsConstructor
+public class RecipeController {
+
+    private final RecipeService recipeService;
+
+    @GetMapping
+    public ResponseEntity<ApiResponse<RecipeResponse>> getRecipe(@PathVariable Long productId) {
+        return ResponseEntity.ok(ApiResponse.success(recipeService.getRecipe(productId)));
+    }
+
+    @PutMapping
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPERVISOR', 'INVENTARIO')")
+    public ResponseEntity<ApiResponse<RecipeResponse>> updateRecipe(
+            @PathVariable Long productId,
+            @Valid @RequestBody UpdateRecipeRequest request) {
+        RecipeResponse recipe = recipeService.updateRecipe(productId, request);
+        return ResponseEntity.ok(ApiResponse.success(recipe, "Receta actualizada exitosamente"));
+    }
+}
@@ -1,8 +1,19 @@
 package com.morales.pos.presentation.controller;
 
+import com.morales.pos.application.dto.request.SalesSliceRequest;
 import com.morales.pos.application.dto.response.ApiResponse;
 import com.morales.pos.application.dto.response.ReportResponse.*;
+import com.morales.pos.application.service.InventoryValuationService;
+import com.morales.pos.application.service.DashboardService;
+import com.morales.pos.application.service.ReportCacheService;
 import com.morales.pos.application.service.ReportService;
+import com.morales.pos.application.service.SalesAnalyticsService;
+import com.morales.pos.application.service.SalesAnalyticsService.LoadResult;
+import com.morales.pos.application.service.SalesRollupService;
+import com.morales.pos.application.service.SalesRollupService.RebuildResult;
+import com.morales.pos.application.service.SalesSnapshotService;
+import com.morales.pos.application.service.SalesSnapshotService.Snapshot;
+import com.morales.pos.infrastructure.cache.BoundedCache.Stats;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
@@ -20,10 +31,16 @@ import java.util.List;
 public class ReportController {
 
     private final ReportService reportService;
+    private final InventoryValuationService inventoryValuationService;
+    private final SalesRollupService salesRollupService;
+    private final SalesSnapshotService salesSnapshotService;
+    private final SalesAnalyticsService salesAnalyticsService;
+    private final DashboardService dashboardService;
+    private final ReportCacheService reportCacheService;
 
     @GetMapping("/dashboard")
     public ResponseEntity<ApiResponse<DashboardSummary>> getDashboardSummary() {
-        return ResponseEntity.ok(ApiResponse.success(reportService.getDashboardSummary()));
+        return ResponseEntity.ok(ApiResponse.success(dashboardService.getDashboardSummary()));
     }
 
     @GetMapping("/sales/summary")
@@ -89,4 +106,46 @@ public class ReportController {
     public ResponseEntity<ApiResponse<InventoryValue>> getInventoryValue() {
         return ResponseEntity.ok(ApiResponse.success(reportService.getInventoryValue()));
     }
+
+    @PostMapping("/inventory/value/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<InventoryValue>> rebuildInventoryValue() {
+        return ResponseEntity.ok(ApiResponse.success(inventoryValuationService.rebuild(), "Valor de inventario recalculado"));
+    }
+
+    @PostMapping("/sales/rollups/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<RebuildResult>> rebuildSalesRollups() {
+        return ResponseEntity.ok(ApiResponse.success(salesRollupService.rebuild(), "Acumulados de ventas reconstruidos"));
+    }
+
+    @PostMapping("/snapshots/close")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<Integer>> closeSalesDays() {
+        return ResponseEntity.ok(ApiResponse.success(salesSnapshotService.closeDays(), "Días cerrados congelados"));
+    }
+
+    @PostMapping("/snapshots/{date}/freeze")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<Snapshot>> freezeSalesDay(
+            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        return ResponseEntity.ok(ApiResponse.success(salesSnapshotService.freeze(date), "Día congelado"));
+    }
+
+    @PostMapping("/analytics/slice")
+    public ResponseEntity<ApiResponse<SalesSlice>> sliceSales(@RequestBody SalesSliceRequest request) {
+        return ResponseEntity.ok(ApiResponse.success(salesAnalyticsService.slice(request)));
+    }
+
+    @PostMapping("/analytics/reload")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<LoadResult>> reloadSalesAnalytics() {
+        return ResponseEntity.ok(ApiResponse.success(salesAnalyticsService.reload(), "Análisis de ventas recargado"));
+    }
+
+    @GetMapping("/cache/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ApiResponse<List<Stats>>> getCacheStats() {
+        return ResponseEntity.ok(ApiResponse.success(reportCacheService.getStats()));
+    }
 }
@@ -0,0 +1,23 @@
+package com.morales.pos.presentation.controller;
+
+import com.morales.pos.application.dto.request.QuoteSaleRequest;
+import com.morales.pos.application.dto.response.ApiResponse;
+import com.morales.pos.application.dto.response.SaleQuoteResponse;
+import com.morales.pos.application.service.SaleQuoteService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/sales")
+@RequiredArgsConstructor
+public class SaleController {
+
+    private final SaleQuoteService saleQuoteService;
+
+    @PostMapping("/quote")
+    public ResponseEntity<ApiResponse<SaleQuoteResponse>> quote(@Valid @RequestBody QuoteSaleRequest request) {
+        return ResponseEntity.ok(ApiResponse.success(saleQuoteService.quote(request)));
+    }
+}
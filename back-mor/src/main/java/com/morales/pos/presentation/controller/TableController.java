@@ -5,6 +5,7 @@ import com.morales.pos.application.dto.response.ApiResponse;
 import com.morales.pos.application.dto.response.InvoiceResponse;
 import com.morales.pos.application.dto.response.TableResponse;
 import com.morales.pos.application.dto.response.TableSessionResponse;
+import com.morales.pos.application.service.IdempotencyService;
 import com.morales.pos.application.service.TableService;
 import com.morales.pos.domain.entity.User;
 import com.morales.pos.domain.repository.UserRepository;
@@ -25,6 +26,7 @@ import java.util.Map;
 public class TableController {
 
     private final TableService tableService;
+    private final IdempotencyService idempotencyService;
     private final UserRepository userRepository;
 
     // ==================== TABLE CRUD ====================
@@ -122,9 +124,11 @@ public class TableController {
     public ResponseEntity<ApiResponse<InvoiceResponse>> payTable(
             @PathVariable Long id,
             @Valid @RequestBody PayTableRequest request,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @AuthenticationPrincipal CustomUserDetails userDetails) {
         User user = resolveUser(userDetails);
-        InvoiceResponse invoice = tableService.payTable(id, request, user);
+        InvoiceResponse invoice = idempotencyService.execute("TABLE_PAY:" + id, idempotencyKey, InvoiceResponse.class,
+                () -> tableService.payTable(id, request, user));
         return ResponseEntity.ok(ApiResponse.success(invoice, "Mesa pagada exitosamente"));
     }
 
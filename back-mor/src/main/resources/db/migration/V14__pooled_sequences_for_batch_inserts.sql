@@ -0,0 +1,9 @@
+-- =====================================================
+-- SISTEMA POS MORALES - Migración V14
+-- Secuencias con incremento 50 para el optimizador pooled de Hibernate.
+-- invoice_details e inventory_movements dejan de usar IDENTITY para que
+-- los INSERT de una venta viajen en lotes JDBC.
+-- =====================================================
+
+ALTER SEQUENCE invoice_details_id_seq INCREMENT BY 50;
+ALTER SEQUENCE inventory_movements_id_seq INCREMENT BY 50;
@@ -0,0 +1,15 @@
+-- =====================================================
+-- SISTEMA POS MORALES - Migración V15
+-- Contadores de numeración de facturas por prefijo y día.
+-- Cada nodo reserva bloques de números con un UPDATE atómico y los
+-- entrega desde memoria; reemplaza el COUNT ... LIKE 'V1017%' por venta.
+-- =====================================================
+
+CREATE TABLE invoice_number_sequences (
+    id BIGSERIAL PRIMARY KEY,
+    prefix VARCHAR(30) NOT NULL,
+    business_date DATE NOT NULL,
+    last_value BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_invoice_number_sequences_prefix_date UNIQUE (prefix, business_date)
+);
@@ -0,0 +1,19 @@
+-- =====================================================
+-- SISTEMA POS MORALES - Migración V16
+-- Respuestas de ventas y pagos de mesa por Idempotency-Key, para que los
+-- reintentos de las tablets devuelvan la misma factura sin repetir la venta.
+-- =====================================================
+
+CREATE TABLE idempotency_keys (
+    id BIGINT PRIMARY KEY,
+    idempotency_key VARCHAR(100) NOT NULL,
+    scope VARCHAR(50) NOT NULL,
+    response_body TEXT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_idempotency_keys_key UNIQUE (idempotency_key)
+);
+
+-- IDs por secuencia pooled: la sincronización de ventas offline inserta sus claves en lotes JDBC
+CREATE SEQUENCE idempotency_keys_id_seq INCREMENT BY 50 OWNED BY idempotency_keys.id;
+
+CREATE INDEX idx_idempotency_keys_created ON idempotency_keys(created_at);
@@ -0,0 +1,28 @@
+-- =====================================================
+-- SISTEMA POS MORALES - Migración V18
+-- Índices para la búsqueda de facturas por cursor (created_at, id)
+-- =====================================================
+
+-- Listado general: recorrer de la más reciente a la más antigua sin OFFSET
+CREATE INDEX IF NOT EXISTS idx_invoices_created_id
+    ON invoices(created_at DESC, id DESC);
+
+-- Filtro por estado (el listado por defecto excluye ABIERTA)
+CREATE INDEX IF NOT EXISTS idx_invoices_status_created_id
+    ON invoices(status, created_at DESC, id DESC);
+
+-- Historial de un cliente
+CREATE INDEX IF NOT EXISTS idx_invoices_customer_created_id
+    ON invoices(customer_id, created_at DESC, id DESC);
+
+-- Ventas de un cajero
+CREATE INDEX IF NOT EXISTS idx_invoices_user_created_id
+    ON invoices(user_id, created_at DESC, id DESC);
+
+-- Los índices anteriores son prefijos de los nuevos: solo duplican escrituras
+DROP INDEX IF EXISTS idx_invoices_status_created;
+DROP INDEX IF EXISTS idx_invoices_customer_created;
+DROP INDEX IF EXISTS idx_invoices_user_created;
+DROP INDEX IF EXISTS idx_invoices_customer;
+DROP INDEX IF EXISTS idx_invoices_customer_id;
+DROP INDEX IF EXISTS idx_invoices_user;
@@ -0,0 +1,27 @@
+-- =====================================================
+-- SISTEMA POS MORALES - Migración V19
+-- Outbox transaccional: eventos de dominio (pedidos de cocina, mesas
+-- pagadas, stock bajo) que se escriben con la venta y se despachan
+-- después del commit (SSE, notificaciones).
+-- =====================================================
+
+CREATE TABLE outbox_events (
+    id BIGINT PRIMARY KEY,
+    event_type VARCHAR(50) NOT NULL,
+    aggregate_type VARCHAR(50),
+    aggregate_id BIGINT,
+    payload TEXT NOT NULL,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    last_error VARCHAR(500),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    processed_at TIMESTAMP
+);
+
+-- IDs por secuencia pooled: varios eventos de una venta salen en un solo lote
+CREATE SEQUENCE outbox_events_id_seq INCREMENT BY 50;
+
+-- Pendientes: el despachador solo recorre lo que no se ha procesado
+CREATE INDEX idx_outbox_events_pending ON outbox_events(created_at) WHERE processed_at IS NULL;
+
+-- Limpieza de eventos ya despachados
+CREATE INDEX idx_outbox_events_processed ON outbox_events(processed_at) WHERE processed_at IS NOT NULL;
@@ -0,0 +1,81 @@
+-- =====================================================
+-- SISTEMA POS MORALES - Migración V20
+-- inventory_movements pasa a particiones mensuales por created_at y los
+-- rangos de fecha de reportes se apoyan en índices BRIN.
+--
+-- invoices, invoice_details y kitchen_orders no se particionan: reciben
+-- llaves foráneas (table_sessions, payments, kitchen_orders) y tienen
+-- UNIQUE (invoice_number, invoice_detail_id) que PostgreSQL solo permite
+-- en tablas particionadas si incluyen la columna de partición.
+-- =====================================================
+
+-- Función usada aquí y por PartitionMaintenanceService para crear los meses por adelantado
+CREATE OR REPLACE FUNCTION ensure_monthly_partitions(p_parent TEXT, p_from DATE, p_to DATE)
+RETURNS INTEGER AS $$
+DECLARE
+    v_month DATE := date_trunc('month', p_from)::DATE;
+    v_name TEXT;
+    v_created INTEGER := 0;
+BEGIN
+    WHILE v_month <= p_to LOOP
+        v_name := p_parent || '_' || to_char(v_month, 'YYYYMM');
+        IF to_regclass(v_name) IS NULL THEN
+            EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                           v_name, p_parent, v_month, (v_month + INTERVAL '1 month')::DATE);
+            v_created := v_created + 1;
+        END IF;
+        v_month := (v_month + INTERVAL '1 month')::DATE;
+    END LOOP;
+    RETURN v_created;
+END;
+$$ LANGUAGE plpgsql;
+
+-- ── inventory_movements ─────────────────────────────────────────────────────
+ALTER TABLE inventory_movements RENAME TO inventory_movements_old;
+ALTER INDEX inventory_movements_pkey RENAME TO inventory_movements_old_pkey;
+ALTER TABLE inventory_movements_old ALTER COLUMN id DROP DEFAULT;
+ALTER SEQUENCE inventory_movements_id_seq OWNED BY NONE;
+
+-- La PK incluye created_at porque PostgreSQL exige la columna de partición en las llaves
+CREATE TABLE inventory_movements (
+    id BIGINT NOT NULL DEFAULT nextval('inventory_movements_id_seq'),
+    product_id BIGINT REFERENCES products(id),
+    movement_type VARCHAR(20) NOT NULL,
+    quantity DECIMAL(12,2) NOT NULL,
+    previous_quantity DECIMAL(12,2),
+    new_quantity DECIMAL(12,2),
+    reference_type VARCHAR(50),
+    reference_id BIGINT,
+    reason TEXT,
+    user_id BIGINT REFERENCES users(id),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
+
+ALTER SEQUENCE inventory_movements_id_seq OWNED BY inventory_movements.id;
+
+-- Respaldo para filas fuera de los meses creados (no debería recibir datos)
+CREATE TABLE inventory_movements_default PARTITION OF inventory_movements DEFAULT;
+
+SELECT ensure_monthly_partitions('inventory_movements',
+        COALESCE((SELECT MIN(created_at) FROM inventory_movements_old)::DATE, CURRENT_DATE),
+        (CURRENT_DATE + INTERVAL '3 months')::DATE);
+
+INSERT INTO inventory_movements (id, product_id, movement_type, quantity, previous_quantity, new_quantity,
+                                 reference_type, reference_id, reason, user_id, created_at)
+SELECT id, product_id, movement_type, quantity, previous_quantity, new_quantity,
+       reference_type, reference_id, reason, user_id, COALESCE(created_at, CURRENT_TIMESTAMP)
+FROM inventory_movements_old;
+
+DROP TABLE inventory_movements_old;
+
+-- Índices declarados en la tabla padre: cada partición (actual y futura) recibe el suyo
+CREATE INDEX idx_inventory_movements_product_created ON inventory_movements(product_id, created_at DESC);
+CREATE INDEX idx_inventory_movements_user ON inventory_movements(user_id);
+CREATE INDEX idx_inventory_movements_created_brin ON inventory_movements USING BRIN (created_at);
+
+-- ── Rangos de fecha en reportes ─────────────────────────────────────────────
+-- Los reportes filtran invoices.created_at y llegan a los detalles por invoice_id.
+-- Las facturas se insertan en orden de fecha: un BRIN ocupa unas páginas y descarta
+-- bloques enteros en reportes mensuales/anuales donde el B-tree recorrería millones de entradas
+CREATE INDEX IF NOT EXISTS idx_invoices_created_brin ON invoices USING BRIN (created_at);
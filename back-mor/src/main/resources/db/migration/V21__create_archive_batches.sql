@@ -0,0 +1,20 @@
+-- =====================================================
+-- SISTEMA POS MORALES - Migración V21
+-- Archivo histórico: cada fila registra un lote de facturas, detalles y
+-- movimientos de un mes cerrado que se movió de la base a archivos
+-- columnares comprimidos (ver ArchiveService). Los reportes solo leen los
+-- archivos registrados aquí, así un lote a medias nunca se cuenta dos veces.
+-- =====================================================
+
+CREATE TABLE archive_batches (
+    id BIGSERIAL PRIMARY KEY,
+    period_start DATE NOT NULL,
+    period_end DATE NOT NULL,              -- exclusivo
+    directory VARCHAR(500) NOT NULL,       -- relativo a app.archive.directory
+    invoice_count BIGINT NOT NULL DEFAULT 0,
+    detail_count BIGINT NOT NULL DEFAULT 0,
+    movement_count BIGINT NOT NULL DEFAULT 0,
+    archived_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_archive_batches_period ON archive_batches(period_start, period_end);
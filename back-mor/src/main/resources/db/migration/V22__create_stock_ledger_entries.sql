@@ -0,0 +1,27 @@
+-- =====================================================
+-- SISTEMA POS MORALES - Migración V22
+-- Movimientos del libro de stock en memoria (StockLedger, opcional) que
+-- todavía no se aplican a inventory e inventory_movements. Se insertan en
+-- la misma transacción que la venta, así un cambio confirmado nunca se
+-- pierde; el volcado los aplica y los borra en una sola transacción.
+-- Un movimiento que falla varias veces queda apartado (parked_at) para no
+-- frenar a los que vienen detrás.
+-- =====================================================
+
+CREATE TABLE stock_ledger_entries (
+    id BIGSERIAL PRIMARY KEY,
+    product_id BIGINT NOT NULL,
+    quantity_delta DECIMAL(14,2) NOT NULL,
+    previous_quantity DECIMAL(14,2) NOT NULL,
+    new_quantity DECIMAL(14,2) NOT NULL,
+    movement_type VARCHAR(20) NOT NULL,
+    user_id BIGINT,
+    reason TEXT,
+    created_at TIMESTAMP NOT NULL,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    last_error VARCHAR(500),
+    parked_at TIMESTAMP
+);
+
+-- Pendientes de volcar, en orden de llegada
+CREATE INDEX idx_stock_ledger_entries_pending ON stock_ledger_entries(id) WHERE parked_at IS NULL;
@@ -0,0 +1,12 @@
+-- =====================================================
+-- SISTEMA POS MORALES - Migración V23
+-- Reservas de stock para mesas abiertas: los ítems de una mesa ya no
+-- descuentan inventario al pedirse, solo lo reservan en memoria
+-- (StockReservationService) y se descuentan al pagar. stock_deducted
+-- indica si la línea ya salió del inventario; las líneas existentes sí.
+-- =====================================================
+
+ALTER TABLE invoice_details ADD COLUMN stock_deducted BOOLEAN NOT NULL DEFAULT TRUE;
+
+-- Reconstrucción de reservas al arrancar y cobro de mesas
+CREATE INDEX idx_invoice_details_reserved ON invoice_details (invoice_id) WHERE stock_deducted = false;
@@ -0,0 +1,21 @@
+-- =====================================================
+-- SISTEMA POS MORALES - Migración V24
+-- Recetas (lista de materiales): cada fila dice cuánto de un ingrediente
+-- consume una unidad del producto. Los ingredientes son productos con su
+-- propio inventario y pueden tener receta a su vez (sub-recetas); al
+-- vender se descuentan los ingredientes finales en lugar del producto.
+-- La cantidad usa la unidad del inventario del ingrediente (g, ml, und).
+-- =====================================================
+
+CREATE TABLE product_recipes (
+    id BIGSERIAL PRIMARY KEY,
+    product_id BIGINT NOT NULL REFERENCES products(id) ON DELETE CASCADE,
+    ingredient_id BIGINT NOT NULL REFERENCES products(id),
+    quantity DECIMAL(12,4) NOT NULL CHECK (quantity > 0),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP,
+    CONSTRAINT uq_product_recipes_ingredient UNIQUE (product_id, ingredient_id),
+    CONSTRAINT ck_product_recipes_not_self CHECK (product_id <> ingredient_id)
+);
+
+CREATE INDEX idx_product_recipes_ingredient ON product_recipes(ingredient_id);
@@ -0,0 +1,22 @@
+-- =====================================================
+-- SISTEMA POS MORALES - Migración V25
+-- Pronóstico de reposición: el proceso nocturno calcula por producto la
+-- velocidad de venta (unidades por día) y su estacionalidad por día de la
+-- semana y hora a partir de invoice_details, y guarda el stock mínimo y
+-- máximo sugeridos. Una fila por producto; se reemplazan en cada corrida.
+-- applied_at indica cuándo la sugerencia se copió a inventory.
+-- =====================================================
+
+CREATE TABLE stock_forecasts (
+    product_id BIGINT PRIMARY KEY REFERENCES products(id) ON DELETE CASCADE,
+    daily_velocity DECIMAL(12,4) NOT NULL,
+    daily_std_dev DECIMAL(12,4) NOT NULL,
+    peak_weekday INTEGER NOT NULL CHECK (peak_weekday BETWEEN 1 AND 7),
+    peak_weekday_factor DECIMAL(6,3) NOT NULL,
+    peak_hour INTEGER NOT NULL CHECK (peak_hour BETWEEN 0 AND 23),
+    suggested_min_stock DECIMAL(12,2) NOT NULL,
+    suggested_max_stock DECIMAL(12,2) NOT NULL,
+    history_days INTEGER NOT NULL,
+    computed_at TIMESTAMP NOT NULL,
+    applied_at TIMESTAMP
+);
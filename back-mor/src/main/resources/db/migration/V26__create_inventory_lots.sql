@@ -0,0 +1,34 @@
+-- =====================================================
+-- SISTEMA POS MORALES - Migración V26
+-- Lotes de inventario con fecha de recepción y vencimiento. inventory.quantity
+-- sigue siendo el total del producto; los lotes desglosan la parte recibida
+-- con lote (el resto, por ejemplo devoluciones, queda sin lote). Las salidas
+-- consumen los lotes abiertos en orden FEFO o FIFO y cada consumo queda en
+-- inventory_lot_consumptions con el mismo motivo que el movimiento.
+-- =====================================================
+
+CREATE TABLE inventory_lots (
+    id BIGSERIAL PRIMARY KEY,
+    product_id BIGINT NOT NULL REFERENCES products(id) ON DELETE CASCADE,
+    lot_code VARCHAR(50),
+    received_at TIMESTAMP NOT NULL,
+    expires_at TIMESTAMP,
+    initial_quantity DECIMAL(12,2) NOT NULL CHECK (initial_quantity > 0),
+    remaining_quantity DECIMAL(12,2) NOT NULL CHECK (remaining_quantity >= 0),
+    expiry_notified_at TIMESTAMP,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP
+);
+
+-- Solo los lotes abiertos se cargan en memoria y se revisan por vencimiento
+CREATE INDEX idx_inventory_lots_open ON inventory_lots(product_id) WHERE remaining_quantity > 0;
+
+CREATE TABLE inventory_lot_consumptions (
+    id BIGSERIAL PRIMARY KEY,
+    lot_id BIGINT NOT NULL REFERENCES inventory_lots(id) ON DELETE CASCADE,
+    quantity DECIMAL(12,2) NOT NULL CHECK (quantity > 0),
+    reason TEXT,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_inventory_lot_consumptions_lot ON inventory_lot_consumptions(lot_id);
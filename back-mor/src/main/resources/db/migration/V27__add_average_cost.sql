@@ -0,0 +1,18 @@
+-- =====================================================
+-- SISTEMA POS MORALES - Migración V27
+-- Costo promedio ponderado por producto. cost_price sigue siendo el costo
+-- de referencia editado a mano; average_cost se recalcula con cada entrada
+-- de stock que trae costo unitario y es el costo que copian las ventas en
+-- invoice_details.cost_price. Arranca igual a cost_price.
+-- =====================================================
+
+ALTER TABLE products ADD COLUMN average_cost DECIMAL(12,4);
+UPDATE products SET average_cost = COALESCE(cost_price, 0);
+ALTER TABLE products ALTER COLUMN average_cost SET DEFAULT 0;
+ALTER TABLE products ALTER COLUMN average_cost SET NOT NULL;
+
+-- Costo unitario de las entradas que lo informan (null en el resto)
+ALTER TABLE inventory_movements ADD COLUMN unit_cost DECIMAL(12,4);
+
+-- El ledger de stock guarda el mismo costo hasta volcarlo a inventory_movements
+ALTER TABLE stock_ledger_entries ADD COLUMN unit_cost DECIMAL(12,4);
@@ -0,0 +1,17 @@
+-- =====================================================
+-- SISTEMA POS MORALES - Migración V29
+-- Totales congelados de cada día cerrado (ventas, cantidad y costo de las
+-- facturas COMPLETADA). La fila sigue valiendo cuando el día se archiva.
+-- Los reportes por rango leen una fila por día cerrado y calculan en vivo
+-- solo el día abierto.
+-- Un cambio tardío en un día cerrado (anulación, venta offline) borra su
+-- fila en la misma transacción y el día se vuelve a congelar al confirmar.
+-- =====================================================
+
+CREATE TABLE sales_day_snapshots (
+    business_date DATE PRIMARY KEY,
+    total_sales DECIMAL(14,2) NOT NULL,
+    sales_count BIGINT NOT NULL,
+    total_cost DECIMAL(16,4) NOT NULL,
+    frozen_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
@@ -0,0 +1,16 @@
+-- =====================================================
+-- SISTEMA POS MORALES - Migración V30
+-- Stock descontado por cada factura, ya explotado en ingredientes finales
+-- con la receta vigente al venderse. Una anulación devuelve exactamente
+-- estas cantidades aunque la receta haya cambiado después.
+-- Las facturas anteriores no tienen filas y se anulan con la receta actual.
+-- La FK a invoices se valida al confirmar: las filas se insertan por JDBC
+-- antes de que Hibernate escriba la cabecera de la factura.
+-- =====================================================
+
+CREATE TABLE invoice_stock_deductions (
+    invoice_id BIGINT NOT NULL REFERENCES invoices(id) ON DELETE CASCADE DEFERRABLE INITIALLY DEFERRED,
+    product_id BIGINT NOT NULL REFERENCES products(id),
+    quantity DECIMAL(12,2) NOT NULL,
+    PRIMARY KEY (invoice_id, product_id)
+);
@@ -0,0 +1,27 @@
+-- =====================================================
+-- SISTEMA POS MORALES - Migración V31
+-- Ventas offline ya registradas por clientSaleId. Una caja puede reenviar
+-- su cola días después, así que estas claves se guardan mucho más que las
+-- Idempotency-Key (app.sales-sync.retention-days) y en su propia tabla: un
+-- clientSaleId que coincide con una Idempotency-Key no es la misma venta.
+-- =====================================================
+
+CREATE TABLE sale_sync_keys (
+    id BIGINT PRIMARY KEY,
+    client_sale_id VARCHAR(100) NOT NULL,
+    response_body TEXT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_sale_sync_keys_client_sale_id UNIQUE (client_sale_id)
+);
+
+-- IDs por secuencia pooled: cada bloque sincronizado inserta sus claves en un lote JDBC
+CREATE SEQUENCE sale_sync_keys_id_seq INCREMENT BY 50 OWNED BY sale_sync_keys.id;
+
+CREATE INDEX idx_sale_sync_keys_created ON sale_sync_keys(created_at);
+
+-- Las ventas offline ya sincronizadas pasan a la tabla nueva
+INSERT INTO sale_sync_keys (id, client_sale_id, response_body, created_at)
+SELECT nextval('sale_sync_keys_id_seq'), idempotency_key, response_body, created_at
+FROM idempotency_keys WHERE scope = 'SALE_SYNC';
+
+DELETE FROM idempotency_keys WHERE scope = 'SALE_SYNC';